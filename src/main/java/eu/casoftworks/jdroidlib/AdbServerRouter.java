@@ -0,0 +1,285 @@
+/*
+ * Copyright (c) 2017, Simon Cahill
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.casoftworks.jdroidlib;
+
+import eu.casoftworks.jdroidlib.commands.*;
+import eu.casoftworks.jdroidlib.enums.*;
+import eu.casoftworks.jdroidlib.exception.*;
+import eu.casoftworks.jdroidlib.interfaces.*;
+import eu.casoftworks.jdroidlib.util.*;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.*;
+
+/**
+ * <b >This is NOT a public class!</b>
+ *
+ * Routes commands to one of several ADB servers (shards).
+ * Each shard owns the devices it lists; commands targeting a device
+ * are sent to the owning shard, while server-wide commands are sent to the default shard.
+ * Discovery queries all shards in parallel and merges their listings.
+ */
+class AdbServerRouter implements IExecutioner {
+
+    private final AdbServerEndpoint defaultEndpoint;
+    private final Map<String, AdbServerEndpoint> deviceOwners;
+    private final ExecutorService executor;
+
+    private volatile Map<AdbServerEndpoint, IExecutioner> shards;
+    private long timeout = 120; // Default is two (2) minutes.
+    private TimeUnit timeoutTimeUnit = TimeUnit.SECONDS;
+
+    /**
+     * Default and only constructor available for this class.
+     * @param defaultEndpoint The endpoint of the default shard.
+     * @param defaultShard The executioner for the default shard.
+     * @param executor The executor used to query shards in parallel. May be null!
+     */
+    AdbServerRouter(AdbServerEndpoint defaultEndpoint, IExecutioner defaultShard, ExecutorService executor) {
+        this.defaultEndpoint = defaultEndpoint;
+        this.executor = executor;
+        deviceOwners = new ConcurrentHashMap<>();
+        shards = Collections.singletonMap(defaultEndpoint, defaultShard);
+        defaultShard.setTimeout(timeout);
+        defaultShard.setTimeUnit(timeoutTimeUnit);
+    }
+
+    //<editor-fold desc="Shard management" defaultstate="collapsed" >
+    /**
+     * Adds a shard to this router.
+     * @param endpoint The endpoint of the shard's ADB server.
+     * @param shard The executioner for the shard.
+     */
+    synchronized void addShard(AdbServerEndpoint endpoint, IExecutioner shard) {
+        if (shards.containsKey(endpoint))
+            throw new IllegalArgumentException(String.format("The ADB server %s is already known!", endpoint));
+
+        shard.setTimeout(timeout);
+        shard.setTimeUnit(timeoutTimeUnit);
+
+        Map<AdbServerEndpoint, IExecutioner> newShards = new LinkedHashMap<>(shards);
+        newShards.put(endpoint, shard);
+        shards = Collections.unmodifiableMap(newShards);
+    }
+
+    /**
+     * Removes a shard from this router.
+     * Devices owned by the shard fall back to the default shard.
+     * @param endpoint The endpoint of the shard to remove.
+     * @return The removed shard, or {@code null} if no such shard was known.
+     */
+    synchronized IExecutioner removeShard(AdbServerEndpoint endpoint) {
+        if (defaultEndpoint.equals(endpoint))
+            throw new IllegalArgumentException("The default ADB server cannot be removed!");
+
+        Map<AdbServerEndpoint, IExecutioner> newShards = new LinkedHashMap<>(shards);
+        IExecutioner removed = newShards.remove(endpoint);
+        shards = Collections.unmodifiableMap(newShards);
+        deviceOwners.values().removeIf(endpoint::equals);
+        return removed;
+    }
+
+    AdbServerEndpoint getDefaultEndpoint() { return defaultEndpoint; }
+
+    List<AdbServerEndpoint> getEndpoints() { return new ArrayList<>(shards.keySet()); }
+
+    IExecutioner getShard(AdbServerEndpoint endpoint) { return shards.get(endpoint); }
+
+    /**
+     * Gets the endpoint of the ADB server owning a device.
+     * @param deviceId The device's ID (serial number or IP address).
+     * @return The owning endpoint, or the default endpoint if the device has not been discovered.
+     */
+    AdbServerEndpoint getOwner(String deviceId) {
+        return deviceId == null ? defaultEndpoint : deviceOwners.getOrDefault(deviceId, defaultEndpoint);
+    }
+
+    /**
+     * Records a shard as the owner of a device.
+     * @param deviceId The device's ID (serial number or IP address).
+     * @param endpoint The endpoint of the owning ADB server.
+     */
+    void setOwner(String deviceId, AdbServerEndpoint endpoint) { deviceOwners.put(deviceId, endpoint); }
+    //</editor-fold>
+
+    //<editor-fold desc="Routing and discovery" defaultstate="collapsed" >
+    /**
+     * Gets the shard responsible for a device.
+     * @param deviceId The device's ID. May be null for server-wide commands.
+     * @return The responsible shard.
+     */
+    IExecutioner route(String deviceId) {
+        Map<AdbServerEndpoint, IExecutioner> currentShards = shards;
+        IExecutioner shard = currentShards.get(getOwner(deviceId));
+        return shard != null ? shard : currentShards.get(defaultEndpoint);
+    }
+
+    /**
+     * Gets the shard responsible for a command.
+     * @param command The command to route.
+     * @return The responsible shard.
+     */
+    IExecutioner route(ICommand command) {
+        if (command.getDevice() == null || command.getCommandType() == CommandType.FastbootCommand)
+            return route((String)null);
+        return route(command.getDevice().getID());
+    }
+
+    /**
+     * Executes a server-wide command on every shard (e.g. start-server).
+     * @param command The command to execute.
+     */
+    void executeOnAllShards(ICommand command) throws IOException, IllegalDeviceStateException, InterruptedException {
+        for (IExecutioner shard : shards.values())
+            shard.executeCommandNoOutput(command);
+    }
+
+    /**
+     * Lists the devices of all shards and records each device's owning shard.
+     * If a device is listed by more than one shard, the first shard to list it keeps it.
+     * Shards which fail to respond are skipped and reported; the owners recorded for their devices are kept.
+     * The listings are requested in parallel, but parsed on the calling thread.
+     * @param parser The parser to parse the listings with.
+     * @param sink The sink receiving the merged device records.
+     * @param failedShards Receives the endpoints of the shards which failed to respond. May be {@code null}.
+     * @return The number of devices listed.
+     * @throws InterruptedException If the thread is interrupted while waiting for the shards.
+     */
+    int listDevices(DeviceListParser parser, DeviceListParser.IRecordSink sink, Set<AdbServerEndpoint> failedShards) throws InterruptedException {
+        Map<AdbServerEndpoint, Future<String>> outputs = new LinkedHashMap<>();
+        for (Map.Entry<AdbServerEndpoint, IExecutioner> shard : shards.entrySet()) {
+            Callable<String> listing = () -> shard.getValue().executeCommandReturnOutput(AdbCommand.getDevicesLongCommand());
+            if (executor != null) {
+                outputs.put(shard.getKey(), executor.submit(listing));
+            } else {
+                FutureTask<String> task = new FutureTask<>(listing);
+                task.run();
+                outputs.put(shard.getKey(), task);
+            }
+        }
+
+        Set<String> seen = new HashSet<>();
+        for (Map.Entry<AdbServerEndpoint, Future<String>> output : outputs.entrySet()) {
+            String cmdOutput;
+            try {
+                cmdOutput = output.getValue().get();
+            } catch (ExecutionException ex) {
+                Logger.getLogger(AdbServerRouter.class.getName()).log(Level.WARNING, String.format("Could not list devices on ADB server %s!", output.getKey()), ex.getCause());
+                if (failedShards != null)
+                    failedShards.add(output.getKey());
+                continue;
+            }
+
+            AdbServerEndpoint endpoint = output.getKey();
+            parser.parse(cmdOutput, record -> {
+                String deviceId = record.getSerial();
+                if (!seen.add(deviceId)) {
+                    Logger.getLogger(AdbServerRouter.class.getName()).log(Level.WARNING, String.format("Device %s is listed by more than one ADB server! Keeping %s.", deviceId, getOwner(deviceId)));
+                    return;
+                }
+
+                setOwner(deviceId, endpoint);
+                sink.onRecord(record);
+            });
+        }
+
+        return seen.size();
+    }
+    //</editor-fold>
+
+    //<editor-fold desc="IExecutioner Implementation" defaultstate="collapsed" >
+    @Override
+    public void executeCommandNoOutput(ICommand command) throws IOException, IllegalDeviceStateException, InterruptedException {
+        route(command).executeCommandNoOutput(command);
+    }
+
+    @Override
+    public String executeCommandReturnOutput(ICommand command) throws IOException, IllegalDeviceStateException, InterruptedException {
+        return route(command).executeCommandReturnOutput(command);
+    }
+
+    @Override
+    public int executeCommandReturnExitCode(ICommand command) throws IOException, IllegalDeviceStateException, InterruptedException {
+        return route(command).executeCommandReturnExitCode(command);
+    }
+
+    @Override
+    public ITuple2<Integer, String> executeCommand(ICommand command) throws IOException, IllegalDeviceStateException, InterruptedException {
+        return route(command).executeCommand(command);
+    }
+
+    @Override
+    public Process executeCommandReturnProcess(ICommand command) throws IOException, IllegalDeviceStateException, InterruptedException {
+        return route(command).executeCommandReturnProcess(command);
+    }
+
+    @Override
+    public Future executeCommandNoOutputAsync(ICommand command) throws IOException, IllegalDeviceStateException, InterruptedException {
+        return route(command).executeCommandNoOutputAsync(command);
+    }
+
+    @Override
+    public Future<String> executeCommandReturnOutputAsync(ICommand command) throws IOException, IllegalDeviceStateException, InterruptedException {
+        return route(command).executeCommandReturnOutputAsync(command);
+    }
+
+    @Override
+    public Future<Integer> executeCommandReturnExitCodeAsync(ICommand command) throws IOException, IllegalDeviceStateException, InterruptedException {
+        return route(command).executeCommandReturnExitCodeAsync(command);
+    }
+
+    @Override
+    public Future<ITuple2<Integer, String>> executeCommandAsync(ICommand command) throws IOException, IllegalDeviceStateException, InterruptedException {
+        return route(command).executeCommandAsync(command);
+    }
+
+    @Override
+    public Future<Process> executeCommandReturnProcessAsync(ICommand command) throws IOException, IllegalDeviceStateException, InterruptedException {
+        return route(command).executeCommandReturnProcessAsync(command);
+    }
+
+    @Override
+    public synchronized long getTimeout() { return timeout; }
+
+    @Override
+    public synchronized void setTimeout(long timeout) {
+        this.timeout = timeout;
+        shards.values().forEach(x -> x.setTimeout(timeout));
+    }
+
+    @Override
+    public synchronized TimeUnit getTimeUnit() { return timeoutTimeUnit; }
+
+    @Override
+    public synchronized void setTimeUnit(TimeUnit timeUnit) {
+        this.timeoutTimeUnit = timeUnit;
+        shards.values().forEach(x -> x.setTimeUnit(timeUnit));
+    }
+    //</editor-fold>
+
+}
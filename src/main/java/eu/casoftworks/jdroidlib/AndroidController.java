@@ -27,35 +27,60 @@ package eu.casoftworks.jdroidlib;
 
 import eu.casoftworks.jdroidlib.commands.*;
 import eu.casoftworks.jdroidlib.device.*;
+import eu.casoftworks.jdroidlib.device.pm.*;
 import eu.casoftworks.jdroidlib.enums.*;
 import eu.casoftworks.jdroidlib.exception.*;
+import eu.casoftworks.jdroidlib.fleet.*;
 import eu.casoftworks.jdroidlib.interfaces.*;
 import eu.casoftworks.jdroidlib.util.*;
 
 import java.io.*;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.function.*;
 
 public class AndroidController implements IExecutioner, Closeable {
 
+    /**
+     * @deprecated Device listings are parsed by a tokenizer; this expression does not match
+     * lines containing {@code usb:} or {@code transport_id:} fields.
+     */
+    @Deprecated
     public static final String LONG_LIST_LINE_REGEX = "(([A-z0-9.:\\-_]{1,})([\\s]+)?){5}";
 
     private final IResourceManager resourceManager;
-    private final IExecutioner commander;
-
-    private List<Device> deviceList;
+    private final AdbServerRouter router;
+    private final ExecutorService executorService;
+    private final DeviceRegistry deviceRegistry;
+    private final DeviceListParser deviceListParser;
+    private final DeviceIdentityCache identityCache;
+    private DeviceLeaseManager leaseManager;
+    private final DeviceStateWaiter deviceStateWaiter;
+    private final List<IDeviceStateListener> deviceStateListeners;
+    private final Map<AdbServerEndpoint, DeviceTracker> deviceTrackers;
+    private final boolean stopServerOnClose;
+
+    private boolean deviceTrackingStarted;
+    private boolean closed;
+    private long deviceStateDebounceMillis;
+
+    private CopyOnWriteArrayList<Device> deviceList;
 
     //<editor-fold desc="Singleton and Init" defaultstate="collapsed" >
-    private static AndroidController controller;
+    private static volatile AndroidController controller;
+    private static int openControllers;
 
     /**
      * Gets the running instance of this class.
      * If this class has not yet been initialized, a
      * new instance will be created and then returned.
+     *
+     * Use {@link AndroidController.Factory} to create additional, independently
+     * configured controllers.
      * @return The instance of AndroidController
      */
-    public static AndroidController getController() throws InterruptedException, ExecutionException, PlatformNotSupportedException, IOException, IllegalDeviceStateException {
-        return controller != null ? controller : (controller = new AndroidController());
+    public static synchronized AndroidController getController() throws InterruptedException, ExecutionException, PlatformNotSupportedException, IOException, IllegalDeviceStateException {
+        return controller != null ? controller : (controller = new Factory().create());
     }
 
     /**
@@ -63,30 +88,152 @@ public class AndroidController implements IExecutioner, Closeable {
      * If no previous instances were found, will return null.
      * @return Instance of {@link AndroidController} or {@code null}.
      */
-    public static AndroidController getControllerOrNull() { return controller == null ? null : controller; }
+    public static AndroidController getControllerOrNull() { return controller; }
 
-    private AndroidController() throws InterruptedException, ExecutionException, PlatformNotSupportedException, IOException, IllegalDeviceStateException {
+    private AndroidController(Factory factory) throws InterruptedException, ExecutionException, PlatformNotSupportedException, IOException, IllegalDeviceStateException {
         resourceManager = ResourceManager.getInstance();
-        commander = new Commander(resourceManager);
-        deviceList = new ArrayList<>();
+        executorService = factory.threadPoolSize > 0
+                ? Executors.newFixedThreadPool(factory.threadPoolSize, AndroidController::newWorkerThread)
+                : Executors.newCachedThreadPool(AndroidController::newWorkerThread);
+        Commander defaultCommander = new Commander(resourceManager, factory.defaultServerEndpoint, executorService);
+        router = new AdbServerRouter(defaultCommander.getServerEndpoint(), defaultCommander, executorService);
+        router.setTimeout(factory.timeout);
+        router.setTimeUnit(factory.timeUnit);
+        identityCache = new DeviceIdentityCache(factory.identityCacheFile, executorService);
+        deviceRegistry = new DeviceRegistry(this);
+        deviceListParser = new DeviceListParser();
+        deviceRegistry.setEvictionTimeout(factory.deviceEvictionTimeoutMillis, TimeUnit.MILLISECONDS);
+        deviceRegistry.setMaxSize(factory.maxRegistrySize);
+        deviceList = new CopyOnWriteArrayList<>();
+        deviceStateListeners = new CopyOnWriteArrayList<>();
+        deviceStateWaiter = new DeviceStateWaiter();
+        deviceStateDebounceMillis = factory.deviceStateDebounceMillis;
+        stopServerOnClose = factory.stopServerOnClose;
+        deviceTrackers = new LinkedHashMap<>();
+        deviceTrackers.put(defaultCommander.getServerEndpoint(), createDeviceTracker(defaultCommander.getServerEndpoint(), defaultCommander));
         startServer();
+
+        for (AdbServerEndpoint endpoint : factory.serverEndpoints)
+            addServerEndpoint(endpoint);
+
+        synchronized (AndroidController.class) {
+            openControllers++;
+        }
+    }
+
+    private static Thread newWorkerThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "jdroidlib-worker");
+        thread.setDaemon(true);
+        return thread;
     }
     //</editor-fold>
 
     /**
-     * Starts the ADB server.
+     * Gets the registry of all devices encountered by this controller.
+     * Devices are bound to the controller that encountered them.
+     * @return This controller's {@link DeviceRegistry}.
+     */
+    public DeviceRegistry getDeviceRegistry() { return deviceRegistry; }
+
+    /**
+     * Gets the cache holding the identities (build fingerprint, versions and capabilities) of
+     * devices encountered by this controller. The cache survives restarts of the controller.
+     * @return This controller's {@link DeviceIdentityCache}.
+     */
+    public DeviceIdentityCache getIdentityCache() { return identityCache; }
+
+    /**
+     * Gets the manager handing out exclusive leases on this controller's devices.
+     * The manager is created (and device tracking started) on first use.
+     * @return This controller's {@link DeviceLeaseManager}.
+     */
+    public synchronized DeviceLeaseManager getLeaseManager() {
+        return leaseManager != null ? leaseManager : (leaseManager = new DeviceLeaseManager(this));
+    }
+
+    /**
+     * Gets the executor this controller runs asynchronous commands and fleet operations on.
+     * The executor is owned by this controller and is shut down when the controller is closed.
+     * @return This controller's {@link ExecutorService}.
+     */
+    public ExecutorService getExecutorService() { return executorService; }
+
+    /**
+     * Starts the ADB server(s).
      * @throws IllegalDeviceStateException
      * @throws InterruptedException
      * @throws IOException
      */
     public void startServer() throws IllegalDeviceStateException, InterruptedException, IOException {
-        commander.executeCommandNoOutputAsync(AdbCommand.getStartServerCommand());
+        router.executeOnAllShards(AdbCommand.getStartServerCommand());
     }
 
+    /**
+     * Stops the ADB server(s).
+     * @throws IllegalDeviceStateException
+     * @throws InterruptedException
+     * @throws IOException
+     */
     public void stopServer() throws IllegalDeviceStateException, InterruptedException, IOException {
-        commander.executeCommandNoOutputAsync(AdbCommand.getStopServerCommand());
+        router.executeOnAllShards(AdbCommand.getStopServerCommand());
     }
 
+    //<editor-fold desc="ADB server endpoints" defaultstate="collapsed" >
+    /**
+     * Adds an additional ADB server to this controller and starts it.
+     * Each ADB server owns the devices it lists; commands targeting a device are
+     * sent to the server owning the device, and {@link AndroidController#refreshDevices()}
+     * merges the devices of all servers.
+     * Use this to spread large numbers of devices over several servers (e.g. on different hosts).
+     * @param endpoint The endpoint of the ADB server.
+     * @throws IllegalDeviceStateException
+     * @throws InterruptedException
+     * @throws IOException
+     *
+     * @see AdbServerEndpoint
+     */
+    public void addServerEndpoint(AdbServerEndpoint endpoint) throws IllegalDeviceStateException, InterruptedException, IOException {
+        Commander shard = new Commander(resourceManager, endpoint, executorService);
+        router.addShard(endpoint, shard);
+        shard.executeCommandNoOutput(AdbCommand.getStartServerCommand());
+
+        synchronized (deviceTrackers) {
+            DeviceTracker tracker = createDeviceTracker(endpoint, shard);
+            deviceTrackers.put(endpoint, tracker);
+            if (deviceTrackingStarted)
+                tracker.start();
+        }
+    }
+
+    /**
+     * Removes a previously added ADB server from this controller.
+     * The server itself is not stopped.
+     * @param endpoint The endpoint of the ADB server.
+     */
+    public void removeServerEndpoint(AdbServerEndpoint endpoint) {
+        router.removeShard(endpoint);
+
+        synchronized (deviceTrackers) {
+            DeviceTracker tracker = deviceTrackers.remove(endpoint);
+            if (tracker != null)
+                tracker.close();
+        }
+    }
+
+    /**
+     * Gets the endpoints of all ADB servers used by this controller.
+     * @return A list of endpoints. The first endpoint is the default server.
+     */
+    public List<AdbServerEndpoint> getServerEndpoints() { return router.getEndpoints(); }
+
+    /**
+     * Gets the endpoint of the ADB server owning a device.
+     * @param device The device.
+     * @return The endpoint of the owning ADB server.
+     */
+    public AdbServerEndpoint getServerEndpoint(Device device) { return router.getOwner(device.getID()); }
+    //</editor-fold>
+
     /**
      * Attempts to retrieve the first device found on the host machine.
      * @return The first (connected) device found or {@code null} if an error occurred/no devices were found.
@@ -149,7 +296,7 @@ public class AndroidController implements IExecutioner, Closeable {
             return null;
 
         for (Device device : deviceList) {
-            if (device.isConnectedViaTcpIp() && device.getIpAddress() == ipAddr)
+            if (device.isConnectedViaTcpIp() && device.getIpAddress().equals(ipAddr))
                 return device;
         }
 
@@ -159,14 +306,16 @@ public class AndroidController implements IExecutioner, Closeable {
     /**
      * Attempts to connect to a {@link Device} via TCP/IP
      * @param ipAddr The IP address to connect to.
-     * @return {@code true} if the device was successfully connected, {@code false} otherwise.
+     * @return {@code true} if the device was successfully connected (or already was), {@code false} otherwise.
      * @throws IllegalDeviceStateException
      * @throws InterruptedException
      * @throws IOException
+     *
+     * @see TcpIpConnectionManager
      */
     public boolean connectToDevice(Ip4Address ipAddr) throws IllegalDeviceStateException, InterruptedException, IOException {
-        String output = executeCommandReturnOutput(AdbCommand.getConnectDeviceCommand(ipAddr));
-        return output.startsWith("connected to");
+        String output = executeCommandReturnOutput(AdbCommand.getConnectDeviceCommand(ipAddr)).trim();
+        return output.startsWith("connected to") || output.startsWith("already connected to");
     }
 
     /**
@@ -199,24 +348,30 @@ public class AndroidController implements IExecutioner, Closeable {
      * @throws ExecutionException
      */
     public void refreshDevices() throws IllegalDeviceStateException, InterruptedException, IOException, ExecutionException {
-        deviceList.clear();
-        try (BufferedReader reader = new BufferedReader(new StringReader(commander.executeCommandReturnOutputAsync(AdbCommand.getDevicesLongCommand()).get()))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                if (line.startsWith("list") || line.isEmpty() || line.startsWith("*"))
-                    continue;
-
-                // Split string in to segments
-                ITuple5<String, String, String, String, String> parsedLine = parseDeviceOutputLine(line);
-
-                // Determine if USB or TCP/IP device
-                if (Ip4Address.isIp4Address(parsedLine.getItem1())) {
-                    deviceList.add(Device.getDevice(Ip4Address.fromAddress(parsedLine.getItem1()), parsedLine.getItem3(), parsedLine.getItem4(), DeviceState.valueOf(parsedLine.getItem2())));
-                } else {
-                    deviceList.add(Device.getDevice(parsedLine.getItem1(), parsedLine.getItem3(), parsedLine.getItem4(), DeviceState.valueOf(parsedLine.getItem2())));
-                }
-            }
+        List<Device> devices = new ArrayList<>();
+        Set<AdbServerEndpoint> failedShards = new HashSet<>();
+
+        // Merged listing of all ADB servers; records are emitted straight in to the registry
+        synchronized (deviceListParser) {
+            router.listDevices(deviceListParser, record -> devices.add(
+                record.isViaTcpIp()
+                    ? deviceRegistry.getDevice(Ip4Address.fromAddress(record.getSerial()), record.getProduct(), record.getModel(), record.getState())
+                    : deviceRegistry.getDevice(record.getSerial(), record.getProduct(), record.getModel(), record.getState())
+            ), failedShards);
         }
+
+        for (Device device : deviceList) {
+            if (devices.contains(device))
+                continue;
+            if (failedShards.contains(router.getOwner(device.getID())))
+                devices.add(device); // Its ADB server didn't answer; the device isn't known to be gone
+            else
+                deviceRegistry.markDisconnected(device);
+        }
+
+        deviceList.retainAll(devices);
+        deviceList.addAllAbsent(devices);
+        deviceRegistry.evict();
     }
 
     /**
@@ -230,104 +385,492 @@ public class AndroidController implements IExecutioner, Closeable {
         return deviceList;
     }
 
-    private ITuple5<String, String, String, String, String> parseDeviceOutputLine(String line) {
+    //<editor-fold desc="Fleet operations" defaultstate="collapsed" >
+    /**
+     * Gets a factory for a fleet operation executing the same command on many devices at once.
+     * The supplier is called once per device; the device is then set on the returned factory.
+     * <pre>
+     * FleetReport&lt;ITuple2&lt;Integer, String&gt;&gt; report = controller.executeFleetOperation(
+     *     controller.newFleetCommand(() -&gt; new AdbShellCommand.Factory().setCommandTag("getprop").setCommandArgs("ro.product.model"))
+     *         .setParallelism(8)
+     *         .setDeadline(30, TimeUnit.SECONDS)
+     *         .create()
+     * );
+     * </pre>
+     * @param commandFactory Supplies a pre-configured command factory for each device.
+     * @return A factory for further configuration of the operation.
+     *
+     * @see FleetOperation
+     */
+    public FleetOperation.Factory<ITuple2<Integer, String>> newFleetCommand(Supplier<? extends ICommandFactory> commandFactory) {
+        return FleetOperation.forCommand(this, commandFactory);
+    }
 
-        if (!line.matches(LONG_LIST_LINE_REGEX))
-            throw new IllegalArgumentException("Line must be from LONG list output!");
+    /**
+     * Executes a fleet operation on the devices known to this controller and waits for all results
+     * (or the operation's deadline).
+     * @param operation The operation to execute.
+     * @param <T> The type of the per-device results.
+     * @return The gathered per-device results.
+     * @throws InterruptedException If the calling thread is interrupted.
+     *
+     * @see AndroidController#getDevices()
+     */
+    public <T> FleetReport<T> executeFleetOperation(FleetOperation<T> operation) throws InterruptedException {
+        return operation.execute(getDevices(), executorService);
+    }
 
-        String serialOrIp = null, state = null, product = null, model = null, device = null;
-        String[] parts = line.split("(\\s+)");
+    /**
+     * Executes a fleet operation on the devices known to this controller asynchronously.
+     * Partial results can be streamed via {@link FleetOperation.Factory#setResultListener(Consumer)}.
+     * The operation is coordinated on a dedicated thread; only the per-device tasks run on this
+     * controller's executor, so waiting coordinators can never starve the tasks they wait for.
+     * @param operation The operation to execute.
+     * @param <T> The type of the per-device results.
+     * @return The task executing the operation. Cancelling it (with interruption) cancels all running tasks.
+     */
+    public <T> Future<FleetReport<T>> executeFleetOperationAsync(FleetOperation<T> operation) {
+        FutureTask<FleetReport<T>> task = new FutureTask<>(() -> operation.execute(getDevices(), executorService));
+        Thread thread = new Thread(task, "jdroidlib-fleet-operation");
+        thread.setDaemon(true);
+        thread.start();
+        return task;
+    }
+    //</editor-fold>
 
-        serialOrIp = parts[0];
-        state = parts[1];
-        product = parts[2].split(":")[1];
-        model = parts[3].split(":")[1];
-        device = parts[4].split(":")[1];
+    //<editor-fold desc="Device state tracking" defaultstate="collapsed" >
+    /**
+     * Registers a listener to be notified of device state transitions
+     * (connects, disconnects, reboots in to recovery/bootloader, etc).
+     * Device tracking is started automatically when the first listener is registered.
+     * Transitions are debounced; see {@link AndroidController#setDeviceStateDebounce(long, TimeUnit)}.
+     * @param listener The listener to register.
+     *
+     * @see IDeviceStateListener
+     * @see DeviceStateChangedEvent
+     */
+    public void addDeviceStateListener(IDeviceStateListener listener) {
+        if (listener == null)
+            throw new IllegalArgumentException("Listener must not be null!");
+        deviceStateListeners.add(listener);
+
+        synchronized (deviceTrackers) {
+            deviceTrackingStarted = true;
+            deviceTrackers.values().forEach(DeviceTracker::start);
+        }
+    }
 
-        return new Tuple5<>(serialOrIp, state, product, model, device);
+    /**
+     * Waits for the next transition of a device in to a given state, e.g. for a rebooting device to
+     * come back {@link DeviceState#Online}. The wait is driven by device state events; device tracking
+     * is started if necessary. Register the wait <b>before</b> triggering the transition.
+     * The returned future never completes if the device doesn't transition; use a timeout or cancel it.
+     * @param device The device to wait for.
+     * @param state The state to wait for.
+     * @return A future completed with the device once it has transitioned in to the state.
+     */
+    public CompletableFuture<Device> awaitDeviceState(Device device, DeviceState state) {
+        return awaitDeviceState(device, x -> x == state);
     }
 
+    /**
+     * Waits for the next transition of a device in to any state matching a predicate,
+     * e.g. for a rebooting device to drop off the bus.
+     * @param device The device to wait for.
+     * @param state The predicate matching the state(s) to wait for.
+     * @return A future completed with the device once it has transitioned in to a matching state.
+     *
+     * @see AndroidController#awaitDeviceState(Device, DeviceState)
+     */
+    public CompletableFuture<Device> awaitDeviceState(Device device, Predicate<DeviceState> state) {
+        CompletableFuture<Device> future = deviceStateWaiter.await(device.getID(), state);
+        synchronized (deviceTrackers) {
+            if (!deviceStateListeners.contains(deviceStateWaiter))
+                addDeviceStateListener(deviceStateWaiter);
+        }
+        return future;
+    }
+
+    /**
+     * Starts tracking device states (if not already started) and waits until the devices connected
+     * at that moment have been reported. Events fired afterwards reflect actual transitions.
+     * @param timeout The maximum time to wait.
+     * @param timeUnit The unit of time.
+     * @return {@code true} if all ADB servers have reported their devices, {@code false} if the timeout passed.
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    public boolean startDeviceTracking(long timeout, TimeUnit timeUnit) throws InterruptedException {
+        List<DeviceTracker> trackers;
+        synchronized (deviceTrackers) {
+            if (!deviceStateListeners.contains(deviceStateWaiter))
+                addDeviceStateListener(deviceStateWaiter);
+            trackers = new ArrayList<>(deviceTrackers.values());
+        }
+
+        long deadline = System.nanoTime() + timeUnit.toNanos(timeout);
+        for (DeviceTracker tracker : trackers) {
+            if (!tracker.awaitInitialListing(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Reboots devices known to this controller in waves and waits for each of them to finish booting.
+     * @param orchestrator The orchestrator describing the rolling reboot.
+     * @return The per-device results; each successful result holds the device's time to ready.
+     * @throws InterruptedException If the calling thread is interrupted.
+     *
+     * @see RebootOrchestrator
+     */
+    public FleetReport<RebootTiming> rebootDevices(RebootOrchestrator orchestrator) throws InterruptedException {
+        return orchestrator.execute(getDevices(), this);
+    }
+
+    /**
+     * Installs a package on the devices known to this controller, pushing it to all of them in parallel.
+     * @param installer The installer describing the rollout.
+     * @param apk The package to install.
+     * @return The per-device results; each successful result holds the device's install timings.
+     * @throws IOException If the package could not be read on the host.
+     * @throws InterruptedException If the calling thread is interrupted.
+     *
+     * @see FleetInstaller
+     */
+    public FleetReport<InstallTiming> installPackage(FleetInstaller installer, ApkFile apk) throws IOException, InterruptedException {
+        return installer.execute(apk, getDevices(), executorService);
+    }
+
+    /**
+     * Unregisters a previously registered device state listener.
+     * @param listener The listener to unregister.
+     */
+    public void removeDeviceStateListener(IDeviceStateListener listener) {
+        deviceStateListeners.remove(listener);
+    }
+
+    /**
+     * Sets the time a device's state must remain stable before listeners are notified.
+     * Transitions that revert within this window (e.g. flapping USB connections) are dropped.
+     * @param time The debounce time. Set to 0 (zero) to disable debouncing.
+     * @param timeUnit The unit of time.
+     */
+    public void setDeviceStateDebounce(long time, TimeUnit timeUnit) {
+        synchronized (deviceTrackers) {
+            deviceStateDebounceMillis = timeUnit.toMillis(time);
+            deviceTrackers.values().forEach(x -> x.setDebounceMillis(deviceStateDebounceMillis));
+        }
+    }
+
+    /**
+     * Gets the time a device's state must remain stable before listeners are notified.
+     * @return The debounce time in ms.
+     */
+    public long getDeviceStateDebounceMillis() { return deviceStateDebounceMillis; }
+
+    private DeviceTracker createDeviceTracker(AdbServerEndpoint endpoint, IExecutioner shard) {
+        DeviceTracker tracker = new DeviceTracker(shard, (deviceId, product, model, state) -> {
+            router.setOwner(deviceId, endpoint);
+            return updateTrackedDevice(deviceId, product, model, state);
+        }, deviceStateListeners);
+        tracker.setDebounceMillis(deviceStateDebounceMillis);
+        return tracker;
+    }
+
+    /**
+     * Applies a tracked state transition to the list of known devices.
+     * Called on the event delivery thread.
+     */
+    private Device updateTrackedDevice(String serialOrIp, String product, String model, DeviceState state) {
+        boolean viaTcpIp = Ip4Address.isIp4Address(serialOrIp);
+        Device device = viaTcpIp ? deviceRegistry.getDevice(Ip4Address.fromAddress(serialOrIp)) : deviceRegistry.getDevice(serialOrIp);
+
+        if (device == null && state == DeviceState.Disconnected)
+            return null; // Never seen; nothing to update
+
+        device = viaTcpIp
+                ? deviceRegistry.getDevice(Ip4Address.fromAddress(serialOrIp), product, model, state)
+                : deviceRegistry.getDevice(serialOrIp, product, model, state);
+
+        if (state == DeviceState.Disconnected) {
+            deviceList.remove(device);
+            deviceRegistry.evict();
+        } else if (!deviceList.contains(device))
+            deviceList.add(device);
+
+        return device;
+    }
+    //</editor-fold>
+
     //<editor-fold desc="IExecutioner Implementation" defaultstate="collapsed"
     @Override
     public void executeCommandNoOutput(ICommand command) throws IOException, IllegalDeviceStateException, InterruptedException {
-        commander.executeCommandNoOutput(command);
+        router.executeCommandNoOutput(command);
     }
 
     @Override
     public String executeCommandReturnOutput(ICommand command) throws IOException, IllegalDeviceStateException, InterruptedException {
-        return commander.executeCommandReturnOutput(command);
+        return router.executeCommandReturnOutput(command);
     }
 
     @Override
     public int executeCommandReturnExitCode(ICommand command) throws IOException, IllegalDeviceStateException, InterruptedException {
-        return commander.executeCommandReturnExitCode(command);
+        return router.executeCommandReturnExitCode(command);
     }
 
     @Override
     public ITuple2<Integer, String> executeCommand(ICommand command) throws IOException, IllegalDeviceStateException, InterruptedException {
-        return commander.executeCommand(command);
+        return router.executeCommand(command);
     }
 
     @Override
     public Process executeCommandReturnProcess(ICommand command) throws IOException, IllegalDeviceStateException, InterruptedException {
-        return commander.executeCommandReturnProcess(command);
+        return router.executeCommandReturnProcess(command);
     }
 
     @Override
     public Future executeCommandNoOutputAsync(ICommand command) throws IOException, IllegalDeviceStateException, InterruptedException {
-        return commander.executeCommandNoOutputAsync(command);
+        return router.executeCommandNoOutputAsync(command);
     }
 
     @Override
     public Future<String> executeCommandReturnOutputAsync(ICommand command) throws IOException, IllegalDeviceStateException, InterruptedException {
-        return commander.executeCommandReturnOutputAsync(command);
+        return router.executeCommandReturnOutputAsync(command);
     }
 
     @Override
     public Future<Integer> executeCommandReturnExitCodeAsync(ICommand command) throws IOException, IllegalDeviceStateException, InterruptedException {
-        return commander.executeCommandReturnExitCodeAsync(command);
+        return router.executeCommandReturnExitCodeAsync(command);
     }
 
     @Override
     public Future<ITuple2<Integer, String>> executeCommandAsync(ICommand command) throws IOException, IllegalDeviceStateException, InterruptedException {
-        return commander.executeCommandAsync(command);
+        return router.executeCommandAsync(command);
     }
 
     @Override
     public Future<Process> executeCommandReturnProcessAsync(ICommand command) throws IOException, IllegalDeviceStateException, InterruptedException {
-        return commander.executeCommandReturnProcessAsync(command);
+        return router.executeCommandReturnProcessAsync(command);
     }
 
     @Override
     public long getTimeout() {
-        return commander.getTimeout();
+        return router.getTimeout();
     }
 
     @Override
     public void setTimeout(long timeout) {
-        commander.setTimeout(timeout);
+        router.setTimeout(timeout);
     }
 
     @Override
     public TimeUnit getTimeUnit() {
-        return commander.getTimeUnit();
+        return router.getTimeUnit();
     }
 
     @Override
     public void setTimeUnit(TimeUnit timeUnit) {
-        commander.setTimeUnit(timeUnit);
+        router.setTimeUnit(timeUnit);
     }
 
     @Override
     public void close() throws IOException {
+        synchronized (this) {
+            if (closed)
+                return;
+            closed = true;
+            if (leaseManager != null)
+                leaseManager.close();
+        }
+
         try {
-            stopServer();
-        } catch (IllegalDeviceStateException | InterruptedException e) {
-            e.printStackTrace();
-            throw new IOException(e);
+            synchronized (deviceTrackers) {
+                deviceTrackers.values().forEach(DeviceTracker::close);
+            }
+            executorService.shutdownNow();
+            try {
+                identityCache.flush();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            if (stopServerOnClose) {
+                try {
+                    stopServer();
+                } catch (IllegalDeviceStateException | InterruptedException e) {
+                    e.printStackTrace();
+                    throw new IOException(e);
+                }
+            }
+        } finally {
+            // The resource manager is shared by all controllers
+            boolean lastController;
+            synchronized (AndroidController.class) {
+                if (controller == this)
+                    controller = null;
+                lastController = --openControllers == 0;
+            }
+            if (lastController)
+                resourceManager.close();
         }
-        resourceManager.close();
     }
     //</editor-fold>
 
+
+    /**
+     * Factory for independently configured {@link AndroidController} instances.
+     * Each controller created by this factory has its own executor, device registry,
+     * device trackers and timeouts; devices encountered by a controller are bound to it.
+     * <pre>
+     * AndroidController controller = new AndroidController.Factory()
+     *     .setThreadPoolSize(8)
+     *     .setTimeout(30, TimeUnit.SECONDS)
+     *     .setDefaultServerEndpoint(AdbServerEndpoint.fromPort(5038))
+     *     .create();
+     * </pre>
+     */
+    public static class Factory {
+
+        private int threadPoolSize = 0;
+        private long timeout = 120;
+        private TimeUnit timeUnit = TimeUnit.SECONDS;
+        private long deviceStateDebounceMillis = DeviceTracker.DEFAULT_DEBOUNCE_MILLIS;
+        private boolean stopServerOnClose = true;
+        private long deviceEvictionTimeoutMillis = DeviceRegistry.DEFAULT_EVICTION_TIMEOUT_MILLIS;
+        private int maxRegistrySize = 0;
+        private File identityCacheFile = DeviceIdentityCache.getDefaultFile();
+        private AdbServerEndpoint defaultServerEndpoint = AdbServerEndpoint.getDefault();
+        private final List<AdbServerEndpoint> serverEndpoints = new ArrayList<>();
+
+        /**
+         * Sets the number of worker threads of the controller's executor.
+         * @param threadPoolSize The number of threads. Set to 0 (zero) for an unbounded, cached pool (default).
+         * @return This factory.
+         */
+        public Factory setThreadPoolSize(int threadPoolSize) {
+            if (threadPoolSize < 0)
+                throw new IllegalArgumentException("Thread pool size must not be negative!");
+            this.threadPoolSize = threadPoolSize;
+            return this;
+        }
+
+        /**
+         * Sets the command timeout of the controller.
+         * @param timeout The timeout. Default is two (2) minutes.
+         * @param timeUnit The unit of time.
+         * @return This factory.
+         */
+        public Factory setTimeout(long timeout, TimeUnit timeUnit) {
+            if (timeout < 0)
+                throw new IllegalArgumentException("Timeout must not be negative!");
+            if (timeUnit == null)
+                throw new IllegalArgumentException("Time unit must not be null!");
+            this.timeout = timeout;
+            this.timeUnit = timeUnit;
+            return this;
+        }
+
+        /**
+         * Sets the time a device's state must remain stable before listeners are notified.
+         * @param time The debounce time. Set to 0 (zero) to disable debouncing.
+         * @param timeUnit The unit of time.
+         * @return This factory.
+         *
+         * @see AndroidController#setDeviceStateDebounce(long, TimeUnit)
+         */
+        public Factory setDeviceStateDebounce(long time, TimeUnit timeUnit) {
+            this.deviceStateDebounceMillis = timeUnit.toMillis(time);
+            return this;
+        }
+
+        /**
+         * Sets the time after which disconnected devices are evicted from the controller's registry.
+         * @param timeout The timeout. Default is one (1) hour; set to 0 (zero) to never evict devices by time.
+         * @param timeUnit The unit of time.
+         * @return This factory.
+         *
+         * @see DeviceRegistry#setEvictionTimeout(long, TimeUnit)
+         */
+        public Factory setDeviceEvictionTimeout(long timeout, TimeUnit timeUnit) {
+            if (timeout < 0)
+                throw new IllegalArgumentException("Eviction timeout must not be negative!");
+            this.deviceEvictionTimeoutMillis = timeUnit.toMillis(timeout);
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of devices held by the controller's registry.
+         * @param maxRegistrySize The maximum size. Set to 0 (zero) for an unbounded registry (default).
+         * @return This factory.
+         *
+         * @see DeviceRegistry#setMaxSize(int)
+         */
+        public Factory setMaxRegistrySize(int maxRegistrySize) {
+            if (maxRegistrySize < 0)
+                throw new IllegalArgumentException("Max size must not be negative!");
+            this.maxRegistrySize = maxRegistrySize;
+            return this;
+        }
+
+        /**
+         * Sets the ADB server the controller sends commands to by default.
+         * @param endpoint The endpoint of the ADB server.
+         * @return This factory.
+         */
+        public Factory setDefaultServerEndpoint(AdbServerEndpoint endpoint) {
+            if (endpoint == null)
+                throw new IllegalArgumentException("Endpoint must not be null!");
+            this.defaultServerEndpoint = endpoint;
+            return this;
+        }
+
+        /**
+         * Adds an additional ADB server to the controller.
+         * @param endpoint The endpoint of the ADB server.
+         * @return This factory.
+         *
+         * @see AndroidController#addServerEndpoint(AdbServerEndpoint)
+         */
+        public Factory addServerEndpoint(AdbServerEndpoint endpoint) {
+            if (endpoint == null)
+                throw new IllegalArgumentException("Endpoint must not be null!");
+            serverEndpoints.add(endpoint);
+            return this;
+        }
+
+        /**
+         * Sets the file device identities are persisted to.
+         * Controllers sharing a cache file overwrite each other's identities; give each controller its own file.
+         * @param identityCacheFile The cache file. Default is {@link DeviceIdentityCache#DEFAULT_FILE_NAME} in the
+         *                          JDroidLib home directory; set to {@code null} to keep identities in memory only.
+         * @return This factory.
+         *
+         * @see DeviceIdentityCache
+         */
+        public Factory setIdentityCacheFile(File identityCacheFile) {
+            this.identityCacheFile = identityCacheFile;
+            return this;
+        }
+
+        /**
+         * Sets whether the controller's ADB server(s) are stopped when the controller is closed.
+         * Disable this when several controllers share the same ADB server.
+         * @param stopServerOnClose {@code true} to stop the server(s) on close (default).
+         * @return This factory.
+         */
+        public Factory setStopServerOnClose(boolean stopServerOnClose) {
+            this.stopServerOnClose = stopServerOnClose;
+            return this;
+        }
+
+        /**
+         * Creates a new controller and starts its ADB server(s).
+         * The controller is independent of the instance returned by {@link AndroidController#getController()}.
+         * @return The new {@link AndroidController}.
+         */
+        public AndroidController create() throws InterruptedException, ExecutionException, PlatformNotSupportedException, IOException, IllegalDeviceStateException {
+            return new AndroidController(this);
+        }
+
+    }
+
 }
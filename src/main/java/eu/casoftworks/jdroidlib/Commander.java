@@ -41,17 +41,38 @@ import java.util.concurrent.*;
 class Commander implements IExecutioner {
     
     private final IResourceManager resMan;
+    private final AdbServerEndpoint serverEndpoint;
+    private final ExecutorService executorService;
     private long timeout = 120; // Default is two (2) minutes.
     private TimeUnit timeoutTimeUnit = TimeUnit.SECONDS;
 
     /**
-     * Default and only constructor available for this class.
+     * Constructor for a commander targeting the default ADB server.
      * @param resMan
+     * @param executorService The executor asynchronous commands are run on.
      */
-    Commander(IResourceManager resMan) {
+    Commander(IResourceManager resMan, ExecutorService executorService) {
+        this(resMan, AdbServerEndpoint.getDefault(), executorService);
+    }
+
+    /**
+     * Constructor for a commander targeting a specific ADB server.
+     * @param resMan
+     * @param serverEndpoint The ADB server all ADB commands are sent to.
+     * @param executorService The executor asynchronous commands are run on.
+     */
+    Commander(IResourceManager resMan, AdbServerEndpoint serverEndpoint, ExecutorService executorService) {
         this.resMan = resMan;
+        this.serverEndpoint = serverEndpoint;
+        this.executorService = executorService;
     }
 
+    /**
+     * Gets the ADB server targeted by this commander.
+     * @return The server's endpoint.
+     */
+    AdbServerEndpoint getServerEndpoint() { return serverEndpoint; }
+
     /**
      * {@inheritDoc}
      * @param command The command to executed.
@@ -133,12 +154,13 @@ class Commander implements IExecutioner {
         synchronized (LOCK) {
             List<String> args = getProcArgs(command);
 
-            return new ProcessBuilder()
+            ProcessBuilder procBuilder = new ProcessBuilder()
                     .command(args)
                     .directory(new File(IResourceManager.getJDroidLibTmpDirectory()))
-                    .inheritIO()
-                    .redirectErrorStream(true)
-                    .start();
+                    .redirectErrorStream(true);
+            procBuilder.environment().putAll(serverEndpoint.getEnvironment());
+
+            return procBuilder.start();
         }
     }
 
@@ -153,7 +175,7 @@ class Commander implements IExecutioner {
      */
     @Override
     public Future executeCommandNoOutputAsync(ICommand command) throws IOException, IllegalDeviceStateException, InterruptedException {
-        return new FutureTask(() -> { executeCommandNoOutput(command); return null; });
+        return executorService.submit(() -> { executeCommandNoOutput(command); return null; });
     }
 
     /**
@@ -167,7 +189,7 @@ class Commander implements IExecutioner {
      */
     @Override
     public Future<String> executeCommandReturnOutputAsync(ICommand command) throws IOException, IllegalDeviceStateException, InterruptedException {
-        return new FutureTask<>(() -> executeCommandReturnOutput(command));
+        return executorService.submit(() -> executeCommandReturnOutput(command));
     }
 
     /**
@@ -181,7 +203,7 @@ class Commander implements IExecutioner {
      */
     @Override
     public Future<Integer> executeCommandReturnExitCodeAsync(ICommand command) throws IOException, IllegalDeviceStateException, InterruptedException {
-        return new FutureTask<>(() -> executeCommandReturnExitCode(command));
+        return executorService.submit(() -> executeCommandReturnExitCode(command));
     }
 
     /**
@@ -195,7 +217,7 @@ class Commander implements IExecutioner {
      */
     @Override
     public Future<ITuple2<Integer, String>> executeCommandAsync(ICommand command) throws IOException, IllegalDeviceStateException, InterruptedException {
-        return new FutureTask<>(() -> executeCommand(command));
+        return executorService.submit(() -> executeCommand(command));
     }
 
     /**
@@ -209,7 +231,7 @@ class Commander implements IExecutioner {
      */
     @Override
     public Future<Process> executeCommandReturnProcessAsync(ICommand command) throws IOException, IllegalDeviceStateException, InterruptedException {
-        return new FutureTask<>(() -> executeCommandReturnProcess(command));
+        return executorService.submit(() -> executeCommandReturnProcess(command));
     }
 
     /**
@@ -254,10 +276,12 @@ class Commander implements IExecutioner {
         switch (command.getCommandType()) {
             case AdbCommand:
                 args.add(resMan.getAdb().getAbsolutePath());
+                args.addAll(serverEndpoint.getArguments());
                 args.addAll(getDeviceArgs(command.getDevice()));
                 break;
             case AdbShellCommand:
                 args.add(resMan.getAdb().getAbsolutePath());
+                args.addAll(serverEndpoint.getArguments());
                 args.addAll(getDeviceArgs(command.getDevice()));
                 args.add("shell");
                 break;
@@ -310,6 +334,13 @@ class Commander implements IExecutioner {
                                 device.isConnectedViaTcpIp() ? device.getIpAddress().toString() : device.getSerialNumber()
                         )
                 );
+            case Disconnected:
+                throw new IllegalDeviceStateException(
+                        String.format(
+                                "The device (%s) is no longer connected to the host!",
+                                device.isConnectedViaTcpIp() ? device.getIpAddress().toString() : device.getSerialNumber()
+                        )
+                );
         }
         //</editor-fold>
             
@@ -317,40 +348,32 @@ class Commander implements IExecutioner {
         if (device.isConnectedViaTcpIp()) {
             // Doubt it's worth checking if the device is in fastboot mode.
             args.add(device.getIpAddress().toString());
-        } 
-        
-        args.add(device.getSerialNumber());
+        } else {
+            args.add(device.getSerialNumber());
+        }
         
         return args;
     }
 
     /**
-     * It's kind of obvious, if you ask me, but I get the output from
-     * any process object that's not dead, essentially.
+     * Reads the output of a process until the process closes it.
+     * The stream is read to its end even if the process has already exited,
+     * as the output remains buffered until it is read.
      * @param proc The process to retrieve output from.
      * @return The process's output.
      * @throws IOException If an I/O error occurs.
      */
-    private String getProcessOutput(Process proc) throws IOException {
+    static String getProcessOutput(Process proc) throws IOException {
         StringBuilder sBuilder = new StringBuilder();
 
         if (proc == null)
             throw new IllegalArgumentException("Process must not be null!");
-        if (!proc.isAlive())
-            return sBuilder.toString(); // It might have died already without output.
 
         // Use try-with-resources to automatically close the reader once it's no longer
         // required. Less work for me!
         try (BufferedReader biStreamReader = new BufferedReader(new InputStreamReader(proc.getInputStream()))) {
-            String line = null;
-
-            /*
-             * Continue loop while the process is still alive
-             * and the output is not null.
-             * If process dies, attempting to read from the stream will only cause exceptions
-             * and confuse users and developers alike.
-             */
-            while (proc.isAlive() && (line = biStreamReader.readLine()) != null) {
+            String line;
+            while ((line = biStreamReader.readLine()) != null) {
                 sBuilder.append(line).append('\n');
             }
         }
@@ -0,0 +1,302 @@
+/*
+ * Copyright (c) 2017, Simon Cahill
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.casoftworks.jdroidlib;
+
+import eu.casoftworks.jdroidlib.enums.*;
+import eu.casoftworks.jdroidlib.util.*;
+
+/**
+ * <b>This is NOT a public class!</b>
+ *
+ * Single-pass tokenizer for the output of {@code adb devices -l} and {@code adb track-devices -l}.
+ * Example input:
+ * <pre>
+ * List of devices attached
+ * 0123456789ABCDEF       device usb:1-1.2 product:bullhead model:Nexus_5X device:bullhead transport_id:3
+ * 192.168.0.23:5555      device product:sailfish model:Pixel device:sailfish transport_id:7
+ * emulator-5554          offline transport_id:1
+ * </pre>
+ *
+ * Each device line is emitted as a {@link Record} to a {@link IRecordSink}.
+ * The record is reused for every line, and all field values are taken from a
+ * small string pool, so parsing a listing of already known devices does not allocate.
+ * Instances are <b>not</b> thread-safe.
+ */
+final class DeviceListParser {
+
+    static final int DEFAULT_POOL_SIZE = 4096;
+
+    private static final String LIST_HEADER = "List of devices attached";
+    private static final String KEY_USB = "usb";
+    private static final String KEY_PRODUCT = "product";
+    private static final String KEY_MODEL = "model";
+    private static final String KEY_DEVICE = "device";
+    private static final String KEY_TRANSPORT_ID = "transport_id";
+
+    private final Record record;
+    private final String[] pool;
+    private final int poolMask;
+
+    DeviceListParser() {
+        this(DEFAULT_POOL_SIZE);
+    }
+
+    /**
+     * Constructor.
+     * @param poolSize The number of strings kept in the string pool. Rounded up to the next power of two.
+     */
+    DeviceListParser(int poolSize) {
+        int size = Integer.highestOneBit(Math.max(16, poolSize - 1) << 1);
+        this.record = new Record();
+        this.pool = new String[size];
+        this.poolMask = size - 1;
+    }
+
+    /**
+     * Parses a complete listing.
+     * Empty lines, the listing's header and ADB daemon messages (starting with '*') are skipped.
+     * @param listing The output to parse.
+     * @param sink The sink receiving each device record. The record must not be retained by the sink.
+     * @return The number of emitted records.
+     */
+    int parse(String listing, IRecordSink sink) {
+        int records = 0;
+        int length = listing.length();
+        int lineStart = 0;
+
+        while (lineStart < length) {
+            int lineEnd = listing.indexOf('\n', lineStart);
+            if (lineEnd < 0)
+                lineEnd = length;
+
+            if (parseLine(listing, lineStart, lineEnd)) {
+                sink.onRecord(record);
+                records++;
+            }
+
+            lineStart = lineEnd + 1;
+        }
+
+        return records;
+    }
+
+    /**
+     * Parses a single line of a listing in to this parser's record.
+     * @return {@code true} if the line describes a device, {@code false} if it was skipped.
+     */
+    private boolean parseLine(String listing, int start, int end) {
+        start = skipWhitespace(listing, start, end);
+        end = trimWhitespace(listing, start, end);
+        if (start == end || listing.charAt(start) == '*' || listing.startsWith(LIST_HEADER, start))
+            return false;
+
+        record.clear();
+
+        // Serial number/IP address
+        int tokenEnd = nextWhitespace(listing, start, end);
+        record.serial = pooled(listing, start, tokenEnd);
+        record.viaTcpIp = isIp4AddressWithPort(listing, start, tokenEnd);
+
+        // State; may contain whitespace (e.g. "no permissions") and ends at the first key:value pair
+        int stateStart = -1, stateEnd = -1;
+        int position = skipWhitespace(listing, tokenEnd, end);
+
+        while (position < end) {
+            tokenEnd = nextWhitespace(listing, position, end);
+            int separator = indexOf(listing, ':', position, tokenEnd);
+
+            if (separator < 0) {
+                if (record.product == null && record.model == null && record.device == null && record.usb == null && record.transportId < 0) {
+                    if (stateStart < 0)
+                        stateStart = position;
+                    stateEnd = tokenEnd;
+                }
+            } else {
+                parseField(listing, position, separator, tokenEnd);
+            }
+
+            position = skipWhitespace(listing, tokenEnd, end);
+        }
+
+        record.state = stateStart < 0 ? DeviceState.Unknown : DeviceState.fromAdbString(pooled(listing, stateStart, stateEnd));
+        return true;
+    }
+
+    private void parseField(String listing, int keyStart, int separator, int valueEnd) {
+        int keyLength = separator - keyStart;
+        int valueStart = separator + 1;
+
+        if (matches(listing, keyStart, keyLength, KEY_PRODUCT)) {
+            record.product = pooled(listing, valueStart, valueEnd);
+        } else if (matches(listing, keyStart, keyLength, KEY_MODEL)) {
+            record.model = pooled(listing, valueStart, valueEnd);
+        } else if (matches(listing, keyStart, keyLength, KEY_DEVICE)) {
+            record.device = pooled(listing, valueStart, valueEnd);
+        } else if (matches(listing, keyStart, keyLength, KEY_USB)) {
+            record.usb = pooled(listing, valueStart, valueEnd);
+        } else if (matches(listing, keyStart, keyLength, KEY_TRANSPORT_ID)) {
+            record.transportId = parseLong(listing, valueStart, valueEnd);
+        }
+        // Unknown fields are ignored; newer ADB versions keep adding them
+    }
+
+    //<editor-fold desc="Scanning helpers" defaultstate="collapsed" >
+    private static boolean matches(String listing, int start, int length, String key) {
+        return length == key.length() && listing.regionMatches(start, key, 0, length);
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\r' || c == '\n';
+    }
+
+    private static int skipWhitespace(String listing, int position, int end) {
+        while (position < end && isWhitespace(listing.charAt(position)))
+            position++;
+        return position;
+    }
+
+    private static int trimWhitespace(String listing, int start, int end) {
+        while (end > start && isWhitespace(listing.charAt(end - 1)))
+            end--;
+        return end;
+    }
+
+    private static int nextWhitespace(String listing, int position, int end) {
+        while (position < end && !isWhitespace(listing.charAt(position)))
+            position++;
+        return position;
+    }
+
+    private static int indexOf(String listing, char c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (listing.charAt(i) == c)
+                return i;
+        }
+        return -1;
+    }
+
+    private static long parseLong(String listing, int start, int end) {
+        if (start == end)
+            return -1;
+
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            char c = listing.charAt(i);
+            if (c < '0' || c > '9')
+                return -1;
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Determines whether a token has the form {@code a.b.c.d:port}, as used by devices connected via TCP/IP.
+     */
+    static boolean isIp4AddressWithPort(String listing, int start, int end) {
+        return Ip4Address.isIp4Address(listing, start, end);
+    }
+    //</editor-fold>
+
+    /**
+     * Gets a string equal to the given region from the pool, creating (and pooling) it if necessary.
+     */
+    private String pooled(String listing, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++)
+            hash = 31 * hash + listing.charAt(i);
+
+        // Two-way associative; each string may live in one of two neighbouring slots
+        int slot = (hash ^ (hash >>> 16)) & poolMask;
+        int length = end - start;
+        String candidate = pool[slot];
+        if (candidate != null && candidate.length() == length && listing.regionMatches(start, candidate, 0, length))
+            return candidate;
+
+        int alternateSlot = slot ^ 1;
+        String alternate = pool[alternateSlot];
+        if (alternate != null && alternate.length() == length && listing.regionMatches(start, alternate, 0, length))
+            return alternate;
+
+        return pool[candidate == null ? slot : alternateSlot] = listing.substring(start, end);
+    }
+
+    /**
+     * Receives the records of a listing.
+     */
+    @FunctionalInterface
+    interface IRecordSink {
+
+        /**
+         * Called for each device in a listing.
+         * @param record The parsed device. Only valid for the duration of the call!
+         */
+        void onRecord(Record record);
+
+    }
+
+    /**
+     * A single device in a listing.
+     * Fields not present in the listing are {@code null}, or -1 for the transport ID.
+     */
+    static final class Record {
+
+        private String serial;
+        private boolean viaTcpIp;
+        private DeviceState state;
+        private String usb;
+        private String product;
+        private String model;
+        private String device;
+        private long transportId;
+
+        private void clear() {
+            serial = usb = product = model = device = null;
+            state = null;
+            viaTcpIp = false;
+            transportId = -1;
+        }
+
+        /** @return The device's serial number, or its IP address and port if connected via TCP/IP. */
+        String getSerial() { return serial; }
+
+        /** @return {@code true} if the serial is an IPv4 address and port. */
+        boolean isViaTcpIp() { return viaTcpIp; }
+
+        DeviceState getState() { return state; }
+
+        String getUsb() { return usb; }
+
+        String getProduct() { return product; }
+
+        String getModel() { return model; }
+
+        String getDevice() { return device; }
+
+        long getTransportId() { return transportId; }
+
+    }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2017, Simon Cahill
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.casoftworks.jdroidlib;
+
+import eu.casoftworks.jdroidlib.device.*;
+import eu.casoftworks.jdroidlib.enums.*;
+import eu.casoftworks.jdroidlib.interfaces.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+
+/**
+ * <b>This is NOT a public class!</b>
+ *
+ * Completes futures when devices transition in to a requested state.
+ * Driven entirely by (debounced) device state events; nothing is polled.
+ */
+class DeviceStateWaiter implements IDeviceStateListener {
+
+    private final ConcurrentMap<String, List<PendingWait>> pendingWaits = new ConcurrentHashMap<>();
+
+    /**
+     * Registers a wait for the next transition of a device in to a matching state.
+     * The returned future is completed on the event delivery thread, so waits registered by its
+     * (synchronous) dependents cannot miss the following event. Cancelling the future removes the wait.
+     * @param deviceId The ID of the device.
+     * @param state The predicate matching the state(s) to wait for.
+     * @return A future completed with the device once it has transitioned in to a matching state.
+     */
+    CompletableFuture<Device> await(String deviceId, Predicate<DeviceState> state) {
+        PendingWait wait = new PendingWait(state);
+        pendingWaits.compute(deviceId, (id, waits) -> {
+            if (waits == null)
+                waits = new CopyOnWriteArrayList<>();
+            waits.add(wait);
+            return waits;
+        });
+
+        wait.future.whenComplete((device, ex) -> pendingWaits.computeIfPresent(deviceId, (id, waits) -> {
+            waits.remove(wait);
+            return waits.isEmpty() ? null : waits;
+        }));
+        return wait.future;
+    }
+
+    /**
+     * Gets the number of pending waits.
+     * @return The number of waits not yet completed or cancelled.
+     */
+    int getPendingCount() {
+        return pendingWaits.values().stream().mapToInt(List::size).sum();
+    }
+
+    @Override
+    public void onDeviceStateChanged(DeviceStateChangedEvent event) {
+        List<PendingWait> waits = pendingWaits.get(event.getDeviceId());
+        if (waits == null)
+            return;
+
+        for (PendingWait wait : waits) {
+            if (wait.state.test(event.getNewState()))
+                wait.future.complete(event.getDevice());
+        }
+    }
+
+    private static class PendingWait {
+        final Predicate<DeviceState> state;
+        final CompletableFuture<Device> future = new CompletableFuture<>();
+
+        PendingWait(Predicate<DeviceState> state) {
+            this.state = state;
+        }
+    }
+
+}
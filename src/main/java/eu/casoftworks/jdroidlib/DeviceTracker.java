@@ -0,0 +1,454 @@
+/*
+ * Copyright (c) 2017, Simon Cahill
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.casoftworks.jdroidlib;
+
+import eu.casoftworks.jdroidlib.commands.*;
+import eu.casoftworks.jdroidlib.device.*;
+import eu.casoftworks.jdroidlib.enums.*;
+import eu.casoftworks.jdroidlib.exception.*;
+import eu.casoftworks.jdroidlib.interfaces.*;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+import java.util.logging.*;
+
+/**
+ * <b >This is NOT a public class!</b>
+ *
+ * Tracks the devices connected to an ADB server using {@code adb track-devices}
+ * and publishes state transitions to registered {@link IDeviceStateListener}s.
+ *
+ * The ADB server pushes a complete device listing whenever something changes,
+ * so no polling is required. Transitions are debounced per device: a flapping
+ * USB connection that returns to its previous state within the debounce window
+ * produces no event at all, and multiple transitions within the window are
+ * coalesced in to a single event.
+ * Events are delivered on a separate thread, so slow listeners never block tracking.
+ */
+class DeviceTracker implements Closeable {
+
+    static final long DEFAULT_DEBOUNCE_MILLIS = 500;
+    static final long DEFAULT_RESTART_DELAY_MILLIS = 1000;
+    private static final int FRAME_HEADER_LENGTH = 4;
+
+    /**
+     * Resolves the {@link Device} object for a tracked device.
+     * Called on the delivery thread, before listeners are notified.
+     */
+    @FunctionalInterface
+    interface Resolver {
+        Device resolve(String deviceId, String product, String model, DeviceState state);
+    }
+
+    private final IExecutioner executioner;
+    private final Resolver resolver;
+    private final List<IDeviceStateListener> listeners;
+    private final Map<String, PendingTransition> pendingTransitions;
+    private final Map<String, DeviceState> settledStates;
+    private final ScheduledExecutorService debounceScheduler;
+    private final ExecutorService dispatcher;
+    private final DeviceListParser listParser; // Only used by the tracker thread
+    private final LongSupplier nanoClock;
+
+    private volatile long debounceMillis = DEFAULT_DEBOUNCE_MILLIS;
+    private volatile long restartDelayMillis = DEFAULT_RESTART_DELAY_MILLIS;
+    private volatile boolean running;
+    private volatile Process trackerProcess;
+    private Thread trackerThread;
+    private Map<String, ListedDevice> lastListing;
+    private final CountDownLatch firstListing = new CountDownLatch(1);
+    private volatile long firstListingNanos;
+
+    /**
+     * Default constructor.
+     * @param executioner The {@link IExecutioner} used to run {@code adb track-devices}.
+     * @param resolver Resolves the {@link Device} objects for events.
+     * @param listeners The listeners to notify. The list may be shared between trackers and must be thread-safe!
+     */
+    DeviceTracker(IExecutioner executioner, Resolver resolver, List<IDeviceStateListener> listeners) {
+        this(executioner, resolver, listeners, System::nanoTime);
+    }
+
+    /**
+     * Constructor with a custom clock, which decides when the debounce window has passed.
+     * @param executioner The {@link IExecutioner} used to run {@code adb track-devices}.
+     * @param resolver Resolves the {@link Device} objects for events.
+     * @param listeners The listeners to notify. The list may be shared between trackers and must be thread-safe!
+     * @param nanoClock The monotonic clock, in nanoseconds.
+     */
+    DeviceTracker(IExecutioner executioner, Resolver resolver, List<IDeviceStateListener> listeners, LongSupplier nanoClock) {
+        this.executioner = executioner;
+        this.resolver = resolver;
+        this.listeners = listeners;
+        this.nanoClock = nanoClock;
+        pendingTransitions = new HashMap<>();
+        settledStates = new HashMap<>();
+        lastListing = new HashMap<>();
+        listParser = new DeviceListParser();
+        debounceScheduler = Executors.newSingleThreadScheduledExecutor(r -> createDaemon(r, "jdroidlib-device-debounce"));
+        dispatcher = Executors.newSingleThreadExecutor(r -> createDaemon(r, "jdroidlib-device-events"));
+    }
+
+    long getDebounceMillis() { return debounceMillis; }
+
+    void setDebounceMillis(long debounceMillis) {
+        if (debounceMillis < 0)
+            throw new IllegalArgumentException("Debounce time must not be negative!");
+        this.debounceMillis = debounceMillis;
+    }
+
+    long getRestartDelayMillis() { return restartDelayMillis; }
+
+    void setRestartDelayMillis(long restartDelayMillis) {
+        if (restartDelayMillis < 0)
+            throw new IllegalArgumentException("Restart delay must not be negative!");
+        this.restartDelayMillis = restartDelayMillis;
+    }
+
+    boolean isRunning() { return running; }
+
+    /**
+     * Waits until the first listing has been received and the events it caused have settled
+     * (i.e. the debounce window has passed).
+     * @param timeout The maximum time to wait.
+     * @param timeUnit The unit of time.
+     * @return {@code true} if the initial listing has settled, {@code false} if the timeout passed.
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    boolean awaitInitialListing(long timeout, TimeUnit timeUnit) throws InterruptedException {
+        if (!firstListing.await(timeout, timeUnit))
+            return false;
+
+        long settled = firstListingNanos + TimeUnit.MILLISECONDS.toNanos(debounceMillis);
+        long remaining = settled - nanoClock.getAsLong();
+        if (remaining > 0)
+            TimeUnit.NANOSECONDS.sleep(remaining);
+        return true;
+    }
+
+    /**
+     * Starts tracking devices, if tracking hasn't already been started.
+     */
+    synchronized void start() {
+        if (running)
+            return;
+
+        running = true;
+        trackerThread = createDaemon(this::track, "jdroidlib-device-tracker");
+        trackerThread.start();
+    }
+
+    @Override
+    public synchronized void close() {
+        running = false;
+        Process proc = trackerProcess;
+        if (proc != null)
+            proc.destroy();
+        if (trackerThread != null)
+            trackerThread.interrupt();
+        debounceScheduler.shutdownNow();
+        dispatcher.shutdown();
+    }
+
+    //<editor-fold desc="Tracking" defaultstate="collapsed" >
+    private void track() {
+        while (running) {
+            try {
+                trackerProcess = executioner.executeCommandReturnProcess(AdbCommand.getTrackDevicesCommand());
+
+                try (InputStream iStream = new BufferedInputStream(trackerProcess.getInputStream())) {
+                    String payload;
+                    while (running && (payload = readFrame(iStream)) != null) {
+                        onListing(parseListing(payload));
+                    }
+                }
+            } catch (IOException | IllegalDeviceStateException ex) {
+                Logger.getLogger(DeviceTracker.class.getName()).log(Level.WARNING, "Device tracking was interrupted! Restarting...", ex);
+            } catch (InterruptedException ex) {
+                break;
+            } finally {
+                Process proc = trackerProcess;
+                if (proc != null)
+                    proc.destroy();
+            }
+
+            // The ADB server most likely went away; give it a moment before reconnecting
+            try {
+                Thread.sleep(restartDelayMillis);
+            } catch (InterruptedException ex) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Reads a single frame from the ADB server.
+     * Each frame is prefixed with its length as four (4) hexadecimal digits.
+     * Any other output (e.g. "* daemon started successfully") is skipped.
+     * @param iStream The stream to read from.
+     * @return The frame's payload, or {@code null} if the stream has ended.
+     * @throws IOException If an I/O error occurs.
+     */
+    static String readFrame(InputStream iStream) throws IOException {
+        byte[] header = new byte[FRAME_HEADER_LENGTH];
+
+        while (true) {
+            int read = 0;
+            while (read < FRAME_HEADER_LENGTH) {
+                int b = iStream.read();
+                if (b == -1)
+                    return null;
+                if (b == '\n' || b == '\r') {
+                    read = 0;
+                    continue;
+                }
+                header[read++] = (byte)b;
+            }
+
+            int length = parseHexLength(header);
+            if (length < 0) {
+                // Not a frame; skip the rest of the line
+                int b;
+                while ((b = iStream.read()) != -1 && b != '\n');
+                if (b == -1)
+                    return null;
+                continue;
+            }
+
+            byte[] payload = new byte[length];
+            int offset = 0;
+            while (offset < length) {
+                int count = iStream.read(payload, offset, length - offset);
+                if (count == -1)
+                    return null;
+                offset += count;
+            }
+            return new String(payload, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static int parseHexLength(byte[] header) {
+        int length = 0;
+        for (byte b : header) {
+            int digit = Character.digit(b, 16);
+            if (digit < 0)
+                return -1;
+            length = (length << 4) | digit;
+        }
+        return length;
+    }
+
+    /**
+     * Parses a device listing as sent by the ADB server.
+     * The format is the same as the output of {@code adb devices -l}.
+     * @param payload The listing to parse.
+     * @return The listed devices, mapped by their ID.
+     */
+    Map<String, ListedDevice> parseListing(String payload) {
+        Map<String, ListedDevice> listing = new LinkedHashMap<>();
+        listParser.parse(payload, record -> listing.put(
+                record.getSerial(),
+                new ListedDevice(record.getSerial(), record.getState(), record.getProduct(), record.getModel(), record.getDevice())
+        ));
+        return listing;
+    }
+
+    /**
+     * Compares a listing to the previous one and starts a transition for each device that changed.
+     * Only called by the tracker thread, and by tests.
+     * @param listing The devices listed by the ADB server.
+     */
+    void onListing(Map<String, ListedDevice> listing) {
+        for (ListedDevice listed : listing.values()) {
+            ListedDevice previous = lastListing.get(listed.deviceId);
+            if (previous == null || previous.state != listed.state)
+                onTransition(listed);
+        }
+
+        for (ListedDevice previous : lastListing.values()) {
+            if (!listing.containsKey(previous.deviceId))
+                onTransition(new ListedDevice(previous.deviceId, DeviceState.Disconnected, previous.product, previous.model, previous.device));
+        }
+
+        lastListing = listing;
+
+        if (firstListing.getCount() > 0) {
+            firstListingNanos = nanoClock.getAsLong();
+            firstListing.countDown();
+        }
+    }
+    //</editor-fold>
+
+    //<editor-fold desc="Debouncing and delivery" defaultstate="collapsed" >
+    private void onTransition(ListedDevice listed) {
+        synchronized (pendingTransitions) {
+            PendingTransition pending = pendingTransitions.get(listed.deviceId);
+
+            if (pending == null) {
+                pending = new PendingTransition(settledStates.getOrDefault(listed.deviceId, DeviceState.Disconnected));
+                pendingTransitions.put(listed.deviceId, pending);
+            } else if (pending.task != null) {
+                pending.task.cancel(false);
+            }
+
+            final PendingTransition transition = pending;
+            final long sequence = ++transition.sequence;
+            transition.target = listed;
+            transition.deadline = nanoClock.getAsLong() + TimeUnit.MILLISECONDS.toNanos(debounceMillis);
+
+            try {
+                transition.task = debounceScheduler.schedule(() -> settle(transition, sequence), debounceMillis, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException ex) {
+                // Tracker is shutting down
+                pendingTransitions.remove(listed.deviceId);
+            }
+        }
+    }
+
+    private void settle(PendingTransition transition, long sequence) {
+        synchronized (pendingTransitions) {
+            if (!trySettle(transition, sequence))
+                return;
+        }
+        deliver(transition);
+    }
+
+    /**
+     * Settles every pending transition whose debounce window has passed.
+     * The debounce scheduler settles transitions on its own; this allows tests to settle them after advancing the clock.
+     */
+    void settleDue() {
+        List<PendingTransition> settled = new ArrayList<>();
+        synchronized (pendingTransitions) {
+            for (PendingTransition transition : new ArrayList<>(pendingTransitions.values())) {
+                if (trySettle(transition, transition.sequence))
+                    settled.add(transition);
+            }
+        }
+        settled.forEach(this::deliver);
+    }
+
+    /**
+     * Must be called while holding the lock on {@link #pendingTransitions}.
+     * @return {@code true} if the transition has settled and must be delivered.
+     */
+    private boolean trySettle(PendingTransition transition, long sequence) {
+        ListedDevice target = transition.target;
+        if (transition.sequence != sequence || pendingTransitions.get(target.deviceId) != transition)
+            return false; // Superseded by a later transition
+        if (nanoClock.getAsLong() - transition.deadline < 0)
+            return false; // Still within the debounce window
+
+        pendingTransitions.remove(target.deviceId);
+
+        if (target.state == transition.initialState)
+            return false; // The device flapped back to where it was; nothing happened.
+
+        if (target.state == DeviceState.Disconnected)
+            settledStates.remove(target.deviceId);
+        else
+            settledStates.put(target.deviceId, target.state);
+        return true;
+    }
+
+    /**
+     * Delivers a settled transition. The transition has been removed from {@link #pendingTransitions},
+     * so it is no longer modified.
+     */
+    private void deliver(PendingTransition transition) {
+        final ListedDevice target = transition.target;
+        final DeviceState previousState = transition.initialState;
+        final long timestamp = System.currentTimeMillis();
+        try {
+            dispatcher.execute(() -> dispatch(target, previousState, timestamp));
+        } catch (RejectedExecutionException ex) {
+            // Tracker is shutting down
+        }
+    }
+
+    private void dispatch(ListedDevice target, DeviceState previousState, long timestamp) {
+        Device device = null;
+        try {
+            device = resolver.resolve(target.deviceId, target.product, target.model, target.state);
+        } catch (RuntimeException ex) {
+            Logger.getLogger(DeviceTracker.class.getName()).log(Level.WARNING, String.format("Could not resolve device %s!", target.deviceId), ex);
+        }
+
+        DeviceStateChangedEvent event = new DeviceStateChangedEvent(target.deviceId, device, previousState, target.state, timestamp);
+        for (IDeviceStateListener listener : listeners) {
+            try {
+                listener.onDeviceStateChanged(event);
+            } catch (RuntimeException ex) {
+                Logger.getLogger(DeviceTracker.class.getName()).log(Level.SEVERE, "A device state listener threw an exception!", ex);
+            }
+        }
+    }
+    //</editor-fold>
+
+    private static Thread createDaemon(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * A single device as listed by the ADB server.
+     */
+    static class ListedDevice {
+        final String deviceId;
+        final DeviceState state;
+        final String product;
+        final String model;
+        final String device;
+
+        ListedDevice(String deviceId, DeviceState state, String product, String model, String device) {
+            this.deviceId = deviceId;
+            this.state = state;
+            this.product = product;
+            this.model = model;
+            this.device = device;
+        }
+    }
+
+    /**
+     * A transition waiting for the debounce window to pass.
+     */
+    private static class PendingTransition {
+        final DeviceState initialState;
+        ListedDevice target;
+        long sequence;
+        long deadline;
+        ScheduledFuture<?> task;
+
+        PendingTransition(DeviceState initialState) {
+            this.initialState = initialState;
+        }
+    }
+
+}
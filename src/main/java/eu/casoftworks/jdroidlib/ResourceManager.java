@@ -186,7 +186,7 @@ class ResourceManager implements IResourceManager {
      * Gets the running instance of this class.
      * @return An instance of IResourceManager
      */
-    public static ResourceManager getInstance() throws InterruptedException, ExecutionException, PlatformNotSupportedException, IOException {
+    public static synchronized ResourceManager getInstance() throws InterruptedException, ExecutionException, PlatformNotSupportedException, IOException {
         return _instance == null ? (_instance = new ResourceManager()) : _instance;
     }
 
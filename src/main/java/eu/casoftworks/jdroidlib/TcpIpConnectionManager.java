@@ -0,0 +1,576 @@
+/*
+ * Copyright (c) 2017, Simon Cahill
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.casoftworks.jdroidlib;
+
+import eu.casoftworks.jdroidlib.commands.*;
+import eu.casoftworks.jdroidlib.device.*;
+import eu.casoftworks.jdroidlib.enums.*;
+import eu.casoftworks.jdroidlib.interfaces.*;
+import eu.casoftworks.jdroidlib.util.*;
+
+import java.io.*;
+import java.net.*;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.logging.*;
+
+/**
+ * Keeps a set of devices connected via TCP/IP.
+ *
+ * Addresses are connected concurrently (at most {@link TcpIpConnectionManager#getConnectParallelism()}
+ * {@code adb connect}s at once). Before each connect, the address is probed with a plain TCP connect, so
+ * unreachable devices fail within the probe timeout instead of tying up ADB for the system's connect timeout.
+ *
+ * Connected devices are monitored: disconnects reported by the device trackers trigger an immediate
+ * reconnect, and a periodic liveness check probes all connected addresses at once (non-blocking,
+ * on a single thread) to catch connections ADB itself still considers alive after the device
+ * dropped off the network. Such devices are marked disconnected in the controller's {@link DeviceRegistry}.
+ * Failed connections are retried with exponential backoff; the delay is jittered so that a rack of
+ * devices losing Wi-Fi at once doesn't reconnect in lockstep.
+ */
+public class TcpIpConnectionManager implements IDeviceStateListener, Closeable {
+
+    public static final int DEFAULT_CONNECT_PARALLELISM = 32;
+    public static final long DEFAULT_PROBE_TIMEOUT_MILLIS = 2000;
+    public static final long DEFAULT_LIVENESS_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(15);
+    public static final long DEFAULT_INITIAL_BACKOFF_MILLIS = 500;
+    public static final long DEFAULT_MAX_BACKOFF_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final AndroidController controller;
+    private final int connectParallelism;
+    private final long probeTimeoutMillis;
+    private final long livenessIntervalMillis;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+
+    private final ConcurrentMap<String, Connection> connections;
+    private final Queue<Connection> connectQueue;
+    private final AtomicInteger connectsInFlight;
+    private final ScheduledExecutorService scheduler;
+    private final Object stateLock = new Object();
+    private volatile boolean closed;
+
+    TcpIpConnectionManager(Factory factory, AndroidController controller) {
+        this.controller = controller;
+        this.connectParallelism = factory.connectParallelism;
+        this.probeTimeoutMillis = factory.probeTimeoutMillis;
+        this.livenessIntervalMillis = factory.livenessIntervalMillis;
+        this.initialBackoffMillis = factory.initialBackoffMillis;
+        this.maxBackoffMillis = factory.maxBackoffMillis;
+
+        connections = new ConcurrentHashMap<>();
+        connectQueue = new ConcurrentLinkedQueue<>();
+        connectsInFlight = new AtomicInteger();
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "jdroidlib-tcpip-connections");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static class Factory {
+
+        private int connectParallelism = DEFAULT_CONNECT_PARALLELISM;
+        private long probeTimeoutMillis = DEFAULT_PROBE_TIMEOUT_MILLIS;
+        private long livenessIntervalMillis = DEFAULT_LIVENESS_INTERVAL_MILLIS;
+        private long initialBackoffMillis = DEFAULT_INITIAL_BACKOFF_MILLIS;
+        private long maxBackoffMillis = DEFAULT_MAX_BACKOFF_MILLIS;
+
+        /**
+         * Sets the maximum number of {@code adb connect}s executed at once.
+         * @param connectParallelism The maximum number of concurrent connects.
+         * @return The updated instance of this object.
+         */
+        public Factory setConnectParallelism(int connectParallelism) {
+            this.connectParallelism = connectParallelism;
+            return this;
+        }
+
+        /**
+         * Sets the time a device has to accept a TCP connection before it is considered unreachable.
+         * @param time The probe timeout.
+         * @param timeUnit The unit of time.
+         * @return The updated instance of this object.
+         */
+        public Factory setProbeTimeout(long time, TimeUnit timeUnit) {
+            this.probeTimeoutMillis = timeUnit.toMillis(time);
+            return this;
+        }
+
+        /**
+         * Sets the interval in which connected devices are probed.
+         * @param time The interval. Set to 0 (zero) to rely on ADB's device tracking only.
+         * @param timeUnit The unit of time.
+         * @return The updated instance of this object.
+         */
+        public Factory setLivenessInterval(long time, TimeUnit timeUnit) {
+            this.livenessIntervalMillis = timeUnit.toMillis(time);
+            return this;
+        }
+
+        /**
+         * Sets the bounds of the reconnect backoff.
+         * The delay doubles with each failed attempt, from the initial up to the maximum delay.
+         * @param initial The delay after the first failed attempt.
+         * @param max The maximum delay.
+         * @param timeUnit The unit of time.
+         * @return The updated instance of this object.
+         */
+        public Factory setBackoff(long initial, long max, TimeUnit timeUnit) {
+            this.initialBackoffMillis = timeUnit.toMillis(initial);
+            this.maxBackoffMillis = timeUnit.toMillis(max);
+            return this;
+        }
+
+        /**
+         * Creates a connection manager and starts monitoring.
+         * @param controller The controller used to connect to the devices and receive their state changes.
+         * @return The new connection manager.
+         */
+        public TcpIpConnectionManager create(AndroidController controller) {
+            if (controller == null)
+                throw new IllegalArgumentException("Controller must not be null!");
+            if (connectParallelism < 1)
+                throw new IllegalStateException("Connect parallelism must be at least one (1)!");
+            if (probeTimeoutMillis < 1)
+                throw new IllegalStateException("Probe timeout must be positive!");
+            if (livenessIntervalMillis < 0)
+                throw new IllegalStateException("Liveness interval must not be negative!");
+            if (initialBackoffMillis < 1 || maxBackoffMillis < initialBackoffMillis)
+                throw new IllegalStateException("Backoff must be positive and the maximum must not be less than the initial delay!");
+
+            TcpIpConnectionManager manager = new TcpIpConnectionManager(this, controller);
+            manager.start();
+            return manager;
+        }
+
+    }
+
+    private void start() {
+        controller.addDeviceStateListener(this);
+        if (livenessIntervalMillis > 0)
+            scheduler.scheduleWithFixedDelay(this::checkLiveness, livenessIntervalMillis, livenessIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public int getConnectParallelism() { return connectParallelism; }
+
+    //<editor-fold desc="Managed addresses" defaultstate="collapsed" >
+    /**
+     * Starts managing an address; the device is connected as soon as possible.
+     * @param address The device's address.
+     * @return {@code true} if the address was added, {@code false} if it is already managed.
+     */
+    public boolean addAddress(Ip4Address address) {
+        if (closed)
+            throw new IllegalStateException("Connection manager is closed!");
+
+        Connection connection = new Connection(address);
+        if (connections.putIfAbsent(connection.deviceId, connection) != null)
+            return false;
+
+        enqueue(connection);
+        return true;
+    }
+
+    /**
+     * Starts managing multiple addresses; the devices are connected concurrently.
+     * @param addresses The devices' addresses.
+     * @return The number of addresses that weren't managed yet.
+     */
+    public int addAddresses(Collection<Ip4Address> addresses) {
+        int added = 0;
+        for (Ip4Address address : addresses) {
+            if (addAddress(address))
+                added++;
+        }
+        return added;
+    }
+
+    /**
+     * Stops managing an address.
+     * @param address The device's address.
+     * @param disconnect {@code true} to also disconnect the device from ADB.
+     * @return {@code true} if the address was managed, {@code false} otherwise.
+     */
+    public boolean removeAddress(Ip4Address address, boolean disconnect) {
+        Connection connection = connections.remove(address.toString());
+        if (connection == null)
+            return false;
+
+        connection.cancelRetry();
+        setState(connection, TcpIpConnectionState.Removed);
+        if (disconnect) {
+            try {
+                controller.getExecutorService().execute(() -> disconnect(connection));
+            } catch (RejectedExecutionException ex) {
+                // Controller is closing; ADB will drop the connection anyway
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the state of a managed connection.
+     * @param address The device's address.
+     * @return The state, or {@link TcpIpConnectionState#Removed} if the address is not managed.
+     */
+    public TcpIpConnectionState getConnectionState(Ip4Address address) {
+        Connection connection = connections.get(address.toString());
+        return connection == null ? TcpIpConnectionState.Removed : connection.state;
+    }
+
+    /**
+     * Gets the number of managed addresses.
+     * @return The number of addresses.
+     */
+    public int size() { return connections.size(); }
+
+    /**
+     * Gets the number of managed addresses whose device is currently connected.
+     * @return The number of connected devices.
+     */
+    public int getConnectedCount() {
+        return (int)connections.values().stream().filter(x -> x.state == TcpIpConnectionState.Connected).count();
+    }
+
+    /**
+     * Waits until all managed devices are connected.
+     * @param timeout The maximum time to wait.
+     * @param timeUnit The unit of time.
+     * @return {@code true} if all devices are connected, {@code false} if the timeout passed.
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    public boolean awaitConnected(long timeout, TimeUnit timeUnit) throws InterruptedException {
+        final long deadline = System.nanoTime() + timeUnit.toNanos(timeout);
+        synchronized (stateLock) {
+            while (getConnectedCount() < connections.size()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0)
+                    return false;
+                TimeUnit.NANOSECONDS.timedWait(stateLock, remaining);
+            }
+        }
+        return true;
+    }
+    //</editor-fold>
+
+    //<editor-fold desc="Connecting" defaultstate="collapsed" >
+    private void enqueue(Connection connection) {
+        if (closed || connections.get(connection.deviceId) != connection)
+            return;
+
+        synchronized (stateLock) {
+            if (connection.queued || connection.state == TcpIpConnectionState.Connecting)
+                return; // Already on its way
+            connection.queued = true;
+            connection.state = TcpIpConnectionState.Pending;
+            connectQueue.add(connection);
+            stateLock.notifyAll();
+        }
+        drainConnectQueue();
+    }
+
+    /**
+     * Submits queued connects to the controller's executor, as long as there are free connect slots.
+     */
+    private void drainConnectQueue() {
+        while (!connectQueue.isEmpty()) {
+            int inFlight = connectsInFlight.get();
+            if (inFlight >= connectParallelism)
+                return; // The next completing connect drains the queue
+            if (!connectsInFlight.compareAndSet(inFlight, inFlight + 1))
+                continue;
+
+            Connection connection = connectQueue.poll();
+            if (connection == null) {
+                connectsInFlight.decrementAndGet();
+                continue;
+            }
+            synchronized (stateLock) {
+                connection.queued = false;
+                connection.state = TcpIpConnectionState.Connecting;
+            }
+
+            try {
+                controller.getExecutorService().execute(() -> {
+                    try {
+                        connect(connection);
+                    } finally {
+                        connectsInFlight.decrementAndGet();
+                        drainConnectQueue();
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                connectsInFlight.decrementAndGet();
+                return; // Controller is closing
+            }
+        }
+    }
+
+    private void connect(Connection connection) {
+        if (closed || connections.get(connection.deviceId) != connection)
+            return;
+
+        boolean connected = false;
+        try {
+            if (connection.stale) {
+                // ADB still holds the dead transport and would report "already connected"
+                disconnect(connection);
+                connection.stale = false;
+            }
+            connected = probe(Collections.singletonList(connection.socketAddress), probeTimeoutMillis)[0]
+                    && controller.connectToDevice(connection.address);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (Exception ex) {
+            Logger.getLogger(TcpIpConnectionManager.class.getName()).log(Level.FINE, String.format("Could not connect to %s!", connection.deviceId), ex);
+        }
+
+        if (connected) {
+            connection.failedAttempts.set(0);
+            setState(connection, TcpIpConnectionState.Connected);
+        } else {
+            scheduleReconnect(connection);
+        }
+    }
+
+    private void disconnect(Connection connection) {
+        try {
+            controller.executeCommandNoOutput(AdbCommand.getDisconnectDeviceCommand(connection.address));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (Exception ex) {
+            Logger.getLogger(TcpIpConnectionManager.class.getName()).log(Level.FINE, String.format("Could not disconnect from %s!", connection.deviceId), ex);
+        }
+    }
+
+    private void scheduleReconnect(Connection connection) {
+        if (closed || connections.get(connection.deviceId) != connection)
+            return;
+
+        long delay = getBackoffMillis(connection.failedAttempts.incrementAndGet(), initialBackoffMillis, maxBackoffMillis, ThreadLocalRandom.current());
+        setState(connection, TcpIpConnectionState.BackingOff);
+        try {
+            connection.setRetry(scheduler.schedule(() -> enqueue(connection), delay, TimeUnit.MILLISECONDS));
+        } catch (RejectedExecutionException ex) {
+            // Closed
+        }
+    }
+
+    /**
+     * Computes the delay before the next connection attempt.
+     * The delay is drawn uniformly from the upper half of the current backoff ceiling ("equal jitter"),
+     * which keeps a minimum delay while spreading out devices that failed at the same time.
+     * @param failedAttempts The number of consecutive failed attempts (at least one).
+     * @param initialMillis The ceiling after the first failed attempt.
+     * @param maxMillis The maximum ceiling.
+     * @param random The source of jitter.
+     * @return The delay in milliseconds.
+     */
+    static long getBackoffMillis(int failedAttempts, long initialMillis, long maxMillis, Random random) {
+        int doublings = Math.min(Math.max(failedAttempts - 1, 0), Long.numberOfLeadingZeros(initialMillis) - 1);
+        long ceiling = Math.min(maxMillis, initialMillis << doublings);
+        long half = ceiling / 2;
+        return ceiling - half + (long)(random.nextDouble() * (half + 1));
+    }
+    //</editor-fold>
+
+    //<editor-fold desc="Liveness" defaultstate="collapsed" >
+    @Override
+    public void onDeviceStateChanged(DeviceStateChangedEvent event) {
+        Connection connection = connections.get(event.getDeviceId());
+        if (connection == null)
+            return;
+
+        if (event.getNewState() == DeviceState.Disconnected && connection.state == TcpIpConnectionState.Connected) {
+            // Lost; the first reconnect happens right away
+            connection.failedAttempts.set(0);
+            enqueue(connection);
+        } else if (event.getNewState() == DeviceState.Online && connection.state != TcpIpConnectionState.Connected) {
+            // Reconnected by ADB itself or by a third party
+            connection.cancelRetry();
+            connection.failedAttempts.set(0);
+            setState(connection, TcpIpConnectionState.Connected);
+        }
+    }
+
+    /**
+     * Probes all connected devices at once and reconnects those that are no longer reachable.
+     */
+    private void checkLiveness() {
+        List<Connection> connected = new ArrayList<>();
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (Connection connection : connections.values()) {
+            if (connection.state == TcpIpConnectionState.Connected) {
+                connected.add(connection);
+                addresses.add(connection.socketAddress);
+            }
+        }
+        if (connected.isEmpty())
+            return;
+
+        boolean[] reachable;
+        try {
+            reachable = probe(addresses, probeTimeoutMillis);
+        } catch (IOException ex) {
+            Logger.getLogger(TcpIpConnectionManager.class.getName()).log(Level.WARNING, "Could not check the liveness of TCP/IP connections!", ex);
+            return;
+        }
+
+        for (int i = 0; i < reachable.length; i++) {
+            Connection connection = connected.get(i);
+            if (reachable[i] || connection.state != TcpIpConnectionState.Connected)
+                continue;
+
+            Device device = controller.getDeviceRegistry().getDevice(connection.address);
+            if (device != null)
+                controller.getDeviceRegistry().markDisconnected(device);
+
+            connection.stale = true;
+            connection.failedAttempts.set(0);
+            enqueue(connection);
+        }
+    }
+
+    /**
+     * Checks whether the given addresses accept TCP connections.
+     * All connections are attempted at once using non-blocking sockets, so probing
+     * many addresses takes no longer than the slowest of them (at most the timeout).
+     * @param addresses The addresses to probe.
+     * @param timeoutMillis The time each address has to accept the connection.
+     * @return For each address, whether it accepted the connection.
+     * @throws IOException If the selector could not be opened.
+     */
+    static boolean[] probe(List<InetSocketAddress> addresses, long timeoutMillis) throws IOException {
+        boolean[] reachable = new boolean[addresses.size()];
+        List<SocketChannel> channels = new ArrayList<>(addresses.size());
+
+        try (Selector selector = Selector.open()) {
+            int pending = 0;
+            for (int i = 0; i < addresses.size(); i++) {
+                try {
+                    SocketChannel channel = SocketChannel.open();
+                    channels.add(channel);
+                    channel.configureBlocking(false);
+                    if (channel.connect(addresses.get(i)))
+                        reachable[i] = true;
+                    else {
+                        channel.register(selector, SelectionKey.OP_CONNECT, i);
+                        pending++;
+                    }
+                } catch (IOException ex) {
+                    // Unreachable (e.g. no route to host)
+                }
+            }
+
+            final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            while (pending > 0) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0)
+                    break;
+
+                selector.select(remaining);
+                Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+                while (selectedKeys.hasNext()) {
+                    SelectionKey key = selectedKeys.next();
+                    selectedKeys.remove();
+                    key.cancel();
+                    pending--;
+                    try {
+                        reachable[(Integer)key.attachment()] = ((SocketChannel)key.channel()).finishConnect();
+                    } catch (IOException ex) {
+                        // Refused; adbd isn't listening
+                    }
+                }
+            }
+        } finally {
+            for (SocketChannel channel : channels) {
+                try {
+                    channel.close();
+                } catch (IOException ex) {
+                    // Nothing to do
+                }
+            }
+        }
+
+        return reachable;
+    }
+    //</editor-fold>
+
+    private void setState(Connection connection, TcpIpConnectionState state) {
+        synchronized (stateLock) {
+            connection.state = state;
+            stateLock.notifyAll();
+        }
+    }
+
+    /**
+     * Stops managing all addresses. The devices are left connected.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        controller.removeDeviceStateListener(this);
+        scheduler.shutdownNow();
+        connectQueue.clear();
+        connections.values().forEach(x -> setState(x, TcpIpConnectionState.Removed));
+        connections.clear();
+    }
+
+    private static class Connection {
+        final Ip4Address address;
+        final String deviceId;
+        final InetSocketAddress socketAddress;
+        final AtomicInteger failedAttempts = new AtomicInteger();
+        volatile TcpIpConnectionState state = TcpIpConnectionState.Pending;
+        volatile boolean stale;
+        boolean queued; // Guarded by stateLock
+        private ScheduledFuture<?> retry;
+
+        Connection(Ip4Address address) {
+            this.address = address;
+            this.deviceId = address.toString();
+            InetAddress inetAddress;
+            try {
+                inetAddress = InetAddress.getByAddress(address.getAddressBytes());
+            } catch (UnknownHostException ex) {
+                throw new IllegalArgumentException(String.format("%s is not a valid address!", deviceId), ex);
+            }
+            this.socketAddress = new InetSocketAddress(inetAddress, address.getPort());
+        }
+
+        synchronized void setRetry(ScheduledFuture<?> retry) { this.retry = retry; }
+
+        synchronized void cancelRetry() {
+            if (retry != null)
+                retry.cancel(false);
+            retry = null;
+        }
+    }
+
+}
@@ -114,6 +114,15 @@ public class AdbCommand extends Command {
         return new Factory().setCommandTag("devices").setCommandArgs("-l").create();
     }
 
+    /**
+     * Gets a command for continuously tracking the devices connected to the host.
+     * The process executing this command does not terminate on its own!
+     * @return An instance of {@link ICommand}
+     */
+    public static AdbCommand getTrackDevicesCommand() {
+        return new Factory().setCommandTag("track-devices").setCommandArgs("-l").create();
+    }
+
     /**
      * Gets a command for connecting to a specific device via TCP/IP.
      * @param ip4Address The IP address to connect to.
@@ -136,6 +145,15 @@ public class AdbCommand extends Command {
         return new Factory().setCommandTag("disconnect").setCommandArgs(device.getIpAddress().toString()).create();
     }
 
+    /**
+     * Gets a command for disconnecting from a specific address, whether or not a device is connected to it.
+     * @param ip4Address The IP address to disconnect from.
+     * @return An instance of {@link ICommand}
+     */
+    public static AdbCommand getDisconnectDeviceCommand(Ip4Address ip4Address) {
+        return new Factory().setCommandTag("disconnect").setCommandArgs(ip4Address.toString()).create();
+    }
+
     /**
      * Gets a command for disconnecting from all devices connected to the host via TCP/IP.
      * @return An instance of {@link ICommand}
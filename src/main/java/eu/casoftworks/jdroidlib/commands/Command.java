@@ -59,7 +59,7 @@ public class Command implements ICommand {
         commandType = cmdType;
         commandTag = cmdTag;
         this.timeout = timeout;
-        commandArgs = cmdArguments;
+        commandArgs = cmdArguments != null ? cmdArguments : new String[0];
     }
 
     /**
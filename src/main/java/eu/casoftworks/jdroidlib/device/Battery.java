@@ -6,238 +6,226 @@ import eu.casoftworks.jdroidlib.enums.*;
 import eu.casoftworks.jdroidlib.exception.*;
 
 import java.io.*;
+import java.util.concurrent.*;
 
 /**
  * Represents a {@link Device}'s battery.
  * Contains information about said battery. I guess.
+ *
+ * All getters are served from a {@link BatteryInfo} snapshot, which is taken with a single
+ * {@code dumpsys battery} and reused until it is older than the cache TTL or the device rebooted/reconnected.
+ * To read multiple values consistently, get the snapshot itself via {@link Battery#getInfo()}.
  */
 public class Battery {
 
+    public static final long DEFAULT_CACHE_TTL_MILLIS = 5000;
+
+    /** Reads the battery service and the instantaneous current (not reported by dumpsys) in a single shell. */
+    private static final String READ_BATTERY_SCRIPT = "dumpsys battery; echo \"current now: $(cat /sys/class/power_supply/battery/current_now 2>/dev/null)\"";
+
     private final Device parentDevice;
     private final AndroidController adbController;
 
-    private boolean acPowered;
-    private boolean usbPowered;
-    private boolean wirelessPowered;
-    private double maxCurrent;
-    private double maxVoltage;
-    private int cycles;
-    private BatteryStatus status;
-    private BatteryHealth health;
-    private boolean present;
-    private int level;
-    private int scale;
-    private double voltage;
-    private double temperature;
-    private String tech;
+    private volatile long cacheTtlNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_CACHE_TTL_MILLIS);
+    private volatile Snapshot snapshot;
 
     /**
      * Instantiates a new Battery.
+     * The battery is not read until a value is requested.
      *
      * @param device the device
      */
     Battery(Device device) {
         parentDevice = device;
-        adbController = AndroidController.getControllerOrNull();
-        refresh();
+        adbController = device.getController();
     }
 
     /**
-     * Refresh.
-     */
-    void refresh() {
-        String cmdOutput;
-        try {
-            cmdOutput = adbController.executeCommandReturnOutput(
-                new AdbShellCommand.Factory()
-                    .setDevice(parentDevice)
-                    .setCommandTag("dumpsys")
-                    .setCommandArgs("battery")
-                    .create()
-            );
-
-            try (BufferedReader reader = new BufferedReader(new StringReader(cmdOutput))) {
-                String line;
-                while ((line = reader.readLine().toLowerCase().trim()) != null) {
-                    if (line.isEmpty() || line.contains("battery service"))
-                        continue;
-                    if (line.contains("ac"))
-                        acPowered = Boolean.parseBoolean(line.substring(13));
-                    if (line.contains("usb"))
-                        usbPowered = Boolean.parseBoolean(line.substring(14));
-                    if (line.contains("wireless"))
-                        wirelessPowered = Boolean.parseBoolean(line.substring(18));
-                    if (line.contains("charging voltage"))
-                        maxVoltage = Double.parseDouble(line.substring(22)) / 10;
-                    if (line.contains("charging current"))
-                        maxCurrent = Double.parseDouble(line.substring(22)) / 10;
-                    if (line.contains("counter"))
-                        cycles = Integer.parseInt(line.substring(16));
-                    if (line.contains("status"))
-                        status = BatteryStatus.fromCode(Integer.parseInt(line.substring(16)));
-                    if (line.contains("health"))
-                        health = BatteryHealth.fromCode(Integer.parseInt(line.substring(16)));
-                    if (line.contains("present"))
-                        present = Boolean.parseBoolean(line.substring(10));
-                    if (line.contains("level"))
-                        level = Integer.parseInt(line.substring(7));
-                    if (line.contains("scale"))
-                        scale = Integer.parseInt(line.substring(7));
-                    if (line.contains("voltage"))
-                        voltage = Double.parseDouble(line.substring(9)) / 1000;
-                    if (line.contains("temperature"))
-                        temperature = Double.parseDouble(line.substring(13)) / 10;
-                    if (line.contains("technology"))
-                        tech = line.substring(12);
-                }
-            }
+     * Sets the time a snapshot is reused for.
+     * @param time The TTL. Set to 0 (zero) to read the battery on every call.
+     * @param timeUnit The unit of time.
+     */
+    public void setCacheTtl(long time, TimeUnit timeUnit) {
+        if (time < 0)
+            throw new IllegalArgumentException("TTL must not be negative!");
+        cacheTtlNanos = timeUnit.toNanos(time);
+    }
+
+    public long getCacheTtl(TimeUnit timeUnit) { return timeUnit.convert(cacheTtlNanos, TimeUnit.NANOSECONDS); }
+
+    /**
+     * Gets a snapshot of the battery, reading it if the cached snapshot is stale.
+     * @return The {@link BatteryInfo}.
+     */
+    public BatteryInfo getInfo() {
+        Snapshot current = snapshot;
+        return isFresh(current) ? current.info : refresh();
+    }
 
-        } catch (IOException | IllegalDeviceStateException | InterruptedException e) {
-            e.printStackTrace();
+    /**
+     * Reads the battery, regardless of the cached snapshot.
+     * Concurrent callers share a single {@code dumpsys battery}.
+     * @return The new {@link BatteryInfo}; the previous one if the battery could not be read.
+     */
+    public BatteryInfo refresh() {
+        long requested = System.nanoTime();
+        synchronized (this) {
+            Snapshot current = snapshot;
+            if (current != null && current.takenNanos - requested >= 0 && parentDevice.getStateMachine().isCurrent(current.generation))
+                return current.info; // Read by another thread while this one was waiting
+
+            long generation = parentDevice.getGeneration();
+            try {
+                String cmdOutput = adbController.executeCommandReturnOutput(
+                    new AdbShellCommand.Factory()
+                        .setDevice(parentDevice)
+                        .setCommandTag(READ_BATTERY_SCRIPT)
+                        .create()
+                );
+                snapshot = current = new Snapshot(BatteryInfo.parse(cmdOutput, System.currentTimeMillis()), System.nanoTime(), generation);
+            } catch (IOException | IllegalDeviceStateException | InterruptedException e) {
+                e.printStackTrace();
+                if (current == null)
+                    return BatteryInfo.empty(System.currentTimeMillis());
+            }
+            return current.info;
         }
     }
 
+    private boolean isFresh(Snapshot snapshot) {
+        return snapshot != null
+                && System.nanoTime() - snapshot.takenNanos < cacheTtlNanos
+                && parentDevice.getStateMachine().isCurrent(snapshot.generation);
+    }
+
     /**
      * Gets the battery's health.
      *
      * @return A value of {@link BatteryHealth}
      */
-    public BatteryHealth getHealth() {
-        refresh(); return health;
-    }
+    public BatteryHealth getHealth() { return getInfo().getHealth(); }
 
     /**
      * Gets the battery's status.
      *
      * @return A value of {@link BatteryStatus}
      */
-    public BatteryStatus getStatus() {
-        refresh(); return status;
-    }
+    public BatteryStatus getStatus() { return getInfo().getStatus(); }
 
     /**
      * Is ac powered boolean.
      *
      * @return boolean
      */
-    public boolean isAcPowered() {
-        refresh(); return acPowered;
-    }
+    public boolean isAcPowered() { return getInfo().isAcPowered(); }
 
     /**
      * Is charging boolean.
      *
-     * @return the boolean
+     * @return {@code true} if the device is connected to any power source.
      */
-    public boolean isCharging() {
-        refresh(); return isAcPowered() || isUsbPowered() || isWirelessPowered();
-    }
+    public boolean isCharging() { return getInfo().isCharging(); }
 
     /**
      * Is present boolean.
      *
      * @return the boolean
      */
-    public boolean isPresent() {
-        refresh(); return present;
-    }
+    public boolean isPresent() { return getInfo().isPresent(); }
 
     /**
      * Is usb powered boolean.
      *
      * @return the boolean
      */
-    public boolean isUsbPowered() {
-        refresh(); return usbPowered;
-    }
+    public boolean isUsbPowered() { return getInfo().isUsbPowered(); }
 
     /**
      * Is wireless powered boolean.
      *
      * @return the boolean
      */
-    public boolean isWirelessPowered() {
-        refresh(); return wirelessPowered;
-    }
+    public boolean isWirelessPowered() { return getInfo().isWirelessPowered(); }
 
     /**
      * Gets parent device.
      *
      * @return the parent device
      */
-    public Device getParentDevice() {
-        refresh(); return parentDevice;
-    }
+    public Device getParentDevice() { return parentDevice; }
 
     /**
      * Gets max current.
      *
-     * @return the max current
+     * @return the maximum charging current in amperes
      */
-    public double getMaxCurrent() {
-        refresh(); return maxCurrent;
-    }
+    public double getMaxCurrent() { return getInfo().getMaxChargingCurrent(); }
 
     /**
      * Gets max voltage.
      *
-     * @return the max voltage
+     * @return the maximum charging voltage in volts
      */
-    public double getMaxVoltage() {
-        refresh(); return maxVoltage;
-    }
+    public double getMaxVoltage() { return getInfo().getMaxChargingVoltage(); }
 
     /**
      * Gets temperature.
      *
-     * @return the temperature
+     * @return the temperature in degrees Celsius
      */
-    public double getTemperature() {
-        refresh(); return temperature;
-    }
+    public double getTemperature() { return getInfo().getTemperature(); }
 
     /**
      * Gets voltage.
      *
-     * @return the voltage
+     * @return the voltage in volts
      */
-    public double getVoltage() {
-        refresh(); return voltage;
-    }
+    public double getVoltage() { return getInfo().getVoltage(); }
+
+    /**
+     * Gets the current flowing in to (positive) or out of (negative) the battery.
+     *
+     * @return the current in amperes, or {@link Double#NaN} if the device doesn't expose it
+     */
+    public double getCurrent() { return getInfo().getCurrent(); }
 
     /**
      * Gets cycles.
      *
-     * @return the cycles
+     * @return the number of charge cycles, or -1 if not reported by the device
      */
-    public int getCycles() {
-        refresh(); return cycles;
-    }
+    public int getCycles() { return getInfo().getCycleCount(); }
 
     /**
      * Gets level.
      *
      * @return the level
      */
-    public int getLevel() {
-        refresh(); return level;
-    }
+    public int getLevel() { return getInfo().getLevel(); }
 
     /**
      * Gets scale.
      *
      * @return the scale
      */
-    public int getScale() {
-        refresh(); return scale;
-    }
+    public int getScale() { return getInfo().getScale(); }
 
     /**
      * Gets tech.
      *
      * @return the tech
      */
-    public String getTech() {
-        refresh(); return tech;
+    public String getTech() { return getInfo().getTechnology(); }
+
+    private static class Snapshot {
+        final BatteryInfo info;
+        final long takenNanos;
+        final long generation;
+
+        Snapshot(BatteryInfo info, long takenNanos, long generation) {
+            this.info = info;
+            this.takenNanos = takenNanos;
+            this.generation = generation;
+        }
     }
 }
@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) 2017, Simon Cahill
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.casoftworks.jdroidlib.device;
+
+import eu.casoftworks.jdroidlib.enums.*;
+
+/**
+ * An immutable snapshot of a {@link Device}'s battery, parsed from a single {@code dumpsys battery}.
+ * Values not reported by the device are {@code false}, -1, {@link Double#NaN} or {@code null} respectively.
+ *
+ * @see Battery#getInfo()
+ */
+public final class BatteryInfo {
+
+    private final long timestamp;
+    private final boolean acPowered;
+    private final boolean usbPowered;
+    private final boolean wirelessPowered;
+    private final boolean dockPowered;
+    private final double maxChargingCurrent;
+    private final double maxChargingVoltage;
+    private final long chargeCounter;
+    private final int cycleCount;
+    private final BatteryStatus status;
+    private final BatteryHealth health;
+    private final boolean present;
+    private final int level;
+    private final int scale;
+    private final double voltage;
+    private final double temperature;
+    private final double current;
+    private final String technology;
+
+    private BatteryInfo(ParsedValues values) {
+        this.timestamp = values.timestamp;
+        this.acPowered = values.acPowered;
+        this.usbPowered = values.usbPowered;
+        this.wirelessPowered = values.wirelessPowered;
+        this.dockPowered = values.dockPowered;
+        this.maxChargingCurrent = values.maxChargingCurrent;
+        this.maxChargingVoltage = values.maxChargingVoltage;
+        this.chargeCounter = values.chargeCounter;
+        this.cycleCount = values.cycleCount;
+        this.status = values.status;
+        this.health = values.health;
+        this.present = values.present;
+        this.level = values.level;
+        this.scale = values.scale;
+        this.voltage = values.voltage;
+        this.temperature = values.temperature;
+        this.current = values.current;
+        this.technology = values.technology;
+    }
+
+    /**
+     * Parses the output of {@code dumpsys battery}. Example input:
+     * <pre>
+     * Current Battery Service state:
+     *   AC powered: false
+     *   USB powered: true
+     *   Wireless powered: false
+     *   Max charging current: 500000
+     *   Max charging voltage: 5000000
+     *   Charge counter: 2568000
+     *   status: 2
+     *   health: 2
+     *   present: true
+     *   level: 85
+     *   scale: 100
+     *   voltage: 4246
+     *   temperature: 265
+     *   technology: Li-ion
+     *   current now: -312500
+     * </pre>
+     * {@code current now} isn't part of {@code dumpsys battery}; {@link Battery} appends it from sysfs.
+     * Unknown and malformed lines are ignored.
+     * @param dumpsysOutput The output of {@code dumpsys battery}.
+     * @param timestamp The time the output was obtained, in milliseconds since the epoch.
+     * @return The parsed snapshot.
+     */
+    public static BatteryInfo parse(String dumpsysOutput, long timestamp) {
+        ParsedValues values = new ParsedValues(timestamp);
+        int length = dumpsysOutput.length();
+        int lineStart = 0;
+
+        while (lineStart < length) {
+            int lineEnd = dumpsysOutput.indexOf('\n', lineStart);
+            if (lineEnd < 0)
+                lineEnd = length;
+
+            int separator = dumpsysOutput.indexOf(':', lineStart);
+            if (separator > 0 && separator < lineEnd) {
+                String key = dumpsysOutput.substring(lineStart, separator).trim().toLowerCase();
+                String value = dumpsysOutput.substring(separator + 1, lineEnd).trim();
+                if (!value.isEmpty()) {
+                    try {
+                        values.set(key, value);
+                    } catch (NumberFormatException ex) {
+                        // Malformed; leave the value unknown
+                    }
+                }
+            }
+
+            lineStart = lineEnd + 1;
+        }
+
+        return new BatteryInfo(values);
+    }
+
+    /**
+     * Gets an empty snapshot, as returned if the battery could not be read.
+     * @param timestamp The time of the attempt, in milliseconds since the epoch.
+     * @return A snapshot with all values unknown.
+     */
+    static BatteryInfo empty(long timestamp) { return new BatteryInfo(new ParsedValues(timestamp)); }
+
+    /** @return The time this snapshot was taken, in milliseconds since the epoch. */
+    public long getTimestamp() { return timestamp; }
+
+    public boolean isAcPowered() { return acPowered; }
+
+    public boolean isUsbPowered() { return usbPowered; }
+
+    public boolean isWirelessPowered() { return wirelessPowered; }
+
+    public boolean isDockPowered() { return dockPowered; }
+
+    /** @return {@code true} if the device is connected to any power source. */
+    public boolean isCharging() { return acPowered || usbPowered || wirelessPowered || dockPowered; }
+
+    /** @return The maximum charging current in amperes. */
+    public double getMaxChargingCurrent() { return maxChargingCurrent; }
+
+    /** @return The maximum charging voltage in volts. */
+    public double getMaxChargingVoltage() { return maxChargingVoltage; }
+
+    /** @return The remaining charge in microampere-hours. */
+    public long getChargeCounter() { return chargeCounter; }
+
+    /** @return The number of charge cycles (reported as of Android 14). */
+    public int getCycleCount() { return cycleCount; }
+
+    public BatteryStatus getStatus() { return status; }
+
+    public BatteryHealth getHealth() { return health; }
+
+    public boolean isPresent() { return present; }
+
+    /** @return The charge level, relative to {@link BatteryInfo#getScale()}. */
+    public int getLevel() { return level; }
+
+    public int getScale() { return scale; }
+
+    /** @return The charge level in percent, or {@link Double#NaN} if unknown. */
+    public double getLevelPercent() { return level < 0 || scale <= 0 ? Double.NaN : level * 100.0 / scale; }
+
+    /** @return The battery's voltage in volts. */
+    public double getVoltage() { return voltage; }
+
+    /** @return The battery's temperature in degrees Celsius. */
+    public double getTemperature() { return temperature; }
+
+    /**
+     * Gets the current flowing in to (positive) or out of (negative) the battery.
+     * Note that some vendors report the current with the opposite sign, or in milliamperes.
+     * @return The current in amperes.
+     */
+    public double getCurrent() { return current; }
+
+    /** @return The battery's technology, e.g. Li-ion. */
+    public String getTechnology() { return technology; }
+
+    @Override
+    public String toString() {
+        return String.format("%d%% (%s, %s), %.1f °C, %.3f V", level, status, health, temperature, voltage);
+    }
+
+    private static class ParsedValues {
+        final long timestamp;
+        boolean acPowered;
+        boolean usbPowered;
+        boolean wirelessPowered;
+        boolean dockPowered;
+        double maxChargingCurrent = Double.NaN;
+        double maxChargingVoltage = Double.NaN;
+        long chargeCounter = -1;
+        int cycleCount = -1;
+        BatteryStatus status;
+        BatteryHealth health;
+        boolean present;
+        int level = -1;
+        int scale = -1;
+        double voltage = Double.NaN;
+        double temperature = Double.NaN;
+        double current = Double.NaN;
+        String technology;
+
+        ParsedValues(long timestamp) {
+            this.timestamp = timestamp;
+        }
+
+        void set(String key, String value) {
+            switch (key) {
+                case "ac powered": acPowered = Boolean.parseBoolean(value); break;
+                case "usb powered": usbPowered = Boolean.parseBoolean(value); break;
+                case "wireless powered": wirelessPowered = Boolean.parseBoolean(value); break;
+                case "dock powered": dockPowered = Boolean.parseBoolean(value); break;
+                case "max charging current": maxChargingCurrent = Long.parseLong(value) / 1_000_000.0; break; // µA
+                case "max charging voltage": maxChargingVoltage = Long.parseLong(value) / 1_000_000.0; break; // µV
+                case "charge counter": chargeCounter = Long.parseLong(value); break;
+                case "cycle count": cycleCount = Integer.parseInt(value); break;
+                case "status": status = BatteryStatus.fromCode(Integer.parseInt(value)); break;
+                case "health": health = BatteryHealth.fromCode(Integer.parseInt(value)); break;
+                case "present": present = Boolean.parseBoolean(value); break;
+                case "level": level = Integer.parseInt(value); break;
+                case "scale": scale = Integer.parseInt(value); break;
+                case "voltage": voltage = Integer.parseInt(value) / 1000.0; break; // mV
+                case "temperature": temperature = Integer.parseInt(value) / 10.0; break; // Tenths of a degree
+                case "technology": technology = value; break;
+                case "current now": current = Long.parseLong(value) / 1_000_000.0; break; // µA
+                default: break; // Newer versions keep adding fields
+            }
+        }
+    }
+
+}
@@ -4,22 +4,110 @@ import eu.casoftworks.jdroidlib.*;
 import eu.casoftworks.jdroidlib.commands.*;
 import eu.casoftworks.jdroidlib.device.buildprop.*;
 import eu.casoftworks.jdroidlib.exception.*;
+import eu.casoftworks.jdroidlib.util.*;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
 /**
  * Device class; represents {@link Device} build properties.
  * Allows retrieval and manipulation.
+ *
+ * Properties are served from a {@link BuildPropSnapshot}, which is read with a single {@code getprop}
+ * and reused until it is older than the cache TTL, a property was set via this object, or the device rebooted/reconnected.
  */
 public class BuildProp {
 
+    public static final long DEFAULT_CACHE_TTL_MILLIS = 60000;
+
+    /** Keeps batch scripts well below the command line limit of older ADB versions (4 KiB). */
+    static final int MAX_SCRIPT_LENGTH = 3000;
+    static final String SETPROP_STATUS_PREFIX = "setprop-status:";
+    static final String GETPROP_MARKER = "--- getprop ---";
+
     private final Device parentDevice;
     private final AndroidController adbController;
 
+    private volatile long cacheTtlNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_CACHE_TTL_MILLIS);
+    private volatile BuildPropSnapshot snapshot;
+    private final AtomicLong writeVersion = new AtomicLong();
+
     BuildProp(Device device) {
         this.parentDevice = device;
-        this.adbController = AndroidController.getControllerOrNull();
+        this.adbController = device.getController();
+    }
+
+    /**
+     * Sets the time a snapshot is reused for.
+     * @param time The TTL. Set to 0 (zero) to read the properties on every call.
+     * @param timeUnit The unit of time.
+     */
+    public void setCacheTtl(long time, TimeUnit timeUnit) {
+        if (time < 0)
+            throw new IllegalArgumentException("TTL must not be negative!");
+        cacheTtlNanos = timeUnit.toNanos(time);
+    }
+
+    public long getCacheTtl(TimeUnit timeUnit) { return timeUnit.convert(cacheTtlNanos, TimeUnit.NANOSECONDS); }
+
+    /**
+     * Gets a snapshot of all build properties, reading them if the cached snapshot is stale.
+     * @return The {@link BuildPropSnapshot}.
+     * @throws DeviceException If the properties could not be read.
+     */
+    public BuildPropSnapshot getSnapshot() throws DeviceException {
+        BuildPropSnapshot current = snapshot;
+        return isFresh(current) ? current : refresh();
+    }
+
+    /**
+     * Reads all build properties, regardless of the cached snapshot.
+     * Concurrent callers share a single {@code getprop}.
+     * @return The new {@link BuildPropSnapshot}.
+     * @throws DeviceException If the properties could not be read.
+     */
+    public BuildPropSnapshot refresh() throws DeviceException {
+        long requested = System.nanoTime();
+        synchronized (this) {
+            BuildPropSnapshot current = snapshot;
+            if (current != null && current.getTakenNanos() - requested >= 0 && isCurrent(current))
+                return current; // Read by another thread while this one was waiting
+
+            long generation = parentDevice.getGeneration();
+            long version = writeVersion.get();
+            try {
+                String cmdOutput = adbController.executeCommandReturnOutput(
+                    getGetPropCommand(null)
+                );
+                current = new BuildPropSnapshot(BuildPropSnapshot.parse(cmdOutput), System.currentTimeMillis(), System.nanoTime(), generation, version);
+            } catch (IOException | InterruptedException | IllegalDeviceStateException e) {
+                e.printStackTrace();
+                throw new DeviceException(e);
+            }
+
+            DeviceIdentity identity = parentDevice.getIdentity(current.get(DeviceIdentity.FINGERPRINT_PROPERTY), generation);
+            current.asMap().forEach(identity::putBuildProperty);
+            return snapshot = current;
+        }
+    }
+
+    /**
+     * Discards the cached snapshot; the next read fetches all properties again.
+     */
+    public void invalidate() {
+        writeVersion.incrementAndGet();
+    }
+
+    private boolean isFresh(BuildPropSnapshot snapshot) {
+        return snapshot != null
+                && System.nanoTime() - snapshot.getTakenNanos() < cacheTtlNanos
+                && isCurrent(snapshot);
+    }
+
+    private boolean isCurrent(BuildPropSnapshot snapshot) {
+        return snapshot.getWriteVersion() == writeVersion.get() && parentDevice.getStateMachine().isCurrent(snapshot.getGeneration());
     }
 
     AdbShellCommand getGetPropCommand(String prop) {
@@ -34,67 +122,220 @@ public class BuildProp {
      * Gets all of the {@link Device}'s build properties in form of a list.
      * @return All build properties found on the parent {@link Device}
      * @throws DeviceException If an error occurs.
+     *
+     * @see BuildProp#getSnapshot()
      */
     public List<BuildProperty> getProperties() throws DeviceException {
-        List<BuildProperty> properties = new ArrayList<>();
-        String cmdOutput;
-        try {
-            cmdOutput = adbController.executeCommandReturnOutput(
-                getGetPropCommand(null)
-            );
+        return getSnapshot().toList();
+    }
 
-            try (BufferedReader reader = new BufferedReader(new StringReader(cmdOutput))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    line = line.replace('[', '\0').replace(']','\0').trim();
-                    if (line.isEmpty() || !line.contains(":"))
-                        continue;
+    /**
+     * Gets a single build property from the parent {@link Device}.
+     * Properties identifying the device's build are served from the device's identity once known,
+     * all others from the cached snapshot.
+     * @param prop the property to get
+     * @return The property.
+     * @throws DeviceException If the property is not set, or an error occurs.
+     *
+     * @see DeviceIdentity#isIdentityProperty(String)
+     */
+    public BuildProperty getProperty(String prop) throws DeviceException {
+        String cachedValue = DeviceIdentity.isIdentityProperty(prop) ? parentDevice.getIdentity().getBuildProperty(prop) : null;
+        if (cachedValue != null)
+            return new BuildProperty(prop, cachedValue);
 
-                    String[] split = line.split(":");
-                    properties.add(new BuildProperty(split[0], split[1]));
-                }
-            }
-        } catch (IOException | InterruptedException | IllegalDeviceStateException e) {
-            e.printStackTrace();
-            throw new DeviceException(e);
+        String value = getSnapshot().get(prop);
+        if (value == null || value.isEmpty())
+            throw new DeviceException(String.format("Build property %s was not found!", prop));
+        return new BuildProperty(prop, value);
+    }
+
+    /**
+     * Gets multiple build properties, read with a single {@code getprop} (or from the cached snapshot).
+     * @param props The properties to get.
+     * @return The values of the properties that are set, in the given order.
+     * @throws DeviceException If the properties could not be read.
+     */
+    public Map<String, String> getProperties(Collection<String> props) throws DeviceException {
+        BuildPropSnapshot current = getSnapshot();
+        Map<String, String> result = new LinkedHashMap<>();
+        for (String prop : props) {
+            String value = current.get(prop);
+            if (value != null)
+                result.put(prop, value);
         }
+        return result;
+    }
+
+    //<editor-fold desc="Typed accessors" defaultstate="collapsed" >
+    /**
+     * Gets a build property as an {@code int}, parsed once per snapshot.
+     * @param prop The property to get.
+     * @param defaultValue The value returned if the property isn't set or isn't a number.
+     * @return The property's value, or the default value.
+     * @throws DeviceException If the properties could not be read.
+     *
+     * @see BuildPropSnapshot#getInt(String, int)
+     */
+    public int getInt(String prop, int defaultValue) throws DeviceException { return getSnapshot().getInt(prop, defaultValue); }
 
-        return properties;
+    /**
+     * Gets a build property as a {@code long}, parsed once per snapshot.
+     * @param prop The property to get.
+     * @param defaultValue The value returned if the property isn't set or isn't a number.
+     * @return The property's value, or the default value.
+     * @throws DeviceException If the properties could not be read.
+     *
+     * @see BuildPropSnapshot#getLong(String, long)
+     */
+    public long getLong(String prop, long defaultValue) throws DeviceException { return getSnapshot().getLong(prop, defaultValue); }
+
+    /**
+     * Gets a build property as a {@code boolean}, parsed once per snapshot.
+     * @param prop The property to get.
+     * @param defaultValue The value returned if the property isn't set or isn't a boolean.
+     * @return The property's value, or the default value.
+     * @throws DeviceException If the properties could not be read.
+     *
+     * @see BuildPropSnapshot#getBoolean(String, boolean)
+     */
+    public boolean getBoolean(String prop, boolean defaultValue) throws DeviceException { return getSnapshot().getBoolean(prop, defaultValue); }
+
+    /**
+     * Gets a build property as a {@link Version}, parsed once per snapshot.
+     * @param prop The property to get.
+     * @return The property's value, or {@code null} if the property isn't set or isn't a version.
+     * @throws DeviceException If the properties could not be read.
+     *
+     * @see BuildPropSnapshot#getVersion(String)
+     */
+    public Version getVersion(String prop) throws DeviceException { return getSnapshot().getVersion(prop); }
+
+    /**
+     * Gets a build property as a constant of an enum, parsed once per snapshot.
+     * @param prop The property to get.
+     * @param enumType The type of the enum.
+     * @param defaultValue The value returned if the property isn't set or doesn't name a constant.
+     * @param <E> The type of the enum.
+     * @return The property's value, or the default value.
+     * @throws DeviceException If the properties could not be read.
+     *
+     * @see BuildPropSnapshot#getEnum(String, Class, Enum)
+     */
+    public <E extends Enum<E>> E getEnum(String prop, Class<E> enumType, E defaultValue) throws DeviceException { return getSnapshot().getEnum(prop, enumType, defaultValue); }
+    //</editor-fold>
+
+    /**
+     * Sets multiple build properties with a single shell (a few, for very large batches).
+     * The properties are read back in the same shell; the cached snapshot is replaced by the result in one step.
+     * @param props The properties to modify.
+     * @return Per property, whether it was set: {@code setprop} succeeded and the property now holds the value.
+     * @throws DeviceException If an error occurs.
+     */
+    public Map<String, Boolean> setProperties(Collection<BuildProperty> props) throws DeviceException {
+        Map<String, String> properties = new LinkedHashMap<>();
+        props.forEach(x -> properties.put(x.getKey(), x.getValue() == null ? "" : x.getValue().toString()));
+        return setProperties(properties);
     }
 
     /**
-     * Gets a single build property from the parent {@link Device}
-     * @param prop the property to get
-     * @return
-     * @throws DeviceException
+     * Sets multiple build properties with a single shell (a few, for very large batches).
+     * The properties are read back in the same shell; the cached snapshot is replaced by the result in one step.
+     * @param props The keys and values of the properties to modify.
+     * @return Per property, whether it was set: {@code setprop} succeeded and the property now holds the value.
+     * @throws DeviceException If an error occurs.
      */
-    public BuildProperty getProperty(String prop) throws DeviceException {
-        String cmdOutput;
-        try {
-            cmdOutput = adbController.executeCommandReturnOutput(
-                getGetPropCommand(prop)
-            );
+    public Map<String, Boolean> setProperties(Map<String, String> props) throws DeviceException {
+        if (props.containsValue(null))
+            throw new IllegalArgumentException("Property values must not be null!");
 
-            try (BufferedReader reader = new BufferedReader(new StringReader(cmdOutput))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    line = line.replace('[', '\0').replace(']','\0').trim();
-                    if (line.isEmpty() || !line.contains(":"))
-                        continue;
+        List<String> scripts = getSetPropScripts(props);
+        List<Integer> statuses = new ArrayList<>();
 
-                    String[] split = line.split(":");
-                    return new BuildProperty(split[0], split[1]);
+        synchronized (this) {
+            invalidate(); // Keeps concurrent readers from caching a snapshot from before the batch
+            long version = writeVersion.get();
+            long generation = parentDevice.getGeneration();
+            BuildPropSnapshot current;
+            try {
+                String cmdOutput = null;
+                for (String script : scripts) {
+                    cmdOutput = adbController.executeCommandReturnOutput(
+                        new AdbShellCommand.Factory()
+                            .setDevice(parentDevice)
+                            .setCommandTag(script)
+                            .create()
+                    );
+                    parseSetPropStatuses(cmdOutput, statuses);
                 }
+
+                int marker = cmdOutput.indexOf(GETPROP_MARKER);
+                if (marker < 0)
+                    throw new DeviceException("Properties could not be read back after setting them!");
+                current = new BuildPropSnapshot(BuildPropSnapshot.parse(cmdOutput.substring(marker + GETPROP_MARKER.length())), System.currentTimeMillis(), System.nanoTime(), generation, version);
+            } catch (IOException | InterruptedException | IllegalDeviceStateException e) {
+                e.printStackTrace();
+                throw new DeviceException(e);
             }
-        } catch (IOException | InterruptedException | IllegalDeviceStateException e) {
-            e.printStackTrace();
-            throw new DeviceException(e);
+
+            DeviceIdentity identity = parentDevice.getIdentity(current.get(DeviceIdentity.FINGERPRINT_PROPERTY), generation);
+            current.asMap().forEach(identity::putBuildProperty);
+            snapshot = current;
+
+            Map<String, Boolean> results = new LinkedHashMap<>();
+            int index = 0;
+            for (Map.Entry<String, String> prop : props.entrySet()) {
+                Integer status = index < statuses.size() ? statuses.get(index) : null;
+                results.put(prop.getKey(), status != null && status == 0 && prop.getValue().equals(current.get(prop.getKey(), "")));
+                index++;
+            }
+            return results;
+        }
+    }
+
+    //<editor-fold desc="Batch scripts" defaultstate="collapsed" >
+    /**
+     * Builds the shell scripts setting the given properties, each printing the exit status of every {@code setprop}.
+     * The last script additionally prints all properties after {@link BuildProp#GETPROP_MARKER}.
+     */
+    static List<String> getSetPropScripts(Map<String, String> props) {
+        List<String> scripts = new ArrayList<>();
+        StringBuilder script = new StringBuilder();
+        for (Map.Entry<String, String> prop : props.entrySet()) {
+            String command = String.format("setprop %s %s; echo \"%s$?\"; ", ShellQuoter.quote(prop.getKey()), ShellQuoter.quote(prop.getValue()), SETPROP_STATUS_PREFIX);
+            if (script.length() > 0 && script.length() + command.length() > MAX_SCRIPT_LENGTH) {
+                scripts.add(script.toString());
+                script.setLength(0);
+            }
+            script.append(command);
+        }
+        scripts.add(script.append("echo \"").append(GETPROP_MARKER).append("\"; getprop").toString());
+        return scripts;
+    }
+
+    /**
+     * Collects the {@code setprop} exit statuses printed by a batch script, in order.
+     * Anything after the {@link BuildProp#GETPROP_MARKER} is ignored.
+     */
+    static void parseSetPropStatuses(String output, List<Integer> statuses) {
+        int end = output.indexOf(GETPROP_MARKER);
+        if (end < 0)
+            end = output.length();
+
+        int position = 0;
+        while ((position = output.indexOf(SETPROP_STATUS_PREFIX, position)) >= 0 && position < end) {
+            position += SETPROP_STATUS_PREFIX.length();
+            int status = 0, digits = 0;
+            for (char c; position < end && (c = output.charAt(position)) >= '0' && c <= '9'; position++, digits++)
+                status = status * 10 + (c - '0');
+            statuses.add(digits > 0 ? status : -1);
         }
-        throw new DeviceException(String.format("Build property %s was not found!", prop));
     }
+    //</editor-fold>
 
     /**
      * Sets the parent {@link Device}'s build property.
+     * The cached snapshot is invalidated.
      * @param prop The property to modify.
      * @throws DeviceException If an error occurs.
      */
@@ -110,6 +351,8 @@ public class BuildProp {
         } catch (IOException | InterruptedException e) {
             e.printStackTrace();
             throw new DeviceException(e);
+        } finally {
+            invalidate();
         }
     }
 
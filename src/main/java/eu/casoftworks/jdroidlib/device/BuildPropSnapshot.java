@@ -0,0 +1,348 @@
+/*
+ * Copyright (c) 2017, Simon Cahill
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.casoftworks.jdroidlib.device;
+
+import eu.casoftworks.jdroidlib.device.buildprop.*;
+import eu.casoftworks.jdroidlib.util.*;
+
+import java.util.*;
+
+/**
+ * An immutable snapshot of all of a {@link Device}'s build properties, read with a single {@code getprop}.
+ * Lookups are served from a hash index.
+ *
+ * Typed values are parsed once per snapshot: numbers and booleans (as understood by Android's
+ * {@code property_get_bool}) up front in to primitive arrays, versions and enum constants on first use.
+ *
+ * @see BuildProp#getSnapshot()
+ */
+public final class BuildPropSnapshot {
+
+    private static final byte FLAG_NUMBER = 1;
+    private static final byte FLAG_TRUE = 2;
+    private static final byte FLAG_FALSE = 4;
+
+    private final Map<String, String> properties;
+    private final Map<String, Integer> indices;
+    private final long[] numbers;
+    private final byte[] flags;
+    // Lazily parsed versions and enum constants; racing threads parse the same immutable value
+    private final Object[] parsedValues;
+    private final long timestamp;
+    private final long takenNanos;
+    private final long generation;
+    private final long writeVersion;
+
+    BuildPropSnapshot(Map<String, String> properties, long timestamp, long takenNanos, long generation, long writeVersion) {
+        this.properties = Collections.unmodifiableMap(properties);
+        this.timestamp = timestamp;
+        this.takenNanos = takenNanos;
+        this.generation = generation;
+        this.writeVersion = writeVersion;
+
+        int size = properties.size();
+        indices = new HashMap<>(size * 2);
+        numbers = new long[size];
+        flags = new byte[size];
+        parsedValues = new Object[size];
+
+        int index = 0;
+        for (Map.Entry<String, String> property : properties.entrySet()) {
+            indices.put(property.getKey(), index);
+            flags[index] = parseFlags(property.getValue(), numbers, index);
+            index++;
+        }
+    }
+
+    /**
+     * Parses the output of {@code getprop} in a single pass. Example input:
+     * <pre>
+     * [ro.build.fingerprint]: [google/bullhead/bullhead:8.1.0/OPM7.181205.001/5080180:user/release-keys]
+     * [ro.build.version.sdk]: [27]
+     * [ro.product.model]: [Nexus 5X]
+     * </pre>
+     * Values may contain any character, including colons, brackets and line breaks;
+     * a value only ends at a {@code ]} closing its line, if the next non-empty line starts a new property (or there is none).
+     * If no such line follows, the value ends at the first line it closes.
+     * Lines not in the {@code [key]: [value]} format are skipped.
+     * @param getpropOutput The output to parse.
+     * @return The properties, in order of appearance.
+     */
+    static Map<String, String> parse(String getpropOutput) {
+        Map<String, String> properties = new LinkedHashMap<>();
+        int length = getpropOutput.length();
+        int position = 0;
+
+        while ((position = skipWhitespace(getpropOutput, position, length)) < length) {
+            int keyEnd = -1, valueEnd = -1;
+            if (getpropOutput.charAt(position) == '[') {
+                keyEnd = indexOfInLine(getpropOutput, ']', position + 1, length);
+                if (keyEnd > 0 && getpropOutput.startsWith("]: [", keyEnd))
+                    valueEnd = indexOfValueEnd(getpropOutput, keyEnd + 4, length);
+            }
+
+            if (valueEnd < 0) {
+                // Not a property; skip the line
+                int lineEnd = getpropOutput.indexOf('\n', position);
+                position = lineEnd < 0 ? length : lineEnd + 1;
+                continue;
+            }
+
+            properties.put(getpropOutput.substring(position + 1, keyEnd), getpropOutput.substring(keyEnd + 4, valueEnd));
+            position = valueEnd + 1;
+        }
+
+        return properties;
+    }
+
+    //<editor-fold desc="Parsing helpers" defaultstate="collapsed" >
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\r' || c == '\n';
+    }
+
+    private static int skipWhitespace(String output, int position, int end) {
+        while (position < end && isWhitespace(output.charAt(position)))
+            position++;
+        return position;
+    }
+
+    private static int indexOfInLine(String output, char c, int position, int end) {
+        for (; position < end; position++) {
+            char current = output.charAt(position);
+            if (current == c)
+                return position;
+            if (current == '\n')
+                return -1;
+        }
+        return -1;
+    }
+
+    private static int indexOfValueEnd(String output, int position, int end) {
+        int firstLineEnd = -1;
+        for (; position < end; position++) {
+            if (output.charAt(position) != ']')
+                continue;
+
+            int next = position + 1;
+            while (next < end && (output.charAt(next) == '\r' || output.charAt(next) == ' ' || output.charAt(next) == '\t'))
+                next++;
+            if (next == end)
+                return position;
+            if (output.charAt(next) == '\n') {
+                if (firstLineEnd < 0)
+                    firstLineEnd = position;
+                next = skipWhitespace(output, next, end);
+                if (next == end || output.charAt(next) == '[')
+                    return position;
+            }
+        }
+        // Trailing garbage; end the value at its own line rather than losing it
+        return firstLineEnd;
+    }
+
+    /**
+     * Determines whether a value is a number or a boolean.
+     * Numbers are decimal or hexadecimal (prefixed with {@code 0x}) and may be negative.
+     */
+    private static byte parseFlags(String value, long[] numbers, int index) {
+        switch (value) {
+            case "1":
+                numbers[index] = 1;
+                return FLAG_NUMBER | FLAG_TRUE;
+            case "0":
+                return FLAG_NUMBER | FLAG_FALSE;
+            case "y": case "yes": case "on": case "true":
+                return FLAG_TRUE;
+            case "n": case "no": case "off": case "false":
+                return FLAG_FALSE;
+        }
+
+        int length = value.length();
+        boolean negative = length > 0 && value.charAt(0) == '-';
+        int position = negative ? 1 : 0;
+        int radix = 10;
+        if (length - position > 2 && value.charAt(position) == '0' && (value.charAt(position + 1) | 0x20) == 'x') {
+            radix = 16;
+            position += 2;
+        }
+        if (position == length || length - position > (radix == 16 ? 15 : 18))
+            return 0; // Not a number, or possibly too large for a long
+
+        long number = 0;
+        for (; position < length; position++) {
+            int digit = Character.digit(value.charAt(position), radix);
+            if (digit < 0)
+                return 0;
+            number = number * radix + digit;
+        }
+        numbers[index] = negative ? -number : number;
+        return FLAG_NUMBER;
+    }
+    //</editor-fold>
+
+    /**
+     * Gets a property's value.
+     * @param key The property's key.
+     * @return The property's value, or {@code null} if the property isn't set.
+     */
+    public String get(String key) { return properties.get(key); }
+
+    /**
+     * Gets a property's value.
+     * @param key The property's key.
+     * @param defaultValue The value returned if the property isn't set.
+     * @return The property's value, or the default value if the property isn't set.
+     */
+    public String get(String key, String defaultValue) { return properties.getOrDefault(key, defaultValue); }
+
+    public boolean contains(String key) { return properties.containsKey(key); }
+
+    //<editor-fold desc="Typed accessors" defaultstate="collapsed" >
+    /**
+     * Gets a property's value as a {@code long}.
+     * @param key The property's key.
+     * @param defaultValue The value returned if the property isn't set or isn't a number.
+     * @return The property's value, or the default value.
+     */
+    public long getLong(String key, long defaultValue) {
+        Integer index = indices.get(key);
+        return index != null && (flags[index] & FLAG_NUMBER) != 0 ? numbers[index] : defaultValue;
+    }
+
+    /**
+     * Gets a property's value as an {@code int}.
+     * @param key The property's key.
+     * @param defaultValue The value returned if the property isn't set or isn't a number in the range of an {@code int}.
+     * @return The property's value, or the default value.
+     */
+    public int getInt(String key, int defaultValue) {
+        Integer index = indices.get(key);
+        if (index == null || (flags[index] & FLAG_NUMBER) == 0 || numbers[index] != (int)numbers[index])
+            return defaultValue;
+        return (int)numbers[index];
+    }
+
+    /**
+     * Gets a property's value as a {@code boolean}.
+     * {@code 1}, {@code y}, {@code yes}, {@code on} and {@code true} are {@code true};
+     * {@code 0}, {@code n}, {@code no}, {@code off} and {@code false} are {@code false}.
+     * @param key The property's key.
+     * @param defaultValue The value returned if the property isn't set or isn't a boolean.
+     * @return The property's value, or the default value.
+     */
+    public boolean getBoolean(String key, boolean defaultValue) {
+        Integer index = indices.get(key);
+        if (index == null)
+            return defaultValue;
+        return (flags[index] & FLAG_TRUE) != 0 || ((flags[index] & FLAG_FALSE) == 0 && defaultValue);
+    }
+
+    /**
+     * Gets a property's value as a {@link Version}, e.g. {@code ro.build.version.release} or {@code ro.build.version.security_patch}.
+     * @param key The property's key.
+     * @return The property's value, or {@code null} if the property isn't set or isn't a version.
+     */
+    public Version getVersion(String key) {
+        Integer index = indices.get(key);
+        if (index == null)
+            return null;
+
+        Object parsed = parsedValues[index];
+        if (parsed instanceof Version)
+            return (Version)parsed;
+
+        Version version = Version.parse(properties.get(key));
+        if (version != null)
+            parsedValues[index] = version;
+        return version;
+    }
+
+    /**
+     * Gets a property's value as a constant of an enum. The value must equal the constant's name, ignoring case.
+     * @param key The property's key.
+     * @param enumType The type of the enum.
+     * @param defaultValue The value returned if the property isn't set or doesn't name a constant.
+     * @param <E> The type of the enum.
+     * @return The property's value, or the default value.
+     */
+    public <E extends Enum<E>> E getEnum(String key, Class<E> enumType, E defaultValue) {
+        Integer index = indices.get(key);
+        if (index == null)
+            return defaultValue;
+
+        Object parsed = parsedValues[index];
+        if (enumType.isInstance(parsed))
+            return enumType.cast(parsed);
+
+        String value = properties.get(key);
+        for (E constant : enumType.getEnumConstants()) {
+            if (constant.name().equalsIgnoreCase(value)) {
+                parsedValues[index] = constant;
+                return constant;
+            }
+        }
+        return defaultValue;
+    }
+    //</editor-fold>
+
+    /** @return An unmodifiable view of all properties, in the order reported by the device. */
+    public Map<String, String> asMap() { return properties; }
+
+    public int size() { return properties.size(); }
+
+    /** @return The time the snapshot was taken, in milliseconds since the epoch. */
+    public long getTimestamp() { return timestamp; }
+
+    /**
+     * Determines whether this snapshot was taken before another one, using the monotonic clock
+     * rather than the wall clock.
+     * @param other The snapshot to compare to.
+     * @return {@code true} if this snapshot is older than the other one.
+     */
+    public boolean isOlderThan(BuildPropSnapshot other) { return takenNanos - other.takenNanos < 0; }
+
+    /**
+     * Gets all properties as {@link BuildProperty} objects.
+     * @return A new list of the properties.
+     */
+    public List<BuildProperty> toList() {
+        List<BuildProperty> result = new ArrayList<>(properties.size());
+        properties.forEach((key, value) -> result.add(new BuildProperty(key, value)));
+        return result;
+    }
+
+    long getTakenNanos() { return takenNanos; }
+
+    long getGeneration() { return generation; }
+
+    long getWriteVersion() { return writeVersion; }
+
+    @Override
+    public String toString() {
+        return String.format("%d properties", properties.size());
+    }
+
+}
@@ -21,23 +21,35 @@ public class BusyBox {
 
     BusyBox(Device device) {
         parentDevice = device;
-        init();
+
+        DeviceIdentity identity = device.getIdentity();
+        if (identity.isBusyBoxInstalled() != null) {
+            installed = identity.isBusyBoxInstalled();
+            version = identity.getBusyBoxVersion();
+        } else {
+            init();
+        }
     }
 
     private void init() {
         try {
-            String cmdOutput = AndroidController.getControllerOrNull().executeCommandReturnOutput(
+            String cmdOutput = parentDevice.getController().executeCommandReturnOutput(
                 new AdbShellCommand.Factory()
                     .setDevice(parentDevice)
                     .setCommandTag("busybox")
                     .setCommandArgs(VERSION_ARG)
                     .create()
             );
-            installed = !cmdOutput.contains(NOT_FOUND);
+            String probedVersion = VersionProbe.parseVersion(cmdOutput);
+            installed = probedVersion != null;
             if (!installed)
                 version = NOT_AVAILABLE;
             else
-                version = cmdOutput;
+                version = probedVersion;
+
+            // Only clear answers are remembered; anything else is probed again next time
+            if (installed || VersionProbe.isNotFound(cmdOutput))
+                parentDevice.getIdentity().setBusyBox(installed, version);
         } catch (Exception ex) {
             Logger.getLogger(BusyBox.class.getName()).log(Level.SEVERE, String.format("Couldn't fetch busybox info!\n%s", ex));
             ex.printStackTrace();
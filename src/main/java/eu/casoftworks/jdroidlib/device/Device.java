@@ -44,63 +44,69 @@ public class Device implements IDevice {
 
     //<editor-fold desc="Static Members" defaultstate="collapsed" >
 
-    private static List<Device> encounteredDevices;
-
-    static {
-        encounteredDevices = new ArrayList<>();
-    }
-
+    /**
+     * Gets a device previously encountered by the default controller.
+     * @deprecated Devices are bound to the controller they were encountered by;
+     * use {@link AndroidController#getDeviceRegistry()} instead.
+     */
+    @Deprecated
     public static Device getDevice(String serialNo) {
-        for (Device device : encounteredDevices) {
-            if (device.serialNo.contentEquals(serialNo))
-                return device;
-        }
-        return null;
+        return getDefaultRegistry().getDevice(serialNo);
     }
 
+    /**
+     * Gets or creates a device using the default controller.
+     * @deprecated Devices are bound to the controller they were encountered by;
+     * use {@link AndroidController#getDeviceRegistry()} instead.
+     */
+    @Deprecated
     public static Device getDevice(String serialNo, String productString, String modelString, DeviceState state) {
-        Device device = getDevice(serialNo);
-        if (device == null)
-            return new Device(serialNo, productString, modelString, state);
-
-        if (device.state != state)
-            device.state = state;
-
-        return device;
+        return getDefaultRegistry().getDevice(serialNo, productString, modelString, state);
     }
 
+    /**
+     * Gets a device previously encountered by the default controller.
+     * @deprecated Devices are bound to the controller they were encountered by;
+     * use {@link AndroidController#getDeviceRegistry()} instead.
+     */
+    @Deprecated
     public static Device getDevice(Ip4Address inetAddress) {
-        for (Device device : encounteredDevices) {
-            if (device.ipAddr == inetAddress)
-                return device;
-        }
-        return null;
+        return getDefaultRegistry().getDevice(inetAddress);
     }
 
+    /**
+     * Gets or creates a device using the default controller.
+     * @deprecated Devices are bound to the controller they were encountered by;
+     * use {@link AndroidController#getDeviceRegistry()} instead.
+     */
+    @Deprecated
     public static Device getDevice(Ip4Address inetAddress, String productString, String modelString, DeviceState state) {
-        Device device = getDevice(inetAddress);
-        if (device == null)
-            return new Device(inetAddress, productString, modelString, state);
-
-        if (device.state != state)
-            device.state = state;
+        return getDefaultRegistry().getDevice(inetAddress, productString, modelString, state);
+    }
 
-        return device;
+    private static DeviceRegistry getDefaultRegistry() {
+        AndroidController controller = AndroidController.getControllerOrNull();
+        if (controller == null)
+            throw new IllegalStateException("The default AndroidController has not been initialised!");
+        return controller.getDeviceRegistry();
     }
     //</editor-fold>
 
     public static final short ADB_DEFAULT_TCP_PORT = 5555;
 
+    private static final String BOOT_COMPLETED_WAIT_SCRIPT = "while [ \"$(getprop sys.boot_completed)\" != \"1\" ]; do sleep 1; done";
+
+    private final AndroidController controller;
     private final String serialNo;
     private final Ip4Address ipAddr;
     private final boolean connectedViaTcpIp;
     private final String productString;
     private final String modelString;
-    private DeviceState state;
+    private final DeviceStateMachine stateMachine;
 
-    // Effectively final
-    private AndroidVersion version;
-    private double sdkVersion;
+    // Lazily initialised; see the respective getters.
+    // Devices are created in bulk by the registry, so nothing here may touch the device on construction.
+    private volatile IdentitySnapshot identity;
     private SuperUser su;
     private FileSystem fileSystem;
     private BusyBox busyBox;
@@ -110,61 +116,59 @@ public class Device implements IDevice {
 
     /**
      * Constructor for devices connected via USB and/or emulated devices.
+     * @param controller The controller owning this device.
      * @param serialNo The device's serial number (at least the one seen by ADB)
      * @param productString The device's product string
      * @param modelString The device's model string
      * @param state The current state of the device.
      */
-    Device(String serialNo, String productString, String modelString, DeviceState state) {
+    Device(AndroidController controller, String serialNo, String productString, String modelString, DeviceState state) {
+        this.controller = controller;
         this.serialNo = serialNo;
         this.productString = productString;
         this.modelString = modelString;
-        this.state = state;
+        this.stateMachine = new DeviceStateMachine(state);
         this.ipAddr = null;
         this.connectedViaTcpIp = false;
-        init();
     }
     
     /**
      * Constructor for devices connected via TCP/IP.
+     * @param controller The controller owning this device.
      * @param ipAddr The IP address of the device in string form.
      * @param port The port of the device. If set to 0 (zero), {@link Ip4Address#ADB_DEFAULT_PORT} will be used!
      * @param productString The device's product string.
      * @param modelString The device's model string.
      * @param state The device's current state.
      */
-    Device (String ipAddr, short port, String productString, String modelString, DeviceState state) {
-        this(Ip4Address.fromAddress(ipAddr, port), productString, modelString, state);
+    Device (AndroidController controller, String ipAddr, int port, String productString, String modelString, DeviceState state) {
+        this(controller, Ip4Address.fromAddress(ipAddr, port), productString, modelString, state);
     }
 
-    Device (Ip4Address ipAddr, String productString, String modelString, DeviceState state) {
+    Device (AndroidController controller, Ip4Address ipAddr, String productString, String modelString, DeviceState state) {
+        this.controller = controller;
         this.ipAddr = ipAddr;
         connectedViaTcpIp = true;
         this.productString = productString;
         this.modelString = modelString;
-        this.state = state;
+        this.stateMachine = new DeviceStateMachine(state);
         this.serialNo = null;
-        init();
-    }
-
-    private void init() {
-        version = setAndroidVersion();
-        sdkVersion = setSdkVersion();
-        su = new SuperUser(this);
-        fileSystem = new FileSystem(this);
-        busyBox = new BusyBox(this);
-        battery = new Battery(this);
-        buildProp = new BuildProp(this);
-        packageManager = new PackageManager(this);
     }
 
     //<editor-fold desc="Getter methods for final variables" defaultstate="collapsed" >
+    /**
+     * Gets the controller this device is bound to.
+     * All commands targeting this device are executed through this controller.
+     * @return The owning {@link AndroidController}.
+     */
+    public AndroidController getController() { return controller; }
+
     /**
      * Gets the version of Android currently installed on the device.
      * @see AndroidVersion
      * @return The version of Android.
      */
-    public AndroidVersion getVersion() { return version; }
+    public AndroidVersion getVersion() { return getAndroidVersion(); }
     
     /**
      * Gets the device's serial number (as seen by ADB).
@@ -219,7 +223,7 @@ public class Device implements IDevice {
      */
     private AndroidVersion setAndroidVersion() {
         try {
-            return AndroidVersion.fromVersionString(AndroidController.getController().executeCommandReturnOutput(AdbShellCommand.getRetrieveAndroidVersionCommand(this)));
+            return AndroidVersion.fromVersionString(controller.executeCommandReturnOutput(AdbShellCommand.getRetrieveAndroidVersionCommand(this)));
         } catch (Exception e) {
             // General catch; if anything goes wrong print the stack trace
             // and return an unknown Android version.
@@ -230,13 +234,11 @@ public class Device implements IDevice {
 
     /**
      * Sets the device's SDK version.
-     * @return
+     * @return The SDK version, or -1 if it could not be determined.
      */
     private double setSdkVersion() {
         try {
-            return Double.parseDouble(
-                    AndroidController.getController().executeCommandReturnOutput(AdbShellCommand.getRetrieveAndroidSdkVersionCommand(this))
-            );
+            return getBuildProp().getInt("ro.build.version.sdk", -1);
         } catch (Exception e) {
             // Same as with the Android version
             e.printStackTrace();
@@ -249,28 +251,131 @@ public class Device implements IDevice {
      * @see DeviceState
      * @return The device's current state. E.g. UNAUTHORIZED
      */
-    public DeviceState getDeviceState() { return state; }
+    public DeviceState getDeviceState() { return stateMachine.getState(); }
+
+    /**
+     * Gets the device's generation, which changes with every state transition (reboot, reconnect, etc).
+     * Anything derived from the device can be tagged with the generation it was obtained in and
+     * discarded once {@link DeviceStateMachine#isCurrent(long)} returns {@code false}.
+     * @return The device's current generation.
+     */
+    public long getGeneration() { return stateMachine.getGeneration(); }
+
+    /**
+     * Gets the state machine holding the device's state and generation.
+     * @return The device's {@link DeviceStateMachine}.
+     */
+    public DeviceStateMachine getStateMachine() { return stateMachine; }
     
     /**
      * Sets the device's state.
      * This method is package-private for good reason!
      * @param newState The device's new state (e.g. ONLINE or RECOVERY)
+     * @return {@code true} if the state changed (and a new generation was started), {@code false} otherwise.
+     */
+    boolean setDeviceState(DeviceState newState) {
+        return DeviceStateMachine.getState(stateMachine.transitionTo(newState)) != newState;
+    }
+
+    /**
+     * Gets the identity of this device, i.e. its build fingerprint and the results
+     * of all capability probes done so far.
+     * The first call checks the device's build fingerprint; if the controller's {@link DeviceIdentityCache}
+     * holds an identity recorded for the same fingerprint, all of its values are trusted and not probed again.
+     * @return The device's identity.
+     *
+     * @see DeviceIdentityCache
+     */
+    public DeviceIdentity getIdentity() {
+        // The device may have been updated/re-flashed while it was away, so the fingerprint is checked once per generation
+        IdentitySnapshot snapshot = identity;
+        return snapshot != null && stateMachine.isCurrent(snapshot.generation) ? snapshot.identity : probeIdentity();
+    }
+
+    private synchronized DeviceIdentity probeIdentity() {
+        long generation = stateMachine.getGeneration();
+        IdentitySnapshot snapshot = identity;
+        if (snapshot != null && snapshot.generation == generation)
+            return snapshot.identity;
+
+        String fingerprint = probeFingerprint();
+        if (fingerprint == null)
+            return new DeviceIdentity(getID(), ""); // Not reachable (yet); don't remember anything
+
+        return resolveIdentity(fingerprint, generation);
+    }
+
+    /**
+     * Gets the identity of this device for a fingerprint that has already been read,
+     * e.g. along with all other build properties, so it doesn't have to be probed separately.
+     * @param fingerprint The device's build fingerprint, or {@code null} if it wasn't read.
+     * @param generation The generation the fingerprint was read in.
+     * @return The device's identity.
      */
-    void setDeviceState(DeviceState newState) { this.state = newState; }
+    synchronized DeviceIdentity getIdentity(String fingerprint, long generation) {
+        IdentitySnapshot snapshot = identity;
+        if (snapshot != null && snapshot.generation == generation)
+            return snapshot.identity;
+        if (fingerprint == null || fingerprint.isEmpty() || !stateMachine.isCurrent(generation))
+            return getIdentity(); // The fingerprint can't be trusted for the current generation
+
+        return resolveIdentity(fingerprint, generation);
+    }
+
+    private DeviceIdentity resolveIdentity(String fingerprint, long generation) {
+        DeviceIdentityCache identityCache = controller.getIdentityCache();
+        DeviceIdentity deviceIdentity = identityCache != null ? identityCache.getIdentity(getID(), fingerprint) : new DeviceIdentity(getID(), fingerprint);
+        identity = new IdentitySnapshot(deviceIdentity, generation);
+        return deviceIdentity;
+    }
+
+    private String probeFingerprint() {
+        try {
+            String fingerprint = controller.executeCommandReturnOutput(
+                new AdbShellCommand.Factory()
+                    .setDevice(this)
+                    .setCommandTag("getprop")
+                    .setCommandArgs(DeviceIdentity.FINGERPRINT_PROPERTY)
+                    .create()
+            ).trim();
+            return fingerprint.isEmpty() || fingerprint.startsWith("error:") ? null : fingerprint;
+        } catch (IOException | IllegalDeviceStateException | InterruptedException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
 
     /**
      * Gets the version of Android installed on the device
      * represented by this object.
      * @return An {@link AndroidVersion} value.
      */
-    public AndroidVersion getAndroidVersion() { return version; }
+    public AndroidVersion getAndroidVersion() {
+        DeviceIdentity identity = getIdentity();
+        AndroidVersion version = identity.getAndroidVersion();
+        if (version == null) {
+            version = setAndroidVersion();
+            if (version != AndroidVersion.Unknown)
+                identity.setAndroidVersion(version);
+        }
+        return version;
+    }
 
     /**
      * Gets the SDK version installed on the device represented by
      * this object.
      * @return
      */
-    public double getSdkVersion() { return sdkVersion; }
+    public double getSdkVersion() {
+        DeviceIdentity identity = getIdentity();
+        double sdkVersion = identity.getSdkVersion();
+        if (Double.isNaN(sdkVersion)) {
+            sdkVersion = setSdkVersion();
+            if (sdkVersion >= 0)
+                identity.setSdkVersion(sdkVersion);
+        }
+        return sdkVersion;
+    }
     //</editor-fold>
 
     /**
@@ -281,18 +386,52 @@ public class Device implements IDevice {
      * @see RebootMode
      */
     public void rebootDevice(RebootMode mode) throws DeviceException {
+        AdbCommand.Factory factory = new AdbCommand.Factory()
+                .setDevice(this)
+                .setCommandTag("reboot");
+        if (!mode.getMode().isEmpty())
+            factory.setCommandArgs(mode.getMode()); // adb rejects an empty reboot target
+
         try {
-            AndroidController.getControllerOrNull().executeCommandNoOutput(
-                new AdbCommand.Factory()
+            controller.executeCommandNoOutput(factory.create());
+        } catch (IOException | IllegalDeviceStateException | InterruptedException e) {
+            e.printStackTrace();
+            throw new DeviceException(e);
+        }
+    }
+
+    /**
+     * Blocks until Android has finished booting on this {@link Device} ({@code sys.boot_completed} is set).
+     * The wait happens on the device within a single shell session; the device must be {@link DeviceState#Online}.
+     * @param timeout The maximum time to wait.
+     * @param timeUnit The unit of time.
+     * @return {@code true} if the device finished booting, {@code false} if the timeout passed.
+     * @throws DeviceException If the device could not be reached.
+     * @throws InterruptedException If the calling thread is interrupted while waiting.
+     */
+    public boolean waitForBootCompleted(long timeout, TimeUnit timeUnit) throws DeviceException, InterruptedException {
+        Process proc;
+        try {
+            proc = controller.executeCommandReturnProcess(
+                new AdbShellCommand.Factory()
                     .setDevice(this)
-                    .setCommandTag("reboot")
-                    .setCommandArgs(mode.getMode())
+                    .setCommandTag(BOOT_COMPLETED_WAIT_SCRIPT)
                     .create()
             );
-        } catch (IOException | IllegalDeviceStateException | InterruptedException e) {
+        } catch (IOException | IllegalDeviceStateException e) {
             e.printStackTrace();
             throw new DeviceException(e);
         }
+
+        try {
+            if (!proc.waitFor(timeout, timeUnit))
+                return false;
+            if (proc.exitValue() != 0)
+                throw new DeviceException(String.format("Could not wait for %s to finish booting! (exit code %d)", getID(), proc.exitValue()));
+            return true;
+        } finally {
+            proc.destroy();
+        }
     }
 
     /**
@@ -310,7 +449,7 @@ public class Device implements IDevice {
                 .setDevice(this)
                 .create();
         try {
-            AndroidController.getControllerOrNull().executeCommandNoOutput(command);
+            controller.executeCommandNoOutput(command);
         } catch (IOException | InterruptedException e) {
             throw new DeviceException(e);
         }
@@ -337,7 +476,7 @@ public class Device implements IDevice {
      *
      * @see SuperUser
      */
-    public SuperUser getSuperUser() { return su; }
+    public synchronized SuperUser getSuperUser() { return su != null ? su : (su = new SuperUser(this)); }
 
     /**
      * Shortcut for determining whether a device is rooted or not.
@@ -355,23 +494,43 @@ public class Device implements IDevice {
      *
      * @see FileSystem
      */
-    public FileSystem getFileSystem() { return fileSystem; }
+    public synchronized FileSystem getFileSystem() { return fileSystem != null ? fileSystem : (fileSystem = new FileSystem(this)); }
 
     /**
      * Gets an object referencing the {@link Device}'s
      * busybox installation.
      * @return An instance of {@link BusyBox}
      */
-    public BusyBox getBusyBox() {
-        return busyBox;
+    public synchronized BusyBox getBusyBox() {
+        return busyBox != null ? busyBox : (busyBox = new BusyBox(this));
     }
 
     /**
      * Gets the device's battery.
      * @return The {@link Device}'s {@link Battery}
      */
-    public Battery getBattery() { return battery; }
+    public synchronized Battery getBattery() { return battery != null ? battery : (battery = new Battery(this)); }
+
+    /**
+     * Gets the device's build properties.
+     * @return The {@link Device}'s {@link BuildProp}
+     */
+    public synchronized BuildProp getBuildProp() { return buildProp != null ? buildProp : (buildProp = new BuildProp(this)); }
+
+    /**
+     * Gets the device's package manager.
+     * @return The {@link Device}'s {@link PackageManager}
+     */
+    public synchronized PackageManager getPackageManager() { return packageManager != null ? packageManager : (packageManager = new PackageManager(this)); }
+
+    private static class IdentitySnapshot {
+        final DeviceIdentity identity;
+        final long generation;
 
-    public PackageManager getPackageManager() { return packageManager; }
+        IdentitySnapshot(DeviceIdentity identity, long generation) {
+            this.identity = identity;
+            this.generation = generation;
+        }
+    }
 
 }
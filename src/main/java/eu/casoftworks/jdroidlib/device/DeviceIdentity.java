@@ -0,0 +1,264 @@
+/*
+ * Copyright (c) 2017, Simon Cahill
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.casoftworks.jdroidlib.device;
+
+import eu.casoftworks.jdroidlib.enums.*;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * The identity of a {@link Device} and the results of its capability probes
+ * (Android version, SDK version, superuser, busybox and identifying build properties).
+ *
+ * An identity is only valid as long as the device's build fingerprint ({@code ro.build.fingerprint})
+ * doesn't change; it is therefore keyed by the device's ID and its fingerprint, which never change.
+ * All other values are mutable: they are filled in by the package-private setters as they are probed.
+ * Each change notifies the change listener, which a {@link DeviceIdentityCache} uses to persist the identity,
+ * so a restarted controller only needs to check a device's fingerprint to trust them.
+ * Values which have not been probed yet are {@code null} (or {@link Double#NaN} for the SDK version).
+ */
+public final class DeviceIdentity {
+
+    static final String FINGERPRINT_PROPERTY = "ro.build.fingerprint";
+
+    private static final byte HAS_ANDROID_VERSION = 0x01;
+    private static final byte HAS_SDK_VERSION = 0x02;
+    private static final byte HAS_SUPERUSER = 0x04;
+    private static final byte HAS_BUSYBOX = 0x08;
+
+    /**
+     * Prefixes of build properties which are fixed for a given build fingerprint.
+     * Other read-only properties (e.g. ro.runtime.firstboot) may change with every boot.
+     */
+    private static final String[] IDENTITY_PROPERTY_PREFIXES = {
+        "ro.build.", "ro.product.", "ro.system.build.", "ro.vendor.build.", "ro.hardware", "ro.board.platform", "ro.soc."
+    };
+
+    private final String deviceId;
+    private final String fingerprint;
+    private final Map<String, String> buildProperties;
+
+    private volatile AndroidVersion androidVersion;
+    private volatile double sdkVersion = Double.NaN;
+    private volatile Boolean superUserInstalled;
+    private volatile String superUserVersion;
+    private volatile Boolean busyBoxInstalled;
+    private volatile String busyBoxVersion;
+    private volatile Runnable changeListener;
+
+    DeviceIdentity(String deviceId, String fingerprint) {
+        this.deviceId = deviceId;
+        this.fingerprint = fingerprint;
+        this.buildProperties = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Determines whether a build property is part of a device's identity and may therefore be cached.
+     * @param key The property's key.
+     * @return {@code true} if the property's value is fixed for a build fingerprint.
+     */
+    public static boolean isIdentityProperty(String key) {
+        for (String prefix : IDENTITY_PROPERTY_PREFIXES) {
+            if (key.startsWith(prefix))
+                return true;
+        }
+        return false;
+    }
+
+    //<editor-fold desc="Getters" defaultstate="collapsed" >
+    /**
+     * Gets the ID of the device this identity belongs to.
+     * @return The device's ID.
+     * @see Device#getID()
+     */
+    public String getDeviceId() { return deviceId; }
+
+    /**
+     * Gets the build fingerprint this identity is valid for.
+     * @return The value of {@code ro.build.fingerprint}.
+     */
+    public String getFingerprint() { return fingerprint; }
+
+    /**
+     * @return The Android version, or {@code null} if not probed yet.
+     */
+    public AndroidVersion getAndroidVersion() { return androidVersion; }
+
+    /**
+     * @return The SDK version, or {@link Double#NaN} if not probed yet.
+     */
+    public double getSdkVersion() { return sdkVersion; }
+
+    /**
+     * @return Whether superuser is installed, or {@code null} if not probed yet.
+     */
+    public Boolean isSuperUserInstalled() { return superUserInstalled; }
+
+    /**
+     * @return The superuser version, or {@code null} if not probed yet.
+     */
+    public String getSuperUserVersion() { return superUserVersion; }
+
+    /**
+     * @return Whether busybox is installed, or {@code null} if not probed yet.
+     */
+    public Boolean isBusyBoxInstalled() { return busyBoxInstalled; }
+
+    /**
+     * @return The busybox version, or {@code null} if not probed yet.
+     */
+    public String getBusyBoxVersion() { return busyBoxVersion; }
+
+    /**
+     * Gets a cached identity build property.
+     * @param key The property's key.
+     * @return The property's value, or {@code null} if it has not been cached.
+     * @see DeviceIdentity#isIdentityProperty(String)
+     */
+    public String getBuildProperty(String key) { return buildProperties.get(key); }
+
+    /**
+     * Gets all cached identity build properties.
+     * @return An unmodifiable view of the cached properties.
+     */
+    public Map<String, String> getBuildProperties() { return Collections.unmodifiableMap(buildProperties); }
+    //</editor-fold>
+
+    //<editor-fold desc="Setters" defaultstate="collapsed" >
+    void setAndroidVersion(AndroidVersion androidVersion) {
+        this.androidVersion = androidVersion;
+        changed();
+    }
+
+    void setSdkVersion(double sdkVersion) {
+        this.sdkVersion = sdkVersion;
+        changed();
+    }
+
+    void setSuperUser(boolean installed, String version) {
+        this.superUserVersion = version;
+        this.superUserInstalled = installed;
+        changed();
+    }
+
+    void setBusyBox(boolean installed, String version) {
+        this.busyBoxVersion = version;
+        this.busyBoxInstalled = installed;
+        changed();
+    }
+
+    /**
+     * Caches a build property if it is part of the device's identity.
+     * @return {@code true} if the property was cached.
+     */
+    boolean putBuildProperty(String key, String value) {
+        if (key == null || value == null || !isIdentityProperty(key))
+            return false;
+
+        if (!value.equals(buildProperties.put(key, value)))
+            changed();
+        return true;
+    }
+
+    void setChangeListener(Runnable changeListener) { this.changeListener = changeListener; }
+
+    private void changed() {
+        Runnable listener = changeListener;
+        if (listener != null)
+            listener.run();
+    }
+    //</editor-fold>
+
+    //<editor-fold desc="Serialisation" defaultstate="collapsed" >
+    void writeTo(DataOutput output) throws IOException {
+        AndroidVersion androidVersion = this.androidVersion;
+        double sdkVersion = this.sdkVersion;
+        Boolean superUserInstalled = this.superUserInstalled;
+        Boolean busyBoxInstalled = this.busyBoxInstalled;
+
+        byte flags = 0;
+        if (androidVersion != null) flags |= HAS_ANDROID_VERSION;
+        if (!Double.isNaN(sdkVersion)) flags |= HAS_SDK_VERSION;
+        if (superUserInstalled != null) flags |= HAS_SUPERUSER;
+        if (busyBoxInstalled != null) flags |= HAS_BUSYBOX;
+
+        output.writeUTF(deviceId);
+        output.writeUTF(fingerprint);
+        output.writeByte(flags);
+        if (androidVersion != null)
+            output.writeUTF(androidVersion.name());
+        if (!Double.isNaN(sdkVersion))
+            output.writeDouble(sdkVersion);
+        if (superUserInstalled != null) {
+            output.writeBoolean(superUserInstalled);
+            output.writeUTF(String.valueOf(superUserVersion));
+        }
+        if (busyBoxInstalled != null) {
+            output.writeBoolean(busyBoxInstalled);
+            output.writeUTF(String.valueOf(busyBoxVersion));
+        }
+
+        Map<String, String> properties = new HashMap<>(buildProperties);
+        output.writeShort(properties.size());
+        for (Map.Entry<String, String> property : properties.entrySet()) {
+            output.writeUTF(property.getKey());
+            output.writeUTF(property.getValue());
+        }
+    }
+
+    static DeviceIdentity readFrom(DataInput input) throws IOException {
+        DeviceIdentity identity = new DeviceIdentity(input.readUTF(), input.readUTF());
+        byte flags = input.readByte();
+
+        if ((flags & HAS_ANDROID_VERSION) != 0) {
+            try {
+                identity.androidVersion = AndroidVersion.valueOf(input.readUTF());
+            } catch (IllegalArgumentException ex) {
+                identity.androidVersion = null; // Written by a different version of JDroidLib; re-probe
+            }
+        }
+        if ((flags & HAS_SDK_VERSION) != 0)
+            identity.sdkVersion = input.readDouble();
+        if ((flags & HAS_SUPERUSER) != 0) {
+            identity.superUserInstalled = input.readBoolean();
+            identity.superUserVersion = input.readUTF();
+        }
+        if ((flags & HAS_BUSYBOX) != 0) {
+            identity.busyBoxInstalled = input.readBoolean();
+            identity.busyBoxVersion = input.readUTF();
+        }
+
+        int properties = input.readUnsignedShort();
+        for (int i = 0; i < properties; i++)
+            identity.buildProperties.put(input.readUTF(), input.readUTF());
+
+        return identity;
+    }
+    //</editor-fold>
+
+}
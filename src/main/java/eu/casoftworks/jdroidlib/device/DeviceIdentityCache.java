@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2017, Simon Cahill
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.casoftworks.jdroidlib.device;
+
+import eu.casoftworks.jdroidlib.interfaces.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.logging.*;
+
+/**
+ * Persists {@link DeviceIdentity device identities} across restarts.
+ *
+ * Identities are keyed by device ID and build fingerprint: an identity is only handed out
+ * for the fingerprint it was recorded with, so a single {@code getprop ro.build.fingerprint}
+ * is enough to trust everything probed before. Identities recorded for an older fingerprint
+ * (e.g. before an OTA update or re-flash) are discarded.
+ *
+ * The cache file uses a compact binary format and is rewritten atomically in the background
+ * whenever an identity changes.
+ */
+public class DeviceIdentityCache {
+
+    /**
+     * The name of the default cache file in the JDroidLib home directory.
+     */
+    public static final String DEFAULT_FILE_NAME = "device-identities.bin";
+
+    private static final int MAGIC = 0x4A444944; // "JDID"
+    private static final byte FORMAT_VERSION = 1;
+
+    private final File file;
+    private final Executor flushExecutor;
+    private final ConcurrentMap<String, DeviceIdentity> identities;
+    private final AtomicBoolean flushPending;
+    private final Object flushLock;
+
+    /**
+     * Constructor.
+     * Existing identities are read from the cache file; unreadable cache files are ignored.
+     * @param file The cache file. If {@code null}, identities are only kept in memory.
+     * @param flushExecutor The executor to write the cache file on.
+     */
+    public DeviceIdentityCache(File file, Executor flushExecutor) {
+        this.file = file;
+        this.flushExecutor = flushExecutor;
+        this.identities = new ConcurrentHashMap<>();
+        this.flushPending = new AtomicBoolean();
+        this.flushLock = new Object();
+        load();
+    }
+
+    /**
+     * Gets the default cache file.
+     * @return The cache file in the JDroidLib home directory.
+     * @see IResourceManager#getJDroidLibHomeDirectory()
+     */
+    public static File getDefaultFile() {
+        return new File(IResourceManager.getJDroidLibHomeDirectory(), DEFAULT_FILE_NAME);
+    }
+
+    /**
+     * Gets the cache file.
+     * @return The cache file, or {@code null} if identities are only kept in memory.
+     */
+    public File getFile() { return file; }
+
+    /**
+     * Gets the identity of a device.
+     * If no identity is known for the device's current fingerprint, a new (empty) identity is
+     * created, replacing any identity recorded for a previous fingerprint.
+     * @param deviceId The device's ID.
+     * @param fingerprint The device's current build fingerprint.
+     * @return The device's identity.
+     */
+    public DeviceIdentity getIdentity(String deviceId, String fingerprint) {
+        DeviceIdentity identity = identities.compute(deviceId, (id, cached) ->
+            cached != null && cached.getFingerprint().equals(fingerprint) ? cached : new DeviceIdentity(id, fingerprint)
+        );
+
+        identity.setChangeListener(this::scheduleFlush);
+        return identity;
+    }
+
+    /**
+     * Removes a device's identity from the cache.
+     * @param deviceId The device's ID.
+     */
+    public void remove(String deviceId) {
+        if (identities.remove(deviceId) != null)
+            scheduleFlush();
+    }
+
+    /**
+     * Gets the number of cached identities.
+     * @return The number of identities.
+     */
+    public int size() { return identities.size(); }
+
+    /**
+     * Writes the cache to disk.
+     * @throws IOException If the cache file could not be written.
+     */
+    public void flush() throws IOException {
+        if (file == null)
+            return;
+
+        synchronized (flushLock) {
+            flushPending.set(false);
+
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (parent != null && !parent.exists() && !parent.mkdirs())
+                throw new IOException(String.format("Could not create directory %s!", parent));
+
+            File tmpFile = new File(parent, file.getName() + ".tmp");
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+                List<DeviceIdentity> snapshot = new ArrayList<>(identities.values());
+                output.writeInt(MAGIC);
+                output.writeByte(FORMAT_VERSION);
+                output.writeInt(snapshot.size());
+                for (DeviceIdentity identity : snapshot)
+                    identity.writeTo(output);
+            }
+
+            try {
+                Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+    /**
+     * Schedules a background flush, unless one is pending already.
+     * Bursts of changes (e.g. when many devices are probed at once) are coalesced in to a single write.
+     */
+    void scheduleFlush() {
+        if (file == null || !flushPending.compareAndSet(false, true))
+            return;
+
+        try {
+            flushExecutor.execute(() -> {
+                try {
+                    flush();
+                } catch (IOException ex) {
+                    Logger.getLogger(DeviceIdentityCache.class.getName()).log(Level.WARNING, String.format("Could not write device identity cache %s!", file), ex);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            flushPending.set(false); // Shutting down; the owner flushes synchronously on close
+        }
+    }
+
+    private void load() {
+        if (file == null || !file.isFile())
+            return;
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (input.readInt() != MAGIC || input.readByte() != FORMAT_VERSION) {
+                Logger.getLogger(DeviceIdentityCache.class.getName()).log(Level.INFO, String.format("Ignoring device identity cache %s of unknown format.", file));
+                return;
+            }
+
+            int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                DeviceIdentity identity = DeviceIdentity.readFrom(input);
+                identities.put(identity.getDeviceId(), identity);
+            }
+        } catch (IOException ex) {
+            identities.clear();
+            Logger.getLogger(DeviceIdentityCache.class.getName()).log(Level.WARNING, String.format("Could not read device identity cache %s! Starting with an empty cache.", file), ex);
+        }
+    }
+
+}
@@ -0,0 +1,345 @@
+/*
+ * Copyright (c) 2017, Simon Cahill
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.casoftworks.jdroidlib.device;
+
+import eu.casoftworks.jdroidlib.*;
+import eu.casoftworks.jdroidlib.enums.*;
+import eu.casoftworks.jdroidlib.util.Ip4Address;
+
+import java.lang.ref.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+import java.util.stream.*;
+
+/**
+ * Keeps track of all {@link Device}s encountered by a single {@link AndroidController}.
+ * Each controller owns exactly one registry; devices created by a registry are bound
+ * to the registry's controller and execute all of their commands through it.
+ *
+ * Devices are keyed by their ID (see {@link Device#getID()}), so a device is only
+ * ever initialised once per controller, even if it is requested concurrently.
+ *
+ * Disconnected devices are evicted once they haven't been seen for the configured
+ * eviction timeout, or when the registry grows beyond its maximum size (least recently
+ * seen first). Connected devices are never evicted.
+ * Evicted devices are only softly referenced: if a device is seen again before the
+ * garbage collector reclaims it, the very same {@link Device} object is restored.
+ * Otherwise a new one is created, which is cheap as all device subsystems are initialised lazily.
+ */
+public class DeviceRegistry {
+
+    /**
+     * The default time after which disconnected devices are evicted: one (1) hour.
+     */
+    public static final long DEFAULT_EVICTION_TIMEOUT_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private final AndroidController controller;
+    private final LongSupplier nanoClock;
+    private final ConcurrentMap<String, Entry> devices;
+    private final ConcurrentMap<String, EvictedDevice> evictedDevices;
+    private final ReferenceQueue<Device> reclaimedDevices;
+
+    private volatile long evictionTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_EVICTION_TIMEOUT_MILLIS);
+    private volatile int maxSize = 0;
+
+    /**
+     * Constructor.
+     * @param controller The controller owning this registry and all of the devices created by it.
+     */
+    public DeviceRegistry(AndroidController controller) {
+        this(requireController(controller), System::nanoTime);
+    }
+
+    DeviceRegistry(AndroidController controller, LongSupplier nanoClock) {
+        this.controller = controller;
+        this.nanoClock = nanoClock;
+        this.devices = new ConcurrentHashMap<>();
+        this.evictedDevices = new ConcurrentHashMap<>();
+        this.reclaimedDevices = new ReferenceQueue<>();
+    }
+
+    private static AndroidController requireController(AndroidController controller) {
+        if (controller == null)
+            throw new IllegalArgumentException("Controller must not be null!");
+        return controller;
+    }
+
+    /**
+     * Gets the controller owning this registry.
+     * @return The owning {@link AndroidController}.
+     */
+    public AndroidController getController() { return controller; }
+
+    //<editor-fold desc="Eviction policy" defaultstate="collapsed" >
+    /**
+     * Sets the time after which disconnected devices that haven't been seen are evicted.
+     * @param timeout The timeout. Set to 0 (zero) to disable time-based eviction.
+     * @param timeUnit The unit of time.
+     */
+    public void setEvictionTimeout(long timeout, TimeUnit timeUnit) {
+        if (timeout < 0)
+            throw new IllegalArgumentException("Eviction timeout must not be negative!");
+        evictionTimeoutNanos = timeUnit.toNanos(timeout);
+    }
+
+    /**
+     * Gets the time after which disconnected devices that haven't been seen are evicted.
+     * @param timeUnit The unit of time to return.
+     * @return The eviction timeout; 0 (zero) if time-based eviction is disabled.
+     */
+    public long getEvictionTimeout(TimeUnit timeUnit) { return timeUnit.convert(evictionTimeoutNanos, TimeUnit.NANOSECONDS); }
+
+    /**
+     * Sets the maximum number of devices held by this registry.
+     * If the registry grows beyond this size, the least recently seen disconnected devices are evicted.
+     * @param maxSize The maximum size. Set to 0 (zero) for an unbounded registry (default).
+     */
+    public void setMaxSize(int maxSize) {
+        if (maxSize < 0)
+            throw new IllegalArgumentException("Max size must not be negative!");
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Gets the maximum number of devices held by this registry.
+     * @return The maximum size; 0 (zero) if the registry is unbounded.
+     */
+    public int getMaxSize() { return maxSize; }
+
+    /**
+     * Evicts all devices according to the configured eviction policy.
+     * This is called by the owning controller whenever its device list changes.
+     * @return The number of evicted devices.
+     */
+    public int evict() {
+        expungeReclaimedDevices();
+        int evicted = 0;
+
+        long timeout = evictionTimeoutNanos;
+        if (timeout > 0) {
+            long now = nanoClock.getAsLong();
+            for (Entry entry : devices.values()) {
+                if (isEvictable(entry) && now - entry.lastSeen >= timeout && evict(entry, x -> now - x.lastSeen >= timeout))
+                    evicted++;
+            }
+        }
+
+        int max = maxSize;
+        if (max > 0 && devices.size() > max) {
+            List<Entry> candidates = devices.values().stream()
+                    .filter(DeviceRegistry::isEvictable)
+                    .sorted(Comparator.comparingLong(x -> x.lastSeen))
+                    .collect(Collectors.toList());
+            for (Entry entry : candidates) {
+                if (devices.size() <= max)
+                    break;
+                final long lastSeen = entry.lastSeen;
+                if (evict(entry, x -> x.lastSeen == lastSeen))
+                    evicted++;
+            }
+        }
+
+        return evicted;
+    }
+
+    private static boolean isEvictable(Entry entry) {
+        return entry.device.getDeviceState() == DeviceState.Disconnected;
+    }
+
+    /**
+     * Evicts a device, unless it has been seen since it was selected for eviction.
+     * Everything is re-checked atomically with the removal, as the device may be seen concurrently.
+     * @param entry The entry to evict.
+     * @param stillStale Checks whether the entry still qualifies for eviction.
+     * @return {@code true} if the device was evicted.
+     */
+    private boolean evict(Entry entry, Predicate<Entry> stillStale) {
+        String deviceId = entry.device.getID();
+        boolean[] evicted = { false };
+        devices.computeIfPresent(deviceId, (k, current) -> {
+            if (current != entry || !isEvictable(current) || !stillStale.test(current))
+                return current;
+
+            // Placed before the removal becomes visible, so a concurrent lookup restores this very device
+            evictedDevices.put(deviceId, new EvictedDevice(deviceId, entry.device, reclaimedDevices));
+            evicted[0] = true;
+            return null;
+        });
+        return evicted[0];
+    }
+
+    /**
+     * Removes the placeholders of evicted devices that have been reclaimed by the garbage collector.
+     */
+    private void expungeReclaimedDevices() {
+        Reference<? extends Device> reference;
+        while ((reference = reclaimedDevices.poll()) != null) {
+            EvictedDevice evictedDevice = (EvictedDevice)reference;
+            evictedDevices.remove(evictedDevice.deviceId, evictedDevice);
+        }
+    }
+    //</editor-fold>
+
+    /**
+     * Gets a previously encountered device connected via USB.
+     * @param serialNo The device's serial number.
+     * @return The {@link Device} or {@code null} if the device has not been encountered yet or was evicted.
+     */
+    public Device getDevice(String serialNo) {
+        Entry entry = devices.get(serialNo);
+        return entry == null || entry.device.isConnectedViaTcpIp() ? null : entry.device;
+    }
+
+    /**
+     * Gets a previously encountered device connected via USB or creates it.
+     * If the device is already known, its state is updated.
+     * @param serialNo The device's serial number.
+     * @param productString The device's product string.
+     * @param modelString The device's model string.
+     * @param state The device's current state.
+     * @return The {@link Device}.
+     */
+    public Device getDevice(String serialNo, String productString, String modelString, DeviceState state) {
+        return seen(serialNo, productString, modelString, state, () -> new Device(controller, serialNo, productString, modelString, state));
+    }
+
+    /**
+     * Gets a previously encountered device connected via TCP/IP.
+     * @param inetAddress The device's IP address.
+     * @return The {@link Device} or {@code null} if the device has not been encountered yet or was evicted.
+     */
+    public Device getDevice(Ip4Address inetAddress) {
+        Entry entry = devices.get(inetAddress.toString());
+        return entry == null || !entry.device.isConnectedViaTcpIp() ? null : entry.device;
+    }
+
+    /**
+     * Gets a previously encountered device connected via TCP/IP or creates it.
+     * If the device is already known, its state is updated.
+     * @param inetAddress The device's IP address.
+     * @param productString The device's product string.
+     * @param modelString The device's model string.
+     * @param state The device's current state.
+     * @return The {@link Device}.
+     */
+    public Device getDevice(Ip4Address inetAddress, String productString, String modelString, DeviceState state) {
+        return seen(inetAddress.toString(), productString, modelString, state, () -> new Device(controller, inetAddress, productString, modelString, state));
+    }
+
+    /**
+     * Marks a device as disconnected.
+     * Disconnected devices become eligible for eviction.
+     * @param device The device that is no longer connected.
+     */
+    public void markDisconnected(Device device) {
+        devices.computeIfPresent(device.getID(), (k, entry) -> {
+            if (entry.device == device) {
+                entry.lastSeen = nanoClock.getAsLong();
+                device.setDeviceState(DeviceState.Disconnected);
+            }
+            return entry;
+        });
+    }
+
+    private Device seen(String deviceId, String productString, String modelString, DeviceState state, Supplier<Device> deviceSupplier) {
+        // The state is updated atomically with the lookup, so the device cannot be evicted in between
+        return devices.compute(deviceId, (k, entry) -> {
+            if (entry == null)
+                entry = new Entry(rehydrate(deviceId, productString, modelString, deviceSupplier));
+
+            entry.lastSeen = nanoClock.getAsLong();
+            entry.device.setDeviceState(state);
+            return entry;
+        }).device;
+    }
+
+    /**
+     * Restores an evicted device if it's still reachable and describes the same hardware;
+     * creates a new device otherwise.
+     */
+    private Device rehydrate(String deviceId, String productString, String modelString, Supplier<Device> deviceSupplier) {
+        EvictedDevice evictedDevice = evictedDevices.remove(deviceId);
+        Device device = evictedDevice == null ? null : evictedDevice.get();
+
+        if (device != null
+                && Objects.equals(device.getProductString(), productString)
+                && Objects.equals(device.getModelString(), modelString))
+            return device;
+
+        return deviceSupplier.get();
+    }
+
+    /**
+     * Gets all devices currently held by this registry.
+     * @return An unmodifiable snapshot of all encountered and not yet evicted devices.
+     */
+    public Collection<Device> getDevices() {
+        return Collections.unmodifiableList(devices.values().stream().map(x -> x.device).collect(Collectors.toList()));
+    }
+
+    /**
+     * Removes a device from this registry.
+     * The next time the device is encountered, it will be re-initialised.
+     * @param device The device to remove.
+     * @return {@code true} if the device was removed, {@code false} otherwise.
+     */
+    public boolean removeDevice(Device device) {
+        String deviceId = device.getID();
+        evictedDevices.remove(deviceId);
+
+        Entry entry = devices.get(deviceId);
+        return entry != null && entry.device == device && devices.remove(deviceId, entry);
+    }
+
+    /**
+     * Gets the number of devices in this registry.
+     * Evicted devices are not counted.
+     * @return The number of devices.
+     */
+    public int size() { return devices.size(); }
+
+    private static final class Entry {
+
+        final Device device;
+        volatile long lastSeen;
+
+        Entry(Device device) { this.device = device; }
+
+    }
+
+    private static final class EvictedDevice extends SoftReference<Device> {
+
+        final String deviceId;
+
+        EvictedDevice(String deviceId, Device device, ReferenceQueue<Device> queue) {
+            super(device, queue);
+            this.deviceId = deviceId;
+        }
+
+    }
+
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2017, Simon Cahill
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.casoftworks.jdroidlib.device;
+
+import eu.casoftworks.jdroidlib.enums.*;
+
+/**
+ * Describes a (debounced) state transition of a device connected to the host.
+ */
+public class DeviceStateChangedEvent {
+
+    private final String deviceId;
+    private final Device device;
+    private final DeviceState previousState;
+    private final DeviceState newState;
+    private final long timestamp;
+
+    /**
+     * Initialises a new instance of this class.
+     * @param deviceId The ID (serial number or IP address) of the device, as seen by ADB.
+     * @param device The {@link Device} the event refers to. May be null!
+     * @param previousState The state the device was in before the transition.
+     * @param newState The state the device is now in.
+     * @param timestamp The time (in ms since epoch) the transition was observed.
+     */
+    public DeviceStateChangedEvent(String deviceId, Device device, DeviceState previousState, DeviceState newState, long timestamp) {
+        this.deviceId = deviceId;
+        this.device = device;
+        this.previousState = previousState;
+        this.newState = newState;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * Gets the ID of the device as seen by ADB.
+     * @return The device's serial number or IP address.
+     */
+    public String getDeviceId() { return deviceId; }
+
+    /**
+     * Gets the {@link Device} this event refers to.
+     * @return The {@link Device}, or {@code null} if the device could not be resolved.
+     */
+    public Device getDevice() { return device; }
+
+    /**
+     * Gets the state the device was in before the transition.
+     * @return The previous state. {@link DeviceState#Disconnected} if the device was just connected.
+     */
+    public DeviceState getPreviousState() { return previousState; }
+
+    /**
+     * Gets the state the device is now in.
+     * @return The new state. {@link DeviceState#Disconnected} if the device was disconnected.
+     */
+    public DeviceState getNewState() { return newState; }
+
+    /**
+     * Gets the time the transition was observed.
+     * @return The time in ms since epoch.
+     */
+    public long getTimestamp() { return timestamp; }
+
+    /**
+     * Gets a value indicating whether this event represents a newly connected device.
+     * @return {@code true} if the device was previously disconnected.
+     */
+    public boolean isConnect() { return previousState == DeviceState.Disconnected; }
+
+    /**
+     * Gets a value indicating whether this event represents a disconnected device.
+     * @return {@code true} if the device is no longer connected.
+     */
+    public boolean isDisconnect() { return newState == DeviceState.Disconnected; }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %s -> %s", deviceId, previousState, newState);
+    }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2017, Simon Cahill
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.casoftworks.jdroidlib.device;
+
+import eu.casoftworks.jdroidlib.enums.*;
+
+import java.util.concurrent.atomic.*;
+
+/**
+ * The state of a {@link Device}, together with a generation number.
+ *
+ * The state and generation are packed in to a single {@code long} (a stamp), so both are always read and
+ * changed together, atomically and without locks. The generation starts at zero and is incremented by every
+ * transition (reboot, reconnect, switch to recovery, etc), so anything derived from the device while it was
+ * in a given generation (cached properties, open sessions) can tell whether it is still valid simply by
+ * comparing generations.
+ *
+ * ADB may report any state after any other (debounced tracking coalesces intermediate states), so no
+ * transition between two different states is rejected; a transition to the current state is a no-op.
+ * Conditional transitions are available via {@link DeviceStateMachine#compareAndTransition(long, DeviceState)}.
+ */
+public final class DeviceStateMachine {
+
+    private static final int STATE_BITS = 8;
+    private static final long STATE_MASK = (1L << STATE_BITS) - 1;
+    private static final DeviceState[] STATES = DeviceState.values();
+
+    private final AtomicLong stamp;
+
+    DeviceStateMachine(DeviceState initialState) {
+        stamp = new AtomicLong(pack(0, initialState));
+    }
+
+    /**
+     * Gets the current state and generation.
+     * @return The current stamp; decode it using {@link DeviceStateMachine#getState(long)} and {@link DeviceStateMachine#getGeneration(long)}.
+     */
+    public long getStamp() { return stamp.get(); }
+
+    /**
+     * Gets the current state.
+     * @return The current {@link DeviceState}.
+     */
+    public DeviceState getState() { return getState(stamp.get()); }
+
+    /**
+     * Gets the current generation.
+     * @return The number of transitions since the device was first encountered.
+     */
+    public long getGeneration() { return getGeneration(stamp.get()); }
+
+    /**
+     * Gets a value indicating whether no transition happened since the given generation.
+     * @param generation A generation obtained earlier.
+     * @return {@code true} if the device is still in that generation.
+     */
+    public boolean isCurrent(long generation) { return getGeneration() == generation; }
+
+    /**
+     * Transitions to a new state, starting a new generation.
+     * Does nothing if the device is already in the state.
+     * @param newState The new state.
+     * @return The stamp before the transition; if its state equals the new state, nothing changed.
+     */
+    long transitionTo(DeviceState newState) {
+        while (true) {
+            long current = stamp.get();
+            if (getState(current) == newState || stamp.compareAndSet(current, pack(getGeneration(current) + 1, newState)))
+                return current;
+        }
+    }
+
+    /**
+     * Transitions to a new state if nothing changed since the given stamp was obtained.
+     * @param expectedStamp The stamp the transition is based on.
+     * @param newState The new state.
+     * @return {@code true} if the transition was made (or the device already was in the new state and nothing
+     *         changed since), {@code false} if another transition happened in the meantime.
+     */
+    public boolean compareAndTransition(long expectedStamp, DeviceState newState) {
+        return getState(expectedStamp) == newState
+                ? stamp.get() == expectedStamp
+                : stamp.compareAndSet(expectedStamp, pack(getGeneration(expectedStamp) + 1, newState));
+    }
+
+    public static DeviceState getState(long stamp) { return STATES[(int)(stamp & STATE_MASK)]; }
+
+    public static long getGeneration(long stamp) { return stamp >>> STATE_BITS; }
+
+    private static long pack(long generation, DeviceState state) { return generation << STATE_BITS | state.ordinal(); }
+
+    @Override
+    public String toString() {
+        long current = stamp.get();
+        return String.format("%s (generation %d)", getState(current), getGeneration(current));
+    }
+
+}
@@ -5,6 +5,7 @@ import eu.casoftworks.jdroidlib.commands.*;
 import eu.casoftworks.jdroidlib.device.fs.*;
 import eu.casoftworks.jdroidlib.exception.*;
 import eu.casoftworks.jdroidlib.interfaces.*;
+import eu.casoftworks.jdroidlib.util.*;
 
 import java.io.*;
 import java.util.*;
@@ -23,7 +24,7 @@ public class FileSystem {
 
     FileSystem(Device device) {
         parentDevice = device;
-        adbController = AndroidController.getControllerOrNull();
+        adbController = device.getController();
         rootDirectory = new AndroidDirectory(device, IFileSystemEntry.LINUX_PATH_SEPARATOR);
     }
 
@@ -122,7 +123,7 @@ public class FileSystem {
         if (dest.exists())
             throw new CannotTouchException(String.format("%s already exists!", dest.getFullPath()));
 
-        String cmdOutput = AndroidController.getControllerOrNull().executeCommandReturnOutput(
+        String cmdOutput = adbController.executeCommandReturnOutput(
             new AdbCommand.Factory()
                 .setDevice(parentDevice)
                 .setCommandTag("push")
@@ -135,4 +136,34 @@ public class FileSystem {
 
     }
 
+
+    /**
+     * Streams data in to a file on the parent {@link Device}, without creating a file on the host.
+     * An existing file at the destination is overwritten.
+     * @param src The data to push. Not closed by this method.
+     * @param destination The full path of the file on the {@link Device}.
+     * @param limiter Caps the transfer's throughput; share a limiter to cap several transfers together.
+     * @return The number of bytes pushed.
+     * @throws IOException If an I/O error occurs on the host.
+     * @throws DeviceException If the data could not be written to the {@link Device}.
+     * @throws InterruptedException If the thread is interrupted during the transfer.
+     */
+    public long push(InputStream src, String destination, BandwidthLimiter limiter) throws IOException, DeviceException, InterruptedException {
+        // exec-in (unlike shell) passes binary data through unaltered
+        StreamingCommand.Result result = StreamingCommand.execute(
+            adbController,
+            new AdbCommand.Factory()
+                .setDevice(parentDevice)
+                .setCommandTag("exec-in")
+                .setCommandArgs("cat > " + ShellQuoter.quote(destination))
+                .create(),
+            src, limiter
+        );
+
+        if (result.getExitCode() != 0 || !result.getOutput().trim().isEmpty())
+            throw new FileCouldNotBePushedException(String.format("Could not stream to %s on %s! (%s)", destination, parentDevice.getID(), result.getOutput().trim()));
+
+        return result.getBytesWritten();
+    }
+
 }
@@ -2,13 +2,20 @@ package eu.casoftworks.jdroidlib.device;
 
 import eu.casoftworks.jdroidlib.*;
 import eu.casoftworks.jdroidlib.commands.*;
+import eu.casoftworks.jdroidlib.device.fs.*;
 import eu.casoftworks.jdroidlib.device.pm.*;
 import eu.casoftworks.jdroidlib.device.pm.Package;
 import eu.casoftworks.jdroidlib.enums.*;
 import eu.casoftworks.jdroidlib.exception.*;
+import eu.casoftworks.jdroidlib.interfaces.*;
+import eu.casoftworks.jdroidlib.util.*;
 
 import java.io.*;
+import java.nio.channels.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.*;
+import java.util.regex.*;
 
 /**
  * Device class; represents a device's package manager.
@@ -20,13 +27,17 @@ public class PackageManager {
 
     public static final String PKG_LIST_BEGIN = "package:";
     public static final String INSTALLER_DEFINITION = "installer=";
+    public static final String INSTALL_SUCCESS = "Success";
+    public static final int STREAMING_CMD_MIN_SDK = 24;
+
+    private static final Pattern SESSION_ID_PATTERN = Pattern.compile("\\[([0-9]+)\\]");
 
     private final Device parentDevice;
     private final AndroidController adbController;
 
     PackageManager(Device device) {
         parentDevice = device;
-        adbController = AndroidController.getControllerOrNull();
+        adbController = device.getController();
     }
 
     /**
@@ -36,10 +47,13 @@ public class PackageManager {
      * @throws DeviceException
      */
     public void installPackage(ApkFile appFile, InstallFlag... flags) throws DeviceException {
+        List<String> args = getInstallArgs(flags);
+        args.add(appFile.getAbsolutePath());
+
         AdbCommand command = new AdbCommand.Factory()
                 .setDevice(parentDevice)
                 .setCommandTag("install")
-                .setCommandArgs(appFile.getAbsolutePath(), InstallFlag.getArguments(flags))
+                .setCommandArgs(args.toArray(new String[0]))
                 .create();
         try {
             adbController.executeCommandNoOutput(command);
@@ -50,7 +64,280 @@ public class PackageManager {
     }
 
     /**
-     * List packages on the {@link Device}
+     * Installs a package which has already been copied to the {@link Device}, e.g. in to {@code /data/local/tmp}.
+     * @param remotePath The full path of the .apk on the {@link Device}.
+     * @param flags The flags to apply. See: {@link InstallFlag}
+     * @throws DeviceException If the package manager did not report success.
+     */
+    public void installStagedPackage(String remotePath, InstallFlag... flags) throws DeviceException {
+        List<String> args = new ArrayList<>();
+        args.add("install");
+        args.addAll(getInstallArgs(flags));
+        args.add(ShellQuoter.quote(remotePath));
+
+        String output;
+        try {
+            output = adbController.executeCommandReturnOutput(
+                    new AdbShellCommand.Factory()
+                        .setDevice(parentDevice)
+                        .setCommandTag("pm")
+                        .setCommandArgs(args.toArray(new String[0]))
+                        .create()
+            );
+        } catch (InterruptedException | IOException ex) {
+            ex.printStackTrace();
+            throw new DeviceException(ex);
+        }
+
+        checkInstallOutput(output);
+    }
+
+    /**
+     * Streams a package in to the {@link Device}'s package manager ({@code cmd package install -S}).
+     * Neither a file on the host nor a staged copy on the {@link Device} is created.
+     * @param src The package's contents. Not closed by this method.
+     * @param size The exact size of the package in bytes.
+     * @param flags The flags to apply. See: {@link InstallFlag}
+     * @throws DeviceException If the package could not be streamed or the package manager did not report success.
+     */
+    public void installPackage(InputStream src, long size, InstallFlag... flags) throws DeviceException {
+        if (src == null)
+            throw new IllegalArgumentException("Source must not be null!");
+        if (size <= 0)
+            throw new IllegalArgumentException("Size must be positive!");
+
+        StreamingCommand.Result result;
+        try {
+            result = StreamingCommand.execute(
+                    adbController,
+                    new AdbCommand.Factory()
+                        .setDevice(parentDevice)
+                        .setCommandTag("exec-in")
+                        .setCommandArgs(getStreamingInstallCommand(size, parentDevice.getSdkVersion() >= STREAMING_CMD_MIN_SDK, flags))
+                        .create(),
+                    src, size, BandwidthLimiter.UNLIMITED
+            );
+        } catch (InterruptedException | IOException ex) {
+            ex.printStackTrace();
+            throw new DeviceException(ex);
+        }
+
+        checkStreamedInstall(result, size, "Installation failed!");
+    }
+
+    /**
+     * Streams a package in to the {@link Device}'s package manager.
+     * @param src The channel providing the package's contents. Not closed by this method.
+     * @param size The exact size of the package in bytes.
+     * @param flags The flags to apply. See: {@link InstallFlag}
+     * @throws DeviceException If the package could not be streamed or the package manager did not report success.
+     *
+     * @see #installPackage(InputStream, long, InstallFlag...)
+     */
+    public void installPackage(ReadableByteChannel src, long size, InstallFlag... flags) throws DeviceException {
+        if (src == null)
+            throw new IllegalArgumentException("Source must not be null!");
+        // Channels.newInputStream would close the channel along with the stream; the stream is never closed here
+        installPackage(Channels.newInputStream(src), size, flags);
+    }
+
+    /**
+     * Streams a package held in memory in to the {@link Device}'s package manager.
+     * @param apk The package's contents.
+     * @param flags The flags to apply. See: {@link InstallFlag}
+     * @throws DeviceException If the package could not be streamed or the package manager did not report success.
+     */
+    public void installPackage(byte[] apk, InstallFlag... flags) throws DeviceException {
+        if (apk == null)
+            throw new IllegalArgumentException("Package contents must not be null!");
+        installPackage(new ByteArrayInputStream(apk), apk.length, flags);
+    }
+
+    /**
+     * Installs an application split in to several APKs (e.g. an app bundle's base and configuration splits)
+     * in a single install session. All splits are written in to the session concurrently, and the application
+     * is only installed once every split has been written; if any split fails, the session is abandoned.
+     * @param splits The splits to install. Their names must be unique.
+     * @param flags The flags to apply. See: {@link InstallFlag}
+     * @return The transfer of each split, in the order given.
+     * @throws DeviceException If a split could not be written or the package manager did not report success.
+     */
+    public List<SplitTransfer> installPackages(Collection<ApkSplit> splits, InstallFlag... flags) throws DeviceException {
+        if (splits == null || splits.isEmpty())
+            throw new IllegalArgumentException("At least one split must be given!");
+
+        Set<String> names = new HashSet<>();
+        long totalSize = 0;
+        for (ApkSplit split : splits) {
+            if (!names.add(split.getName()))
+                throw new IllegalArgumentException(String.format("Split names must be unique! (%s)", split.getName()));
+            totalSize += split.getSize();
+        }
+
+        final String pm = getPackageManagerCommand(parentDevice.getSdkVersion() >= STREAMING_CMD_MIN_SDK);
+        List<String> args = getInstallArgs(flags);
+        args.add("-S");
+        args.add(Long.toString(totalSize));
+        final int sessionId = parseSessionId(executeShellCommand(pm + " install-create", args.toArray(new String[0])));
+
+        List<FutureTask<SplitTransfer>> writes = new ArrayList<>();
+        boolean committed = false;
+        try {
+            for (ApkSplit split : splits)
+                writes.add(new FutureTask<>(() -> writeSplit(pm, sessionId, split)));
+
+            // Splits not picked up by the executor (yet) are written on this thread; a FutureTask only ever runs once
+            ExecutorService executor = adbController.getExecutorService();
+            writes.subList(1, writes.size()).forEach(executor::execute);
+            writes.forEach(FutureTask::run);
+
+            List<SplitTransfer> transfers = new ArrayList<>();
+            for (FutureTask<SplitTransfer> write : writes)
+                transfers.add(getSplitTransfer(write));
+
+            checkInstallOutput(executeShellCommand(pm + " install-commit", Integer.toString(sessionId)));
+            committed = true;
+            return transfers;
+        } finally {
+            if (!committed) {
+                writes.forEach(x -> x.cancel(true));
+                try {
+                    executeShellCommand(pm + " install-abandon", Integer.toString(sessionId));
+                } catch (DeviceException ex) {
+                    Logger.getLogger(getClass().getName()).log(Level.WARNING, String.format("Could not abandon install session %d!", sessionId), ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Streams a single split in to an install session.
+     */
+    private SplitTransfer writeSplit(String pm, int sessionId, ApkSplit split) throws IOException, IllegalDeviceStateException, InterruptedException, DeviceException {
+        final long startTime = System.nanoTime();
+        StreamingCommand.Result result;
+
+        try (InputStream iStream = split.open()) {
+            result = StreamingCommand.execute(
+                    adbController,
+                    new AdbCommand.Factory()
+                        .setDevice(parentDevice)
+                        .setCommandTag("exec-in")
+                        .setCommandArgs(getInstallWriteCommand(pm, sessionId, split))
+                        .create(),
+                    iStream, split.getSize(), BandwidthLimiter.UNLIMITED
+            );
+        }
+
+        checkStreamedInstall(result, split.getSize(), String.format("Could not write split %s!", split.getName()));
+        return new SplitTransfer(split.getName(), result.getBytesWritten(), System.nanoTime() - startTime);
+    }
+
+    private static SplitTransfer getSplitTransfer(FutureTask<SplitTransfer> write) throws DeviceException {
+        try {
+            return write.get();
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof DeviceException)
+                throw (DeviceException)ex.getCause();
+            throw new DeviceException(ex.getCause());
+        } catch (InterruptedException | CancellationException ex) {
+            ex.printStackTrace();
+            throw new DeviceException(ex);
+        }
+    }
+
+    private String executeShellCommand(String tag, String... args) throws DeviceException {
+        try {
+            return adbController.executeCommandReturnOutput(
+                    new AdbShellCommand.Factory()
+                        .setDevice(parentDevice)
+                        .setCommandTag(tag)
+                        .setCommandArgs(args)
+                        .create()
+            );
+        } catch (InterruptedException | IOException ex) {
+            ex.printStackTrace();
+            throw new DeviceException(ex);
+        }
+    }
+
+    /**
+     * Parses the session ID from the output of {@code install-create}.
+     * Example input: {@code Success: created install session [1234567]}
+     * @throws DeviceException If no session was created.
+     */
+    static int parseSessionId(String output) throws DeviceException {
+        Matcher matcher = SESSION_ID_PATTERN.matcher(output);
+        if (!output.contains(INSTALL_SUCCESS) || !matcher.find())
+            throw new DeviceException(String.format("Could not create install session! (%s)", output.trim()));
+        return Integer.parseInt(matcher.group(1));
+    }
+
+    static String getInstallWriteCommand(String pm, int sessionId, ApkSplit split) {
+        return String.format("%s install-write -S %d %d %s -", pm, split.getSize(), sessionId, ShellQuoter.quote(split.getName()));
+    }
+
+    /**
+     * Gets the command talking to the package service.
+     * @param useCmd {@code true} to use {@code cmd} (Android 7.0+), {@code false} to use {@code pm}.
+     */
+    static String getPackageManagerCommand(boolean useCmd) {
+        return useCmd ? "cmd package" : "pm";
+    }
+
+    /**
+     * Gets the command streaming a package of a given size from standard input in to the package manager.
+     * @param useCmd {@code true} to talk to the package service via {@code cmd} (Android 7.0+), {@code false} to use {@code pm}.
+     */
+    static String getStreamingInstallCommand(long size, boolean useCmd, InstallFlag... flags) {
+        List<String> args = new ArrayList<>();
+        args.add(getPackageManagerCommand(useCmd) + " install");
+        args.addAll(getInstallArgs(flags));
+        args.add("-S");
+        args.add(Long.toString(size));
+        return String.join(" ", args);
+    }
+
+    /**
+     * Gets the arguments for the given install flags.
+     * Unlike {@link InstallFlag#getArguments(InstallFlag...)}, each flag is passed separately,
+     * as the package manager does not accept combined flags.
+     */
+    static List<String> getInstallArgs(InstallFlag... flags) {
+        List<String> args = new ArrayList<>();
+        for (InstallFlag flag : flags)
+            args.add("-" + flag.getArg());
+        return args;
+    }
+
+    /**
+     * Checks the outcome of a command streaming a package (or split) in to the package manager.
+     * When the package manager fails, it stops reading its input; its failure reason is reported
+     * rather than the number of bytes it accepted. A short source is only reported if the source ran dry.
+     * @param failure The message describing the failure, e.g. "Installation failed!"
+     * @throws DeviceException If the package manager did not report success or the source was too short.
+     */
+    static void checkStreamedInstall(StreamingCommand.Result result, long size, String failure) throws DeviceException {
+        boolean sourceShort = result.isSourceShort(size);
+        if (sourceShort || !result.getOutput().contains(INSTALL_SUCCESS)) {
+            throw new DeviceException(String.format("%s (%s)%s", failure, result.getOutput().trim(),
+                    sourceShort ? String.format(" The source ended after %d of %d bytes.", result.getBytesWritten(), size) : ""));
+        }
+    }
+
+    /**
+     * Checks the output of {@code pm install} and its variants.
+     * @throws DeviceException If the output does not report success; the exception carries the failure reason.
+     */
+    static void checkInstallOutput(String output) throws DeviceException {
+        if (!output.contains(INSTALL_SUCCESS))
+            throw new DeviceException(String.format("Installation failed! (%s)", output.trim()));
+    }
+
+    /**
+     * List packages on the {@link Device}.
+     * This costs a single call to {@code pm list packages}; the packages' files are not accessed
+     * until their metadata is requested. See {@link #loadFileMetadata(Collection)}.
      * @param filters The filters to apply. See: {@link PackageFilter}
      * @return The packages installed on the {@link Device}
      * @throws DeviceException
@@ -66,34 +353,16 @@ public class PackageManager {
         AdbShellCommand command = new AdbShellCommand.Factory()
                 .setDevice(parentDevice)
                 .setCommandTag("pm")
-                .setCommandArgs((String[])args.toArray())
+                .setCommandArgs(args.toArray(new String[0]))
                 .create();
 
         try {
             try (BufferedReader reader = new BufferedReader(new StringReader(adbController.executeCommandReturnOutput(command)))) {
                 String line;
                 while ((line = reader.readLine()) != null) {
-                    if (!line.startsWith(PKG_LIST_BEGIN)) continue;
-
-                    line = line.replace(PKG_LIST_BEGIN, "");
-
-                    String installer = null;
-                    String file;
-                    String pkg;
-
-                    String[] split = line.split(INSTALLER_DEFINITION);
-
-                    if (split.length == 2) {
-                        installer = split[1];
-                    }
-
-                    split = split[0].trim().split("=");
-
-                    file = split[1];
-                    pkg = split[0];
-
-                    packages.add(new Package(pkg, parentDevice, file, installer));
-
+                    Package pkg = parsePackageLine(parentDevice, line);
+                    if (pkg != null)
+                        packages.add(pkg);
                 }
             }
         } catch (InterruptedException | IOException ex) {
@@ -103,6 +372,52 @@ public class PackageManager {
         return packages;
     }
 
+    /**
+     * Fetches the file metadata (size, owner, modification time, etc.) of several packages at once.
+     * Without calling this method, each package's metadata is fetched individually on first access.
+     * @param packages The packages to fetch the metadata for.
+     * @throws DeviceException
+     */
+    public void loadFileMetadata(Collection<Package> packages) throws DeviceException {
+        List<AndroidFile> files = new ArrayList<>();
+        for (Package pkg : packages) {
+            if (pkg.getAssociatedFile() instanceof AndroidFile)
+                files.add((AndroidFile)pkg.getAssociatedFile());
+        }
+        AndroidFile.loadMetadata(files);
+    }
+
+    /**
+     * Parses a single line of {@code pm list packages -f [-i]} output.
+     * Example input:
+     * <pre>
+     * package:/data/app/~~Aa0==/com.example-Bb1==/base.apk=com.example  installer=com.android.vending
+     * </pre>
+     * Paths may contain '=', package names may not; the package name therefore follows the last '='.
+     * @return The parsed package, or {@code null} if the line does not describe a package.
+     */
+    static Package parsePackageLine(Device device, String line) {
+        line = line.trim();
+        if (!line.startsWith(PKG_LIST_BEGIN)) return null;
+
+        String installer = null;
+        int end = line.length();
+        int installerStart = line.lastIndexOf(" " + INSTALLER_DEFINITION);
+
+        if (installerStart >= 0) {
+            installer = line.substring(installerStart + INSTALLER_DEFINITION.length() + 1).trim();
+            if (installer.isEmpty() || installer.equals("null"))
+                installer = null;
+            end = installerStart;
+        }
+
+        String entry = line.substring(PKG_LIST_BEGIN.length(), end).trim();
+        int separator = entry.lastIndexOf('=');
+        if (separator <= 0 || separator == entry.length() - 1) return null;
+
+        return new Package(entry.substring(separator + 1), device, entry.substring(0, separator), installer);
+    }
+
     /**
      * Removes an installed package from a {@link Device}.
      * @param pkg The {@link Package} to remove.
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2017, Simon Cahill
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.casoftworks.jdroidlib.device;
+
+import eu.casoftworks.jdroidlib.*;
+import eu.casoftworks.jdroidlib.exception.*;
+import eu.casoftworks.jdroidlib.interfaces.*;
+import eu.casoftworks.jdroidlib.util.*;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.util.concurrent.*;
+
+/**
+ * <b>This is NOT a public class!</b>
+ *
+ * Executes a command and streams data in to its standard input, e.g. {@code adb exec-in "cat > file"}.
+ * Nothing is buffered on the host beyond a single chunk.
+ */
+final class StreamingCommand {
+
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    private StreamingCommand() { }
+
+    /**
+     * Executes a command, writes all of a stream's bytes to the command's input and waits for the command to finish.
+     * If the command exits before all bytes were written, the remaining bytes are discarded.
+     * @param controller The controller executing the command.
+     * @param command The command to execute.
+     * @param input The data to stream. Not closed by this method.
+     * @param limiter The limiter capping the transfer's throughput.
+     * @return The command's exit code and output, and how much of the stream was written.
+     */
+    static Result execute(AndroidController controller, ICommand command, InputStream input, BandwidthLimiter limiter)
+            throws IOException, IllegalDeviceStateException, InterruptedException {
+        return execute(controller, command, input, Long.MAX_VALUE, limiter);
+    }
+
+    /**
+     * Executes a command and writes at most a given number of a stream's bytes to the command's input.
+     * @param maxBytes The maximum number of bytes to write; the rest of the stream is not read.
+     * @see #execute(AndroidController, ICommand, InputStream, BandwidthLimiter)
+     */
+    static Result execute(AndroidController controller, ICommand command, InputStream input, long maxBytes, BandwidthLimiter limiter)
+            throws IOException, IllegalDeviceStateException, InterruptedException {
+        Process proc = controller.executeCommandReturnProcess(command);
+        long written = 0;
+        boolean endOfInput = false;
+
+        try {
+            try (OutputStream oStream = proc.getOutputStream()) {
+                byte[] buffer = new byte[CHUNK_SIZE];
+                while (written < maxBytes) {
+                    int read = input.read(buffer, 0, (int)Math.min(buffer.length, maxBytes - written));
+                    if (read < 0) {
+                        endOfInput = true;
+                        break;
+                    }
+                    if (Thread.interrupted())
+                        throw new InterruptedException();
+
+                    limiter.acquire(read);
+                    oStream.write(buffer, 0, read);
+                    written += read;
+                }
+            } catch (IOException ex) {
+                // The process has closed its input (e.g. because it failed); its output says why
+                if (proc.isAlive() && !proc.waitFor(1, TimeUnit.SECONDS))
+                    throw ex;
+            }
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            try (InputStream iStream = proc.getInputStream()) {
+                byte[] buffer = new byte[4096];
+                int read;
+                while ((read = iStream.read(buffer)) >= 0)
+                    output.write(buffer, 0, read);
+            }
+
+            int exitCode = proc.waitFor(controller.getTimeout(), controller.getTimeUnit()) ? proc.exitValue() : -1;
+            return new Result(exitCode, new String(output.toByteArray(), StandardCharsets.UTF_8), written, endOfInput);
+        } finally {
+            if (proc.isAlive())
+                proc.destroy();
+        }
+    }
+
+    /**
+     * The outcome of a streaming command.
+     */
+    static final class Result {
+
+        private final int exitCode;
+        private final String output;
+        private final long bytesWritten;
+        private final boolean endOfInput;
+
+        Result(int exitCode, String output, long bytesWritten, boolean endOfInput) {
+            this.exitCode = exitCode;
+            this.output = output;
+            this.bytesWritten = bytesWritten;
+            this.endOfInput = endOfInput;
+        }
+
+        /** @return The command's exit code, or -1 if the command did not finish in time. */
+        int getExitCode() { return exitCode; }
+
+        String getOutput() { return output; }
+
+        long getBytesWritten() { return bytesWritten; }
+
+        /**
+         * Gets a value indicating whether the input stream ran dry before the requested number of bytes was written.
+         * If the command stopped reading its input early instead, this is {@code false}.
+         * @param expectedBytes The number of bytes that should have been written.
+         * @return {@code true} if the source was shorter than expected.
+         */
+        boolean isSourceShort(long expectedBytes) { return endOfInput && bytesWritten < expectedBytes; }
+
+    }
+
+}
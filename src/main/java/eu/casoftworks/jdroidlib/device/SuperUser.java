@@ -29,15 +29,20 @@ public class SuperUser {
 
     private void refreshData() {
         try {
-            String output = AndroidController.getController().executeCommandReturnOutput(new AdbShellCommand.Factory()
+            String output = parentDevice.getController().executeCommandReturnOutput(new AdbShellCommand.Factory()
                     .setDevice(parentDevice)
                     .setCommandTag("su")
                     .setCommandArgs(VERSION_ARG)
                     .create()
             );
-            installed = !output.contains(NOT_FOUND);
-            version = installed ? output : NOT_AVAILABLE;
-        } catch (IOException | IllegalDeviceStateException | InterruptedException | ExecutionException | PlatformNotSupportedException e) {
+            String probedVersion = VersionProbe.parseVersion(output);
+            installed = probedVersion != null;
+            version = installed ? probedVersion : NOT_AVAILABLE;
+
+            // Only clear answers are remembered; anything else is probed again next time
+            if (installed || VersionProbe.isNotFound(output))
+                parentDevice.getIdentity().setSuperUser(installed, version);
+        } catch (IOException | IllegalDeviceStateException | InterruptedException e) {
             e.printStackTrace();
             // Just to be on the safe side
             installed = false;
@@ -45,13 +50,33 @@ public class SuperUser {
         }
     }
 
+    /**
+     * Loads the probe results from the device's identity, or probes the device if there are none.
+     */
+    private void ensureData() {
+        DeviceIdentity identity = parentDevice.getIdentity();
+        Boolean cachedInstalled = identity.isSuperUserInstalled();
+        if (cachedInstalled == null) {
+            refreshData();
+            return;
+        }
+
+        installed = cachedInstalled;
+        version = identity.getSuperUserVersion();
+    }
+
+    /**
+     * Probes the device for superuser again, e.g. after rooting it.
+     */
+    public void refresh() { refreshData(); }
+
     /**
      * Gets a value indicating whether superuser is installed on a given {@link Device}.
      * @return {@code true} if superuser is installed, {@code false} otherwise.
      *
      * @see Device
      */
-    public boolean isInstalled() { refreshData(); return installed; }
+    public boolean isInstalled() { ensureData(); return installed; }
 
     /**
      * Gets the version of superuser that is installed on a given {@link Device}.
@@ -60,6 +85,6 @@ public class SuperUser {
      * @see Device
      * @see SuperUser#NOT_AVAILABLE
      */
-    public String getVersion() { refreshData(); return version; }
+    public String getVersion() { ensureData(); return version; }
 
 }
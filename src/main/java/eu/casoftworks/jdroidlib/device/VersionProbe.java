@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2017, Simon Cahill
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package eu.casoftworks.jdroidlib.device;
+
+/**
+ * <b >This is NOT a public class!</b>
+ *
+ * Interprets the output of a {@code <tool> --version} probe.
+ * Only clear answers may be stored in a {@link DeviceIdentity}: the tool was found and reported a version,
+ * or the shell reported it as not found. Empty, truncated or error output leaves the result unknown.
+ */
+final class VersionProbe {
+
+    static final String NOT_FOUND = "not found";
+
+    private VersionProbe() { }
+
+    /**
+     * Determines whether the shell reported the tool as not found.
+     * @param output The probe's output.
+     * @return {@code true} if the tool is definitely not installed.
+     */
+    static boolean isNotFound(String output) {
+        return output != null && output.contains(NOT_FOUND);
+    }
+
+    /**
+     * Gets the version reported by the tool: the first non-blank line, if it contains a version number.
+     * @param output The probe's output.
+     * @return The version, or {@code null} if the output doesn't report one.
+     */
+    static String parseVersion(String output) {
+        if (output == null || isNotFound(output))
+            return null;
+
+        for (String line : output.split("\r?\n")) {
+            line = line.trim();
+            if (line.isEmpty())
+                continue;
+            if (line.startsWith("error:") || line.chars().noneMatch(Character::isDigit))
+                return null;
+            return line;
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2017, Simon Cahill
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.casoftworks.jdroidlib.device.buildprop;
+
+import eu.casoftworks.jdroidlib.device.*;
+
+import java.util.*;
+
+/**
+ * Describes the build properties of a device that changed between two consecutive reads.
+ */
+public class PropertyChangedEvent {
+
+    private final Device device;
+    private final Map<String, String> previousValues;
+    private final Map<String, String> newValues;
+    private final long timestamp;
+
+    /**
+     * Initialises a new instance of this class.
+     * @param device The {@link Device} whose properties changed.
+     * @param previousValues The changed properties' previous values; {@code null} for properties that weren't set.
+     * @param newValues The changed properties' new values; {@code null} for properties that are no longer set.
+     * @param timestamp The time (in ms since epoch) the change was observed.
+     */
+    public PropertyChangedEvent(Device device, Map<String, String> previousValues, Map<String, String> newValues, long timestamp) {
+        this.device = device;
+        this.previousValues = Collections.unmodifiableMap(previousValues);
+        this.newValues = Collections.unmodifiableMap(newValues);
+        this.timestamp = timestamp;
+    }
+
+    public Device getDevice() { return device; }
+
+    /**
+     * Gets the keys of the changed properties.
+     * @return The keys.
+     */
+    public Set<String> getKeys() { return newValues.keySet(); }
+
+    /**
+     * Determines whether a property changed.
+     * @param key The property's key.
+     * @return {@code true} if the property changed.
+     */
+    public boolean hasChanged(String key) { return newValues.containsKey(key); }
+
+    /**
+     * Gets a changed property's previous value.
+     * @param key The property's key.
+     * @return The previous value, or {@code null} if the property wasn't set or didn't change.
+     */
+    public String getPreviousValue(String key) { return previousValues.get(key); }
+
+    /**
+     * Gets a changed property's new value.
+     * @param key The property's key.
+     * @return The new value, or {@code null} if the property is no longer set or didn't change.
+     */
+    public String getNewValue(String key) { return newValues.get(key); }
+
+    /**
+     * Gets the time the change was observed.
+     * @return The time in ms since epoch.
+     */
+    public long getTimestamp() { return timestamp; }
+
+    @Override
+    public String toString() {
+        StringJoiner joiner = new StringJoiner(", ");
+        newValues.forEach((key, value) -> joiner.add(String.format("%s: %s -> %s", key, previousValues.get(key), value)));
+        return String.format("%s: %s", device.getID(), joiner);
+    }
+
+}
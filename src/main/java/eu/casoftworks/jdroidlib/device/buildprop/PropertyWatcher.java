@@ -0,0 +1,340 @@
+/*
+ * Copyright (c) 2017, Simon Cahill
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.casoftworks.jdroidlib.device.buildprop;
+
+import eu.casoftworks.jdroidlib.*;
+import eu.casoftworks.jdroidlib.device.*;
+import eu.casoftworks.jdroidlib.enums.*;
+import eu.casoftworks.jdroidlib.exception.*;
+import eu.casoftworks.jdroidlib.interfaces.*;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.logging.*;
+import java.util.regex.*;
+
+/**
+ * Watches the build properties of many devices for changes, instead of polling single properties in loops.
+ *
+ * Listeners register interest in key patterns: exact keys ({@code sys.boot_completed}) or globs,
+ * where {@code *} matches any sequence of characters ({@code persist.*}, {@code vendor.*.version}).
+ * On every tick, each online device's properties are read with a single {@code getprop} (see {@link BuildProp#refresh()}),
+ * diffed against the previous read, and each listener receives only the changed keys matching its patterns.
+ *
+ * All devices share a single scheduler thread, which only dispatches; reads, diffs and listener calls take place
+ * on the controller's executor. A device whose previous read hasn't completed yet skips a tick.
+ * Listeners of a single device are called in order, but listeners of different devices may be called concurrently.
+ */
+public class PropertyWatcher implements Closeable {
+
+    public static final long DEFAULT_INTERVAL_MILLIS = 2000;
+
+    private final ExecutorService executor;
+    private final long intervalMillis;
+    private final ConcurrentMap<String, WatchedDevice> devices;
+    private final CopyOnWriteArrayList<Registration> registrations;
+    private final ScheduledExecutorService scheduler;
+
+    PropertyWatcher(Factory factory, ExecutorService executor) {
+        this.executor = executor;
+        this.intervalMillis = factory.intervalMillis;
+        devices = new ConcurrentHashMap<>();
+        registrations = new CopyOnWriteArrayList<>();
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "jdroidlib-property-watcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static class Factory {
+
+        private long intervalMillis = DEFAULT_INTERVAL_MILLIS;
+
+        /**
+         * Sets the interval in which each device's properties are read.
+         * @param time The interval.
+         * @param timeUnit The unit of time.
+         * @return The updated instance of this object.
+         */
+        public Factory setInterval(long time, TimeUnit timeUnit) {
+            this.intervalMillis = timeUnit.toMillis(time);
+            return this;
+        }
+
+        /**
+         * Creates a watcher reading properties on the controller's executor.
+         * @param controller The controller the watched devices are bound to.
+         * @return The new watcher.
+         */
+        public PropertyWatcher create(AndroidController controller) {
+            if (controller == null)
+                throw new IllegalArgumentException("Controller must not be null!");
+            if (intervalMillis < 1)
+                throw new IllegalStateException("Interval must be positive!");
+
+            return new PropertyWatcher(this, controller.getExecutorService());
+        }
+
+    }
+
+    public long getInterval(TimeUnit timeUnit) { return timeUnit.convert(intervalMillis, TimeUnit.MILLISECONDS); }
+
+    //<editor-fold desc="Listeners" defaultstate="collapsed" >
+    /**
+     * Registers a listener for changes of properties matching any of the given patterns.
+     * @param listener The listener.
+     * @param patterns Exact keys, or globs where {@code *} matches any sequence of characters.
+     */
+    public void addListener(IPropertyChangeListener listener, String... patterns) {
+        if (listener == null)
+            throw new IllegalArgumentException("Listener must not be null!");
+        if (patterns.length == 0)
+            throw new IllegalArgumentException("At least one pattern is required!");
+
+        KeyPattern[] compiled = new KeyPattern[patterns.length];
+        for (int i = 0; i < patterns.length; i++)
+            compiled[i] = KeyPattern.compile(patterns[i]);
+        registrations.add(new Registration(listener, compiled));
+    }
+
+    /**
+     * Removes a listener from all of its patterns.
+     * @param listener The listener.
+     */
+    public void removeListener(IPropertyChangeListener listener) {
+        registrations.removeIf(x -> x.listener == listener);
+    }
+    //</editor-fold>
+
+    //<editor-fold desc="Devices" defaultstate="collapsed" >
+    /**
+     * Starts watching a device. Its first read is the baseline and doesn't produce any events.
+     * @param device The device to watch.
+     */
+    public void addDevice(Device device) {
+        WatchedDevice watchedDevice = devices.computeIfAbsent(device.getID(), x -> new WatchedDevice(device));
+        synchronized (watchedDevice) {
+            if (watchedDevice.schedule == null) {
+                // Spread the devices across the interval
+                long initialDelay = Math.floorMod(device.getID().hashCode(), intervalMillis);
+                watchedDevice.schedule = scheduler.scheduleAtFixedRate(() -> dispatch(watchedDevice), initialDelay, intervalMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Starts watching multiple devices.
+     * @param devices The devices to watch.
+     */
+    public void addDevices(Collection<Device> devices) { devices.forEach(this::addDevice); }
+
+    /**
+     * Stops watching a device.
+     * @param device The device.
+     * @return {@code true} if the device was watched.
+     */
+    public boolean removeDevice(Device device) {
+        WatchedDevice watchedDevice = devices.remove(device.getID());
+        if (watchedDevice == null)
+            return false;
+
+        synchronized (watchedDevice) {
+            if (watchedDevice.schedule != null)
+                watchedDevice.schedule.cancel(false);
+        }
+        return true;
+    }
+
+    /**
+     * Gets the devices being watched.
+     * @return A snapshot of the watched devices.
+     */
+    public List<Device> getDevices() {
+        List<Device> result = new ArrayList<>();
+        devices.values().forEach(x -> result.add(x.device));
+        return result;
+    }
+    //</editor-fold>
+
+    private void dispatch(WatchedDevice watchedDevice) {
+        if (registrations.isEmpty() || watchedDevice.device.getDeviceState() != DeviceState.Online || !watchedDevice.inFlight.compareAndSet(false, true))
+            return; // Nobody's listening, offline, or the previous read is still running
+
+        try {
+            executor.execute(() -> {
+                try {
+                    poll(watchedDevice);
+                } finally {
+                    watchedDevice.inFlight.set(false);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            watchedDevice.inFlight.set(false); // Controller is closing
+        }
+    }
+
+    private void poll(WatchedDevice watchedDevice) {
+        BuildPropSnapshot snapshot;
+        try {
+            snapshot = watchedDevice.device.getBuildProp().refresh();
+        } catch (DeviceException ex) {
+            Logger.getLogger(PropertyWatcher.class.getName()).log(Level.WARNING, String.format("Could not read the properties of %s!", watchedDevice.device.getID()), ex);
+            return;
+        }
+
+        BuildPropSnapshot previous = watchedDevice.snapshot;
+        watchedDevice.snapshot = snapshot;
+        if (previous == null || previous == snapshot)
+            return;
+
+        Map<String, String> changes = diff(previous.asMap(), snapshot.asMap());
+        if (changes.isEmpty())
+            return;
+
+        for (Registration registration : registrations) {
+            Map<String, String> previousValues = new HashMap<>();
+            Map<String, String> newValues = new HashMap<>();
+            changes.forEach((key, value) -> {
+                if (registration.matches(key)) {
+                    previousValues.put(key, previous.get(key));
+                    newValues.put(key, value);
+                }
+            });
+
+            if (newValues.isEmpty())
+                continue;
+
+            try {
+                registration.listener.onPropertiesChanged(new PropertyChangedEvent(watchedDevice.device, previousValues, newValues, snapshot.getTimestamp()));
+            } catch (RuntimeException ex) {
+                Logger.getLogger(PropertyWatcher.class.getName()).log(Level.WARNING, "Property change listener failed!", ex);
+            }
+        }
+    }
+
+    /**
+     * Computes the properties that differ between two reads.
+     * @return The changed properties and their new values; {@code null} for properties that are no longer set.
+     */
+    static Map<String, String> diff(Map<String, String> previous, Map<String, String> current) {
+        Map<String, String> changes = new HashMap<>();
+        int added = 0;
+        for (Map.Entry<String, String> property : current.entrySet()) {
+            String previousValue = previous.get(property.getKey());
+            if (previousValue == null)
+                added++;
+            if (!property.getValue().equals(previousValue))
+                changes.put(property.getKey(), property.getValue());
+        }
+        if (current.size() - added < previous.size()) {
+            // Not all previous properties are still set
+            previous.keySet().forEach(key -> {
+                if (!current.containsKey(key))
+                    changes.put(key, null);
+            });
+        }
+        return changes;
+    }
+
+    /**
+     * Stops watching all devices.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * An exact key, a prefix ({@code persist.*}) or a general glob.
+     */
+    static final class KeyPattern {
+
+        private final String exact;
+        private final String prefix;
+        private final Pattern glob;
+
+        private KeyPattern(String exact, String prefix, Pattern glob) {
+            this.exact = exact;
+            this.prefix = prefix;
+            this.glob = glob;
+        }
+
+        static KeyPattern compile(String pattern) {
+            int wildcard = pattern.indexOf('*');
+            if (wildcard < 0)
+                return new KeyPattern(pattern, null, null);
+            if (wildcard == pattern.length() - 1)
+                return new KeyPattern(null, pattern.substring(0, wildcard), null);
+
+            StringBuilder regex = new StringBuilder();
+            for (String part : pattern.split("\\*", -1))
+                regex.append(regex.length() == 0 ? "" : ".*").append(Pattern.quote(part));
+            return new KeyPattern(null, null, Pattern.compile(regex.toString()));
+        }
+
+        boolean matches(String key) {
+            if (exact != null)
+                return exact.equals(key);
+            if (prefix != null)
+                return key.startsWith(prefix);
+            return glob.matcher(key).matches();
+        }
+
+    }
+
+    private static class Registration {
+        final IPropertyChangeListener listener;
+        final KeyPattern[] patterns;
+
+        Registration(IPropertyChangeListener listener, KeyPattern[] patterns) {
+            this.listener = listener;
+            this.patterns = patterns;
+        }
+
+        boolean matches(String key) {
+            for (KeyPattern pattern : patterns) {
+                if (pattern.matches(key))
+                    return true;
+            }
+            return false;
+        }
+    }
+
+    private static class WatchedDevice {
+        final Device device;
+        final AtomicBoolean inFlight = new AtomicBoolean();
+        volatile BuildPropSnapshot snapshot; // Only written by the polling task
+        ScheduledFuture<?> schedule; // Guarded by this
+
+        WatchedDevice(Device device) {
+            this.device = device;
+        }
+    }
+
+}
@@ -8,8 +8,6 @@ import eu.casoftworks.jdroidlib.interfaces.*;
 import eu.casoftworks.jdroidlib.util.*;
 
 import java.io.*;
-import java.text.*;
-import java.time.*;
 import java.util.*;
 import java.util.logging.*;
 
@@ -17,13 +15,16 @@ public class AndroidDirectory implements IDirectory {
 
     // All these fields should be effectively final!
     private String name;
-    private IDirectory parentDir;
+    private volatile IDirectory parentDir;
     private String fullName;
     private Device hostDevice;
     private String fullPath;
-    private String owner;
-    private String group;
+    private volatile LsEntry metadata;
 
+    /**
+     * Object constructor.
+     * The constructor does not communicate with the device; the directory's owner and group are fetched on first access.
+     */
     public AndroidDirectory(Device hostDevice, String fullPath) {
         // Do some error checking
         if (hostDevice == null)
@@ -42,33 +43,15 @@ public class AndroidDirectory implements IDirectory {
         } else {
             String[] iGotDaSplits = fullPath.split(LINUX_PATH_SEPARATOR);
             name = fullName = iGotDaSplits[iGotDaSplits.length - 1];
-
-            parentDir = new AndroidDirectory(hostDevice, fullPath.replace(LINUX_PATH_SEPARATOR + getName(), ""));
         }
 
-        init();
-
     }
 
-    private void init() {
-        String[] splitOutput; // Split output on whitespace(+n)
-        try {
-            // Example output (from nixCraft):
-            // -rw-r--r-- 1 vivek admin 2558 Jan  8 07:41 filename
-            splitOutput = AndroidController.getControllerOrNull().executeCommandReturnOutput(
-                    new AdbShellCommand.Factory()
-                            .setDevice(getHostDevice())
-                            .setCommandTag(LS_CMD)
-                            .setCommandArgs("-l", CURRENT_DIR)
-                            .create()
-            ).split("\\s+");
-
-            owner = splitOutput[2]; // vivek in example
-            group = splitOutput[3]; // admin in example
-        } catch (IOException | IllegalDeviceStateException | InterruptedException e) {
-            e.printStackTrace();
-            owner = group = NOT_AVAILABLE;
-        }
+    private LsEntry getMetadata() {
+        LsEntry entry = metadata;
+        if (entry == null)
+            metadata = entry = LsEntry.fetch(hostDevice, fullPath);
+        return entry;
     }
 
     /**
@@ -88,7 +71,12 @@ public class AndroidDirectory implements IDirectory {
      */
     @Override
     public IDirectory getParentDirectory() {
-        return parentDir;
+        IDirectory dir = parentDir;
+        if (dir == null) {
+            int separator = fullPath.lastIndexOf(LINUX_PATH_SEPARATOR, fullPath.length() - 2);
+            parentDir = dir = new AndroidDirectory(hostDevice, separator > 0 ? fullPath.substring(0, separator) : LINUX_PATH_SEPARATOR);
+        }
+        return dir;
     }
 
     /**
@@ -112,7 +100,7 @@ public class AndroidDirectory implements IDirectory {
         statArgs[statArgs.length - 1] = getFullPath();
         try {
             return PermissionSet.fromStatOutput(
-                    AndroidController.getControllerOrNull().executeCommandReturnOutput(
+                    hostDevice.getController().executeCommandReturnOutput(
                             new AdbShellCommand.Factory()
                                     .setDevice(getHostDevice())
                                     .setCommandTag(STAT_CMD)
@@ -156,7 +144,7 @@ public class AndroidDirectory implements IDirectory {
     public boolean exists() throws DeviceException {
         String cmdOutput;
         try {
-            cmdOutput = AndroidController.getControllerOrNull().executeCommandReturnOutput(
+            cmdOutput = hostDevice.getController().executeCommandReturnOutput(
                     new AdbShellCommand.Factory()
                             .setCommandTag(DIR_EXISTS_CMD.replace(CMD_ARG_DIR, getFullPath()))
                             .setDevice(getHostDevice())
@@ -179,7 +167,7 @@ public class AndroidDirectory implements IDirectory {
      */
     @Override
     public String getOwner() {
-        return owner;
+        return getMetadata().getOwner();
     }
 
     /**
@@ -189,7 +177,7 @@ public class AndroidDirectory implements IDirectory {
      */
     @Override
     public String getGroup() {
-        return group;
+        return getMetadata().getGroup();
     }
 
     /**
@@ -237,8 +225,8 @@ public class AndroidDirectory implements IDirectory {
         String cmdOutput;
 
         try {
-            cmdOutput = AndroidController
-                    .getControllerOrNull()
+            cmdOutput = hostDevice
+                    .getController()
                     .executeCommandReturnOutput(
                             new AdbCommand
                                     .Factory()
@@ -294,7 +282,7 @@ public class AndroidDirectory implements IDirectory {
 
         String cmdOutput;
         try {
-            cmdOutput = AndroidController.getControllerOrNull().executeCommandReturnOutput(
+            cmdOutput = hostDevice.getController().executeCommandReturnOutput(
                 new AdbShellCommand.Factory()
                     .setDevice(getHostDevice())
                     .setCommandTag(CP_CMD)
@@ -327,7 +315,7 @@ public class AndroidDirectory implements IDirectory {
 
         String cmdOutput;
         try {
-            cmdOutput = AndroidController.getControllerOrNull().executeCommandReturnOutput(
+            cmdOutput = hostDevice.getController().executeCommandReturnOutput(
                     new AdbShellCommand.Factory()
                             .setDevice(getHostDevice())
                             .setCommandTag(MV_CMD)
@@ -351,7 +339,7 @@ public class AndroidDirectory implements IDirectory {
      */
     @Override
     public List<IFileSystemEntry> getContents() throws DeviceException {
-        AndroidController adbController = AndroidController.getControllerOrNull();
+        AndroidController adbController = hostDevice.getController();
         String cmdOutput;
         List<IFileSystemEntry> entries = new ArrayList<>();
 
@@ -430,7 +418,7 @@ public class AndroidDirectory implements IDirectory {
     public boolean mkdir() throws CannotTouchException {
         String output;
         try {
-            output = AndroidController.getControllerOrNull().executeCommandReturnOutput(
+            output = hostDevice.getController().executeCommandReturnOutput(
                     new AdbShellCommand.Factory()
                             .setDevice(getHostDevice())
                             .setCommandTag(MKDIR_CMD)
@@ -455,7 +443,7 @@ public class AndroidDirectory implements IDirectory {
     @Override
     public boolean remove(boolean recurse) throws CannotRemoveException {
         try {
-            AndroidController.getControllerOrNull().executeCommandNoOutput(
+            hostDevice.getController().executeCommandNoOutput(
                     new AdbShellCommand.Factory()
                             .setDevice(getHostDevice())
                             .setCommandTag(RM_CMD)
@@ -10,8 +10,6 @@ import eu.casoftworks.jdroidlib.util.*;
 
 import java.io.*;
 import java.nio.file.*;
-import java.text.*;
-import java.time.*;
 import java.util.*;
 import java.util.logging.*;
 
@@ -24,18 +22,16 @@ public class AndroidFile implements IFile {
     // All these fields should be effectively final!
     private String name;
     private String extension;
-    private IDirectory parentDir;
+    private volatile IDirectory parentDir;
     private String fullName;
     private Device hostDevice;
     private String fullPath;
-    private String owner;
-    private String group;
-    private long size;
-    private int noOfSymlinks;
-    private Date mTime;
+    private volatile LsEntry metadata;
 
     /**
      * Object constructor.
+     * The constructor does not communicate with the device; the file's metadata (owner, group, size, etc.)
+     * is fetched on first access, or in bulk via {@link #loadMetadata(Collection)}.
      * @param fullPath
      */
     public AndroidFile(Device hostDevice, String fullPath) {
@@ -49,52 +45,56 @@ public class AndroidFile implements IFile {
         this.hostDevice = hostDevice;
         this.fullPath = fullPath;
 
-        String[] iGotDaSplits = fullPath.split(LINUX_PATH_SEPARATOR);
+        fullName = fullPath.substring(fullPath.lastIndexOf(LINUX_PATH_SEPARATOR) + 1);
 
-        fullName = iGotDaSplits[iGotDaSplits.length];
-
-        if (name.contains(FILE_EXTENSION_PRECHAR) && !name.startsWith(FILE_EXTENSION_PRECHAR)) {
-            String[] tmp = name.split(FILE_EXTENSION_PRECHAR);
-            name = tmp[0]; // First instance in array is name of the file
-            extension = tmp[tmp.length - 1]; // Account for there being periods in the filename; Only show last extension.
+        if (fullName.contains(FILE_EXTENSION_PRECHAR) && !fullName.startsWith(FILE_EXTENSION_PRECHAR)) {
+            name = fullName.substring(0, fullName.indexOf(FILE_EXTENSION_PRECHAR)); // Everything up to the first period is the name of the file
+            extension = fullName.substring(fullName.lastIndexOf(FILE_EXTENSION_PRECHAR) + 1); // Account for there being periods in the filename; Only show last extension.
         } else {
             name = fullName; // No extensions found; name is effectively full name.
             extension = null;
         }
-
-        parentDir = new AndroidDirectory(hostDevice, fullPath.replace(LINUX_PATH_SEPARATOR + getFullName(), ""));
-
-        init();
     }
 
-    private void init() {
-        String[] splitOutput; // Split output on whitespace(+n)
-        try {
-            // Example output (from nixCraft):
-            // -rw-r--r-- 1 vivek admin 2558 Jan  8 07:41 filename
-            splitOutput = AndroidController.getControllerOrNull().executeCommandReturnOutput(
-                new AdbShellCommand.Factory()
-                    .setDevice(getHostDevice())
-                    .setCommandTag(LS_CMD)
-                    .setCommandArgs("-l", getFullPath())
-                    .create()
-            ).split("\\s+");
+    /**
+     * Fetches the metadata of several files with as few commands as possible.
+     * Files whose metadata has already been fetched are skipped;
+     * files which could not be found are marked as unavailable.
+     * @param files The files to fetch the metadata for. May be hosted on different devices.
+     * @throws DeviceException If a command could not be executed.
+     */
+    public static void loadMetadata(Collection<AndroidFile> files) throws DeviceException {
+        Map<Device, List<AndroidFile>> pending = new LinkedHashMap<>();
+        for (AndroidFile file : files) {
+            if (file.metadata == null)
+                pending.computeIfAbsent(file.getHostDevice(), x -> new ArrayList<>()).add(file);
+        }
 
-            noOfSymlinks = Integer.parseInt(splitOutput[1]); // 1 in example
-            owner = splitOutput[2]; // vivek in example
-            group = splitOutput[3]; // admin in example
-            size = Long.parseLong(splitOutput[4]); // 2558 in example
-            mTime = DateFormat.getDateInstance().parse(String.join(" ", splitOutput[5], splitOutput[6], splitOutput[7]));
+        for (Map.Entry<Device, List<AndroidFile>> deviceFiles : pending.entrySet()) {
+            List<String> paths = new ArrayList<>();
+            deviceFiles.getValue().forEach(x -> paths.add(x.getFullPath()));
 
-        } catch (IOException | IllegalDeviceStateException | InterruptedException e) {
-            e.printStackTrace();
-            owner = group = NOT_AVAILABLE;
-            size = -1;
-        } catch (ParseException ex) {
-            mTime = Date.from(Instant.MIN);
+            Map<String, LsEntry> entries = LsEntry.fetch(deviceFiles.getKey(), paths);
+            for (AndroidFile file : deviceFiles.getValue())
+                file.metadata = entries.getOrDefault(file.getFullPath(), LsEntry.UNAVAILABLE);
         }
     }
 
+    /**
+     * Gets a value indicating whether the file's metadata has already been fetched from the device.
+     * @return {@code true} if the metadata getters will not communicate with the device.
+     */
+    public boolean isMetadataLoaded() {
+        return metadata != null;
+    }
+
+    private LsEntry getMetadata() {
+        LsEntry entry = metadata;
+        if (entry == null)
+            metadata = entry = LsEntry.fetch(hostDevice, fullPath);
+        return entry;
+    }
+
     /**
      * Gets the name of the file without the file extension.
      *
@@ -142,7 +142,12 @@ public class AndroidFile implements IFile {
      */
     @Override
     public IDirectory getParentDirectory() {
-        return parentDir;
+        IDirectory dir = parentDir;
+        if (dir == null) {
+            int separator = fullPath.lastIndexOf(LINUX_PATH_SEPARATOR);
+            parentDir = dir = new AndroidDirectory(hostDevice, separator > 0 ? fullPath.substring(0, separator) : LINUX_PATH_SEPARATOR);
+        }
+        return dir;
     }
 
     /**
@@ -180,8 +185,8 @@ public class AndroidFile implements IFile {
         String cmdOutput;
 
         try {
-            cmdOutput = AndroidController
-                    .getControllerOrNull()
+            cmdOutput = hostDevice
+                    .getController()
                     .executeCommandReturnOutput(
                             new AdbCommand
                             .Factory()
@@ -235,7 +240,7 @@ public class AndroidFile implements IFile {
 
         String cmdOutput;
         try {
-            cmdOutput = AndroidController.getControllerOrNull().executeCommandReturnOutput(
+            cmdOutput = hostDevice.getController().executeCommandReturnOutput(
                     new AdbShellCommand.Factory()
                             .setDevice(getHostDevice())
                             .setCommandTag(CP_CMD)
@@ -266,7 +271,7 @@ public class AndroidFile implements IFile {
 
         String cmdOutput;
         try {
-            cmdOutput = AndroidController.getControllerOrNull().executeCommandReturnOutput(
+            cmdOutput = hostDevice.getController().executeCommandReturnOutput(
                     new AdbShellCommand.Factory()
                             .setDevice(getHostDevice())
                             .setCommandTag(MV_CMD)
@@ -295,7 +300,7 @@ public class AndroidFile implements IFile {
     public byte[] getContents() throws DeviceException {
             try {
                 if (isText()) {
-                    return AndroidController.getControllerOrNull()
+                    return hostDevice.getController()
                             .executeCommandReturnOutput(
                                     new AdbCommand.Factory()
                                             .setDevice(getHostDevice())
@@ -343,7 +348,7 @@ public class AndroidFile implements IFile {
     public boolean touch() throws CannotTouchException {
         String output;
         try {
-            output = AndroidController.getControllerOrNull().executeCommandReturnOutput(
+            output = hostDevice.getController().executeCommandReturnOutput(
                     new AdbShellCommand.Factory()
                         .setDevice(getHostDevice())
                         .setCommandTag(TOUCH_CMD)
@@ -366,7 +371,7 @@ public class AndroidFile implements IFile {
     @Override
     public boolean isText() throws DeviceException {
         try {
-            return AndroidController.getControllerOrNull().executeCommandReturnOutput(
+            return hostDevice.getController().executeCommandReturnOutput(
                 new AdbCommand.Factory()
                     .setDevice(getHostDevice())
                     .setCommandTag(FILE_CMD)
@@ -382,10 +387,10 @@ public class AndroidFile implements IFile {
 
     /**
      * Gets the file's MTIME ((last) modification time).
-     * @return A date noting the last time the file was modified.
+     * @return A date noting the last time the file was modified, or {@code null} if it could not be determined.
      */
     @Override
-    public Date getModTime() { return mTime; }
+    public Date getModTime() { return getMetadata().getModTime(); }
 
     /**
      * Attempts to remove a file from the {@link Device}'s {@link java.io.FileSystem}
@@ -394,7 +399,7 @@ public class AndroidFile implements IFile {
     @Override
     public boolean remove(boolean force) throws CannotRemoveException {
         try {
-            AndroidController.getControllerOrNull().executeCommandNoOutput(
+            hostDevice.getController().executeCommandNoOutput(
                     new AdbShellCommand.Factory()
                             .setDevice(getHostDevice())
                             .setCommandTag(RM_CMD)
@@ -430,7 +435,7 @@ public class AndroidFile implements IFile {
         statArgs[statArgs.length - 1] = getFullPath();
         try {
             return PermissionSet.fromStatOutput(
-                AndroidController.getControllerOrNull().executeCommandReturnOutput(
+                hostDevice.getController().executeCommandReturnOutput(
                     new AdbShellCommand.Factory()
                         .setDevice(getHostDevice())
                         .setCommandTag(STAT_CMD)
@@ -474,7 +479,7 @@ public class AndroidFile implements IFile {
     public boolean exists() throws DeviceException {
         String cmdOutput;
         try {
-            cmdOutput = AndroidController.getControllerOrNull().executeCommandReturnOutput(
+            cmdOutput = hostDevice.getController().executeCommandReturnOutput(
                 new AdbShellCommand.Factory()
                     .setCommandTag(FILE_EXISTS_CMD.replace(CMD_ARG_FILE, getFullPath()))
                     .setDevice(getHostDevice())
@@ -497,7 +502,7 @@ public class AndroidFile implements IFile {
      */
     @Override
     public String getOwner() {
-        return owner;
+        return getMetadata().getOwner();
     }
 
     /**
@@ -507,7 +512,7 @@ public class AndroidFile implements IFile {
      */
     @Override
     public String getGroup() {
-        return group;
+        return getMetadata().getGroup();
     }
 
     /**
@@ -517,7 +522,7 @@ public class AndroidFile implements IFile {
      */
     @Override
     public long getSize() {
-        return size;
+        return getMetadata().getSize();
     }
 
 }
@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2017, Simon Cahill
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.casoftworks.jdroidlib.device.fs;
+
+import eu.casoftworks.jdroidlib.commands.*;
+import eu.casoftworks.jdroidlib.device.*;
+import eu.casoftworks.jdroidlib.exception.*;
+import eu.casoftworks.jdroidlib.interfaces.*;
+import eu.casoftworks.jdroidlib.util.*;
+
+import java.io.*;
+import java.text.*;
+import java.util.*;
+
+/**
+ * <b>This is NOT a public class!</b>
+ *
+ * An immutable, parsed line of {@code ls -ld} output; the metadata of a single file system entry.
+ * Example input:
+ * <pre>
+ * -rw-r--r-- 1 system system 4194304 2018-08-08 12:10 /data/app/com.example-1/base.apk
+ * lrwxrwxrwx 1 root   root        21 1970-01-01 01:00 /sdcard -> /storage/self/primary
+ * </pre>
+ */
+final class LsEntry {
+
+    /**
+     * The maximum length of the paths passed to a single {@code ls} invocation.
+     */
+    static final int MAX_ARGS_LENGTH = 3000;
+
+    /**
+     * Used for entries whose metadata could not be retrieved.
+     */
+    static final LsEntry UNAVAILABLE = new LsEntry(null, IFileSystemEntry.NOT_AVAILABLE, IFileSystemEntry.NOT_AVAILABLE, -1, null, null);
+
+    private static final String[] DATE_FORMATS = { "yyyy-MM-dd HH:mm", "MMM d HH:mm", "MMM d yyyy" };
+    private static final String SYMLINK_ARROW = " -> ";
+
+    private final String permissions;
+    private final String owner;
+    private final String group;
+    private final long size;
+    private final Date modTime;
+    private final String path;
+
+    private LsEntry(String permissions, String owner, String group, long size, Date modTime, String path) {
+        this.permissions = permissions;
+        this.owner = owner;
+        this.group = group;
+        this.size = size;
+        this.modTime = modTime;
+        this.path = path;
+    }
+
+    //<editor-fold desc="Parsing" defaultstate="collapsed" >
+    /**
+     * Parses a single line of {@code ls -l} output.
+     * @param line The line to parse.
+     * @return The parsed entry, or {@code null} if the line does not describe a file system entry (e.g. an error message).
+     */
+    static LsEntry parse(String line) {
+        String[] tokens = line.trim().split("\\s+", 6);
+        if (tokens.length < 6 || !isPermissions(tokens[0]))
+            return null;
+
+        String permissions = tokens[0];
+        String owner = tokens[2];
+        String group = tokens[3];
+        String remainder = tokens[5];
+        long size;
+
+        try {
+            if (tokens[4].endsWith(",")) {
+                // Character and block devices show "major, minor" instead of a size
+                size = 0;
+                String[] split = remainder.split("\\s+", 2);
+                if (split.length < 2)
+                    return null;
+                remainder = split[1];
+            } else {
+                size = Long.parseLong(tokens[4]);
+            }
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+
+        // Neither supported date format contains a slash, so the (absolute) path starts at the first one
+        int pathStart = remainder.indexOf(IFileSystemEntry.LINUX_PATH_SEPARATOR);
+        if (pathStart < 0)
+            pathStart = Math.max(0, remainder.lastIndexOf(' ') + 1);
+
+        String path = remainder.substring(pathStart);
+        int arrow = path.indexOf(SYMLINK_ARROW);
+        if (arrow >= 0)
+            path = path.substring(0, arrow);
+
+        return new LsEntry(permissions, owner, group, size, parseDate(remainder.substring(0, pathStart).trim()), path);
+    }
+
+    private static boolean isPermissions(String token) {
+        if (token.length() < 10)
+            return false;
+        for (int i = 1; i < 10; i++) {
+            char c = token.charAt(i);
+            if ("rwxsStT-".indexOf(c) < 0)
+                return false;
+        }
+        return "-dlcbps".indexOf(token.charAt(0)) >= 0;
+    }
+
+    private static Date parseDate(String date) {
+        for (String format : DATE_FORMATS) {
+            try {
+                return new SimpleDateFormat(format, Locale.US).parse(date);
+            } catch (ParseException ex) {
+                // Try the next format
+            }
+        }
+        return null;
+    }
+    //</editor-fold>
+
+    //<editor-fold desc="Fetching" defaultstate="collapsed" >
+    /**
+     * Fetches the metadata of a single entry.
+     * @param device The device hosting the entry.
+     * @param path The entry's full path.
+     * @return The entry's metadata, or {@link #UNAVAILABLE} if it could not be retrieved.
+     */
+    static LsEntry fetch(Device device, String path) {
+        try {
+            LsEntry entry = fetch(device, Collections.singletonList(path)).get(path);
+            return entry == null ? UNAVAILABLE : entry;
+        } catch (DeviceException ex) {
+            return UNAVAILABLE;
+        }
+    }
+
+    /**
+     * Fetches the metadata of several entries with as few invocations of {@code ls -ld} as possible.
+     * @param device The device hosting the entries.
+     * @param paths The full paths of the entries.
+     * @return The metadata of each entry, by path. Entries which do not exist are absent.
+     * @throws DeviceException If the command could not be executed.
+     */
+    static Map<String, LsEntry> fetch(Device device, Collection<String> paths) throws DeviceException {
+        Map<String, LsEntry> entries = new HashMap<>();
+
+        for (List<String> chunk : getChunks(paths)) {
+            chunk.add(0, "-ld");
+            String output;
+            try {
+                output = device.getController().executeCommandReturnOutput(
+                    new AdbShellCommand.Factory()
+                        .setDevice(device)
+                        .setCommandTag(IFileSystemEntry.LS_CMD)
+                        .setCommandArgs(chunk.toArray(new String[0]))
+                        .create()
+                );
+            } catch (IOException | IllegalDeviceStateException | InterruptedException ex) {
+                ex.printStackTrace();
+                throw new DeviceException(ex);
+            }
+
+            for (String line : output.split("\r?\n")) {
+                LsEntry entry = parse(line);
+                if (entry != null)
+                    entries.put(entry.getPath(), entry);
+            }
+        }
+
+        return entries;
+    }
+
+    /**
+     * Quotes paths for the shell and splits them in to chunks whose combined length does not exceed {@link #MAX_ARGS_LENGTH}.
+     */
+    static List<List<String>> getChunks(Collection<String> paths) {
+        List<List<String>> chunks = new ArrayList<>();
+        List<String> chunk = new ArrayList<>();
+        int length = 0;
+
+        for (String rawPath : new LinkedHashSet<>(paths)) {
+            String path = ShellQuoter.quote(rawPath);
+            if (!chunk.isEmpty() && length + path.length() + 1 > MAX_ARGS_LENGTH) {
+                chunks.add(chunk);
+                chunk = new ArrayList<>();
+                length = 0;
+            }
+            chunk.add(path);
+            length += path.length() + 1;
+        }
+
+        if (!chunk.isEmpty())
+            chunks.add(chunk);
+        return chunks;
+    }
+    //</editor-fold>
+
+    /** @return The entry's permission string, e.g. {@code -rw-r--r--}. */
+    String getPermissions() { return permissions; }
+
+    String getOwner() { return owner; }
+
+    String getGroup() { return group; }
+
+    /** @return The entry's size in bytes, or -1 if unavailable. */
+    long getSize() { return size; }
+
+    /** @return The entry's modification time, or {@code null} if unavailable or not parseable. */
+    Date getModTime() { return modTime; }
+
+    /** @return The path as printed by {@code ls}; symbolic link targets are omitted. */
+    String getPath() { return path; }
+
+}
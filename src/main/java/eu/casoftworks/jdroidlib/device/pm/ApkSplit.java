@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2017, Simon Cahill
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.casoftworks.jdroidlib.device.pm;
+
+import java.io.*;
+import java.util.concurrent.*;
+
+/**
+ * A single APK of an application split in to several APKs (e.g. an app bundle's base and configuration splits).
+ * The split's contents are opened only when it is written to an install session, and may be opened more than once.
+ *
+ * @see eu.casoftworks.jdroidlib.device.PackageManager#installPackages(java.util.Collection, eu.casoftworks.jdroidlib.enums.InstallFlag...)
+ */
+public final class ApkSplit {
+
+    private final String name;
+    private final long size;
+    private final Callable<InputStream> source;
+
+    private ApkSplit(String name, long size, Callable<InputStream> source) {
+        if (name == null || name.isEmpty())
+            throw new IllegalArgumentException("Split name must not be empty!");
+        if (size <= 0)
+            throw new IllegalArgumentException("Split size must be positive!");
+        if (source == null)
+            throw new IllegalArgumentException("Split source must not be null!");
+
+        this.name = name;
+        this.size = size;
+        this.source = source;
+    }
+
+    /**
+     * Gets a split stored on the host. The split is named after the file.
+     * @param apkFile The split's file.
+     * @return A new instance of {@link ApkSplit}
+     */
+    public static ApkSplit fromFile(File apkFile) {
+        if (!apkFile.isFile())
+            throw new IllegalArgumentException("Application package must exist on host!");
+        return new ApkSplit(apkFile.getName(), apkFile.length(), () -> new FileInputStream(apkFile));
+    }
+
+    /**
+     * Gets a split held in memory.
+     * @param name The split's name, e.g. {@code split_config.xxhdpi.apk}. Must be unique within an installation.
+     * @param contents The split's contents.
+     * @return A new instance of {@link ApkSplit}
+     */
+    public static ApkSplit fromBytes(String name, byte[] contents) {
+        return new ApkSplit(name, contents.length, () -> new ByteArrayInputStream(contents));
+    }
+
+    /**
+     * Gets a split read from a stream, e.g. from an artifact store.
+     * @param name The split's name. Must be unique within an installation.
+     * @param size The exact size of the split in bytes.
+     * @param source Opens a new stream on the split's contents. The stream is closed once the split has been written.
+     * @return A new instance of {@link ApkSplit}
+     */
+    public static ApkSplit fromStream(String name, long size, Callable<InputStream> source) {
+        return new ApkSplit(name, size, source);
+    }
+
+    public String getName() { return name; }
+
+    /** @return The split's size in bytes. */
+    public long getSize() { return size; }
+
+    /**
+     * Opens a new stream on the split's contents.
+     * @return The stream. Must be closed by the caller.
+     * @throws IOException If the stream could not be opened.
+     */
+    public InputStream open() throws IOException {
+        try {
+            return source.call();
+        } catch (IOException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new IOException(String.format("Could not open split %s!", name), ex);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s (%d bytes)", name, size);
+    }
+
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2017, Simon Cahill
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.casoftworks.jdroidlib.device.pm;
+
+import java.util.concurrent.*;
+
+/**
+ * How a single split was transferred in to an install session.
+ *
+ * @see ApkSplit
+ */
+public class SplitTransfer {
+
+    private final String name;
+    private final long bytes;
+    private final long transferNanos;
+
+    public SplitTransfer(String name, long bytes, long transferNanos) {
+        this.name = name;
+        this.bytes = bytes;
+        this.transferNanos = transferNanos;
+    }
+
+    /** @return The name of the transferred split. */
+    public String getName() { return name; }
+
+    public long getBytes() { return bytes; }
+
+    /**
+     * Gets the time taken to write the split in to the session.
+     * @param timeUnit The unit of time to return.
+     * @return The transfer time.
+     */
+    public long getTransferTime(TimeUnit timeUnit) { return timeUnit.convert(transferNanos, TimeUnit.NANOSECONDS); }
+
+    /**
+     * Gets the split's average transfer throughput.
+     * @return The throughput in bytes per second.
+     */
+    public double getThroughput() {
+        return transferNanos > 0 ? bytes * (double)TimeUnit.SECONDS.toNanos(1) / transferNanos : 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d bytes in %d ms (%.1f KiB/s)", name, bytes, getTransferTime(TimeUnit.MILLISECONDS), getThroughput() / 1024);
+    }
+
+}
@@ -40,7 +40,41 @@ public enum DeviceState {
     Bootloader,
     
     Recovery,
+
+    /**
+     * The device is no longer listed by the ADB server.
+     */
+    Disconnected,
     
     Unknown;
+
+    /**
+     * Gets a value from this enumeration via the state string printed by ADB
+     * (e.g. in the output of {@code adb devices}).
+     * @param adbState The state string as printed by ADB (e.g. device, offline).
+     * @return The matching {@link DeviceState}, or {@link DeviceState#Unknown} if the state is not known.
+     */
+    public static DeviceState fromAdbString(String adbState) {
+        if (adbState == null)
+            return Unknown;
+
+        switch (adbState.trim().toLowerCase()) {
+            case "device":
+                return Online;
+            case "offline":
+                return Offline;
+            case "unauthorized":
+            case "authorizing":
+                return Unauthorized;
+            case "bootloader":
+                return Bootloader;
+            case "recovery":
+            case "sideload":
+            case "rescue":
+                return Recovery;
+            default:
+                return Unknown;
+        }
+    }
     
 }
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2017, Simon Cahill
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.casoftworks.jdroidlib.fleet;
+
+import eu.casoftworks.jdroidlib.device.*;
+
+import java.io.*;
+import java.util.concurrent.*;
+
+/**
+ * Exclusive, time-limited use of a {@link Device} handed out by a {@link DeviceLeaseManager}.
+ * Once the lease has expired or was released, the device may be handed to someone else.
+ * Leases are {@link Closeable}, so they can be used in try-with-resources blocks.
+ */
+public class DeviceLease implements Closeable {
+
+    private final DeviceLeaseManager manager;
+    private final Device device;
+    private final long acquiredNanos;
+    private volatile long expiryNanos;
+    private volatile boolean valid = true;
+    private ScheduledFuture<?> expiry; // Guarded by the manager
+    private long expiryGeneration;     // Guarded by the manager
+
+    DeviceLease(DeviceLeaseManager manager, Device device, long acquiredNanos, long leaseNanos) {
+        this.manager = manager;
+        this.device = device;
+        this.acquiredNanos = acquiredNanos;
+        this.expiryNanos = acquiredNanos + leaseNanos;
+    }
+
+    /**
+     * Gets the leased device.
+     * @return The {@link Device}.
+     */
+    public Device getDevice() { return device; }
+
+    /**
+     * Gets a value indicating whether this lease is still held.
+     * @return {@code true} if the lease has neither expired nor been released.
+     */
+    public boolean isValid() { return valid; }
+
+    /**
+     * Gets the time this lease has been held for.
+     * @param timeUnit The unit of time to return.
+     * @return The time since the lease was acquired.
+     */
+    public long getHeldTime(TimeUnit timeUnit) { return timeUnit.convert(manager.nanoTime() - acquiredNanos, TimeUnit.NANOSECONDS); }
+
+    /**
+     * Gets the time left until this lease expires.
+     * @param timeUnit The unit of time to return.
+     * @return The remaining time, or 0 (zero) if the lease is no longer valid.
+     */
+    public long getRemainingTime(TimeUnit timeUnit) {
+        return valid ? timeUnit.convert(Math.max(0, expiryNanos - manager.nanoTime()), TimeUnit.NANOSECONDS) : 0;
+    }
+
+    /**
+     * Extends this lease.
+     * @param time The time the lease is valid for, from now on.
+     * @param timeUnit The unit of time.
+     * @return {@code true} if the lease was renewed, {@code false} if it has already expired or was released.
+     */
+    public boolean renew(long time, TimeUnit timeUnit) {
+        return manager.renew(this, timeUnit.toNanos(time));
+    }
+
+    /**
+     * Returns the device to the manager. Releasing a lease more than once has no effect.
+     */
+    public void release() {
+        manager.release(this);
+    }
+
+    @Override
+    public void close() { release(); }
+
+    long getAcquiredNanos() { return acquiredNanos; }
+
+    void setExpiry(long expiryNanos, ScheduledFuture<?> expiry, long expiryGeneration) {
+        this.expiryNanos = expiryNanos;
+        this.expiry = expiry;
+        this.expiryGeneration = expiryGeneration;
+    }
+
+    /** @return The number of times the expiry has been scheduled; identifies the current expiry callback. */
+    long getExpiryGeneration() { return expiryGeneration; }
+
+    ScheduledFuture<?> getExpiry() { return expiry; }
+
+    void invalidate() { valid = false; }
+
+    @Override
+    public String toString() {
+        return String.format("Lease on %s (%s, %d ms left)", device.getID(), valid ? "valid" : "expired", getRemainingTime(TimeUnit.MILLISECONDS));
+    }
+
+}
@@ -0,0 +1,420 @@
+/*
+ * Copyright (c) 2017, Simon Cahill
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.casoftworks.jdroidlib.fleet;
+
+import eu.casoftworks.jdroidlib.*;
+import eu.casoftworks.jdroidlib.device.*;
+import eu.casoftworks.jdroidlib.enums.*;
+import eu.casoftworks.jdroidlib.interfaces.*;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+
+/**
+ * Hands out exclusive, time-limited {@link DeviceLease}s on the devices of an {@link AndroidController},
+ * so that multiple test runners can share a device farm without stepping on each other's toes.
+ *
+ * Of all free, online devices matching a request, the least loaded one is handed out: the device
+ * that has been leased for the least time overall, so test load (and wear) is spread evenly.
+ * Requests that can't be served right away wait in arrival order: whenever a device becomes free or
+ * comes online, it is handed to the longest waiting request it matches. Waiting requests never poll.
+ *
+ * Leases expire after their lease time unless renewed; the device then becomes available again.
+ * Request predicates are evaluated while the manager's lock is held and should therefore be quick,
+ * e.g. use cached data such as {@link Device#getSdkVersion()} rather than querying the device.
+ */
+public class DeviceLeaseManager implements IDeviceStateListener, Closeable {
+
+    private final Supplier<Collection<Device>> deviceSupplier;
+    private final LongSupplier nanoClock;
+    private final Object lock = new Object();
+    private final Map<String, DeviceLease> activeLeases;    // Guarded by lock
+    private final Map<String, Long> leasedNanos;            // Guarded by lock
+    private final Deque<LeaseRequest> waitingRequests;      // Guarded by lock
+    private final ScheduledExecutorService expiryScheduler;
+    private volatile boolean closed;
+
+    /**
+     * Constructor. Registers the manager for the controller's device state events.
+     * @param controller The controller whose devices are to be leased.
+     *
+     * @see AndroidController#getLeaseManager()
+     */
+    public DeviceLeaseManager(AndroidController controller) {
+        this(() -> controller.getDeviceRegistry().getDevices(), System::nanoTime);
+        controller.addDeviceStateListener(this);
+    }
+
+    DeviceLeaseManager(Supplier<Collection<Device>> deviceSupplier, LongSupplier nanoClock) {
+        this.deviceSupplier = deviceSupplier;
+        this.nanoClock = nanoClock;
+        activeLeases = new HashMap<>();
+        leasedNanos = new HashMap<>();
+        waitingRequests = new ArrayDeque<>();
+        expiryScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "jdroidlib-lease-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    //<editor-fold desc="Acquiring leases" defaultstate="collapsed" >
+    /**
+     * Leases a device matching the given predicate, waiting until one is available.
+     * @param filter The predicate selecting eligible devices (SDK level, model, root, battery level, etc).
+     * @param leaseTime The time the lease is valid for.
+     * @param timeUnit The unit of time.
+     * @return The lease.
+     * @throws InterruptedException If the thread is interrupted while waiting. The request is withdrawn.
+     */
+    public DeviceLease acquire(Predicate<Device> filter, long leaseTime, TimeUnit timeUnit) throws InterruptedException {
+        CompletableFuture<DeviceLease> request = acquireAsync(filter, leaseTime, timeUnit);
+        try {
+            return request.get();
+        } catch (InterruptedException ex) {
+            withdraw(request);
+            throw ex;
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
+
+    /**
+     * Leases a device matching the given predicate, waiting at most the given time for one to become available.
+     * @param filter The predicate selecting eligible devices (SDK level, model, root, battery level, etc).
+     * @param leaseTime The time the lease is valid for.
+     * @param waitTime The maximum time to wait for a device.
+     * @param timeUnit The unit of time for both the lease and the wait time.
+     * @return The lease, or {@code null} if no matching device became available in time.
+     * @throws InterruptedException If the thread is interrupted while waiting. The request is withdrawn.
+     */
+    public DeviceLease tryAcquire(Predicate<Device> filter, long leaseTime, long waitTime, TimeUnit timeUnit) throws InterruptedException {
+        CompletableFuture<DeviceLease> request = acquireAsync(filter, leaseTime, timeUnit);
+        try {
+            return request.get(waitTime, timeUnit);
+        } catch (TimeoutException ex) {
+            // Served right after timing out? Then keep the lease rather than wasting the allocation.
+            return request.cancel(false) ? null : request.join();
+        } catch (InterruptedException ex) {
+            withdraw(request);
+            throw ex;
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
+
+    /**
+     * Requests a lease on a device matching the given predicate.
+     * Cancelling the returned future withdraws the request.
+     * @param filter The predicate selecting eligible devices (SDK level, model, root, battery level, etc).
+     * @param leaseTime The time the lease is valid for, from the moment it is handed out.
+     * @param timeUnit The unit of time.
+     * @return A future completed with the lease once a matching device has been allocated.
+     */
+    public CompletableFuture<DeviceLease> acquireAsync(Predicate<Device> filter, long leaseTime, TimeUnit timeUnit) {
+        if (filter == null)
+            throw new IllegalArgumentException("Filter must not be null!");
+        if (leaseTime <= 0)
+            throw new IllegalArgumentException("Lease time must be positive!");
+        if (closed)
+            throw new IllegalStateException("Lease manager is closed!");
+
+        LeaseRequest request = new LeaseRequest(filter, timeUnit.toNanos(leaseTime));
+        request.future.whenComplete((lease, ex) -> {
+            if (request.future.isCancelled()) {
+                synchronized (lock) {
+                    waitingRequests.remove(request);
+                }
+            }
+        });
+
+        List<Allocation> allocations;
+        synchronized (lock) {
+            waitingRequests.addLast(request);
+            allocations = dispatch();
+        }
+        complete(allocations);
+        return request.future;
+    }
+
+    /**
+     * Withdraws a request. If it was served concurrently, the lease is released again.
+     */
+    private void withdraw(CompletableFuture<DeviceLease> request) {
+        if (!request.cancel(false))
+            request.join().release();
+    }
+    //</editor-fold>
+
+    //<editor-fold desc="Allocation" defaultstate="collapsed" >
+    /**
+     * Hands free devices to waiting requests in arrival order.
+     * Must be called while holding the lock; the returned allocations must be completed after releasing it.
+     */
+    private List<Allocation> dispatch() {
+        if (waitingRequests.isEmpty())
+            return Collections.emptyList();
+
+        List<Device> freeDevices = new ArrayList<>();
+        for (Device device : deviceSupplier.get()) {
+            if (device.getDeviceState() == DeviceState.Online && !activeLeases.containsKey(device.getID()))
+                freeDevices.add(device);
+        }
+        if (freeDevices.isEmpty())
+            return Collections.emptyList();
+
+        // Least loaded first; the first match of each request is then the best match
+        freeDevices.sort(Comparator.comparingLong(x -> leasedNanos.getOrDefault(x.getID(), 0L)));
+
+        List<Allocation> allocations = new ArrayList<>();
+        for (Iterator<LeaseRequest> requests = waitingRequests.iterator(); requests.hasNext() && !freeDevices.isEmpty(); ) {
+            LeaseRequest request = requests.next();
+            if (request.future.isDone()) {
+                requests.remove();
+                continue;
+            }
+
+            for (Iterator<Device> devices = freeDevices.iterator(); devices.hasNext(); ) {
+                Device device = devices.next();
+                boolean matches;
+                try {
+                    matches = request.filter.test(device);
+                } catch (RuntimeException ex) {
+                    // Failed predicates fail their request once the lock has been released
+                    requests.remove();
+                    allocations.add(new Allocation(request, null, ex));
+                    break;
+                }
+                if (!matches)
+                    continue;
+
+                devices.remove();
+                requests.remove();
+                allocations.add(new Allocation(request, grant(device, request.leaseNanos), null));
+                break;
+            }
+        }
+        return allocations;
+    }
+
+    private DeviceLease grant(Device device, long leaseNanos) {
+        long now = nanoClock.getAsLong();
+        DeviceLease lease = new DeviceLease(this, device, now, leaseNanos);
+        activeLeases.put(device.getID(), lease);
+        scheduleExpiry(lease, now + leaseNanos);
+        return lease;
+    }
+
+    /**
+     * Delivers allocations and failed requests. Requests cancelled in the meantime give their device back.
+     * Must be called without holding the lock, as the requests' callbacks are run.
+     */
+    private void complete(List<Allocation> allocations) {
+        for (Allocation allocation : allocations) {
+            if (allocation.error != null)
+                allocation.request.future.completeExceptionally(allocation.error);
+            else if (!allocation.request.future.complete(allocation.lease))
+                allocation.lease.release();
+        }
+    }
+
+    /**
+     * Schedules a lease's expiry. Must be called while holding the lock.
+     * Each schedule supersedes the previous one, even if the previous callback has already started.
+     */
+    private void scheduleExpiry(DeviceLease lease, long expiryNanos) {
+        final long generation = lease.getExpiryGeneration() + 1;
+        ScheduledFuture<?> expiry = null;
+        try {
+            expiry = expiryScheduler.schedule(() -> expire(lease, generation), expiryNanos - nanoClock.getAsLong(), TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException ex) {
+            // Closed; the lease stays valid until released
+        }
+        lease.setExpiry(expiryNanos, expiry, generation);
+    }
+
+    /**
+     * Expires a lease, unless it has been renewed (or released) since the expiry was scheduled.
+     */
+    private void expire(DeviceLease lease, long generation) {
+        List<Allocation> allocations;
+        synchronized (lock) {
+            if (!lease.isValid() || lease.getExpiryGeneration() != generation)
+                return;
+            allocations = revoke(lease);
+        }
+        complete(allocations);
+    }
+    //</editor-fold>
+
+    //<editor-fold desc="Lease management" defaultstate="collapsed" >
+    boolean renew(DeviceLease lease, long leaseNanos) {
+        synchronized (lock) {
+            if (!lease.isValid())
+                return false;
+
+            if (lease.getExpiry() != null)
+                lease.getExpiry().cancel(false);
+            scheduleExpiry(lease, nanoClock.getAsLong() + leaseNanos);
+            return true;
+        }
+    }
+
+    void release(DeviceLease lease) {
+        List<Allocation> allocations;
+        synchronized (lock) {
+            if (!lease.isValid())
+                return;
+            allocations = revoke(lease);
+        }
+        complete(allocations);
+    }
+
+    /**
+     * Invalidates a lease and hands its device to waiting requests.
+     * Must be called while holding the lock; the returned allocations must be completed after releasing it.
+     */
+    private List<Allocation> revoke(DeviceLease lease) {
+        lease.invalidate();
+        if (lease.getExpiry() != null)
+            lease.getExpiry().cancel(false);
+
+        String deviceId = lease.getDevice().getID();
+        activeLeases.remove(deviceId, lease);
+        leasedNanos.merge(deviceId, nanoClock.getAsLong() - lease.getAcquiredNanos(), Long::sum);
+        return dispatch();
+    }
+
+    /**
+     * Gets the current time of the manager's clock, which all lease times are measured with.
+     */
+    long nanoTime() { return nanoClock.getAsLong(); }
+
+    /**
+     * Gets all leases currently held.
+     * @return A snapshot of the active leases.
+     */
+    public List<DeviceLease> getActiveLeases() {
+        synchronized (lock) {
+            return new ArrayList<>(activeLeases.values());
+        }
+    }
+
+    /**
+     * Gets a value indicating whether a device is currently leased.
+     * @param device The device.
+     * @return {@code true} if the device is leased.
+     */
+    public boolean isLeased(Device device) {
+        synchronized (lock) {
+            return activeLeases.containsKey(device.getID());
+        }
+    }
+
+    /**
+     * Gets the total time a device has been leased for. Active leases are not included until released.
+     * @param device The device.
+     * @param timeUnit The unit of time to return.
+     * @return The accumulated lease time.
+     */
+    public long getLeasedTime(Device device, TimeUnit timeUnit) {
+        synchronized (lock) {
+            return timeUnit.convert(leasedNanos.getOrDefault(device.getID(), 0L), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Gets the number of requests waiting for a device.
+     * @return The number of waiting requests.
+     */
+    public int getWaitingCount() {
+        synchronized (lock) {
+            return (int)waitingRequests.stream().filter(x -> !x.future.isDone()).count();
+        }
+    }
+
+    /**
+     * Offers devices to waiting requests again, e.g. after their properties changed in a way
+     * that may make them match requests they didn't match before.
+     * Devices coming online and released leases are picked up automatically.
+     */
+    public void reevaluate() {
+        List<Allocation> allocations;
+        synchronized (lock) {
+            allocations = dispatch();
+        }
+        complete(allocations);
+    }
+    //</editor-fold>
+
+    @Override
+    public void onDeviceStateChanged(DeviceStateChangedEvent event) {
+        if (event.getNewState() == DeviceState.Online)
+            reevaluate();
+    }
+
+    /**
+     * Cancels all waiting requests and stops expiring leases. Active leases stay valid until released.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        expiryScheduler.shutdownNow();
+
+        List<LeaseRequest> requests;
+        synchronized (lock) {
+            requests = new ArrayList<>(waitingRequests);
+            waitingRequests.clear();
+        }
+        requests.forEach(x -> x.future.cancel(false));
+    }
+
+    private static class LeaseRequest {
+        final Predicate<Device> filter;
+        final long leaseNanos;
+        final CompletableFuture<DeviceLease> future = new CompletableFuture<>();
+
+        LeaseRequest(Predicate<Device> filter, long leaseNanos) {
+            this.filter = filter;
+            this.leaseNanos = leaseNanos;
+        }
+    }
+
+    private static class Allocation {
+        final LeaseRequest request;
+        final DeviceLease lease;
+        final RuntimeException error;
+
+        Allocation(LeaseRequest request, DeviceLease lease, RuntimeException error) {
+            this.request = request;
+            this.lease = lease;
+            this.error = error;
+        }
+    }
+
+}
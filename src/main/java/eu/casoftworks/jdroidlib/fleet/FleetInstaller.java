@@ -0,0 +1,317 @@
+/*
+ * Copyright (c) 2017, Simon Cahill
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.casoftworks.jdroidlib.fleet;
+
+import eu.casoftworks.jdroidlib.commands.*;
+import eu.casoftworks.jdroidlib.device.*;
+import eu.casoftworks.jdroidlib.device.fs.*;
+import eu.casoftworks.jdroidlib.device.pm.*;
+import eu.casoftworks.jdroidlib.enums.*;
+import eu.casoftworks.jdroidlib.exception.*;
+import eu.casoftworks.jdroidlib.interfaces.*;
+import eu.casoftworks.jdroidlib.util.*;
+
+import java.io.*;
+import java.security.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+import java.util.logging.*;
+
+/**
+ * Installs an application package on many devices at once.
+ *
+ * The package is hashed once on the host and streamed to a content-addressed staging path
+ * (e.g. {@code /data/local/tmp/jdroidlib-<sha256>.apk}) on each device in parallel; all pushes
+ * share one bandwidth cap. The package manager then installs the staged file and the file is removed.
+ * A package is only moved to its staging path once it has been pushed completely, so devices which
+ * already hold the staged file (e.g. after a failed install, which keeps the file) skip the push.
+ */
+public class FleetInstaller {
+
+    public static final String DEFAULT_STAGING_DIRECTORY = "/data/local/tmp";
+    public static final String STAGED_FILE_PREFIX = "jdroidlib-";
+    public static final String PARTIAL_FILE_SUFFIX = ".part";
+
+    private static final String STAGED_OUTPUT = "staged";
+
+    private final Predicate<Device> deviceFilter;
+    private final InstallFlag[] installFlags;
+    private final int parallelism;
+    private final long bandwidthLimit;
+    private final long deadlineNanos;
+    private final String stagingDirectory;
+    private final boolean cleanUp;
+    private final Consumer<FleetResult<InstallTiming>> resultListener;
+
+    FleetInstaller(Factory factory) {
+        this.deviceFilter = factory.deviceFilter;
+        this.installFlags = factory.installFlags;
+        this.parallelism = factory.parallelism;
+        this.bandwidthLimit = factory.bandwidthLimit;
+        this.deadlineNanos = factory.deadlineNanos;
+        this.stagingDirectory = factory.stagingDirectory;
+        this.cleanUp = factory.cleanUp;
+        this.resultListener = factory.resultListener;
+    }
+
+    public static class Factory {
+
+        private Predicate<Device> deviceFilter = x -> x.getDeviceState() == DeviceState.Online;
+        private InstallFlag[] installFlags = new InstallFlag[0];
+        private int parallelism = FleetOperation.DEFAULT_PARALLELISM;
+        private long bandwidthLimit = 0;
+        private long deadlineNanos = 0;
+        private String stagingDirectory = DEFAULT_STAGING_DIRECTORY;
+        private boolean cleanUp = true;
+        private Consumer<FleetResult<InstallTiming>> resultListener;
+
+        /**
+         * Sets the predicate selecting the devices to install the package on.
+         * By default, all {@link DeviceState#Online} devices are selected.
+         * @param deviceFilter The predicate.
+         * @return The updated instance of this object.
+         */
+        public Factory setDeviceFilter(Predicate<Device> deviceFilter) {
+            this.deviceFilter = deviceFilter;
+            return this;
+        }
+
+        /**
+         * Sets the flags passed to the package manager.
+         * @param installFlags The flags to apply. See: {@link InstallFlag}
+         * @return The updated instance of this object.
+         */
+        public Factory setInstallFlags(InstallFlag... installFlags) {
+            this.installFlags = installFlags;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of devices the package is installed on at once.
+         * @param parallelism The maximum number of installs in flight.
+         * @return The updated instance of this object.
+         */
+        public Factory setParallelism(int parallelism) {
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Sets the maximum combined throughput of all pushes.
+         * @param bytesPerSecond The bandwidth cap in bytes per second. Set to 0 (zero) for no limit (default).
+         * @return The updated instance of this object.
+         */
+        public Factory setBandwidthLimit(long bytesPerSecond) {
+            this.bandwidthLimit = bytesPerSecond;
+            return this;
+        }
+
+        /**
+         * Sets the overall deadline for the installation, measured from the moment it is executed.
+         * @param time The deadline. Set to 0 (zero) for no deadline.
+         * @param timeUnit The unit of time.
+         * @return The updated instance of this object.
+         */
+        public Factory setDeadline(long time, TimeUnit timeUnit) {
+            this.deadlineNanos = timeUnit.toNanos(time);
+            return this;
+        }
+
+        /**
+         * Sets the directory on the devices the package is staged in.
+         * The shell user must be allowed to write to it and the package manager to read from it.
+         * @param stagingDirectory The directory. Defaults to {@link #DEFAULT_STAGING_DIRECTORY}.
+         * @return The updated instance of this object.
+         */
+        public Factory setStagingDirectory(String stagingDirectory) {
+            this.stagingDirectory = stagingDirectory;
+            return this;
+        }
+
+        /**
+         * Sets a value determining whether the staged package is removed after a successful install.
+         * Keeping it lets later installs of the same package skip the push.
+         * @param cleanUp {@code true} to remove the staged package (default).
+         * @return The updated instance of this object.
+         */
+        public Factory setCleanUp(boolean cleanUp) {
+            this.cleanUp = cleanUp;
+            return this;
+        }
+
+        /**
+         * Sets a listener receiving each device's result as soon as it is available.
+         * The listener is called on the thread executing the installation.
+         * @param resultListener The listener.
+         * @return The updated instance of this object.
+         */
+        public Factory setResultListener(Consumer<FleetResult<InstallTiming>> resultListener) {
+            this.resultListener = resultListener;
+            return this;
+        }
+
+        public FleetInstaller create() {
+            if (deviceFilter == null)
+                throw new IllegalStateException("Device filter must not be null!");
+            if (installFlags == null)
+                throw new IllegalStateException("Install flags must not be null!");
+            if (parallelism < 1)
+                throw new IllegalStateException("Parallelism must be at least one (1)!");
+            if (bandwidthLimit < 0)
+                throw new IllegalStateException("Bandwidth limit must not be negative!");
+            if (deadlineNanos < 0)
+                throw new IllegalStateException("Deadline must not be negative!");
+            if (stagingDirectory == null || !stagingDirectory.startsWith(IFileSystemEntry.LINUX_PATH_SEPARATOR))
+                throw new IllegalStateException("Staging directory must be an absolute path!");
+
+            return new FleetInstaller(this);
+        }
+
+    }
+
+    public int getParallelism() { return parallelism; }
+
+    /** @return The bandwidth cap in bytes per second, or 0 (zero) if unlimited. */
+    public long getBandwidthLimit() { return bandwidthLimit; }
+
+    public String getStagingDirectory() { return stagingDirectory; }
+
+    /**
+     * Installs a package on all matching devices and waits for the results.
+     * @param apk The package to install.
+     * @param devices The devices to select from.
+     * @param executor The executor to run the per-device installs on.
+     * @return The per-device results; each successful result holds the device's {@link InstallTiming}.
+     * @throws IOException If the package could not be read on the host.
+     * @throws InterruptedException If the calling thread is interrupted. All running installs are cancelled.
+     */
+    public FleetReport<InstallTiming> execute(ApkFile apk, Collection<Device> devices, ExecutorService executor) throws IOException, InterruptedException {
+        final String stagedPath = getStagedPath(stagingDirectory, hash(apk));
+        final BandwidthLimiter limiter = new BandwidthLimiter(bandwidthLimit);
+
+        return new FleetOperation.Factory<InstallTiming>()
+                .setDeviceFilter(deviceFilter)
+                .setTask(x -> install(x, apk, stagedPath, limiter))
+                .setParallelism(parallelism)
+                .setDeadline(deadlineNanos, TimeUnit.NANOSECONDS)
+                .setResultListener(resultListener)
+                .create()
+                .execute(devices, executor);
+    }
+
+    /**
+     * Stages (if necessary), installs and cleans up the package on a single device.
+     */
+    private InstallTiming install(Device device, ApkFile apk, String stagedPath, BandwidthLimiter limiter) throws IOException, DeviceException, InterruptedException {
+        final long startTime = System.nanoTime();
+        final long size = apk.length();
+        boolean pushed = false;
+
+        if (new AndroidFile(device, stagedPath).getSize() != size) {
+            String partialPath = stagedPath + PARTIAL_FILE_SUFFIX;
+            try (InputStream iStream = new FileInputStream(apk)) {
+                device.getFileSystem().push(iStream, partialPath, limiter);
+            }
+            commitStagedFile(device, partialPath, stagedPath, size);
+            pushed = true;
+        }
+        final long pushedTime = System.nanoTime();
+
+        device.getPackageManager().installStagedPackage(stagedPath, installFlags);
+        final long installedTime = System.nanoTime();
+
+        if (cleanUp) {
+            try {
+                if (!new AndroidFile(device, stagedPath).remove(true))
+                    Logger.getLogger(getClass().getName()).log(Level.WARNING, String.format("Staged package %s was not removed from %s!", stagedPath, device.getID()));
+            } catch (CannotRemoveException ex) {
+                Logger.getLogger(getClass().getName()).log(Level.WARNING, String.format("Could not remove staged package from %s!", device.getID()), ex);
+            }
+        }
+
+        return new InstallTiming(pushed, pushed ? size : 0, pushedTime - startTime, installedTime - pushedTime, cleanUp ? System.nanoTime() - installedTime : 0);
+    }
+
+    /**
+     * Moves a completely pushed package to its staging path; incomplete pushes are removed.
+     */
+    private static void commitStagedFile(Device device, String partialPath, String stagedPath, long size) throws DeviceException {
+        String output;
+        try {
+            output = device.getController().executeCommandReturnOutput(
+                new AdbShellCommand.Factory()
+                    .setDevice(device)
+                    .setCommandTag(getCommitScript(partialPath, stagedPath, size))
+                    .create()
+            );
+        } catch (IOException | InterruptedException ex) {
+            ex.printStackTrace();
+            throw new DeviceException(ex);
+        }
+
+        if (!output.trim().equals(STAGED_OUTPUT))
+            throw new FileCouldNotBePushedException(String.format("%s was not pushed completely to %s! (%s)", stagedPath, device.getID(), output.trim()));
+    }
+
+    static String getCommitScript(String partialPath, String stagedPath, long size) {
+        return String.format("if [ \"$(stat -c %%s %1$s)\" = \"%3$d\" ]; then mv -f %1$s %2$s && echo %4$s; else rm -f %1$s; fi",
+                ShellQuoter.quote(partialPath), ShellQuoter.quote(stagedPath), size, STAGED_OUTPUT);
+    }
+
+    /**
+     * Gets the content-addressed path a package is staged at.
+     */
+    static String getStagedPath(String stagingDirectory, String hash) {
+        String directory = stagingDirectory.endsWith(IFileSystemEntry.LINUX_PATH_SEPARATOR) ? stagingDirectory : stagingDirectory + IFileSystemEntry.LINUX_PATH_SEPARATOR;
+        return directory + STAGED_FILE_PREFIX + hash + ApkFile.EXTENSION;
+    }
+
+    /**
+     * Computes the (hex-encoded) SHA-256 hash of a file.
+     */
+    static String hash(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex); // Every JRE must support SHA-256
+        }
+
+        try (InputStream iStream = new FileInputStream(file)) {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = iStream.read(buffer)) >= 0)
+                digest.update(buffer, 0, read);
+        }
+
+        StringBuilder sBuilder = new StringBuilder();
+        for (byte b : digest.digest())
+            sBuilder.append(String.format("%02x", b));
+        return sBuilder.toString();
+    }
+
+}
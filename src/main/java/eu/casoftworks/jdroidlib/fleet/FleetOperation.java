@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) 2017, Simon Cahill
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.casoftworks.jdroidlib.fleet;
+
+import eu.casoftworks.jdroidlib.device.*;
+import eu.casoftworks.jdroidlib.enums.*;
+import eu.casoftworks.jdroidlib.interfaces.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+
+/**
+ * Executes a task on many devices at once (scatter) and collects the
+ * per-device results, failures and latencies as they complete (gather).
+ *
+ * At most {@link FleetOperation#getParallelism()} tasks are in flight at any time.
+ * If a deadline is set, tasks still running when it passes are cancelled and
+ * reported as {@link FleetTaskStatus#TimedOut}, as are tasks that were never started.
+ * Latencies are measured from the moment a task starts running, not from when it was queued.
+ *
+ * @param <T> The type of result produced per device.
+ */
+public class FleetOperation<T> {
+
+    public static final int DEFAULT_PARALLELISM = 16;
+
+    private final Predicate<Device> deviceFilter;
+    private final IFleetTask<T> task;
+    private final int parallelism;
+    private final long deadlineNanos;
+    private final Consumer<FleetResult<T>> resultListener;
+
+    FleetOperation(Predicate<Device> deviceFilter, IFleetTask<T> task, int parallelism, long deadlineNanos, Consumer<FleetResult<T>> resultListener) {
+        this.deviceFilter = deviceFilter;
+        this.task = task;
+        this.parallelism = parallelism;
+        this.deadlineNanos = deadlineNanos;
+        this.resultListener = resultListener;
+    }
+
+    public static class Factory<T> {
+
+        private Predicate<Device> deviceFilter = x -> x.getDeviceState() == DeviceState.Online;
+        private IFleetTask<T> task;
+        private int parallelism = DEFAULT_PARALLELISM;
+        private long deadlineNanos = 0;
+        private Consumer<FleetResult<T>> resultListener;
+
+        /**
+         * Sets the predicate selecting the devices to execute the task on.
+         * By default, all {@link DeviceState#Online} devices are selected.
+         * @param deviceFilter The predicate.
+         * @return The updated instance of this object.
+         */
+        public Factory<T> setDeviceFilter(Predicate<Device> deviceFilter) {
+            this.deviceFilter = deviceFilter;
+            return this;
+        }
+
+        /**
+         * Sets the task to execute on each device.
+         * @param task The task.
+         * @return The updated instance of this object.
+         */
+        public Factory<T> setTask(IFleetTask<T> task) {
+            this.task = task;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of devices the task is executed on at once.
+         * @param parallelism The maximum number of tasks in flight.
+         * @return The updated instance of this object.
+         */
+        public Factory<T> setParallelism(int parallelism) {
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Sets the overall deadline for the operation, measured from the moment it is executed.
+         * @param time The deadline. Set to 0 (zero) for no deadline.
+         * @param timeUnit The unit of time.
+         * @return The updated instance of this object.
+         */
+        public Factory<T> setDeadline(long time, TimeUnit timeUnit) {
+            this.deadlineNanos = timeUnit.toNanos(time);
+            return this;
+        }
+
+        /**
+         * Sets a listener receiving each device's result as soon as it is available.
+         * The listener is called on the thread executing the operation.
+         * @param resultListener The listener.
+         * @return The updated instance of this object.
+         */
+        public Factory<T> setResultListener(Consumer<FleetResult<T>> resultListener) {
+            this.resultListener = resultListener;
+            return this;
+        }
+
+        public FleetOperation<T> create() {
+            if (task == null)
+                throw new IllegalStateException("A task must be set!");
+            if (deviceFilter == null)
+                throw new IllegalStateException("Device filter must not be null!");
+            if (parallelism < 1)
+                throw new IllegalStateException("Parallelism must be at least one (1)!");
+            if (deadlineNanos < 0)
+                throw new IllegalStateException("Deadline must not be negative!");
+
+            return new FleetOperation<>(deviceFilter, task, parallelism, deadlineNanos, resultListener);
+        }
+
+    }
+
+    /**
+     * Gets a factory for an operation executing a command on each device.
+     * A fresh {@link ICommandFactory} is obtained for every device; the device is set on it
+     * before the command is created and executed.
+     * @param executioner The {@link IExecutioner} executing the commands.
+     * @param commandFactory Supplies a (pre-configured) command factory per device.
+     * @return A factory for further configuration of the operation.
+     */
+    public static Factory<ITuple2<Integer, String>> forCommand(IExecutioner executioner, Supplier<? extends ICommandFactory> commandFactory) {
+        return new Factory<ITuple2<Integer, String>>()
+                .setTask(device -> executioner.executeCommand(commandFactory.get().setDevice(device).create()));
+    }
+
+    public int getParallelism() { return parallelism; }
+
+    public long getDeadline(TimeUnit timeUnit) { return timeUnit.convert(deadlineNanos, TimeUnit.NANOSECONDS); }
+
+    /**
+     * Executes this operation on all matching devices and waits for the results.
+     * @param devices The devices to select from.
+     * @param executor The executor to run the per-device tasks on.
+     * @return The gathered results.
+     * @throws InterruptedException If the calling thread is interrupted. All running tasks are cancelled.
+     */
+    public FleetReport<T> execute(Collection<Device> devices, ExecutorService executor) throws InterruptedException {
+        final long startTime = System.nanoTime();
+        final long deadline = deadlineNanos > 0 ? startTime + deadlineNanos : 0;
+
+        Iterator<Device> pending = devices.stream().filter(deviceFilter).iterator();
+        CompletionService<FleetResult<T>> completionService = new ExecutorCompletionService<>(executor);
+        Map<Future<FleetResult<T>>, InFlightTask> inFlight = new HashMap<>();
+        List<FleetResult<T>> results = new ArrayList<>();
+
+        try {
+            while (inFlight.size() < parallelism && pending.hasNext())
+                submit(completionService, inFlight, pending.next());
+
+            while (!inFlight.isEmpty()) {
+                Future<FleetResult<T>> future;
+                if (deadline == 0) {
+                    future = completionService.take();
+                } else {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0 || (future = completionService.poll(remaining, TimeUnit.NANOSECONDS)) == null)
+                        break; // Deadline passed
+                }
+
+                inFlight.remove(future);
+                FleetResult<T> result = getResult(future);
+                results.add(result);
+                notifyListener(result);
+
+                if (pending.hasNext())
+                    submit(completionService, inFlight, pending.next());
+            }
+        } catch (InterruptedException ex) {
+            inFlight.keySet().forEach(x -> x.cancel(true));
+            throw ex;
+        }
+
+        // Anything left over has missed the deadline
+        final long now = System.nanoTime();
+        for (Map.Entry<Future<FleetResult<T>>, InFlightTask> entry : inFlight.entrySet()) {
+            entry.getKey().cancel(true);
+            FleetResult<T> result = FleetResult.timedOut(entry.getValue().device, entry.getValue().getRunningNanos(now));
+            results.add(result);
+            notifyListener(result);
+        }
+        while (pending.hasNext()) {
+            FleetResult<T> result = FleetResult.timedOut(pending.next(), 0);
+            results.add(result);
+            notifyListener(result);
+        }
+
+        return new FleetReport<>(results, System.nanoTime() - startTime);
+    }
+
+    private void submit(CompletionService<FleetResult<T>> completionService, Map<Future<FleetResult<T>>, InFlightTask> inFlight, Device device) {
+        final InFlightTask inFlightTask = new InFlightTask(device);
+        inFlight.put(completionService.submit(() -> {
+            inFlightTask.start();
+            try {
+                T value = task.execute(device);
+                return FleetResult.succeeded(device, value, inFlightTask.getRunningNanos(System.nanoTime()));
+            } catch (Exception ex) {
+                return FleetResult.failed(device, ex, inFlightTask.getRunningNanos(System.nanoTime()));
+            }
+        }), inFlightTask);
+    }
+
+    private FleetResult<T> getResult(Future<FleetResult<T>> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException ex) {
+            // Tasks catch their own exceptions; only Errors end up here.
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
+
+    private void notifyListener(FleetResult<T> result) {
+        if (resultListener != null)
+            resultListener.accept(result);
+    }
+
+    private static class InFlightTask {
+        final Device device;
+        private volatile long startTime;
+        private volatile boolean started;
+
+        InFlightTask(Device device) {
+            this.device = device;
+        }
+
+        /**
+         * Called by the task as it starts running; queued tasks haven't started.
+         */
+        void start() {
+            startTime = System.nanoTime();
+            started = true;
+        }
+
+        /**
+         * @return The time the task has been running for, or 0 (zero) if it's still queued.
+         */
+        long getRunningNanos(long now) { return started ? now - startTime : 0; }
+    }
+
+}
@@ -0,0 +1,424 @@
+/*
+ * Copyright (c) 2017, Simon Cahill
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.casoftworks.jdroidlib.fleet;
+
+import eu.casoftworks.jdroidlib.*;
+import eu.casoftworks.jdroidlib.device.*;
+import eu.casoftworks.jdroidlib.enums.*;
+import eu.casoftworks.jdroidlib.exception.*;
+import eu.casoftworks.jdroidlib.interfaces.*;
+import eu.casoftworks.jdroidlib.util.*;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.*;
+import java.util.function.*;
+import java.util.logging.*;
+
+/**
+ * An inverted index over the build properties of many devices, answering questions such as
+ * "which devices have fingerprint X", "which run a security patch older than 2018-06" or
+ * "how many devices of each model are there" from memory.
+ *
+ * For each property key, the index maps each value to the devices reporting it, sorted by value;
+ * so equality, prefix and (lexicographic) range queries are O(log v + k) for v distinct values and k matches.
+ * Values which parse as a {@link Version} are indexed a second time by version, for numeric range queries.
+ *
+ * {@link BuildPropSnapshot}s are collected from many devices in parallel via {@link FleetPropertyIndex#collect(Collection)},
+ * and a device coming online (again) is re-indexed in the background. Updates only touch the keys whose values changed.
+ */
+public class FleetPropertyIndex implements IDeviceStateListener, Closeable {
+
+    private final ExecutorService executor;
+    private final int parallelism;
+    private final long deadlineNanos;
+    private final Predicate<String> keyFilter;
+    private volatile Runnable closeAction;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, IndexedDevice> devices;                           // Guarded by lock
+    private final Map<String, TreeMap<String, Set<String>>> valueIndex;         // Guarded by lock
+    private final Map<String, TreeMap<Version, Set<String>>> versionIndex;      // Guarded by lock
+
+    FleetPropertyIndex(Factory factory, ExecutorService executor) {
+        this.executor = executor;
+        this.parallelism = factory.parallelism;
+        this.deadlineNanos = factory.deadlineNanos;
+        this.keyFilter = factory.keyFilter;
+        devices = new HashMap<>();
+        valueIndex = new HashMap<>();
+        versionIndex = new HashMap<>();
+    }
+
+    public static class Factory {
+
+        private int parallelism = FleetOperation.DEFAULT_PARALLELISM;
+        private long deadlineNanos = TimeUnit.SECONDS.toNanos(30);
+        private Predicate<String> keyFilter = x -> true;
+
+        /**
+         * Sets the maximum number of devices whose properties are read at once.
+         * @param parallelism The maximum number of reads in flight.
+         * @return The updated instance of this object.
+         */
+        public Factory setParallelism(int parallelism) {
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Sets the deadline for {@link FleetPropertyIndex#collect(Collection)}.
+         * Devices not answering in time keep their previously indexed properties.
+         * @param time The deadline. Set to 0 (zero) for no deadline.
+         * @param timeUnit The unit of time.
+         * @return The updated instance of this object.
+         */
+        public Factory setDeadline(long time, TimeUnit timeUnit) {
+            this.deadlineNanos = timeUnit.toNanos(time);
+            return this;
+        }
+
+        /**
+         * Sets the predicate selecting the property keys to index. By default, all keys are indexed.
+         * @param keyFilter The predicate.
+         * @return The updated instance of this object.
+         */
+        public Factory setKeyFilter(Predicate<String> keyFilter) {
+            this.keyFilter = keyFilter;
+            return this;
+        }
+
+        /**
+         * Creates an index, registered for the controller's device state events.
+         * @param controller The controller whose devices are to be indexed.
+         * @return The new index.
+         */
+        public FleetPropertyIndex create(AndroidController controller) {
+            if (controller == null)
+                throw new IllegalArgumentException("Controller must not be null!");
+
+            FleetPropertyIndex index = create(controller.getExecutorService());
+            controller.addDeviceStateListener(index);
+            index.closeAction = () -> controller.removeDeviceStateListener(index);
+            return index;
+        }
+
+        FleetPropertyIndex create(ExecutorService executor) {
+            if (parallelism < 1)
+                throw new IllegalStateException("Parallelism must be at least one (1)!");
+            if (deadlineNanos < 0)
+                throw new IllegalStateException("Deadline must not be negative!");
+            if (keyFilter == null)
+                throw new IllegalStateException("Key filter must not be null!");
+
+            return new FleetPropertyIndex(this, executor);
+        }
+
+    }
+
+    //<editor-fold desc="Updating the index" defaultstate="collapsed" >
+    /**
+     * Reads the build properties of many devices in parallel and indexes them.
+     * Devices' cached snapshots are used while they are fresh.
+     * @param devices The devices to index.
+     * @return The per-device results.
+     * @throws InterruptedException If the calling thread is interrupted.
+     */
+    public FleetReport<BuildPropSnapshot> collect(Collection<Device> devices) throws InterruptedException {
+        return new FleetOperation.Factory<BuildPropSnapshot>()
+                .setTask(x -> x.getBuildProp().getSnapshot())
+                .setParallelism(parallelism)
+                .setDeadline(deadlineNanos, TimeUnit.NANOSECONDS)
+                .setResultListener(x -> {
+                    if (x.isSucceeded())
+                        update(x.getDevice(), x.getValue());
+                })
+                .create()
+                .execute(devices, executor);
+    }
+
+    /**
+     * Indexes a device's build properties, replacing the ones previously indexed for the device.
+     * Only keys whose values changed are re-indexed. Snapshots older than the indexed one are ignored,
+     * as collections and background re-indexing may complete out of order.
+     * @param device The device.
+     * @param snapshot The device's properties.
+     */
+    public void update(Device device, BuildPropSnapshot snapshot) {
+        lock.writeLock().lock();
+        try {
+            IndexedDevice indexedDevice = devices.computeIfAbsent(device.getID(), x -> new IndexedDevice());
+            indexedDevice.device = device;
+            if (indexedDevice.snapshot == snapshot || (indexedDevice.snapshot != null && snapshot.isOlderThan(indexedDevice.snapshot)))
+                return;
+
+            Map<String, String> previous = indexedDevice.properties;
+            Map<String, String> current = new HashMap<>(snapshot.size() * 2);
+            snapshot.asMap().forEach((key, value) -> {
+                if (keyFilter.test(key))
+                    current.put(key, value);
+            });
+
+            for (Map.Entry<String, String> property : previous.entrySet()) {
+                if (!property.getValue().equals(current.get(property.getKey())))
+                    unindex(device.getID(), property.getKey(), property.getValue());
+            }
+            for (Map.Entry<String, String> property : current.entrySet()) {
+                if (!property.getValue().equals(previous.get(property.getKey())))
+                    index(device.getID(), property.getKey(), property.getValue());
+            }
+
+            indexedDevice.snapshot = snapshot;
+            indexedDevice.properties = current;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a device from the index.
+     * @param device The device.
+     * @return {@code true} if the device was indexed.
+     */
+    public boolean remove(Device device) {
+        lock.writeLock().lock();
+        try {
+            IndexedDevice indexedDevice = devices.remove(device.getID());
+            if (indexedDevice == null)
+                return false;
+            indexedDevice.properties.forEach((key, value) -> unindex(device.getID(), key, value));
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void index(String deviceId, String key, String value) {
+        valueIndex.computeIfAbsent(key, x -> new TreeMap<>()).computeIfAbsent(value, x -> new HashSet<>()).add(deviceId);
+
+        Version version = Version.parse(value);
+        if (version != null)
+            versionIndex.computeIfAbsent(key, x -> new TreeMap<>()).computeIfAbsent(version, x -> new HashSet<>()).add(deviceId);
+    }
+
+    private void unindex(String deviceId, String key, String value) {
+        removeFrom(valueIndex, key, value, deviceId);
+
+        Version version = Version.parse(value);
+        if (version != null)
+            removeFrom(versionIndex, key, version, deviceId);
+    }
+
+    private static <V> void removeFrom(Map<String, TreeMap<V, Set<String>>> index, String key, V value, String deviceId) {
+        TreeMap<V, Set<String>> values = index.get(key);
+        Set<String> deviceIds = values == null ? null : values.get(value);
+        if (deviceIds == null || !deviceIds.remove(deviceId) || !deviceIds.isEmpty())
+            return;
+
+        values.remove(value);
+        if (values.isEmpty())
+            index.remove(key);
+    }
+
+    /**
+     * Re-indexes devices coming online in the background, as they may have been updated or re-flashed.
+     */
+    @Override
+    public void onDeviceStateChanged(DeviceStateChangedEvent event) {
+        Device device = event.getDevice();
+        if (event.getNewState() != DeviceState.Online || device == null)
+            return;
+
+        try {
+            executor.execute(() -> {
+                try {
+                    update(device, device.getBuildProp().getSnapshot());
+                } catch (DeviceException ex) {
+                    Logger.getLogger(FleetPropertyIndex.class.getName()).log(Level.WARNING, String.format("Could not index the properties of %s!", device.getID()), ex);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            // Controller is closing
+        }
+    }
+    //</editor-fold>
+
+    //<editor-fold desc="Queries" defaultstate="collapsed" >
+    /**
+     * Finds the devices on which a property has the given value.
+     * @param key The property's key.
+     * @param value The value.
+     * @return The matching devices.
+     */
+    public List<Device> find(String key, String value) {
+        lock.readLock().lock();
+        try {
+            TreeMap<String, Set<String>> values = valueIndex.get(key);
+            return values == null ? new ArrayList<>() : toDevices(Collections.singleton(values.get(value)));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the devices on which a property's value starts with the given prefix.
+     * @param key The property's key.
+     * @param prefix The prefix, e.g. {@code google/} for the fingerprint.
+     * @return The matching devices, in ascending order of the value.
+     */
+    public List<Device> findByPrefix(String key, String prefix) {
+        lock.readLock().lock();
+        try {
+            TreeMap<String, Set<String>> values = valueIndex.get(key);
+            if (values == null)
+                return new ArrayList<>();
+            // Every string starting with the prefix sorts before the prefix followed by the largest char
+            return toDevices(values.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the devices on which a property's value lies within a range, comparing values as strings.
+     * @param key The property's key.
+     * @param from The lower bound (inclusive), or {@code null} for no lower bound.
+     * @param to The upper bound (exclusive), or {@code null} for no upper bound.
+     * @return The matching devices, in ascending order of the value.
+     */
+    public List<Device> findInRange(String key, String from, String to) {
+        lock.readLock().lock();
+        try {
+            return toDevices(range(valueIndex.get(key), from, to));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the devices on which a property's value lies within a range, comparing values as {@link Version}s;
+     * e.g. {@code ro.build.version.sdk} or {@code ro.build.version.security_patch}.
+     * Values which aren't versions are never included.
+     * @param key The property's key.
+     * @param from The lower bound (inclusive), or {@code null} for no lower bound.
+     * @param to The upper bound (exclusive), or {@code null} for no upper bound.
+     * @return The matching devices, in ascending order of the value.
+     */
+    public List<Device> findInVersionRange(String key, Version from, Version to) {
+        lock.readLock().lock();
+        try {
+            return toDevices(range(versionIndex.get(key), from, to));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Groups the devices by a property's value.
+     * @param key The property's key, e.g. {@code ro.product.model}.
+     * @return The devices per value, in ascending order of the value. Devices not reporting the property are left out.
+     */
+    public SortedMap<String, List<Device>> groupBy(String key) {
+        SortedMap<String, List<Device>> result = new TreeMap<>();
+        lock.readLock().lock();
+        try {
+            TreeMap<String, Set<String>> values = valueIndex.get(key);
+            if (values != null)
+                values.forEach((value, deviceIds) -> result.put(value, toDevices(Collections.singleton(deviceIds))));
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Gets a property's indexed value for a device.
+     * @param device The device.
+     * @param key The property's key.
+     * @return The value, or {@code null} if the device or the property isn't indexed.
+     */
+    public String getValue(Device device, String key) {
+        lock.readLock().lock();
+        try {
+            IndexedDevice indexedDevice = devices.get(device.getID());
+            return indexedDevice == null ? null : indexedDevice.properties.get(key);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** @return The number of indexed devices. */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return devices.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static <V> Collection<Set<String>> range(TreeMap<V, Set<String>> values, V from, V to) {
+        if (values == null)
+            return Collections.emptyList();
+
+        NavigableMap<V, Set<String>> range = values;
+        if (from != null)
+            range = range.tailMap(from, true);
+        if (to != null)
+            range = range.headMap(to, false);
+        return range.values();
+    }
+
+    private List<Device> toDevices(Collection<Set<String>> deviceIdSets) {
+        List<Device> result = new ArrayList<>();
+        for (Set<String> deviceIds : deviceIdSets) {
+            if (deviceIds == null)
+                continue;
+            for (String deviceId : deviceIds)
+                result.add(devices.get(deviceId).device);
+        }
+        return result;
+    }
+    //</editor-fold>
+
+    /**
+     * Stops re-indexing devices coming online. The index remains queryable.
+     */
+    @Override
+    public void close() {
+        Runnable action = closeAction;
+        if (action != null)
+            action.run();
+    }
+
+    private static class IndexedDevice {
+        Device device;
+        BuildPropSnapshot snapshot;
+        Map<String, String> properties = Collections.emptyMap();
+    }
+
+}
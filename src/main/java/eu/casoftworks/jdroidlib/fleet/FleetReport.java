@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2017, Simon Cahill
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.casoftworks.jdroidlib.fleet;
+
+import eu.casoftworks.jdroidlib.enums.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.*;
+
+/**
+ * The gathered results of a {@link FleetOperation}.
+ * Results are in order of completion.
+ *
+ * @param <T> The type of the per-device results.
+ */
+public class FleetReport<T> {
+
+    private final List<FleetResult<T>> results;
+    private final long elapsedNanos;
+
+    FleetReport(List<FleetResult<T>> results, long elapsedNanos) {
+        this.results = Collections.unmodifiableList(results);
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Gets all per-device results, in order of completion.
+     * @return An unmodifiable list of results.
+     */
+    public List<FleetResult<T>> getResults() { return results; }
+
+    /**
+     * Gets the results of all devices the task succeeded on.
+     * @return A list of results.
+     */
+    public List<FleetResult<T>> getSucceeded() { return getResults(FleetTaskStatus.Succeeded); }
+
+    /**
+     * Gets the results of all devices the task failed on.
+     * @return A list of results.
+     */
+    public List<FleetResult<T>> getFailed() { return getResults(FleetTaskStatus.Failed); }
+
+    /**
+     * Gets the results of all devices the task did not complete on before the deadline.
+     * @return A list of results.
+     */
+    public List<FleetResult<T>> getTimedOut() { return getResults(FleetTaskStatus.TimedOut); }
+
+    /**
+     * Gets the results of all devices the task was never started on because the operation was aborted.
+     * @return A list of results.
+     */
+    public List<FleetResult<T>> getSkipped() { return getResults(FleetTaskStatus.Skipped); }
+
+    /**
+     * Gets all results with a given status.
+     * @param status The status to filter by.
+     * @return A list of results.
+     */
+    public List<FleetResult<T>> getResults(FleetTaskStatus status) {
+        return results.stream().filter(x -> x.getStatus() == status).collect(Collectors.toList());
+    }
+
+    /**
+     * Gets a value indicating whether every task finished before the deadline.
+     * @return {@code true} if no task timed out or was skipped.
+     */
+    public boolean isComplete() { return results.stream().noneMatch(x -> x.getStatus() == FleetTaskStatus.TimedOut || x.getStatus() == FleetTaskStatus.Skipped); }
+
+    /**
+     * Gets the wall-clock time taken by the whole operation.
+     * @param timeUnit The unit of time to return.
+     * @return The elapsed time.
+     */
+    public long getElapsed(TimeUnit timeUnit) { return timeUnit.convert(elapsedNanos, TimeUnit.NANOSECONDS); }
+
+}
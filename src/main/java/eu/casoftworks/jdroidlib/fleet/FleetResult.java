@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2017, Simon Cahill
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.casoftworks.jdroidlib.fleet;
+
+import eu.casoftworks.jdroidlib.device.*;
+import eu.casoftworks.jdroidlib.enums.*;
+
+import java.util.concurrent.*;
+
+/**
+ * The result of a fleet task on a single {@link Device}.
+ *
+ * @param <T> The type of the task's result.
+ */
+public class FleetResult<T> {
+
+    private final Device device;
+    private final FleetTaskStatus status;
+    private final T value;
+    private final Exception exception;
+    private final long latencyNanos;
+
+    FleetResult(Device device, FleetTaskStatus status, T value, Exception exception, long latencyNanos) {
+        this.device = device;
+        this.status = status;
+        this.value = value;
+        this.exception = exception;
+        this.latencyNanos = latencyNanos;
+    }
+
+    static <T> FleetResult<T> succeeded(Device device, T value, long latencyNanos) {
+        return new FleetResult<>(device, FleetTaskStatus.Succeeded, value, null, latencyNanos);
+    }
+
+    static <T> FleetResult<T> failed(Device device, Exception exception, long latencyNanos) {
+        return new FleetResult<>(device, FleetTaskStatus.Failed, null, exception, latencyNanos);
+    }
+
+    static <T> FleetResult<T> timedOut(Device device, long latencyNanos) {
+        return new FleetResult<>(device, FleetTaskStatus.TimedOut, null, null, latencyNanos);
+    }
+
+    static <T> FleetResult<T> skipped(Device device) {
+        return new FleetResult<>(device, FleetTaskStatus.Skipped, null, null, 0);
+    }
+
+    /**
+     * Gets the {@link Device} this result belongs to.
+     * @return The device.
+     */
+    public Device getDevice() { return device; }
+
+    /**
+     * Gets the outcome of the task.
+     * @return The {@link FleetTaskStatus}.
+     */
+    public FleetTaskStatus getStatus() { return status; }
+
+    /**
+     * Gets a value indicating whether the task succeeded on the device.
+     * @return {@code true} if the task succeeded.
+     */
+    public boolean isSucceeded() { return status == FleetTaskStatus.Succeeded; }
+
+    /**
+     * Gets the value returned by the task.
+     * @return The task's result, or {@code null} if the task did not succeed.
+     */
+    public T getValue() { return value; }
+
+    /**
+     * Gets the exception thrown by the task.
+     * @return The exception, or {@code null} if the task did not fail.
+     */
+    public Exception getException() { return exception; }
+
+    /**
+     * Gets the time taken by the task on the device.
+     * For timed out tasks, this is the time the task was running before it was cancelled.
+     * @param timeUnit The unit of time to return.
+     * @return The task's latency.
+     */
+    public long getLatency(TimeUnit timeUnit) { return timeUnit.convert(latencyNanos, TimeUnit.NANOSECONDS); }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %s (%d ms)", device.getID(), status, getLatency(TimeUnit.MILLISECONDS));
+    }
+
+}
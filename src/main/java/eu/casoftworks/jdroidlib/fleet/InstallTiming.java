@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2017, Simon Cahill
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.casoftworks.jdroidlib.fleet;
+
+import java.util.concurrent.*;
+
+/**
+ * How long the stages of installing a package on a {@link eu.casoftworks.jdroidlib.device.Device} took.
+ *
+ * @see FleetInstaller
+ */
+public class InstallTiming {
+
+    private final boolean pushed;
+    private final long bytesPushed;
+    private final long pushNanos;
+    private final long installNanos;
+    private final long cleanUpNanos;
+
+    InstallTiming(boolean pushed, long bytesPushed, long pushNanos, long installNanos, long cleanUpNanos) {
+        this.pushed = pushed;
+        this.bytesPushed = bytesPushed;
+        this.pushNanos = pushNanos;
+        this.installNanos = installNanos;
+        this.cleanUpNanos = cleanUpNanos;
+    }
+
+    /**
+     * Gets a value indicating whether the package had to be pushed to the device.
+     * @return {@code false} if the device already held the staged package and the push was skipped.
+     */
+    public boolean isPushed() { return pushed; }
+
+    public long getBytesPushed() { return bytesPushed; }
+
+    /**
+     * Gets the time spent checking for and pushing the staged package.
+     * @param timeUnit The unit of time to return.
+     * @return The time spent staging the package.
+     */
+    public long getPushTime(TimeUnit timeUnit) { return timeUnit.convert(pushNanos, TimeUnit.NANOSECONDS); }
+
+    /**
+     * Gets the time the package manager took to install the staged package.
+     * @param timeUnit The unit of time to return.
+     * @return The install time.
+     */
+    public long getInstallTime(TimeUnit timeUnit) { return timeUnit.convert(installNanos, TimeUnit.NANOSECONDS); }
+
+    /**
+     * Gets the time spent removing the staged package.
+     * @param timeUnit The unit of time to return.
+     * @return The clean-up time; 0 (zero) if the staged package was kept.
+     */
+    public long getCleanUpTime(TimeUnit timeUnit) { return timeUnit.convert(cleanUpNanos, TimeUnit.NANOSECONDS); }
+
+    /**
+     * Gets the average throughput of the push.
+     * @return The throughput in bytes per second, or 0 (zero) if nothing was pushed.
+     */
+    public double getPushThroughput() {
+        return pushNanos > 0 ? bytesPushed * (double)TimeUnit.SECONDS.toNanos(1) / pushNanos : 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s in %d ms, installed in %d ms, cleaned up in %d ms",
+                pushed ? String.format("pushed %d bytes", bytesPushed) : "push skipped",
+                getPushTime(TimeUnit.MILLISECONDS), getInstallTime(TimeUnit.MILLISECONDS), getCleanUpTime(TimeUnit.MILLISECONDS));
+    }
+
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright (c) 2017, Simon Cahill
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.casoftworks.jdroidlib.fleet;
+
+import eu.casoftworks.jdroidlib.*;
+import eu.casoftworks.jdroidlib.device.*;
+import eu.casoftworks.jdroidlib.enums.*;
+import eu.casoftworks.jdroidlib.exception.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
+import java.util.stream.*;
+
+/**
+ * Reboots many devices in waves (rolling reboot) and waits for each of them to finish booting.
+ *
+ * Each wave reboots at most {@link RebootOrchestrator#getWaveSize()} devices at once; the next wave
+ * is only started once every device of the current wave is ready again, has failed or has timed out.
+ * Waiting is driven by the device state events of the {@link AndroidController}'s device trackers;
+ * nothing is polled from the host. If more than {@link RebootOrchestrator#getMaxFailures()} devices
+ * fail or time out, the rollout is aborted and the devices not yet rebooted are reported as
+ * {@link FleetTaskStatus#Skipped}.
+ */
+public class RebootOrchestrator {
+
+    public static final int DEFAULT_WAVE_SIZE = 4;
+    public static final long DEFAULT_READY_TIMEOUT_SECONDS = 180;
+    public static final long INITIAL_SYNC_TIMEOUT_SECONDS = 10;
+
+    private final Predicate<Device> deviceFilter;
+    private final RebootMode rebootMode;
+    private final int waveSize;
+    private final long readyTimeoutNanos;
+    private final long wavePauseNanos;
+    private final int maxFailures;
+    private final Consumer<FleetResult<RebootTiming>> resultListener;
+
+    RebootOrchestrator(Factory factory) {
+        this.deviceFilter = factory.deviceFilter;
+        this.rebootMode = factory.rebootMode;
+        this.waveSize = factory.waveSize;
+        this.readyTimeoutNanos = factory.readyTimeoutNanos;
+        this.wavePauseNanos = factory.wavePauseNanos;
+        this.maxFailures = factory.maxFailures;
+        this.resultListener = factory.resultListener;
+    }
+
+    public static class Factory {
+
+        private Predicate<Device> deviceFilter = x -> x.getDeviceState() == DeviceState.Online;
+        private RebootMode rebootMode = RebootMode.Device;
+        private int waveSize = DEFAULT_WAVE_SIZE;
+        private long readyTimeoutNanos = TimeUnit.SECONDS.toNanos(DEFAULT_READY_TIMEOUT_SECONDS);
+        private long wavePauseNanos = 0;
+        private int maxFailures = Integer.MAX_VALUE;
+        private Consumer<FleetResult<RebootTiming>> resultListener;
+
+        /**
+         * Sets the predicate selecting the devices to reboot.
+         * By default, all {@link DeviceState#Online} devices are selected.
+         * @param deviceFilter The predicate.
+         * @return The updated instance of this object.
+         */
+        public Factory setDeviceFilter(Predicate<Device> deviceFilter) {
+            this.deviceFilter = deviceFilter;
+            return this;
+        }
+
+        /**
+         * Sets the mode to reboot the devices in to.
+         * Only {@link RebootMode#Device} waits for {@code sys.boot_completed}. {@link RebootMode#Recovery}
+         * waits for the device to reappear in recovery; as ADB doesn't list devices in fastboot mode,
+         * {@link RebootMode#Bootloader} only waits for the device to go down.
+         * @param rebootMode The reboot mode. Defaults to {@link RebootMode#Device}.
+         * @return The updated instance of this object.
+         */
+        public Factory setRebootMode(RebootMode rebootMode) {
+            this.rebootMode = rebootMode;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of devices rebooted at once.
+         * @param waveSize The size of each wave.
+         * @return The updated instance of this object.
+         */
+        public Factory setWaveSize(int waveSize) {
+            this.waveSize = waveSize;
+            return this;
+        }
+
+        /**
+         * Sets the time each device has to go down, come back and finish booting.
+         * @param time The timeout.
+         * @param timeUnit The unit of time.
+         * @return The updated instance of this object.
+         */
+        public Factory setReadyTimeout(long time, TimeUnit timeUnit) {
+            this.readyTimeoutNanos = timeUnit.toNanos(time);
+            return this;
+        }
+
+        /**
+         * Sets a pause between two waves, e.g. to let the devices settle before taking more of them down.
+         * @param time The pause. Defaults to 0 (zero).
+         * @param timeUnit The unit of time.
+         * @return The updated instance of this object.
+         */
+        public Factory setWavePause(long time, TimeUnit timeUnit) {
+            this.wavePauseNanos = timeUnit.toNanos(time);
+            return this;
+        }
+
+        /**
+         * Sets the number of failed or timed out devices tolerated before the rollout is aborted.
+         * The current wave is always finished.
+         * @param maxFailures The number of tolerated failures. Set to 0 (zero) to abort on the first failure.
+         * @return The updated instance of this object.
+         */
+        public Factory setMaxFailures(int maxFailures) {
+            this.maxFailures = maxFailures;
+            return this;
+        }
+
+        /**
+         * Sets a listener receiving each device's result as soon as it is available.
+         * @param resultListener The listener.
+         * @return The updated instance of this object.
+         */
+        public Factory setResultListener(Consumer<FleetResult<RebootTiming>> resultListener) {
+            this.resultListener = resultListener;
+            return this;
+        }
+
+        public RebootOrchestrator create() {
+            if (deviceFilter == null)
+                throw new IllegalStateException("Device filter must not be null!");
+            if (rebootMode == null)
+                throw new IllegalStateException("Reboot mode must not be null!");
+            if (waveSize < 1)
+                throw new IllegalStateException("Wave size must be at least one (1)!");
+            if (readyTimeoutNanos <= 0)
+                throw new IllegalStateException("Ready timeout must be positive!");
+            if (wavePauseNanos < 0)
+                throw new IllegalStateException("Wave pause must not be negative!");
+            if (maxFailures < 0)
+                throw new IllegalStateException("Max failures must not be negative!");
+
+            return new RebootOrchestrator(this);
+        }
+
+    }
+
+    public int getWaveSize() { return waveSize; }
+
+    public int getMaxFailures() { return maxFailures; }
+
+    public long getReadyTimeout(TimeUnit timeUnit) { return timeUnit.convert(readyTimeoutNanos, TimeUnit.NANOSECONDS); }
+
+    /**
+     * Reboots all matching devices wave by wave and waits for them to become ready.
+     * @param devices The devices to select from.
+     * @param controller The controller whose device trackers report the devices' states.
+     * @return The per-device results; each successful result holds the device's {@link RebootTiming}.
+     * If device tracking could not be started, no device is rebooted and all are reported as failed.
+     * @throws InterruptedException If the calling thread is interrupted. The current wave's waits are cancelled.
+     */
+    public FleetReport<RebootTiming> execute(Collection<Device> devices, AndroidController controller) throws InterruptedException {
+        final long startTime = System.nanoTime();
+        List<Device> selected = devices.stream().filter(deviceFilter).collect(Collectors.toList());
+        List<FleetResult<RebootTiming>> results = new ArrayList<>(selected.size());
+
+        // The trackers' first listing reports every attached device as a transition;
+        // it must have settled before it could be mistaken for a device coming back.
+        if (!controller.startDeviceTracking(INITIAL_SYNC_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            TimeoutException ex = new TimeoutException(String.format(
+                    "Device tracking did not report the attached devices within %d seconds; no device was rebooted!", INITIAL_SYNC_TIMEOUT_SECONDS));
+            for (Device device : selected) {
+                FleetResult<RebootTiming> result = FleetResult.failed(device, ex, 0);
+                results.add(result);
+                if (resultListener != null)
+                    resultListener.accept(result);
+            }
+            return new FleetReport<>(results, System.nanoTime() - startTime);
+        }
+
+        FleetOperation<RebootTiming> wave = new FleetOperation.Factory<RebootTiming>()
+                .setDeviceFilter(x -> true)
+                .setTask(x -> reboot(x, controller))
+                .setParallelism(waveSize)
+                .setDeadline(readyTimeoutNanos, TimeUnit.NANOSECONDS)
+                .setResultListener(resultListener)
+                .create();
+
+        int failures = 0;
+        for (int waveStart = 0; waveStart < selected.size(); waveStart += waveSize) {
+            if (failures > maxFailures) {
+                for (Device device : selected.subList(waveStart, selected.size())) {
+                    FleetResult<RebootTiming> result = FleetResult.skipped(device);
+                    results.add(result);
+                    if (resultListener != null)
+                        resultListener.accept(result);
+                }
+                break;
+            }
+            if (waveStart > 0 && wavePauseNanos > 0)
+                TimeUnit.NANOSECONDS.sleep(wavePauseNanos);
+
+            FleetReport<RebootTiming> report = wave.execute(selected.subList(waveStart, Math.min(waveStart + waveSize, selected.size())), controller.getExecutorService());
+            results.addAll(report.getResults());
+            failures += report.getFailed().size() + report.getTimedOut().size();
+        }
+
+        return new FleetReport<>(results, System.nanoTime() - startTime);
+    }
+
+    /**
+     * Reboots a single device and waits until it is ready again.
+     * The waits are registered before the reboot is issued, so no transition can be missed.
+     */
+    private RebootTiming reboot(Device device, AndroidController controller) throws DeviceException, InterruptedException, ExecutionException, TimeoutException {
+        final long deadline = System.nanoTime() + readyTimeoutNanos;
+
+        // First wait for the device to go down, then for it to come back. The second wait is registered
+        // on the event thread completing the first one, so a quick reboot cannot slip through.
+        // Cancelling the composed future doesn't cancel the second wait, so it's kept to be cancelled explicitly.
+        AtomicBoolean finished = new AtomicBoolean();
+        AtomicReference<CompletableFuture<Device>> secondWait = new AtomicReference<>();
+        CompletableFuture<Device> wentDown = controller.awaitDeviceState(device, x -> x != DeviceState.Online);
+        CompletableFuture<Device> cameBack = rebootMode == RebootMode.Bootloader ? wentDown
+                : wentDown.thenCompose(x -> {
+                    CompletableFuture<Device> wait = controller.awaitDeviceState(device, rebootMode == RebootMode.Recovery ? DeviceState.Recovery : DeviceState.Online);
+                    secondWait.set(wait);
+                    if (finished.get())
+                        wait.cancel(false); // Gave up while the wait was being registered
+                    return wait;
+                });
+
+        try {
+            final long rebootTime = System.nanoTime();
+            device.rebootDevice(rebootMode);
+
+            cameBack.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            final long onlineTime = System.nanoTime();
+
+            if (rebootMode == RebootMode.Device && !device.waitForBootCompleted(deadline - onlineTime, TimeUnit.NANOSECONDS))
+                throw new TimeoutException(String.format("%s did not finish booting in time!", device.getID()));
+
+            return new RebootTiming(onlineTime - rebootTime, System.nanoTime() - rebootTime);
+        } finally {
+            finished.set(true);
+            wentDown.cancel(false);
+            cameBack.cancel(false);
+            CompletableFuture<Device> wait = secondWait.get();
+            if (wait != null)
+                wait.cancel(false);
+        }
+    }
+
+}
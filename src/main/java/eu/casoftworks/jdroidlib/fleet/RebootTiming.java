@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2017, Simon Cahill
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.casoftworks.jdroidlib.fleet;
+
+import java.util.concurrent.*;
+
+/**
+ * How long a {@link eu.casoftworks.jdroidlib.device.Device} took to come back after being rebooted.
+ * Both times are measured from the moment the reboot was issued.
+ */
+public class RebootTiming {
+
+    private final long timeToOnlineNanos;
+    private final long timeToReadyNanos;
+
+    RebootTiming(long timeToOnlineNanos, long timeToReadyNanos) {
+        this.timeToOnlineNanos = timeToOnlineNanos;
+        this.timeToReadyNanos = timeToReadyNanos;
+    }
+
+    /**
+     * Gets the time until ADB reported the device as online again.
+     * @param timeUnit The unit of time to return.
+     * @return The time to online.
+     */
+    public long getTimeToOnline(TimeUnit timeUnit) { return timeUnit.convert(timeToOnlineNanos, TimeUnit.NANOSECONDS); }
+
+    /**
+     * Gets the time until the device finished booting ({@code sys.boot_completed} was set).
+     * @param timeUnit The unit of time to return.
+     * @return The time to ready.
+     */
+    public long getTimeToReady(TimeUnit timeUnit) { return timeUnit.convert(timeToReadyNanos, TimeUnit.NANOSECONDS); }
+
+    @Override
+    public String toString() {
+        return String.format("online after %d ms, ready after %d ms", getTimeToOnline(TimeUnit.MILLISECONDS), getTimeToReady(TimeUnit.MILLISECONDS));
+    }
+
+}
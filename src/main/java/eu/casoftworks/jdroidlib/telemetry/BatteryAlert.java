@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2017, Simon Cahill
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.casoftworks.jdroidlib.telemetry;
+
+import eu.casoftworks.jdroidlib.device.*;
+
+/**
+ * Describes a device crossing a {@link BatteryThreshold}, either raising or clearing an alert.
+ *
+ * @see FleetBatteryMonitor
+ */
+public final class BatteryAlert {
+
+    private final Device device;
+    private final BatteryThreshold threshold;
+    private final BatteryInfo info;
+    private final boolean raised;
+
+    BatteryAlert(Device device, BatteryThreshold threshold, BatteryInfo info, boolean raised) {
+        this.device = device;
+        this.threshold = threshold;
+        this.info = info;
+        this.raised = raised;
+    }
+
+    public Device getDevice() { return device; }
+
+    public BatteryThreshold getThreshold() { return threshold; }
+
+    /** @return The snapshot that crossed the threshold. */
+    public BatteryInfo getInfo() { return info; }
+
+    /** @return The value of the threshold's metric that crossed the threshold, or {@link Double#NaN} if the metric is no longer reported. */
+    public double getValue() { return FleetBatteryMonitor.getValue(info, threshold.getMetric()); }
+
+    /** @return {@code true} if the alert was raised, {@code false} if it was cleared. */
+    public boolean isRaised() { return raised; }
+
+    /** @return The time the snapshot was taken, in milliseconds since the epoch. */
+    public long getTimestamp() { return info.getTimestamp(); }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %s %s (%s)", device.getID(), threshold, raised ? "raised" : "cleared", getValue());
+    }
+
+}
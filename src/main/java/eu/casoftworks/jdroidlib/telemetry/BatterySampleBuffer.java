@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2017, Simon Cahill
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.casoftworks.jdroidlib.telemetry;
+
+import eu.casoftworks.jdroidlib.enums.*;
+
+/**
+ * A fixed-size ring buffer of battery samples.
+ *
+ * Samples are stored column-wise in primitive arrays, so recording a sample allocates nothing and
+ * a full buffer simply overwrites its oldest sample. Samples must be added in chronological order;
+ * windowed queries walk backwards from the newest sample and stop at the start of the window.
+ * Values not reported by the device are stored as {@link Float#NaN} and excluded from statistics.
+ */
+public class BatterySampleBuffer {
+
+    private final long[] timestamps;
+    private final float[][] values; // Indexed by BatteryMetric ordinal
+    private int head;               // Index of the next sample to write
+    private int size;
+
+    /**
+     * Constructor.
+     * @param capacity The maximum number of samples held.
+     */
+    public BatterySampleBuffer(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Capacity must be at least one (1)!");
+
+        timestamps = new long[capacity];
+        values = new float[BatteryMetric.values().length][capacity];
+    }
+
+    /**
+     * Records a sample. Samples not newer than the newest sample held are ignored.
+     * @param timestamp The time of the sample in milliseconds since the epoch.
+     * @param level The charge level in percent.
+     * @param voltage The voltage in volts.
+     * @param temperature The temperature in degrees Celsius.
+     * @param current The current in amperes.
+     * @return {@code true} if the sample was recorded.
+     */
+    public synchronized boolean add(long timestamp, float level, float voltage, float temperature, float current) {
+        if (size > 0 && timestamp <= timestamps[previous(head)])
+            return false;
+
+        timestamps[head] = timestamp;
+        values[BatteryMetric.Level.ordinal()][head] = level;
+        values[BatteryMetric.Voltage.ordinal()][head] = voltage;
+        values[BatteryMetric.Temperature.ordinal()][head] = temperature;
+        values[BatteryMetric.Current.ordinal()][head] = current;
+
+        head = next(head);
+        if (size < timestamps.length)
+            size++;
+        return true;
+    }
+
+    public int getCapacity() { return timestamps.length; }
+
+    /**
+     * Gets the number of samples held.
+     * @return The number of samples, at most {@link BatterySampleBuffer#getCapacity()}.
+     */
+    public synchronized int size() { return size; }
+
+    /**
+     * Gets the time of the newest sample.
+     * @return The timestamp in milliseconds since the epoch, or -1 if the buffer is empty.
+     */
+    public synchronized long getLatestTimestamp() { return size == 0 ? -1 : timestamps[previous(head)]; }
+
+    /**
+     * Gets the newest value of a metric.
+     * @param metric The metric.
+     * @return The value, or {@link Float#NaN} if the buffer is empty.
+     */
+    public synchronized float getLatest(BatteryMetric metric) { return size == 0 ? Float.NaN : values[metric.ordinal()][previous(head)]; }
+
+    /**
+     * Computes the minimum, maximum and mean of a metric over the samples taken within a time window.
+     * @param metric The metric.
+     * @param fromTimestamp The start of the window (inclusive), in milliseconds since the epoch.
+     * @param toTimestamp The end of the window (inclusive), in milliseconds since the epoch.
+     * @return The statistics of the window.
+     */
+    public synchronized SampleStatistics getStatistics(BatteryMetric metric, long fromTimestamp, long toTimestamp) {
+        float[] column = values[metric.ordinal()];
+        int count = 0;
+        double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY, sum = 0;
+
+        for (int i = 0, index = previous(head); i < size; i++, index = previous(index)) {
+            long timestamp = timestamps[index];
+            if (timestamp < fromTimestamp)
+                break; // Everything older is outside the window, too
+            if (timestamp > toTimestamp)
+                continue;
+
+            float value = column[index];
+            if (Float.isNaN(value))
+                continue;
+
+            count++;
+            sum += value;
+            if (value < min)
+                min = value;
+            if (value > max)
+                max = value;
+        }
+
+        return count == 0
+                ? SampleStatistics.empty(fromTimestamp, toTimestamp)
+                : new SampleStatistics(count, min, max, sum / count, fromTimestamp, toTimestamp);
+    }
+
+    /**
+     * Copies the samples taken within a time window, oldest first.
+     * @param metric The metric to copy.
+     * @param fromTimestamp The start of the window (inclusive), in milliseconds since the epoch.
+     * @param timestampsOut Receives the timestamps; may be {@code null}.
+     * @param valuesOut Receives the values; may be {@code null}.
+     * @return The number of samples copied. If the arrays are too small, only the newest samples are copied.
+     */
+    public synchronized int copy(BatteryMetric metric, long fromTimestamp, long[] timestampsOut, float[] valuesOut) {
+        int limit = Math.min(timestampsOut != null ? timestampsOut.length : Integer.MAX_VALUE, valuesOut != null ? valuesOut.length : Integer.MAX_VALUE);
+
+        // Find the oldest sample within the window
+        int available = 0;
+        for (int index = previous(head); available < size && timestamps[index] >= fromTimestamp; index = previous(index))
+            available++;
+
+        int count = Math.min(available, limit);
+        float[] column = values[metric.ordinal()];
+        int index = head - count;
+        if (index < 0)
+            index += timestamps.length;
+
+        for (int i = 0; i < count; i++, index = next(index)) {
+            if (timestampsOut != null)
+                timestampsOut[i] = timestamps[index];
+            if (valuesOut != null)
+                valuesOut[i] = column[index];
+        }
+        return count;
+    }
+
+    /**
+     * Removes all samples.
+     */
+    public synchronized void clear() {
+        head = 0;
+        size = 0;
+    }
+
+    private int next(int index) { return index + 1 == timestamps.length ? 0 : index + 1; }
+
+    private int previous(int index) { return index == 0 ? timestamps.length - 1 : index - 1; }
+
+}
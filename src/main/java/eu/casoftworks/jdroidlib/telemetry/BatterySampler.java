@@ -0,0 +1,259 @@
+/*
+ * Copyright (c) 2017, Simon Cahill
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.casoftworks.jdroidlib.telemetry;
+
+import eu.casoftworks.jdroidlib.*;
+import eu.casoftworks.jdroidlib.device.*;
+import eu.casoftworks.jdroidlib.enums.*;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
+import java.util.logging.*;
+
+/**
+ * Periodically samples the batteries of many devices in to {@link BatterySampleBuffer}s.
+ *
+ * All devices share a single scheduler thread, which only dispatches; the samples themselves
+ * (one shell per sample, see {@link Battery#refresh()}) are taken on the controller's executor.
+ * Start times are spread across the interval so a large fleet isn't sampled in bursts, and a
+ * device whose previous sample hasn't completed yet skips a tick instead of piling up work.
+ * Devices that aren't online are skipped until they are back.
+ */
+public class BatterySampler implements Closeable {
+
+    public static final long DEFAULT_INTERVAL_MILLIS = 5000;
+    public static final int DEFAULT_CAPACITY = 720; // One hour at the default interval
+
+    private final ExecutorService executor;
+    private final long intervalMillis;
+    private final int capacity;
+    private final ConcurrentMap<String, SampledDevice> devices;
+    private final ScheduledExecutorService scheduler;
+    private volatile BiConsumer<Device, BatteryInfo> sampleListener;
+
+    BatterySampler(Factory factory, ExecutorService executor) {
+        this.executor = executor;
+        this.intervalMillis = factory.intervalMillis;
+        this.capacity = factory.capacity;
+        devices = new ConcurrentHashMap<>();
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "jdroidlib-battery-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static class Factory {
+
+        private long intervalMillis = DEFAULT_INTERVAL_MILLIS;
+        private int capacity = DEFAULT_CAPACITY;
+
+        /**
+         * Sets the interval in which each device is sampled.
+         * @param time The interval.
+         * @param timeUnit The unit of time.
+         * @return The updated instance of this object.
+         */
+        public Factory setInterval(long time, TimeUnit timeUnit) {
+            this.intervalMillis = timeUnit.toMillis(time);
+            return this;
+        }
+
+        /**
+         * Sets the number of samples kept per device. Older samples are overwritten.
+         * @param capacity The number of samples.
+         * @return The updated instance of this object.
+         */
+        public Factory setCapacity(int capacity) {
+            this.capacity = capacity;
+            return this;
+        }
+
+        /**
+         * Creates a sampler taking its samples on the controller's executor.
+         * @param controller The controller the sampled devices are bound to.
+         * @return The new sampler.
+         */
+        public BatterySampler create(AndroidController controller) {
+            if (controller == null)
+                throw new IllegalArgumentException("Controller must not be null!");
+            if (intervalMillis < 1)
+                throw new IllegalStateException("Interval must be positive!");
+            if (capacity < 1)
+                throw new IllegalStateException("Capacity must be at least one (1)!");
+
+            return new BatterySampler(this, controller.getExecutorService());
+        }
+
+    }
+
+    public long getInterval(TimeUnit timeUnit) { return timeUnit.convert(intervalMillis, TimeUnit.MILLISECONDS); }
+
+    public int getCapacity() { return capacity; }
+
+    /**
+     * Starts sampling a device.
+     * @param device The device to sample.
+     * @return The device's sample buffer.
+     */
+    public BatterySampleBuffer addDevice(Device device) {
+        SampledDevice sampledDevice = devices.computeIfAbsent(device.getID(), x -> new SampledDevice(device, new BatterySampleBuffer(capacity)));
+        synchronized (sampledDevice) {
+            if (sampledDevice.schedule == null) {
+                // Spread the devices across the interval
+                long initialDelay = Math.floorMod(device.getID().hashCode(), intervalMillis);
+                sampledDevice.schedule = scheduler.scheduleAtFixedRate(() -> dispatch(sampledDevice), initialDelay, intervalMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        return sampledDevice.buffer;
+    }
+
+    /**
+     * Starts sampling multiple devices.
+     * @param devices The devices to sample.
+     */
+    public void addDevices(Collection<Device> devices) { devices.forEach(this::addDevice); }
+
+    /**
+     * Stops sampling a device.
+     * @param device The device.
+     * @return The device's sample buffer, or {@code null} if the device wasn't sampled.
+     */
+    public BatterySampleBuffer removeDevice(Device device) {
+        SampledDevice sampledDevice = devices.remove(device.getID());
+        if (sampledDevice == null)
+            return null;
+
+        synchronized (sampledDevice) {
+            if (sampledDevice.schedule != null)
+                sampledDevice.schedule.cancel(false);
+        }
+        return sampledDevice.buffer;
+    }
+
+    /**
+     * Gets the sample buffer of a device.
+     * @param device The device.
+     * @return The device's sample buffer, or {@code null} if the device isn't sampled.
+     */
+    public BatterySampleBuffer getBuffer(Device device) {
+        SampledDevice sampledDevice = devices.get(device.getID());
+        return sampledDevice == null ? null : sampledDevice.buffer;
+    }
+
+    /**
+     * Gets the devices being sampled.
+     * @return A snapshot of the sampled devices.
+     */
+    public List<Device> getDevices() {
+        List<Device> result = new ArrayList<>();
+        devices.values().forEach(x -> result.add(x.device));
+        return result;
+    }
+
+    /**
+     * Sets a listener called (on the executor thread taking the sample) after each recorded sample.
+     * @param sampleListener The listener, or {@code null} to remove it.
+     */
+    public void setSampleListener(BiConsumer<Device, BatteryInfo> sampleListener) { this.sampleListener = sampleListener; }
+
+    /**
+     * Computes statistics of a metric of a device over the recent past.
+     * @param device The device.
+     * @param metric The metric.
+     * @param window The length of the window, ending now.
+     * @param timeUnit The unit of time.
+     * @return The statistics, or {@code null} if the device isn't sampled.
+     */
+    public SampleStatistics getStatistics(Device device, BatteryMetric metric, long window, TimeUnit timeUnit) {
+        BatterySampleBuffer buffer = getBuffer(device);
+        if (buffer == null)
+            return null;
+
+        long now = System.currentTimeMillis();
+        return buffer.getStatistics(metric, now - timeUnit.toMillis(window), now);
+    }
+
+    private void dispatch(SampledDevice sampledDevice) {
+        if (sampledDevice.device.getDeviceState() != DeviceState.Online || !sampledDevice.inFlight.compareAndSet(false, true))
+            return; // Offline, or the previous sample is still being taken
+
+        try {
+            executor.execute(() -> {
+                try {
+                    sample(sampledDevice);
+                } finally {
+                    sampledDevice.inFlight.set(false);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            sampledDevice.inFlight.set(false); // Controller is closing
+        }
+    }
+
+    private void sample(SampledDevice sampledDevice) {
+        try {
+            BatteryInfo info = sampledDevice.device.getBattery().refresh();
+            boolean recorded = sampledDevice.buffer.add(
+                    info.getTimestamp(),
+                    (float)info.getLevelPercent(),
+                    (float)info.getVoltage(),
+                    (float)info.getTemperature(),
+                    (float)info.getCurrent()
+            );
+
+            BiConsumer<Device, BatteryInfo> listener = sampleListener;
+            if (recorded && listener != null)
+                listener.accept(sampledDevice.device, info);
+        } catch (RuntimeException ex) {
+            Logger.getLogger(BatterySampler.class.getName()).log(Level.WARNING, String.format("Could not sample the battery of %s!", sampledDevice.device.getID()), ex);
+        }
+    }
+
+    /**
+     * Stops sampling all devices. The sample buffers remain readable.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    private static class SampledDevice {
+        final Device device;
+        final BatterySampleBuffer buffer;
+        final AtomicBoolean inFlight = new AtomicBoolean();
+        ScheduledFuture<?> schedule; // Guarded by this
+
+        SampledDevice(Device device, BatterySampleBuffer buffer) {
+            this.device = device;
+            this.buffer = buffer;
+        }
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2017, Simon Cahill
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.casoftworks.jdroidlib.telemetry;
+
+import eu.casoftworks.jdroidlib.enums.*;
+
+/**
+ * A limit on a {@link BatteryMetric}, raising a {@link BatteryAlert} when a device crosses it.
+ *
+ * To keep a value hovering around the limit from raising an alert on every sample,
+ * an alert is only cleared once the value has moved back past the limit by the threshold's hysteresis.
+ * Instances are immutable.
+ */
+public final class BatteryThreshold {
+
+    private final BatteryMetric metric;
+    private final double limit;
+    private final boolean upper;
+    private final double hysteresis;
+
+    private BatteryThreshold(BatteryMetric metric, double limit, boolean upper, double hysteresis) {
+        if (metric == null)
+            throw new IllegalArgumentException("Metric must not be null!");
+        if (Double.isNaN(limit))
+            throw new IllegalArgumentException("Limit must be a number!");
+        if (!(hysteresis >= 0))
+            throw new IllegalArgumentException("Hysteresis must not be negative!");
+
+        this.metric = metric;
+        this.limit = limit;
+        this.upper = upper;
+        this.hysteresis = hysteresis;
+    }
+
+    /**
+     * Creates a threshold alerting when a metric drops below a limit (e.g. the level below 20%).
+     * @param metric The metric.
+     * @param limit The limit; values below it raise an alert.
+     * @return The new threshold.
+     */
+    public static BatteryThreshold below(BatteryMetric metric, double limit) {
+        return new BatteryThreshold(metric, limit, false, 0);
+    }
+
+    /**
+     * Creates a threshold alerting when a metric rises above a limit (e.g. the temperature above 45°C).
+     * @param metric The metric.
+     * @param limit The limit; values above it raise an alert.
+     * @return The new threshold.
+     */
+    public static BatteryThreshold above(BatteryMetric metric, double limit) {
+        return new BatteryThreshold(metric, limit, true, 0);
+    }
+
+    /**
+     * Gets a copy of this threshold with the given hysteresis.
+     * @param hysteresis How far the value must move back past the limit for an alert to be cleared.
+     * @return The new threshold.
+     */
+    public BatteryThreshold withHysteresis(double hysteresis) {
+        return new BatteryThreshold(metric, limit, upper, hysteresis);
+    }
+
+    public BatteryMetric getMetric() { return metric; }
+
+    public double getLimit() { return limit; }
+
+    /** @return {@code true} if values above the limit raise an alert, {@code false} if values below it do. */
+    public boolean isUpper() { return upper; }
+
+    public double getHysteresis() { return hysteresis; }
+
+    /**
+     * Determines whether a value raises an alert.
+     */
+    boolean isExceeded(double value) {
+        return upper ? value > limit : value < limit;
+    }
+
+    /**
+     * Determines whether a value clears a raised alert.
+     */
+    boolean isCleared(double value) {
+        return upper ? value <= limit - hysteresis : value >= limit + hysteresis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %s %s", metric, upper ? ">" : "<", limit);
+    }
+
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2017, Simon Cahill
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.casoftworks.jdroidlib.telemetry;
+
+/**
+ * <b>This is NOT a public class!</b>
+ *
+ * Reads bit strings written by a {@link BitWriter}.
+ * Bits are served from a 64-bit buffer, which is refilled a byte at a time.
+ */
+final class BitReader {
+
+    private final byte[] bytes;
+    private int index;
+    private long buffer; // Left-aligned; unread bits at the top
+    private int available;
+
+    BitReader(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    /**
+     * Reads an unsigned value.
+     * @param bits The number of bits to read, 0 to 64.
+     * @return The value.
+     */
+    long read(int bits) {
+        if (bits == 0)
+            return 0;
+        if (bits > available) {
+            refill();
+            if (bits > available) // More than 56 bits; the buffer can't hold them all at once
+                return read(bits - 32) << 32 | read(32);
+        }
+
+        long value = buffer >>> (Long.SIZE - bits);
+        buffer = bits == Long.SIZE ? 0 : buffer << bits;
+        available -= bits;
+        return value;
+    }
+
+    /**
+     * Reads a two's complement value.
+     * @param bits The number of bits to read, 1 to 64.
+     * @return The sign-extended value.
+     */
+    long readSigned(int bits) {
+        int shift = Long.SIZE - bits;
+        return (read(bits) << shift) >> shift;
+    }
+
+    boolean readBit() {
+        if (available == 0)
+            refill();
+
+        boolean bit = buffer < 0;
+        buffer <<= 1;
+        available--;
+        return bit;
+    }
+
+    private void refill() {
+        // Reading past the end yields zeros
+        while (available <= Long.SIZE - 8) {
+            long next = index < bytes.length ? bytes[index] & 0xFF : 0;
+            index++;
+            buffer |= next << (Long.SIZE - 8 - available);
+            available += 8;
+        }
+    }
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2017, Simon Cahill
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.casoftworks.jdroidlib.telemetry;
+
+import java.util.*;
+
+/**
+ * <b>This is NOT a public class!</b>
+ *
+ * Writes bit strings, most significant bit first, in to a growing byte array.
+ */
+final class BitWriter {
+
+    private byte[] bytes;
+    private long bitPosition;
+
+    BitWriter(int initialCapacity) {
+        bytes = new byte[Math.max(16, initialCapacity)];
+    }
+
+    /**
+     * Writes the lowest bits of a value.
+     * @param value The value.
+     * @param bits The number of bits to write, 0 to 64.
+     */
+    void write(long value, int bits) {
+        ensureCapacity(bitPosition + bits);
+        while (bits > 0) {
+            int free = 8 - (int)(bitPosition & 7);
+            int count = Math.min(free, bits);
+            int chunk = (int)(value >>> (bits - count)) & ((1 << count) - 1);
+            bytes[(int)(bitPosition >>> 3)] |= chunk << (free - count);
+            bits -= count;
+            bitPosition += count;
+        }
+    }
+
+    void writeBit(boolean bit) {
+        write(bit ? 1 : 0, 1);
+    }
+
+    long getBitPosition() { return bitPosition; }
+
+    /** @return The number of bytes written to, including a partially written last byte. */
+    int getByteLength() { return (int)((bitPosition + 7) >>> 3); }
+
+    /** @return The backing array. Only valid until the next write! */
+    byte[] getBytes() { return bytes; }
+
+    /** @return A copy of the written bytes, trimmed to their length. */
+    byte[] toByteArray() { return Arrays.copyOf(bytes, getByteLength()); }
+
+    private void ensureCapacity(long bits) {
+        int required = (int)((bits + 7) >>> 3);
+        if (required > bytes.length)
+            bytes = Arrays.copyOf(bytes, Math.max(required, bytes.length * 2));
+    }
+
+}
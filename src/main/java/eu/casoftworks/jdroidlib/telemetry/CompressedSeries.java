@@ -0,0 +1,275 @@
+/*
+ * Copyright (c) 2017, Simon Cahill
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.casoftworks.jdroidlib.telemetry;
+
+import eu.casoftworks.jdroidlib.interfaces.*;
+
+import java.util.*;
+
+/**
+ * <b>This is NOT a public class!</b>
+ *
+ * A single time series, compressed in blocks as described in
+ * "Gorilla: A Fast, Scalable, In-Memory Time Series Database" (Pelkonen et al., 2015).
+ *
+ * Each block starts with its first timestamp and value in full.
+ * Subsequent timestamps are stored as the difference of consecutive deltas (delta-of-delta),
+ * which is zero for samples taken at a fixed interval and costs a single bit;
+ * subsequent values are stored as the XOR with the previous value, of which only the meaningful bits are written.
+ * Full blocks are sealed and trimmed to their exact length; whole blocks outside a query's range are never decoded.
+ *
+ * Instances are thread-safe.
+ */
+final class CompressedSeries {
+
+    private final int blockSize;
+    private final ArrayDeque<Block> sealedBlocks;
+
+    // Open block; guarded by this
+    private BitWriter writer;
+    private long firstTimestamp;
+    private int count;
+    private long previousTimestamp;
+    private long previousDelta;
+    private long previousValue;
+    private int previousLeading;
+    private int previousTrailing;
+    private long sealedBytes;
+    private long sealedCount;
+
+    CompressedSeries(int blockSize) {
+        this.blockSize = blockSize;
+        this.sealedBlocks = new ArrayDeque<>();
+    }
+
+    /**
+     * Appends a sample.
+     * @return {@code true} if the sample was appended, {@code false} if it isn't newer than the latest sample.
+     */
+    synchronized boolean append(long timestamp, double value) {
+        if (writer != null && count > 0 && timestamp <= previousTimestamp)
+            return false;
+
+        if (writer == null || count == blockSize)
+            startBlock();
+
+        long valueBits = Double.doubleToRawLongBits(value);
+        if (count == 0) {
+            firstTimestamp = timestamp;
+            writer.write(timestamp, 64);
+            writer.write(valueBits, 64);
+            previousDelta = 0;
+            previousLeading = -1;
+        } else {
+            long delta = timestamp - previousTimestamp;
+            writeDeltaOfDelta(delta - previousDelta);
+            writeXor(valueBits ^ previousValue);
+            previousDelta = delta;
+        }
+
+        previousTimestamp = timestamp;
+        previousValue = valueBits;
+        count++;
+        return true;
+    }
+
+    private void startBlock() {
+        if (writer != null && count > 0) {
+            Block block = new Block(firstTimestamp, previousTimestamp, count, writer.toByteArray());
+            sealedBlocks.addLast(block);
+            sealedBytes += block.data.length;
+            sealedCount += block.count;
+        }
+        // Most samples of a regular series take a few bits per timestamp and value
+        writer = new BitWriter(16 + blockSize * 2);
+        count = 0;
+    }
+
+    //<editor-fold desc="Encoding" defaultstate="collapsed" >
+    private void writeDeltaOfDelta(long deltaOfDelta) {
+        if (deltaOfDelta == 0) {
+            writer.write(0b0, 1);
+        } else if (deltaOfDelta >= -64 && deltaOfDelta <= 63) {
+            writer.write(0b10, 2);
+            writer.write(deltaOfDelta, 7);
+        } else if (deltaOfDelta >= -256 && deltaOfDelta <= 255) {
+            writer.write(0b110, 3);
+            writer.write(deltaOfDelta, 9);
+        } else if (deltaOfDelta >= -2048 && deltaOfDelta <= 2047) {
+            writer.write(0b1110, 4);
+            writer.write(deltaOfDelta, 12);
+        } else if (deltaOfDelta >= Integer.MIN_VALUE && deltaOfDelta <= Integer.MAX_VALUE) {
+            writer.write(0b11110, 5);
+            writer.write(deltaOfDelta, 32);
+        } else {
+            writer.write(0b11111, 5);
+            writer.write(deltaOfDelta, 64);
+        }
+    }
+
+    private void writeXor(long xor) {
+        if (xor == 0) {
+            writer.write(0b0, 1);
+            return;
+        }
+
+        int leading = Math.min(31, Long.numberOfLeadingZeros(xor)); // Must fit in five bits
+        int trailing = Long.numberOfTrailingZeros(xor);
+
+        if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing) {
+            // Meaningful bits fit in to the previous window
+            writer.write(0b10, 2);
+            writer.write(xor >>> previousTrailing, Long.SIZE - previousLeading - previousTrailing);
+        } else {
+            int meaningful = Long.SIZE - leading - trailing;
+            writer.write(0b11, 2);
+            writer.write(leading, 5);
+            writer.write(meaningful & 63, 6); // 64 is written as 0
+            writer.write(xor >>> trailing, meaningful);
+            previousLeading = leading;
+            previousTrailing = trailing;
+        }
+    }
+
+    /**
+     * Decodes the samples of a block within a range.
+     * @return The number of samples passed to the consumer.
+     */
+    private static int decode(byte[] data, int count, long from, long to, ISampleConsumer consumer) {
+        BitReader reader = new BitReader(data);
+        long timestamp = reader.read(64);
+        long value = reader.read(64);
+        long delta = 0;
+        int leading = 0, trailing = 0;
+        int passed = 0;
+
+        for (int i = 0; ; ) {
+            if (timestamp > to)
+                break;
+            if (timestamp >= from) {
+                consumer.accept(timestamp, Double.longBitsToDouble(value));
+                passed++;
+            }
+            if (++i == count)
+                break;
+
+            delta += readDeltaOfDelta(reader);
+            timestamp += delta;
+
+            if (reader.readBit()) {
+                if (reader.readBit()) {
+                    leading = (int)reader.read(5);
+                    int meaningful = (int)reader.read(6);
+                    trailing = Long.SIZE - leading - (meaningful == 0 ? 64 : meaningful);
+                }
+                value ^= reader.read(Long.SIZE - leading - trailing) << trailing;
+            }
+        }
+
+        return passed;
+    }
+
+    private static long readDeltaOfDelta(BitReader reader) {
+        int ones = 0;
+        while (ones < 5 && reader.readBit())
+            ones++;
+
+        switch (ones) {
+            case 0: return 0;
+            case 1: return reader.readSigned(7);
+            case 2: return reader.readSigned(9);
+            case 3: return reader.readSigned(12);
+            case 4: return reader.readSigned(32);
+            default: return reader.readSigned(64);
+        }
+    }
+    //</editor-fold>
+
+    /**
+     * Passes all samples within a range to a consumer.
+     * @param from The start of the range (inclusive), in milliseconds since the epoch.
+     * @param to The end of the range (inclusive), in milliseconds since the epoch.
+     * @param consumer The consumer.
+     * @return The number of samples passed to the consumer.
+     */
+    synchronized int query(long from, long to, ISampleConsumer consumer) {
+        int passed = 0;
+        for (Block block : sealedBlocks) {
+            if (block.firstTimestamp > to)
+                return passed;
+            if (block.lastTimestamp >= from)
+                passed += decode(block.data, block.count, from, to, consumer);
+        }
+
+        if (count > 0 && firstTimestamp <= to && previousTimestamp >= from)
+            passed += decode(writer.getBytes(), count, from, to, consumer);
+        return passed;
+    }
+
+    /**
+     * Drops all sealed blocks whose samples are all older than the given time.
+     * @return The number of dropped samples.
+     */
+    synchronized int dropBefore(long timestamp) {
+        int dropped = 0;
+        while (!sealedBlocks.isEmpty() && sealedBlocks.peekFirst().lastTimestamp < timestamp) {
+            Block block = sealedBlocks.removeFirst();
+            sealedBytes -= block.data.length;
+            sealedCount -= block.count;
+            dropped += block.count;
+        }
+        return dropped;
+    }
+
+    /** @return The timestamp of the latest sample, or {@link Long#MIN_VALUE} if the series is empty. */
+    synchronized long getLatestTimestamp() {
+        return count > 0 ? previousTimestamp : Long.MIN_VALUE;
+    }
+
+    synchronized long getSampleCount() {
+        return sealedCount + count;
+    }
+
+    /** @return The number of bytes holding the compressed samples. */
+    synchronized long getByteSize() {
+        return sealedBytes + (writer == null ? 0 : writer.getByteLength());
+    }
+
+    private static final class Block {
+        final long firstTimestamp;
+        final long lastTimestamp;
+        final int count;
+        final byte[] data;
+
+        Block(long firstTimestamp, long lastTimestamp, int count, byte[] data) {
+            this.firstTimestamp = firstTimestamp;
+            this.lastTimestamp = lastTimestamp;
+            this.count = count;
+            this.data = data;
+        }
+    }
+
+}
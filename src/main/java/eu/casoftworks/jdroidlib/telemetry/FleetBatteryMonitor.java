@@ -0,0 +1,437 @@
+/*
+ * Copyright (c) 2017, Simon Cahill
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.casoftworks.jdroidlib.telemetry;
+
+import eu.casoftworks.jdroidlib.*;
+import eu.casoftworks.jdroidlib.device.*;
+import eu.casoftworks.jdroidlib.enums.*;
+import eu.casoftworks.jdroidlib.fleet.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+
+/**
+ * A fleet-wide view of the latest battery snapshot of each device.
+ *
+ * Snapshots are fed in via {@link FleetBatteryMonitor#update(Device, BatteryInfo)}; either by
+ * a {@link BatterySampler} ({@code sampler.setSampleListener(monitor::update)}), or by collecting
+ * them from many devices at once via {@link FleetBatteryMonitor#collect(Collection)}.
+ *
+ * Every update maintains a sorted index per {@link BatteryMetric}, the aggregate statistics and the
+ * raised alerts incrementally, so queries such as "all devices below 20%" or "all devices above 45°C"
+ * never read a device, and cost O(log n + k) for k matching devices.
+ */
+public class FleetBatteryMonitor {
+
+    public static final long DEFAULT_COLLECTION_DEADLINE_MILLIS = 1000;
+    public static final int MAX_THRESHOLDS = Long.SIZE;
+
+    private static final BatteryMetric[] METRICS = BatteryMetric.values();
+
+    private final ExecutorService executor;
+    private final int parallelism;
+    private final long collectionDeadlineMillis;
+    private final BatteryThreshold[] thresholds;
+    private final Consumer<BatteryAlert> alertListener;
+
+    // Guarded by lock
+    private final Object lock = new Object();
+    private final Map<String, DeviceEntry> entries;
+    private final List<TreeSet<IndexKey>> metricIndices;
+    private final double[] sums;
+    private final TreeSet<IndexKey> timestampIndex;
+
+    FleetBatteryMonitor(Factory factory, ExecutorService executor) {
+        this.executor = executor;
+        this.parallelism = factory.parallelism;
+        this.collectionDeadlineMillis = factory.collectionDeadlineMillis;
+        this.thresholds = factory.thresholds.toArray(new BatteryThreshold[0]);
+        this.alertListener = factory.alertListener;
+        entries = new HashMap<>();
+        metricIndices = new ArrayList<>(METRICS.length);
+        for (int i = 0; i < METRICS.length; i++)
+            metricIndices.add(new TreeSet<>());
+        sums = new double[METRICS.length];
+        timestampIndex = new TreeSet<>();
+    }
+
+    public static class Factory {
+
+        private int parallelism = FleetOperation.DEFAULT_PARALLELISM;
+        private long collectionDeadlineMillis = DEFAULT_COLLECTION_DEADLINE_MILLIS;
+        private final List<BatteryThreshold> thresholds = new ArrayList<>();
+        private Consumer<BatteryAlert> alertListener;
+
+        /**
+         * Sets the maximum number of devices read at once by {@link FleetBatteryMonitor#collect(Collection)}.
+         * @param parallelism The maximum number of reads in flight.
+         * @return The updated instance of this object.
+         */
+        public Factory setParallelism(int parallelism) {
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Sets the deadline for {@link FleetBatteryMonitor#collect(Collection)}.
+         * Devices not answering in time keep their previous snapshot.
+         * @param time The deadline.
+         * @param timeUnit The unit of time.
+         * @return The updated instance of this object.
+         */
+        public Factory setCollectionDeadline(long time, TimeUnit timeUnit) {
+            this.collectionDeadlineMillis = timeUnit.toMillis(time);
+            return this;
+        }
+
+        /**
+         * Adds a threshold to raise alerts for.
+         * @param threshold The threshold.
+         * @return The updated instance of this object.
+         */
+        public Factory addThreshold(BatteryThreshold threshold) {
+            thresholds.add(threshold);
+            return this;
+        }
+
+        /**
+         * Sets a listener receiving raised and cleared alerts.
+         * The listener is called on the thread updating the monitor, and must return quickly.
+         * @param alertListener The listener.
+         * @return The updated instance of this object.
+         */
+        public Factory setAlertListener(Consumer<BatteryAlert> alertListener) {
+            this.alertListener = alertListener;
+            return this;
+        }
+
+        /**
+         * Creates a monitor collecting snapshots on the controller's executor.
+         * @param controller The controller the monitored devices are bound to.
+         * @return The new monitor.
+         */
+        public FleetBatteryMonitor create(AndroidController controller) {
+            if (controller == null)
+                throw new IllegalArgumentException("Controller must not be null!");
+            return create(controller.getExecutorService());
+        }
+
+        FleetBatteryMonitor create(ExecutorService executor) {
+            if (parallelism < 1)
+                throw new IllegalStateException("Parallelism must be at least one (1)!");
+            if (collectionDeadlineMillis < 1)
+                throw new IllegalStateException("Collection deadline must be positive!");
+            if (thresholds.size() > MAX_THRESHOLDS)
+                throw new IllegalStateException(String.format("At most %d thresholds are supported!", MAX_THRESHOLDS));
+            if (thresholds.contains(null))
+                throw new IllegalStateException("Thresholds must not be null!");
+
+            return new FleetBatteryMonitor(this, executor);
+        }
+
+    }
+
+    public List<BatteryThreshold> getThresholds() { return Collections.unmodifiableList(Arrays.asList(thresholds)); }
+
+    /**
+     * Reads the batteries of many devices at once and updates the monitor with their snapshots.
+     * Devices which haven't answered when the collection deadline passes keep their previous snapshot.
+     * @param devices The devices to read.
+     * @return The per-device results.
+     * @throws InterruptedException If the calling thread is interrupted.
+     */
+    public FleetReport<BatteryInfo> collect(Collection<Device> devices) throws InterruptedException {
+        return new FleetOperation.Factory<BatteryInfo>()
+                .setTask(x -> x.getBattery().refresh())
+                .setParallelism(parallelism)
+                .setDeadline(collectionDeadlineMillis, TimeUnit.MILLISECONDS)
+                .setResultListener(x -> {
+                    if (x.isSucceeded())
+                        update(x.getDevice(), x.getValue());
+                })
+                .create()
+                .execute(devices, executor);
+    }
+
+    /**
+     * Updates the snapshot of a device.
+     * Snapshots which aren't newer than the device's current snapshot are ignored.
+     * If a snapshot no longer reports a metric, the alerts raised for that metric are cleared.
+     * @param device The device.
+     * @param info The device's new snapshot.
+     * @return {@code true} if the snapshot was applied, {@code false} if it was ignored.
+     */
+    public boolean update(Device device, BatteryInfo info) {
+        List<BatteryAlert> alerts = null;
+
+        synchronized (lock) {
+            DeviceEntry entry = entries.get(device.getID());
+            if (entry == null) {
+                entries.put(device.getID(), entry = new DeviceEntry(device));
+            } else if (info.getTimestamp() <= entry.info.getTimestamp()) {
+                return false;
+            } else {
+                unindex(entry);
+            }
+
+            entry.device = device;
+            entry.info = info;
+            for (int i = 0; i < METRICS.length; i++)
+                entry.values[i] = getValue(info, METRICS[i]);
+            index(entry);
+
+            for (int i = 0; i < thresholds.length; i++) {
+                BatteryThreshold threshold = thresholds[i];
+                double value = entry.values[threshold.getMetric().ordinal()];
+                long bit = 1L << i;
+                boolean raised = (entry.alerts & bit) != 0;
+                if (Double.isNaN(value)) {
+                    if (!raised)
+                        continue;
+                    entry.alerts &= ~bit; // Not reported (or not parseable); the alert can't be upheld
+                } else if (!raised && threshold.isExceeded(value)) {
+                    entry.alerts |= bit;
+                } else if (raised && threshold.isCleared(value)) {
+                    entry.alerts &= ~bit;
+                } else {
+                    continue;
+                }
+
+                if (alerts == null)
+                    alerts = new ArrayList<>();
+                alerts.add(new BatteryAlert(device, threshold, info, !raised));
+            }
+        }
+
+        if (alerts != null && alertListener != null)
+            alerts.forEach(alertListener);
+        return true;
+    }
+
+    /**
+     * Removes a device from the monitor. Its alerts are dropped without notifying the listener.
+     * @param device The device.
+     * @return {@code true} if the device was monitored.
+     */
+    public boolean remove(Device device) {
+        synchronized (lock) {
+            DeviceEntry entry = entries.remove(device.getID());
+            if (entry == null)
+                return false;
+            unindex(entry);
+            return true;
+        }
+    }
+
+    /**
+     * Gets the latest snapshot of a device.
+     * @param device The device.
+     * @return The snapshot, or {@code null} if the device isn't monitored.
+     */
+    public BatteryInfo getInfo(Device device) {
+        synchronized (lock) {
+            DeviceEntry entry = entries.get(device.getID());
+            return entry == null ? null : entry.info;
+        }
+    }
+
+    /**
+     * Gets the latest snapshot of every monitored device.
+     * @return A snapshot of the monitored devices and their battery snapshots.
+     */
+    public Map<Device, BatteryInfo> getInfos() {
+        synchronized (lock) {
+            Map<Device, BatteryInfo> result = new HashMap<>(entries.size() * 2);
+            entries.values().forEach(x -> result.put(x.device, x.info));
+            return result;
+        }
+    }
+
+    public int size() {
+        synchronized (lock) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Gets the devices whose metric is below a limit, in ascending order of the metric.
+     * Devices not reporting the metric are never included.
+     * @param metric The metric.
+     * @param limit The (exclusive) limit.
+     * @return The matching devices.
+     */
+    public List<Device> getDevicesBelow(BatteryMetric metric, double limit) {
+        synchronized (lock) {
+            return toDevices(metricIndices.get(metric.ordinal()).headSet(new IndexKey(limit, ""), false));
+        }
+    }
+
+    /**
+     * Gets the devices whose metric is above a limit, in ascending order of the metric.
+     * Devices not reporting the metric are never included.
+     * @param metric The metric.
+     * @param limit The (exclusive) limit.
+     * @return The matching devices.
+     */
+    public List<Device> getDevicesAbove(BatteryMetric metric, double limit) {
+        synchronized (lock) {
+            return toDevices(metricIndices.get(metric.ordinal()).tailSet(new IndexKey(Math.nextUp(limit), ""), true));
+        }
+    }
+
+    /**
+     * Gets the devices whose latest snapshot is older than the given age, oldest first.
+     * @param maxAge The maximum age of a snapshot.
+     * @param timeUnit The unit of time.
+     * @return The matching devices.
+     */
+    public List<Device> getStaleDevices(long maxAge, TimeUnit timeUnit) {
+        long cutOff = System.currentTimeMillis() - timeUnit.toMillis(maxAge);
+        synchronized (lock) {
+            return toDevices(timestampIndex.headSet(new IndexKey(cutOff, ""), false));
+        }
+    }
+
+    /**
+     * Gets the statistics of a metric across the fleet, one value (the latest) per device.
+     * The window spans from the oldest to the newest snapshot of the monitored devices.
+     * @param metric The metric.
+     * @return The statistics.
+     */
+    public SampleStatistics getStatistics(BatteryMetric metric) {
+        synchronized (lock) {
+            TreeSet<IndexKey> index = metricIndices.get(metric.ordinal());
+            long from = timestampIndex.isEmpty() ? 0 : (long)timestampIndex.first().value;
+            long to = timestampIndex.isEmpty() ? 0 : (long)timestampIndex.last().value;
+            if (index.isEmpty())
+                return SampleStatistics.empty(from, to);
+
+            return new SampleStatistics(index.size(), index.first().value, index.last().value, sums[metric.ordinal()] / index.size(), from, to);
+        }
+    }
+
+    /**
+     * Gets all currently raised alerts.
+     * @return The raised alerts, grouped by device.
+     */
+    public List<BatteryAlert> getActiveAlerts() {
+        List<BatteryAlert> result = new ArrayList<>();
+        synchronized (lock) {
+            for (DeviceEntry entry : entries.values()) {
+                for (long alerts = entry.alerts; alerts != 0; alerts &= alerts - 1)
+                    result.add(new BatteryAlert(entry.device, thresholds[Long.numberOfTrailingZeros(alerts)], entry.info, true));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets the devices for which a threshold's alert is currently raised.
+     * @param threshold The threshold; must be one of this monitor's thresholds.
+     * @return The matching devices.
+     */
+    public List<Device> getAlertedDevices(BatteryThreshold threshold) {
+        int position = Arrays.asList(thresholds).indexOf(threshold);
+        if (position < 0)
+            throw new IllegalArgumentException("Threshold is not registered with this monitor!");
+
+        long bit = 1L << position;
+        List<Device> result = new ArrayList<>();
+        synchronized (lock) {
+            entries.values().stream().filter(x -> (x.alerts & bit) != 0).forEach(x -> result.add(x.device));
+        }
+        return result;
+    }
+
+    //<editor-fold desc="Index maintenance" defaultstate="collapsed" >
+    private void index(DeviceEntry entry) {
+        for (int i = 0; i < METRICS.length; i++) {
+            if (Double.isNaN(entry.values[i]))
+                continue;
+            metricIndices.get(i).add(new IndexKey(entry.values[i], entry.device.getID()));
+            sums[i] += entry.values[i];
+        }
+        timestampIndex.add(new IndexKey(entry.info.getTimestamp(), entry.device.getID()));
+    }
+
+    private void unindex(DeviceEntry entry) {
+        for (int i = 0; i < METRICS.length; i++) {
+            if (Double.isNaN(entry.values[i]))
+                continue;
+            TreeSet<IndexKey> index = metricIndices.get(i);
+            index.remove(new IndexKey(entry.values[i], entry.device.getID()));
+            // Recompute rather than subtract from an empty index, so rounding errors don't accumulate forever
+            sums[i] = index.isEmpty() ? 0 : sums[i] - entry.values[i];
+        }
+        timestampIndex.remove(new IndexKey(entry.info.getTimestamp(), entry.device.getID()));
+    }
+
+    private List<Device> toDevices(SortedSet<IndexKey> keys) {
+        List<Device> result = new ArrayList<>(keys.size());
+        keys.forEach(x -> result.add(entries.get(x.deviceId).device));
+        return result;
+    }
+    //</editor-fold>
+
+    static double getValue(BatteryInfo info, BatteryMetric metric) {
+        switch (metric) {
+            case Level: return info.getLevelPercent();
+            case Voltage: return info.getVoltage();
+            case Temperature: return info.getTemperature();
+            case Current: return info.getCurrent();
+            default: throw new IllegalArgumentException("Unknown metric " + metric);
+        }
+    }
+
+    private static class DeviceEntry {
+        Device device;
+        BatteryInfo info;
+        final double[] values = new double[METRICS.length];
+        long alerts; // One bit per threshold
+
+        DeviceEntry(Device device) {
+            this.device = device;
+        }
+    }
+
+    private static final class IndexKey implements Comparable<IndexKey> {
+        final double value;
+        final String deviceId;
+
+        IndexKey(double value, String deviceId) {
+            this.value = value;
+            this.deviceId = deviceId;
+        }
+
+        @Override
+        public int compareTo(IndexKey other) {
+            int result = Double.compare(value, other.value);
+            return result != 0 ? result : deviceId.compareTo(other.deviceId);
+        }
+    }
+
+}
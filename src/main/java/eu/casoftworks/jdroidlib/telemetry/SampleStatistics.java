@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2017, Simon Cahill
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.casoftworks.jdroidlib.telemetry;
+
+/**
+ * Summary statistics of the samples within a time window.
+ */
+public final class SampleStatistics {
+
+    private final int count;
+    private final double min;
+    private final double max;
+    private final double mean;
+    private final long fromTimestamp;
+    private final long toTimestamp;
+
+    SampleStatistics(int count, double min, double max, double mean, long fromTimestamp, long toTimestamp) {
+        this.count = count;
+        this.min = min;
+        this.max = max;
+        this.mean = mean;
+        this.fromTimestamp = fromTimestamp;
+        this.toTimestamp = toTimestamp;
+    }
+
+    static SampleStatistics empty(long fromTimestamp, long toTimestamp) {
+        return new SampleStatistics(0, Double.NaN, Double.NaN, Double.NaN, fromTimestamp, toTimestamp);
+    }
+
+    /** @return The number of samples in the window. */
+    public int getCount() { return count; }
+
+    /** @return The smallest sample, or {@link Double#NaN} if the window holds no samples. */
+    public double getMin() { return min; }
+
+    /** @return The largest sample, or {@link Double#NaN} if the window holds no samples. */
+    public double getMax() { return max; }
+
+    /** @return The arithmetic mean of the samples, or {@link Double#NaN} if the window holds no samples. */
+    public double getMean() { return mean; }
+
+    /** @return The start of the window (inclusive), in milliseconds since the epoch. */
+    public long getFromTimestamp() { return fromTimestamp; }
+
+    /** @return The end of the window (inclusive), in milliseconds since the epoch. */
+    public long getToTimestamp() { return toTimestamp; }
+
+    @Override
+    public String toString() {
+        return String.format("n=%d, min=%.3f, max=%.3f, mean=%.3f", count, min, max, mean);
+    }
+
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2017, Simon Cahill
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.casoftworks.jdroidlib.telemetry;
+
+import eu.casoftworks.jdroidlib.device.*;
+import eu.casoftworks.jdroidlib.enums.*;
+import eu.casoftworks.jdroidlib.interfaces.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * A compressed, in-memory store for long-running per-device telemetry (battery, CPU, memory, thermal, ...).
+ *
+ * Each device has any number of named metrics, each of which is a time series of {@code double}s.
+ * Samples are compressed Gorilla-style (delta-of-delta timestamps and XOR'd values) in to byte array blocks,
+ * so a sample taken at a fixed interval of a slowly changing value costs a few bits rather than a boxed object.
+ * Samples must be appended in ascending order of time per series; older samples are ignored.
+ *
+ * Instances are thread-safe.
+ */
+public class TimeSeriesStore {
+
+    public static final int DEFAULT_BLOCK_SIZE = 720;
+
+    private final int blockSize;
+    private final long retentionMillis;
+    private final ConcurrentMap<String, ConcurrentMap<String, CompressedSeries>> devices;
+
+    TimeSeriesStore(Factory factory) {
+        this.blockSize = factory.blockSize;
+        this.retentionMillis = factory.retentionMillis;
+        devices = new ConcurrentHashMap<>();
+    }
+
+    public static class Factory {
+
+        private int blockSize = DEFAULT_BLOCK_SIZE;
+        private long retentionMillis = 0;
+
+        /**
+         * Sets the number of samples per compressed block.
+         * Larger blocks compress slightly better, smaller blocks are dropped in finer steps and decode less for short queries.
+         * @param blockSize The number of samples per block.
+         * @return The updated instance of this object.
+         */
+        public Factory setBlockSize(int blockSize) {
+            this.blockSize = blockSize;
+            return this;
+        }
+
+        /**
+         * Sets how long samples are kept. Samples are dropped a block at a time, once a block's newest sample has expired.
+         * @param time The retention time. Set to 0 (zero) to keep all samples.
+         * @param timeUnit The unit of time.
+         * @return The updated instance of this object.
+         */
+        public Factory setRetention(long time, TimeUnit timeUnit) {
+            this.retentionMillis = timeUnit.toMillis(time);
+            return this;
+        }
+
+        public TimeSeriesStore create() {
+            if (blockSize < 2)
+                throw new IllegalStateException("Block size must be at least two (2)!");
+            if (retentionMillis < 0)
+                throw new IllegalStateException("Retention must not be negative!");
+
+            return new TimeSeriesStore(this);
+        }
+
+    }
+
+    public int getBlockSize() { return blockSize; }
+
+    public long getRetention(TimeUnit timeUnit) { return timeUnit.convert(retentionMillis, TimeUnit.MILLISECONDS); }
+
+    /**
+     * Appends a sample to a device's metric.
+     * @param deviceId The device's ID.
+     * @param metric The name of the metric.
+     * @param timestamp The time of the sample, in milliseconds since the epoch.
+     * @param value The sample's value.
+     * @return {@code true} if the sample was appended, {@code false} if it wasn't newer than the series' latest sample.
+     */
+    public boolean append(String deviceId, String metric, long timestamp, double value) {
+        CompressedSeries series = devices
+                .computeIfAbsent(deviceId, x -> new ConcurrentHashMap<>())
+                .computeIfAbsent(metric, x -> new CompressedSeries(blockSize));
+
+        if (!series.append(timestamp, value))
+            return false;
+        if (retentionMillis > 0)
+            series.dropBefore(timestamp - retentionMillis);
+        return true;
+    }
+
+    /**
+     * Appends the {@link BatteryMetric}s of a battery snapshot, named after the metrics.
+     * Values not reported by the device are skipped.
+     * Can be used as a {@link BatterySampler}'s sample listener.
+     * @param device The device.
+     * @param info The battery snapshot.
+     */
+    public void record(Device device, BatteryInfo info) {
+        for (BatteryMetric metric : BatteryMetric.values()) {
+            double value = FleetBatteryMonitor.getValue(info, metric);
+            if (!Double.isNaN(value))
+                append(device.getID(), metric.name(), info.getTimestamp(), value);
+        }
+    }
+
+    /**
+     * Passes the samples of a device's metric within a range to a consumer.
+     * @param deviceId The device's ID.
+     * @param metric The name of the metric.
+     * @param from The start of the range (inclusive), in milliseconds since the epoch.
+     * @param to The end of the range (inclusive), in milliseconds since the epoch.
+     * @param consumer The consumer, receiving the samples in ascending order of time.
+     * @return The number of samples passed to the consumer.
+     */
+    public int query(String deviceId, String metric, long from, long to, ISampleConsumer consumer) {
+        CompressedSeries series = getSeries(deviceId, metric);
+        return series == null ? 0 : series.query(from, to, consumer);
+    }
+
+    /**
+     * Downsamples the samples of a device's metric within a range in to fixed-size buckets.
+     * Buckets are aligned to multiples of their size since the epoch. Empty buckets and {@link Double#NaN} values are skipped.
+     * @param deviceId The device's ID.
+     * @param metric The name of the metric.
+     * @param from The start of the range (inclusive), in milliseconds since the epoch.
+     * @param to The end of the range (inclusive), in milliseconds since the epoch.
+     * @param bucket The size of each bucket.
+     * @param timeUnit The unit of time.
+     * @return The statistics of each non-empty bucket, in ascending order of time.
+     */
+    public List<SampleStatistics> downsample(String deviceId, String metric, long from, long to, long bucket, TimeUnit timeUnit) {
+        final long bucketMillis = timeUnit.toMillis(bucket);
+        if (bucketMillis < 1)
+            throw new IllegalArgumentException("Bucket size must be at least one millisecond!");
+
+        List<SampleStatistics> result = new ArrayList<>();
+        Bucket current = new Bucket();
+        query(deviceId, metric, from, to, (timestamp, value) -> {
+            if (Double.isNaN(value))
+                return;
+
+            long start = Math.floorDiv(timestamp, bucketMillis) * bucketMillis;
+            if (current.count > 0 && start != current.start) {
+                result.add(current.toStatistics(bucketMillis));
+                current.count = 0;
+            }
+            current.add(start, value);
+        });
+
+        if (current.count > 0)
+            result.add(current.toStatistics(bucketMillis));
+        return result;
+    }
+
+    /**
+     * Gets the names of the metrics stored for a device.
+     * @param deviceId The device's ID.
+     * @return A snapshot of the metrics' names.
+     */
+    public Set<String> getMetrics(String deviceId) {
+        Map<String, CompressedSeries> metrics = devices.get(deviceId);
+        return metrics == null ? Collections.emptySet() : new HashSet<>(metrics.keySet());
+    }
+
+    /**
+     * Gets the IDs of the devices with stored samples.
+     * @return A snapshot of the device IDs.
+     */
+    public Set<String> getDeviceIds() { return new HashSet<>(devices.keySet()); }
+
+    /**
+     * Removes all samples of a device.
+     * @param deviceId The device's ID.
+     * @return {@code true} if samples of the device were stored.
+     */
+    public boolean remove(String deviceId) {
+        return devices.remove(deviceId) != null;
+    }
+
+    /** @return The number of stored samples, over all devices and metrics. */
+    public long getSampleCount() {
+        return devices.values().stream().flatMap(x -> x.values().stream()).mapToLong(CompressedSeries::getSampleCount).sum();
+    }
+
+    /** @return The number of bytes holding the compressed samples, over all devices and metrics. */
+    public long getByteSize() {
+        return devices.values().stream().flatMap(x -> x.values().stream()).mapToLong(CompressedSeries::getByteSize).sum();
+    }
+
+    private CompressedSeries getSeries(String deviceId, String metric) {
+        Map<String, CompressedSeries> metrics = devices.get(deviceId);
+        return metrics == null ? null : metrics.get(metric);
+    }
+
+    private static class Bucket {
+        long start;
+        int count;
+        double min, max, sum;
+
+        void add(long start, double value) {
+            if (count == 0) {
+                this.start = start;
+                min = max = sum = value;
+            } else {
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+                sum += value;
+            }
+            count++;
+        }
+
+        SampleStatistics toStatistics(long bucketMillis) {
+            return new SampleStatistics(count, min, max, sum / count, start, start + bucketMillis - 1);
+        }
+    }
+
+}
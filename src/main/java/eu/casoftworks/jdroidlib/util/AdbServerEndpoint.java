@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2017, Simon Cahill
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.casoftworks.jdroidlib.util;
+
+import java.util.*;
+
+/**
+ * Represents the address of an ADB server.
+ * Several ADB servers can run on the same host (each on its own port), with
+ * each server owning a subset of the connected devices.
+ */
+public class AdbServerEndpoint {
+
+    public static final String DEFAULT_HOST = "localhost";
+
+    public static final int DEFAULT_PORT = 5037;
+
+    public static final String ADB_SERVER_SOCKET_ENV = "ADB_SERVER_SOCKET";
+
+    private static final AdbServerEndpoint DEFAULT = new AdbServerEndpoint(DEFAULT_HOST, DEFAULT_PORT, null);
+
+    private final String host;
+    private final int port;
+    private final String serverSocket;
+
+    AdbServerEndpoint(String host, int port, String serverSocket) {
+        this.host = host;
+        this.port = port;
+        this.serverSocket = serverSocket;
+    }
+
+    /**
+     * Gets the endpoint of the default ADB server (localhost:5037).
+     * @return The default endpoint.
+     */
+    public static AdbServerEndpoint getDefault() { return DEFAULT; }
+
+    /**
+     * Gets an endpoint for an ADB server listening on the local host.
+     * @param port The port the server listens on (adb -P).
+     * @return An instance of {@link AdbServerEndpoint}
+     */
+    public static AdbServerEndpoint fromPort(int port) { return fromHostAndPort(DEFAULT_HOST, port); }
+
+    /**
+     * Gets an endpoint for an ADB server.
+     * @param host The host the server is running on (adb -H).
+     * @param port The port the server listens on (adb -P).
+     * @return An instance of {@link AdbServerEndpoint}
+     */
+    public static AdbServerEndpoint fromHostAndPort(String host, int port) {
+        if (host == null || host.isEmpty())
+            throw new IllegalArgumentException("Host must not be empty!");
+        if (port < 1 || port > 0xFFFF)
+            throw new IllegalArgumentException(String.format("Invalid port %d!", port));
+
+        return new AdbServerEndpoint(host, port, null);
+    }
+
+    /**
+     * Gets an endpoint from an ADB server socket specification, as used by
+     * the {@code ADB_SERVER_SOCKET} environment variable (e.g. tcp:localhost:5038).
+     * @param serverSocket The socket specification.
+     * @return An instance of {@link AdbServerEndpoint}
+     */
+    public static AdbServerEndpoint fromServerSocket(String serverSocket) {
+        if (serverSocket == null || serverSocket.isEmpty())
+            throw new IllegalArgumentException("Server socket must not be empty!");
+
+        return new AdbServerEndpoint(null, 0, serverSocket);
+    }
+
+    /**
+     * Gets the host the server is running on.
+     * @return The host, or {@code null} if this endpoint is defined by a socket specification.
+     */
+    public String getHost() { return host; }
+
+    /**
+     * Gets the port the server listens on.
+     * @return The port, or 0 (zero) if this endpoint is defined by a socket specification.
+     */
+    public int getPort() { return port; }
+
+    /**
+     * Gets the server socket specification.
+     * @return The socket specification, or {@code null} if this endpoint is defined by host and port.
+     */
+    public String getServerSocket() { return serverSocket; }
+
+    /**
+     * Gets a value indicating whether this is the default ADB server.
+     * @return {@code true} if this endpoint refers to the default server.
+     */
+    public boolean isDefault() { return equals(DEFAULT); }
+
+    /**
+     * Gets the arguments which must be passed to ADB to target this server.
+     * @return A list of arguments; empty for the default server.
+     */
+    public List<String> getArguments() {
+        if (serverSocket != null || isDefault())
+            return Collections.emptyList();
+
+        List<String> args = new ArrayList<>();
+        if (!DEFAULT_HOST.equals(host)) {
+            args.add("-H");
+            args.add(host);
+        }
+        args.add("-P");
+        args.add(String.valueOf(port));
+        return args;
+    }
+
+    /**
+     * Gets the environment variables which must be set for ADB to target this server.
+     * @return A map of environment variables; empty unless this endpoint is defined by a socket specification.
+     */
+    public Map<String, String> getEnvironment() {
+        if (serverSocket == null)
+            return Collections.emptyMap();
+        return Collections.singletonMap(ADB_SERVER_SOCKET_ENV, serverSocket);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (!(obj instanceof AdbServerEndpoint))
+            return false;
+
+        AdbServerEndpoint other = (AdbServerEndpoint)obj;
+        return port == other.port && Objects.equals(host, other.host) && Objects.equals(serverSocket, other.serverSocket);
+    }
+
+    @Override
+    public int hashCode() { return Objects.hash(host, port, serverSocket); }
+
+    @Override
+    public String toString() { return serverSocket != null ? serverSocket : String.format("tcp:%s:%d", host, port); }
+
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2017, Simon Cahill
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.casoftworks.jdroidlib.util;
+
+import java.util.concurrent.*;
+import java.util.function.*;
+
+/**
+ * Caps the combined throughput of one or more transfers (token bucket).
+ * Transfers call {@link #acquire(int)} before sending each chunk; callers exceeding the
+ * limit are put to sleep until their share of the bandwidth has accrued.
+ * A single instance may (and should) be shared by all transfers which are to be capped together.
+ * Up to one second's worth of unused bandwidth may be spent in a burst.
+ */
+public final class BandwidthLimiter {
+
+    /**
+     * A limiter which never waits.
+     */
+    public static final BandwidthLimiter UNLIMITED = new BandwidthLimiter(0);
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final long bytesPerSecond;
+    private final LongSupplier nanoClock;
+    private double available;
+    private long lastRefill;
+
+    /**
+     * Constructor.
+     * @param bytesPerSecond The maximum combined throughput. Set to 0 (zero) for no limit.
+     */
+    public BandwidthLimiter(long bytesPerSecond) {
+        this(bytesPerSecond, System::nanoTime);
+    }
+
+    BandwidthLimiter(long bytesPerSecond, LongSupplier nanoClock) {
+        if (bytesPerSecond < 0)
+            throw new IllegalArgumentException("Bandwidth must not be negative!");
+        this.bytesPerSecond = bytesPerSecond;
+        this.nanoClock = nanoClock;
+        this.lastRefill = nanoClock.getAsLong();
+        this.available = bytesPerSecond;
+    }
+
+    /**
+     * Waits until a number of bytes may be sent.
+     * @param bytes The number of bytes about to be sent.
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    public void acquire(int bytes) throws InterruptedException {
+        long waitNanos = reserve(bytes);
+        if (waitNanos > 0)
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+    }
+
+    /**
+     * Reserves bandwidth for a number of bytes.
+     * The reservation is always granted; if there is not enough bandwidth left it is taken on credit,
+     * which later callers have to wait for as well.
+     * @return The time to wait before sending the bytes, in nanoseconds.
+     */
+    synchronized long reserve(int bytes) {
+        if (isUnlimited())
+            return 0;
+
+        long now = nanoClock.getAsLong();
+        available = Math.min(bytesPerSecond, available + (now - lastRefill) * (double)bytesPerSecond / NANOS_PER_SECOND);
+        lastRefill = now;
+        available -= bytes;
+
+        return available >= 0 ? 0 : (long)Math.ceil(-available * NANOS_PER_SECOND / bytesPerSecond);
+    }
+
+    /** @return The maximum combined throughput in bytes per second, or 0 (zero) if unlimited. */
+    public long getBytesPerSecond() { return bytesPerSecond; }
+
+    public boolean isUnlimited() { return bytesPerSecond == 0; }
+
+}
@@ -26,98 +26,161 @@
 package eu.casoftworks.jdroidlib.util;
 
 /**
-  Represents an IPv4 address.
- * @author Simon Cahill
+ * Represents an IPv4 address and port.
+ *
+ * Instances are immutable values: the address is packed in to an {@code int} and the (unsigned) port in to a {@code char},
+ * and two instances are equal if they describe the same address and port, so they can be used as hash keys.
+ * Parsing is done by hand and does not allocate anything but the resulting instance.
  */
-public class Ip4Address {
-    
-    public static final short ADB_DEFAULT_PORT = 5555;
+public final class Ip4Address {
     
+    public static final int ADB_DEFAULT_PORT = 5555;
+
+    public static final int MAX_PORT = 0xFFFF;
+
+    /**
+     * @deprecated IP addresses are no longer parsed using regular expressions. Use {@link Ip4Address#isIp4Address(String)}.
+     */
+    @Deprecated
     public static final String IP_MATCH_REGEX = "([0-9]{1,3}[\\.]){3}[0-9]{1,3}";
 
+    /**
+     * @deprecated IP addresses are no longer parsed using regular expressions. Use {@link Ip4Address#isIp4Address(String)}.
+     */
+    @Deprecated
     public static final String IP_PORT_MATCH_REGEX = "(([0-9]{1,3}[\\.]){3}[0-9]{1,3})[\\:][0-9]{1,5}";
+
+    /** Returned by {@link Ip4Address#parse(CharSequence, int, int)} for invalid input; no valid result is negative. */
+    private static final long INVALID = -1;
     
-    private final byte[] addressBytes;
-    private final short port;
+    private final int address;
+    private final char port;
+    private String string; // Lazily cached; racy initialisation is harmless as the result is always the same
     
     /**
-     * Constructor allowing definition of both address bytes and the port.
-     * @param ipAddress The actual IP address (e.g. 127.0.0.1)
+     * Constructor allowing definition of both address and port.
+     * @param address The address; the first segment in the highest byte (e.g. 127.0.0.1 is 0x7F000001)
      * @param port The port of the device. (e.g. 5555)
      */
-    Ip4Address(byte[] ipAddress, short port) {
-        addressBytes = ipAddress;
-        this.port = port;
+    private Ip4Address(int address, int port) {
+        this.address = address;
+        this.port = (char)port;
     }
     
     /**
-     * Default constructor.
-     * Initializes the port variable with the value of {@link Ip4Address#ADB_DEFAULT_PORT}
-     * @param ipAddress The actual IP address (e.g. 127.0.0.1)
+     * Gets the actual IP address (IP/byte segments) represented by this object.
+     * @return A copy of the IP segments as an array of bytes, in network order.
      */
-    Ip4Address(byte[] ipAddress) {
-        this(ipAddress, ADB_DEFAULT_PORT);
+    public byte[] getAddressBytes() {
+        return new byte[] { (byte)(address >>> 24), (byte)(address >>> 16), (byte)(address >>> 8), (byte)address };
     }
-    
+
     /**
-     * Gets the actual IP address (IP/byte segments) represented by this object.
-     * @return The IP segments as an array of bytes.
+     * Gets the IP address packed in to an {@code int}, the first segment being the highest byte.
+     * @return The packed address.
      */
-    public byte[] getAddressBytes() { return addressBytes; }
+    public int getAddress() { return address; }
     
     /**
      * Gets the port used to communicate with the device.
-     * @return 
+     * @return The port (0 to 65535).
      */
-    public short getPort() { return port; }
+    public int getPort() { return port; }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (!(obj instanceof Ip4Address))
+            return false;
+
+        Ip4Address other = (Ip4Address)obj;
+        return address == other.address && port == other.port;
+    }
+
+    @Override
+    public int hashCode() { return 31 * address + port; }
     
     @Override
-    public String toString() { return String.format("%d.%d.%d.%d:%d", addressBytes[0], addressBytes[1], addressBytes[2], addressBytes[3], port); }
+    public String toString() {
+        String string = this.string;
+        if (string == null) {
+            this.string = string = new StringBuilder(21)
+                    .append(address >>> 24).append('.')
+                    .append((address >>> 16) & 0xFF).append('.')
+                    .append((address >>> 8) & 0xFF).append('.')
+                    .append(address & 0xFF).append(':')
+                    .append((int)port)
+                    .toString();
+        }
+        return string;
+    }
     
     /**
      * Returns an instance of {@link Ip4Address} from the given address.
-     * @param address The IP address in string form.
+     * @param address The IP address in string form, optionally followed by a port (e.g. 192.168.0.23:5555).
+     *                If no port is given, {@link Ip4Address#ADB_DEFAULT_PORT} is used.
      * @return An instance of {@link Ip4Address}
      */
     public static Ip4Address fromAddress(String address) {
-        if (!isIp4Address(address))
-            throw new IllegalArgumentException("address must be a valid IP!");
-
-        if (address.contains(":")) {
-            String[] splits = address.split(":");
-            return fromAddress(splits[0], Short.parseShort(splits[1]));
-        }
+        long parsed = address == null ? INVALID : parse(address, 0, address.length());
+        if (parsed == INVALID)
+            throw new IllegalArgumentException(String.format("%s is not a valid IP address!", address));
 
-        return fromIp(getIpFromString(address));
+        return fromInt((int)parsed, getPort(parsed));
     }
     
     /**
      * Returns an instance of {@link Ip4Address} from the given address and port.
-     * @param address The IP address in string form.
-     * @param port The port of the device.
+     * @param address The IP address in string form. Must <b>not</b> contain a port!
+     * @param port The port of the device. If set to 0 (zero), {@link Ip4Address#ADB_DEFAULT_PORT} will be used!
      * @return An instance of {@link Ip4Address}
      */
-    public static Ip4Address fromAddress(String address, short port) { return new Ip4Address(getIpFromString(address), port > 0 ? port : ADB_DEFAULT_PORT); }
+    public static Ip4Address fromAddress(String address, int port) {
+        long parsed = address == null ? INVALID : parse(address, 0, address.length());
+        if (parsed == INVALID || hasPort(parsed))
+            throw new IllegalArgumentException(String.format("%s is not a valid IP address!", address));
+
+        return fromInt((int)parsed, port);
+    }
+
+    /**
+     * Returns an instance of {@link Ip4Address} from a packed address and port.
+     * @param address The address; the first segment in the highest byte (e.g. 127.0.0.1 is 0x7F000001)
+     * @param port The port of the device. If set to 0 (zero), {@link Ip4Address#ADB_DEFAULT_PORT} will be used!
+     * @return An instance of {@link Ip4Address}
+     */
+    public static Ip4Address fromInt(int address, int port) {
+        if (port < 0 || port > MAX_PORT)
+            throw new IllegalArgumentException(String.format("%d is not a valid port!", port));
+
+        return new Ip4Address(address, port > 0 ? port : ADB_DEFAULT_PORT);
+    }
      
     /**
      * Returns an instance of {@link Ip4Address} from the given address.
      * @param ipSegments The IP segments as a byte array.
      * @return An instance of {@link Ip4Address}
      */
-    public static Ip4Address fromIp(byte[] ipSegments) { return new Ip4Address(ipSegments); }
+    public static Ip4Address fromIp(byte[] ipSegments) { return fromIp(ipSegments, ADB_DEFAULT_PORT); }
     
     /**
      * Returns an instance of {@link Ip4Address} from the given address and port.
      * @param ipSegments The IP segments as a byte array.
-     * @param port The port of the device.
+     * @param port The port of the device. If set to 0 (zero), {@link Ip4Address#ADB_DEFAULT_PORT} will be used!
      * @return An instance of {@link Ip4Address}
      */
-    public static Ip4Address fromIp(byte[] ipSegments, short port) { return new Ip4Address(ipSegments, port > 0 ? port : ADB_DEFAULT_PORT); }
+    public static Ip4Address fromIp(byte[] ipSegments, int port) {
+        if (ipSegments == null || ipSegments.length != 4)
+            throw new IllegalArgumentException("Segment array must be initialized and have a length of four (4)!");
+
+        return fromInt((ipSegments[0] & 0xFF) << 24 | (ipSegments[1] & 0xFF) << 16 | (ipSegments[2] & 0xFF) << 8 | (ipSegments[3] & 0xFF), port);
+    }
     
     /**
      * Gets an array of bytes from a string, representing an IPv4 address.
      * 
-     * @param ipAddress The IP address to parse. Must <b >not</b> contain port numbers!
+     * @param ipAddress The IP address to parse. A port, if any, is ignored.
      * @return A byte array containing the individual bytes (segments) of the passed IP address.
      */
     public static byte[] getIpFromString(String ipAddress) {
@@ -128,26 +191,19 @@ public class Ip4Address {
     
     /**
      * Parses a given IP string to an array of bytes, fully representing the IP address.
-     * @param ipAddress The IP address in string form.
+     * @param ipAddress The IP address in string form. A port, if any, is ignored.
      * @param segments The byte[] representation of the IP address.
      */
     public static void getIpFromString(String ipAddress, byte[] segments) {
-
-        if (ipAddress.contains(":")) {
-            ipAddress = ipAddress.split(":")[1];
-        }
-
-        if (!ipAddress.matches(IP_MATCH_REGEX))
-            throw new IllegalArgumentException("Invalid IP address found!");
         if (segments == null || segments.length != 4)
             throw new IllegalArgumentException("Segment array must be initialized and have a length of four (4)!");
-        
-        String[] strSegments = ipAddress.split("."); // Split on dot (.)
-        
-        for (int i = 0; i < segments.length; i++) {
-            segments[i] = Byte.parseByte(strSegments[i]);
-        }
-        
+
+        long parsed = ipAddress == null ? INVALID : parse(ipAddress, 0, ipAddress.length());
+        if (parsed == INVALID)
+            throw new IllegalArgumentException("Invalid IP address found!");
+
+        for (int i = 0; i < segments.length; i++)
+            segments[i] = (byte)(parsed >>> (24 - i * 8));
     }
 
     /**
@@ -157,7 +213,73 @@ public class Ip4Address {
      * @return {@code true} if the string is an IP address, {@code false} otherwise.
      */
     public static boolean isIp4Address(String ipAddress) {
-        return ipAddress.matches(IP_MATCH_REGEX) | ipAddress.matches(IP_PORT_MATCH_REGEX);
+        return ipAddress != null && parse(ipAddress, 0, ipAddress.length()) != INVALID;
+    }
+
+    /**
+     * Determines whether a region of a string is an IP address, optionally followed by a port.
+     * @param input The string containing the region.
+     * @param start The start of the region (inclusive).
+     * @param end The end of the region (exclusive).
+     * @return {@code true} if the region is an IP address, {@code false} otherwise.
+     */
+    public static boolean isIp4Address(CharSequence input, int start, int end) {
+        return parse(input, start, end) != INVALID;
     }
 
+    //<editor-fold desc="Parsing" defaultstate="collapsed" >
+    /**
+     * Parses a region of the form {@code a.b.c.d} or {@code a.b.c.d:port}.
+     * Each segment must have one to three digits and a value of at most 255; the port must have
+     * one to five digits and a value of at most 65535.
+     * @return The address in the lower 32 bits and, if present, the port plus one in the bits above;
+     *         or {@link Ip4Address#INVALID}.
+     */
+    private static long parse(CharSequence input, int start, int end) {
+        int address = 0;
+        int position = start;
+
+        for (int segment = 0; segment < 4; segment++) {
+            if (segment > 0) {
+                if (position == end || input.charAt(position) != '.')
+                    return INVALID;
+                position++;
+            }
+
+            int value = 0, digits = 0;
+            for (; position < end && digits < 4; position++, digits++) {
+                char c = input.charAt(position);
+                if (c < '0' || c > '9')
+                    break;
+                value = value * 10 + (c - '0');
+            }
+            if (digits == 0 || digits > 3 || value > 255)
+                return INVALID;
+
+            address = address << 8 | value;
+        }
+
+        if (position == end)
+            return address & 0xFFFFFFFFL;
+        if (input.charAt(position) != ':')
+            return INVALID;
+
+        int port = 0, digits = 0;
+        for (position++; position < end; position++, digits++) {
+            char c = input.charAt(position);
+            if (c < '0' || c > '9' || digits == 5)
+                return INVALID;
+            port = port * 10 + (c - '0');
+        }
+        if (digits == 0 || port > MAX_PORT)
+            return INVALID;
+
+        return (address & 0xFFFFFFFFL) | (port + 1L) << 32;
+    }
+
+    private static boolean hasPort(long parsed) { return parsed >>> 32 != 0; }
+
+    private static int getPort(long parsed) { return hasPort(parsed) ? (int)(parsed >>> 32) - 1 : ADB_DEFAULT_PORT; }
+    //</editor-fold>
+
 }
@@ -11,7 +11,7 @@ import eu.casoftworks.jdroidlib.interfaces.*;
  * @param <T1> The first stored type.
  * @param <T2> the second stored type.
  */
-public final class Tuple2<T1, T2> implements ITuple2 {
+public final class Tuple2<T1, T2> implements ITuple2<T1, T2> {
 
     private final T1 item1;
     private final T2 item2;
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2017, Simon Cahill
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.casoftworks.jdroidlib.util;
+
+import java.util.*;
+
+/**
+ * An immutable, comparable version made up of numeric components, such as {@code 8.1.0}
+ * or a security patch level such as {@code 2018-12-05}.
+ *
+ * Components are the runs of digits at the start of the version string, separated by any single
+ * non-digit character other than a letter; parsing stops at the first letter, so {@code 7.1.2_r36} is {@code 7.1.2}.
+ * Missing components compare as zero, i.e. {@code 8.1} equals {@code 8.1.0}.
+ */
+public final class Version implements Comparable<Version> {
+
+    private final int[] components;
+    private final String versionString;
+
+    private Version(int[] components, String versionString) {
+        this.components = components;
+        this.versionString = versionString;
+    }
+
+    /**
+     * Parses a version string.
+     * @param versionString The string to parse.
+     * @return The version, or {@code null} if the string doesn't start with a number.
+     */
+    public static Version parse(String versionString) {
+        if (versionString == null)
+            return null;
+
+        int[] components = new int[4];
+        int count = 0;
+        int length = versionString.length();
+        int position = 0;
+        while (position < length) {
+            char c = versionString.charAt(position);
+            if (c < '0' || c > '9')
+                break;
+
+            long value = 0;
+            while (position < length && (c = versionString.charAt(position)) >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                if (value > Integer.MAX_VALUE)
+                    return null;
+                position++;
+            }
+
+            if (count == components.length)
+                components = Arrays.copyOf(components, count * 2);
+            components[count++] = (int)value;
+
+            // A single separator may follow, unless it's a letter
+            if (position + 1 >= length || Character.isLetter(versionString.charAt(position)))
+                break;
+            position++;
+        }
+
+        return count == 0 ? null : new Version(Arrays.copyOf(components, count), versionString);
+    }
+
+    /**
+     * Creates a version from its components.
+     * @param components The components, e.g. 8, 1, 0.
+     * @return The version.
+     */
+    public static Version of(int... components) {
+        if (components.length == 0)
+            throw new IllegalArgumentException("A version needs at least one component!");
+
+        StringJoiner joiner = new StringJoiner(".");
+        for (int component : components)
+            joiner.add(String.valueOf(component));
+        return new Version(components.clone(), joiner.toString());
+    }
+
+    /** @return The number of components. */
+    public int size() { return components.length; }
+
+    /**
+     * Gets a component.
+     * @param index The component's index; 0 (zero) is the major version.
+     * @return The component, or 0 (zero) if the version has fewer components.
+     */
+    public int getComponent(int index) { return index < components.length ? components[index] : 0; }
+
+    public int getMajor() { return getComponent(0); }
+
+    public int getMinor() { return getComponent(1); }
+
+    @Override
+    public int compareTo(Version other) {
+        int length = Math.max(components.length, other.components.length);
+        for (int i = 0; i < length; i++) {
+            int result = Integer.compare(getComponent(i), other.getComponent(i));
+            if (result != 0)
+                return result;
+        }
+        return 0;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof Version && compareTo((Version)obj) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        int length = components.length;
+        while (length > 1 && components[length - 1] == 0)
+            length--; // Consistent with equals()
+        int hash = 1;
+        for (int i = 0; i < length; i++)
+            hash = 31 * hash + components[i];
+        return hash;
+    }
+
+    /** @return The string the version was parsed from. */
+    @Override
+    public String toString() { return versionString; }
+
+}
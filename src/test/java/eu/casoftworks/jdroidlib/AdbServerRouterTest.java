@@ -0,0 +1,217 @@
+package eu.casoftworks.jdroidlib;
+
+import eu.casoftworks.jdroidlib.commands.*;
+import eu.casoftworks.jdroidlib.exception.*;
+import eu.casoftworks.jdroidlib.interfaces.*;
+import eu.casoftworks.jdroidlib.util.*;
+import org.junit.jupiter.api.*;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdbServerRouterTest {
+
+    private static final AdbServerEndpoint SERVER_A = AdbServerEndpoint.getDefault();
+    private static final AdbServerEndpoint SERVER_B = AdbServerEndpoint.fromPort(5038);
+    private static final AdbServerEndpoint SERVER_C = AdbServerEndpoint.fromServerSocket("tcp:localhost:5039");
+
+    private FakeAdbServer serverA;
+    private FakeAdbServer serverB;
+    private FakeAdbServer serverC;
+    private ExecutorService executor;
+    private AdbServerRouter router;
+
+    @BeforeEach
+    void setUp() {
+        serverA = new FakeAdbServer("List of devices attached\nserial-a1\tdevice product:a model:A device:a transport_id:1\n");
+        serverB = new FakeAdbServer("List of devices attached\nserial-b1\tdevice product:b model:B device:b\nserial-b2\tunauthorized\n");
+        serverC = new FakeAdbServer("List of devices attached\nserial-a1\tdevice product:a model:A device:a\n");
+        executor = Executors.newCachedThreadPool();
+        router = new AdbServerRouter(SERVER_A, serverA, executor);
+        router.addShard(SERVER_B, serverB);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private List<String> listDevices() throws InterruptedException {
+        List<String> serials = new ArrayList<>();
+        int listed = router.listDevices(new DeviceListParser(), record -> serials.add(record.getSerial()), null);
+        assertEquals(serials.size(), listed);
+        return serials;
+    }
+
+    @Test
+    void listDevicesMergesShards() throws InterruptedException {
+        List<String> lines = listDevices();
+
+        assertEquals(3, lines.size());
+        assertEquals(SERVER_A, router.getOwner("serial-a1"));
+        assertEquals(SERVER_B, router.getOwner("serial-b1"));
+        assertEquals(SERVER_B, router.getOwner("serial-b2"));
+    }
+
+    @Test
+    void listDevicesKeepsFirstOwnerOfDuplicates() throws InterruptedException {
+        router.addShard(SERVER_C, serverC);
+
+        assertEquals(3, listDevices().size());
+        assertEquals(SERVER_A, router.getOwner("serial-a1"));
+    }
+
+    @Test
+    void listDevicesSkipsFailingShard() throws InterruptedException {
+        serverB.failing = true;
+
+        assertEquals(1, listDevices().size());
+    }
+
+    @Test
+    void failingShardsAreReportedAndKeepTheirDevices() throws InterruptedException {
+        listDevices();
+        serverB.failing = true;
+
+        Set<AdbServerEndpoint> failedShards = new HashSet<>();
+        List<String> serials = new ArrayList<>();
+        router.listDevices(new DeviceListParser(), record -> serials.add(record.getSerial()), failedShards);
+
+        assertEquals(Collections.singletonList("serial-a1"), serials);
+        assertEquals(Collections.singleton(SERVER_B), failedShards);
+        // The devices missing from the listing must not be taken for disconnected
+        assertEquals(SERVER_B, router.getOwner("serial-b1"));
+        assertSame(serverB, router.route("serial-b2"));
+    }
+
+    @Test
+    void routesToOwningShard() throws InterruptedException {
+        listDevices();
+
+        assertSame(serverB, router.route("serial-b1"));
+        assertSame(serverA, router.route("serial-a1"));
+        assertSame(serverA, router.route("unknown-serial"));
+        assertSame(serverA, router.route((String)null));
+    }
+
+    @Test
+    void removedShardFallsBackToDefault() throws InterruptedException {
+        listDevices();
+        router.removeShard(SERVER_B);
+
+        assertSame(serverA, router.route("serial-b1"));
+        assertEquals(Collections.singletonList(SERVER_A), router.getEndpoints());
+        assertThrows(IllegalArgumentException.class, () -> router.removeShard(SERVER_A));
+    }
+
+    @Test
+    void serverWideCommandsReachAllShards() throws Exception {
+        router.executeOnAllShards(AdbCommand.getStartServerCommand());
+
+        assertEquals(Collections.singletonList("start-server"), serverA.executed);
+        assertEquals(Collections.singletonList("start-server"), serverB.executed);
+    }
+
+    @Test
+    void timeoutAppliesToAllShards() {
+        router.setTimeout(5);
+
+        assertEquals(5, serverA.getTimeout());
+        assertEquals(5, serverB.getTimeout());
+    }
+
+    @Test
+    void endpointArguments() {
+        assertEquals(Collections.emptyList(), SERVER_A.getArguments());
+        assertEquals(Arrays.asList("-P", "5038"), SERVER_B.getArguments());
+        assertEquals(Arrays.asList("-H", "10.0.0.2", "-P", "5037"), AdbServerEndpoint.fromHostAndPort("10.0.0.2", 5037).getArguments());
+        assertEquals("tcp:localhost:5039", SERVER_C.getEnvironment().get(AdbServerEndpoint.ADB_SERVER_SOCKET_ENV));
+    }
+
+    /**
+     * Stands in for an ADB server; answers "devices" with a canned listing.
+     */
+    private static class FakeAdbServer implements IExecutioner {
+
+        final String devicesOutput;
+        final List<String> executed = new CopyOnWriteArrayList<>();
+        volatile boolean failing;
+        long timeout;
+        TimeUnit timeUnit;
+
+        FakeAdbServer(String devicesOutput) {
+            this.devicesOutput = devicesOutput;
+        }
+
+        @Override
+        public void executeCommandNoOutput(ICommand command) throws IOException {
+            executeCommandReturnOutput(command);
+        }
+
+        @Override
+        public String executeCommandReturnOutput(ICommand command) throws IOException {
+            if (failing)
+                throw new IOException("cannot connect to daemon");
+            executed.add(command.getCommandTag());
+            return command.getCommandTag().equals("devices") ? devicesOutput : "";
+        }
+
+        @Override
+        public int executeCommandReturnExitCode(ICommand command) throws IOException {
+            executeCommandReturnOutput(command);
+            return 0;
+        }
+
+        @Override
+        public ITuple2<Integer, String> executeCommand(ICommand command) throws IOException {
+            return new Tuple2<>(0, executeCommandReturnOutput(command));
+        }
+
+        @Override
+        public Process executeCommandReturnProcess(ICommand command) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Future executeCommandNoOutputAsync(ICommand command) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Future<String> executeCommandReturnOutputAsync(ICommand command) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Future<Integer> executeCommandReturnExitCodeAsync(ICommand command) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Future<ITuple2<Integer, String>> executeCommandAsync(ICommand command) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Future<Process> executeCommandReturnProcessAsync(ICommand command) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long getTimeout() { return timeout; }
+
+        @Override
+        public void setTimeout(long timeout) { this.timeout = timeout; }
+
+        @Override
+        public TimeUnit getTimeUnit() { return timeUnit; }
+
+        @Override
+        public void setTimeUnit(TimeUnit timeUnit) { this.timeUnit = timeUnit; }
+
+    }
+
+}
@@ -0,0 +1,61 @@
+package eu.casoftworks.jdroidlib;
+
+import org.junit.jupiter.api.*;
+
+import java.io.*;
+import java.nio.charset.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CommanderTest {
+
+    @Test
+    void outputOfExitedProcessesIsReadCompletely() throws IOException {
+        StringBuilder output = new StringBuilder();
+        for (int i = 0; i < 1000; i++)
+            output.append("[ro.test.property").append(i).append("]: [value]\n");
+
+        assertEquals(output.toString(), Commander.getProcessOutput(new ExitedProcess(output.toString())));
+    }
+
+    @Test
+    void lastLineIsTerminated() throws IOException {
+        assertEquals("Success\n", Commander.getProcessOutput(new ExitedProcess("Success")));
+        assertEquals("", Commander.getProcessOutput(new ExitedProcess("")));
+    }
+
+    /**
+     * A process which has exited before its output is read; the output is still buffered.
+     */
+    private static class ExitedProcess extends Process {
+
+        private final InputStream iStream;
+
+        ExitedProcess(String output) {
+            iStream = new ByteArrayInputStream(output.getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public OutputStream getOutputStream() { return new ByteArrayOutputStream(); }
+
+        @Override
+        public InputStream getInputStream() { return iStream; }
+
+        @Override
+        public InputStream getErrorStream() { return new ByteArrayInputStream(new byte[0]); }
+
+        @Override
+        public int waitFor() { return 0; }
+
+        @Override
+        public int exitValue() { return 0; }
+
+        @Override
+        public boolean isAlive() { return false; }
+
+        @Override
+        public void destroy() { }
+
+    }
+
+}
@@ -0,0 +1,90 @@
+package eu.casoftworks.jdroidlib;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.*;
+import org.openjdk.jmh.runner.*;
+import org.openjdk.jmh.runner.options.*;
+
+import java.util.concurrent.*;
+
+/**
+ * Compares the {@link DeviceListParser} with the previous regex/split based parsing
+ * of {@code adb devices -l} over a listing of 500 devices.
+ * Run with {@code -prof gc} to compare allocation rates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeviceListParserBenchmark {
+
+    private static final String LONG_LIST_LINE_REGEX = "(([A-z0-9.:\\-_]{1,})([\\s]+)?){5}";
+
+    @Param({ "500" })
+    public int devices;
+
+    private String listing;
+    private DeviceListParser parser;
+
+    @Setup
+    public void setUp() {
+        StringBuilder builder = new StringBuilder("List of devices attached\n");
+        for (int i = 0; i < devices; i++) {
+            switch (i % 4) {
+                case 0:
+                    builder.append(String.format("%016X       device usb:1-%d.%d product:bullhead model:Nexus_5X device:bullhead transport_id:%d%n", i * 7919L, i / 8, i % 8, i));
+                    break;
+                case 1:
+                    builder.append(String.format("10.0.%d.%d:5555      device product:sailfish model:Pixel device:sailfish transport_id:%d%n", i / 256, i % 256, i));
+                    break;
+                case 2:
+                    builder.append(String.format("emulator-%d          device product:sdk_gphone_x86 model:sdk_gphone_x86 device:generic_x86 transport_id:%d%n", 5554 + i * 2, i));
+                    break;
+                default:
+                    builder.append(String.format("%016X       unauthorized usb:2-%d transport_id:%d%n", i * 104729L, i % 16, i));
+                    break;
+            }
+        }
+        listing = builder.toString();
+        parser = new DeviceListParser();
+    }
+
+    @Benchmark
+    public int tokenizer(Blackhole blackhole) {
+        return parser.parse(listing, record -> {
+            blackhole.consume(record.getSerial());
+            blackhole.consume(record.getState());
+            blackhole.consume(record.getProduct());
+            blackhole.consume(record.getModel());
+        });
+    }
+
+    /**
+     * The parsing previously done by {@code AndroidController.parseDeviceOutputLine}.
+     * Lines which don't match the expression are skipped instead of failing the whole listing.
+     */
+    @Benchmark
+    public int regexAndSplit(Blackhole blackhole) {
+        int parsed = 0;
+        for (String line : listing.split("\n")) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("List") || !line.matches(LONG_LIST_LINE_REGEX))
+                continue;
+
+            String[] parts = line.split("(\\s+)");
+            blackhole.consume(parts[0]);
+            blackhole.consume(parts[1]);
+            blackhole.consume(parts[2].split(":")[1]);
+            blackhole.consume(parts[3].split(":")[1]);
+            parsed++;
+        }
+        return parsed;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(DeviceListParserBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
@@ -0,0 +1,86 @@
+package eu.casoftworks.jdroidlib;
+
+import eu.casoftworks.jdroidlib.enums.*;
+import org.junit.jupiter.api.*;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeviceListParserTest {
+
+    private static final String LISTING =
+            "* daemon not running; starting now at tcp:5037\n" +
+            "* daemon started successfully\n" +
+            "List of devices attached\n" +
+            "0123456789ABCDEF       device usb:1-1.2 product:bullhead model:Nexus_5X device:bullhead transport_id:3\n" +
+            "192.168.0.23:5555      device product:sailfish model:Pixel device:sailfish transport_id:7\r\n" +
+            "emulator-5554\toffline transport_id:1\n" +
+            "FEDCBA9876543210       no permissions (user in plugdev group); see [http://developer.android.com/tools/device.html] usb:1-4\n" +
+            "\n";
+
+    private DeviceListParser parser;
+    private List<String> summaries;
+
+    @BeforeEach
+    void setUp() {
+        parser = new DeviceListParser();
+        summaries = new ArrayList<>();
+    }
+
+    private void parse(String listing) {
+        parser.parse(listing, x -> summaries.add(String.join("|",
+                x.getSerial(), String.valueOf(x.isViaTcpIp()), String.valueOf(x.getState()), String.valueOf(x.getUsb()),
+                String.valueOf(x.getProduct()), String.valueOf(x.getModel()), String.valueOf(x.getDevice()), String.valueOf(x.getTransportId())
+        )));
+    }
+
+    @Test
+    void parsesAllFields() {
+        parse(LISTING);
+
+        assertEquals(Arrays.asList(
+                "0123456789ABCDEF|false|Online|1-1.2|bullhead|Nexus_5X|bullhead|3",
+                "192.168.0.23:5555|true|Online|null|sailfish|Pixel|sailfish|7",
+                "emulator-5554|false|Offline|null|null|null|null|1",
+                "FEDCBA9876543210|false|Unknown|1-4|null|null|null|-1"
+        ), summaries);
+    }
+
+    @Test
+    void parsesShortListing() {
+        parse("List of devices attached\nserial\tunauthorized\nserial2\trecovery");
+
+        assertEquals(Arrays.asList(
+                "serial|false|Unauthorized|null|null|null|null|-1",
+                "serial2|false|Recovery|null|null|null|null|-1"
+        ), summaries);
+    }
+
+    @Test
+    void reusesPooledStrings() {
+        List<String> serials = new ArrayList<>();
+        parser.parse(LISTING, x -> serials.add(x.getSerial()));
+        parser.parse(new String(LISTING.toCharArray()), x -> serials.add(x.getSerial()));
+
+        assertEquals(8, serials.size());
+        for (int i = 0; i < 4; i++)
+            assertSame(serials.get(i), serials.get(i + 4));
+    }
+
+    @Test
+    void detectsIp4Addresses() {
+        assertTrue(isIp4AddressWithPort("10.0.0.1:5555"));
+        assertTrue(isIp4AddressWithPort("10.0.0.1"));
+        assertFalse(isIp4AddressWithPort("10.0.0:5555"));
+        assertFalse(isIp4AddressWithPort("10.0.0.1:"));
+        assertFalse(isIp4AddressWithPort("1000.0.0.1:5555"));
+        assertFalse(isIp4AddressWithPort("emulator-5554"));
+        assertFalse(isIp4AddressWithPort("adb-R58M12345._adb-tls-connect._tcp."));
+    }
+
+    private static boolean isIp4AddressWithPort(String token) {
+        return DeviceListParser.isIp4AddressWithPort(token, 0, token.length());
+    }
+
+}
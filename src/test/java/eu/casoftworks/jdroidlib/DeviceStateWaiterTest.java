@@ -0,0 +1,63 @@
+package eu.casoftworks.jdroidlib;
+
+import eu.casoftworks.jdroidlib.device.*;
+import eu.casoftworks.jdroidlib.enums.*;
+import org.junit.jupiter.api.*;
+
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeviceStateWaiterTest {
+
+    private DeviceStateWaiter waiter;
+
+    @BeforeEach
+    void setUp() {
+        waiter = new DeviceStateWaiter();
+    }
+
+    private void fire(String deviceId, DeviceState previousState, DeviceState newState) {
+        waiter.onDeviceStateChanged(new DeviceStateChangedEvent(deviceId, null, previousState, newState, System.currentTimeMillis()));
+    }
+
+    @Test
+    void waitCompletesOnMatchingTransitionOnly() {
+        CompletableFuture<Device> future = waiter.await("serial", x -> x == DeviceState.Online);
+
+        fire("other", DeviceState.Disconnected, DeviceState.Online);
+        fire("serial", DeviceState.Online, DeviceState.Disconnected);
+        assertFalse(future.isDone());
+
+        fire("serial", DeviceState.Disconnected, DeviceState.Online);
+        assertTrue(future.isDone());
+        assertEquals(0, waiter.getPendingCount());
+    }
+
+    @Test
+    void chainedWaitSeesNextTransition() {
+        CompletableFuture<Device> wentDown = waiter.await("serial", x -> x != DeviceState.Online);
+        CompletableFuture<Device> cameBack = wentDown.thenCompose(x -> waiter.await("serial", y -> y == DeviceState.Online));
+
+        fire("serial", DeviceState.Disconnected, DeviceState.Online);
+        assertFalse(wentDown.isDone());
+
+        fire("serial", DeviceState.Online, DeviceState.Disconnected);
+        assertTrue(wentDown.isDone());
+        assertFalse(cameBack.isDone());
+
+        fire("serial", DeviceState.Disconnected, DeviceState.Online);
+        assertTrue(cameBack.isDone());
+    }
+
+    @Test
+    void cancelledWaitIsRemoved() {
+        CompletableFuture<Device> future = waiter.await("serial", x -> x == DeviceState.Online);
+        assertEquals(1, waiter.getPendingCount());
+
+        future.cancel(false);
+
+        assertEquals(0, waiter.getPendingCount());
+    }
+
+}
@@ -0,0 +1,240 @@
+package eu.casoftworks.jdroidlib;
+
+import eu.casoftworks.jdroidlib.device.*;
+import eu.casoftworks.jdroidlib.enums.*;
+import eu.casoftworks.jdroidlib.interfaces.*;
+import eu.casoftworks.jdroidlib.util.*;
+import org.junit.jupiter.api.*;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeviceTrackerTest {
+
+    private static final long DEBOUNCE_NANOS = TimeUnit.MILLISECONDS.toNanos(DeviceTracker.DEFAULT_DEBOUNCE_MILLIS);
+
+    private AtomicLong clock;
+    private BlockingQueue<DeviceStateChangedEvent> events;
+    private ScriptedAdbServer server;
+    private DeviceTracker tracker;
+
+    @BeforeEach
+    void setUp() {
+        clock = new AtomicLong();
+        events = new LinkedBlockingQueue<>();
+        server = new ScriptedAdbServer();
+        tracker = new DeviceTracker(server, (deviceId, product, model, state) -> null, Collections.singletonList(events::add), clock::get);
+    }
+
+    @AfterEach
+    void tearDown() {
+        tracker.close();
+    }
+
+    private void list(String payload) {
+        tracker.onListing(tracker.parseListing(payload));
+    }
+
+    private void passDebounceWindow() {
+        clock.addAndGet(DEBOUNCE_NANOS);
+        tracker.settleDue();
+    }
+
+    private void assertEvent(String deviceId, DeviceState previousState, DeviceState newState) throws InterruptedException {
+        DeviceStateChangedEvent event = events.poll(5, TimeUnit.SECONDS);
+        assertNotNull(event);
+        assertEquals(deviceId, event.getDeviceId());
+        assertEquals(previousState, event.getPreviousState());
+        assertEquals(newState, event.getNewState());
+    }
+
+    private void assertCameOnline(String... deviceIds) throws InterruptedException {
+        Set<String> online = new HashSet<>();
+        for (int i = 0; i < deviceIds.length; i++) {
+            DeviceStateChangedEvent event = events.poll(5, TimeUnit.SECONDS);
+            assertNotNull(event);
+            assertEquals(DeviceState.Disconnected, event.getPreviousState());
+            assertEquals(DeviceState.Online, event.getNewState());
+            online.add(event.getDeviceId());
+        }
+        assertEquals(new HashSet<>(Arrays.asList(deviceIds)), online);
+    }
+
+    private void assertNoEvent() throws InterruptedException {
+        assertNull(events.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void burstCollapsesToOneTransition() throws InterruptedException {
+        list("serial\toffline\n");
+        clock.addAndGet(DEBOUNCE_NANOS / 4);
+        list("serial\tunauthorized\n");
+        clock.addAndGet(DEBOUNCE_NANOS / 4);
+        list("serial\tdevice\n");
+
+        // The window restarts with each frame
+        clock.addAndGet(DEBOUNCE_NANOS / 2);
+        tracker.settleDue();
+        assertNoEvent();
+
+        passDebounceWindow();
+        assertEvent("serial", DeviceState.Disconnected, DeviceState.Online);
+        assertNoEvent();
+    }
+
+    @Test
+    void flappingBackProducesNoTransition() throws InterruptedException {
+        list("serial\tdevice\n");
+        passDebounceWindow();
+        assertEvent("serial", DeviceState.Disconnected, DeviceState.Online);
+
+        list("serial\toffline\n");
+        list("serial\tdevice\n");
+        passDebounceWindow();
+        assertNoEvent();
+    }
+
+    @Test
+    void missingDevicesAreDisconnected() throws InterruptedException {
+        list("first\tdevice\nsecond\tdevice\n");
+        passDebounceWindow();
+        assertCameOnline("first", "second");
+
+        list("first\tdevice\n");
+        passDebounceWindow();
+        assertEvent("second", DeviceState.Online, DeviceState.Disconnected);
+        assertNoEvent();
+    }
+
+    @Test
+    void trackingReconnectsAfterTheStreamDrops() throws InterruptedException {
+        server.connections.add("first\tdevice\n");
+        server.connections.add("first\tdevice\nsecond\tdevice\n");
+        tracker.setRestartDelayMillis(0);
+        tracker.start();
+
+        // The third connection is only made once both streams have been read and listed
+        assertTrue(server.thirdConnection.await(5, TimeUnit.SECONDS));
+        passDebounceWindow();
+        assertCameOnline("first", "second");
+        assertNoEvent();
+    }
+
+    private static String frame(String payload) {
+        return String.format("%04x%s", payload.getBytes(StandardCharsets.UTF_8).length, payload);
+    }
+
+    /**
+     * Stands in for an ADB server; each call to track-devices gets the next scripted listing, then the stream ends.
+     * Once the script has run out, further connections block until the tracker is closed.
+     */
+    private static class ScriptedAdbServer implements IExecutioner {
+
+        final Queue<String> connections = new ConcurrentLinkedQueue<>();
+        final CountDownLatch thirdConnection = new CountDownLatch(1);
+        long timeout;
+        TimeUnit timeUnit;
+
+        @Override
+        public Process executeCommandReturnProcess(ICommand command) throws InterruptedException {
+            String listing = connections.poll();
+            if (listing == null) {
+                thirdConnection.countDown();
+                new CountDownLatch(1).await();
+            }
+            return new ListingProcess(frame(listing));
+        }
+
+        @Override
+        public void executeCommandNoOutput(ICommand command) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String executeCommandReturnOutput(ICommand command) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int executeCommandReturnExitCode(ICommand command) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ITuple2<Integer, String> executeCommand(ICommand command) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Future executeCommandNoOutputAsync(ICommand command) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Future<String> executeCommandReturnOutputAsync(ICommand command) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Future<Integer> executeCommandReturnExitCodeAsync(ICommand command) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Future<ITuple2<Integer, String>> executeCommandAsync(ICommand command) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Future<Process> executeCommandReturnProcessAsync(ICommand command) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long getTimeout() { return timeout; }
+
+        @Override
+        public void setTimeout(long timeout) { this.timeout = timeout; }
+
+        @Override
+        public TimeUnit getTimeUnit() { return timeUnit; }
+
+        @Override
+        public void setTimeUnit(TimeUnit timeUnit) { this.timeUnit = timeUnit; }
+
+    }
+
+    private static class ListingProcess extends Process {
+
+        private final InputStream iStream;
+
+        ListingProcess(String output) {
+            iStream = new ByteArrayInputStream(output.getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public OutputStream getOutputStream() { return new ByteArrayOutputStream(); }
+
+        @Override
+        public InputStream getInputStream() { return iStream; }
+
+        @Override
+        public InputStream getErrorStream() { return new ByteArrayInputStream(new byte[0]); }
+
+        @Override
+        public int waitFor() { return 0; }
+
+        @Override
+        public int exitValue() { return 0; }
+
+        @Override
+        public void destroy() { }
+
+    }
+
+}
@@ -0,0 +1,43 @@
+package eu.casoftworks.jdroidlib;
+
+import org.junit.jupiter.api.*;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TcpIpConnectionManagerTest {
+
+    @Test
+    void backoffIsJitteredAndCapped() {
+        Random random = new Random(42);
+        for (int attempt = 1; attempt <= 100; attempt++) {
+            long ceiling = Math.min(60000, 500L << Math.min(attempt - 1, 40));
+            long delay = TcpIpConnectionManager.getBackoffMillis(attempt, 500, 60000, random);
+
+            assertTrue(delay >= ceiling / 2, "Delay below half the ceiling: " + delay);
+            assertTrue(delay <= ceiling, "Delay above the ceiling: " + delay);
+        }
+    }
+
+    @Test
+    void probeDistinguishesListeningAndClosedPorts() throws IOException {
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        int closedPort;
+        try (ServerSocket closed = new ServerSocket(0, 1, loopback)) {
+            closedPort = closed.getLocalPort();
+        }
+
+        try (ServerSocket listening = new ServerSocket(0, 50, loopback)) {
+            boolean[] reachable = TcpIpConnectionManager.probe(Arrays.asList(
+                    new InetSocketAddress(loopback, listening.getLocalPort()),
+                    new InetSocketAddress(loopback, closedPort)), 2000);
+
+            assertTrue(reachable[0]);
+            assertFalse(reachable[1]);
+        }
+    }
+
+}
@@ -0,0 +1,62 @@
+package eu.casoftworks.jdroidlib.device;
+
+import eu.casoftworks.jdroidlib.enums.*;
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatteryInfoTest {
+
+    private static final String DUMPSYS_BATTERY =
+            "Current Battery Service state:\n" +
+            "  AC powered: false\n" +
+            "  USB powered: true\n" +
+            "  Wireless powered: false\n" +
+            "  Max charging current: 500000\n" +
+            "  Max charging voltage: 5000000\n" +
+            "  Charge counter: 2568000\n" +
+            "  status: 2\n" +
+            "  health: 2\n" +
+            "  present: true\n" +
+            "  level: 85\n" +
+            "  scale: 100\n" +
+            "  voltage: 4246\n" +
+            "  temperature: 265\n" +
+            "  technology: Li-ion\n" +
+            "current now: -312500\n";
+
+    @Test
+    void parsesAllFieldsOfDumpsysBattery() {
+        BatteryInfo info = BatteryInfo.parse(DUMPSYS_BATTERY, 1234);
+
+        assertEquals(1234, info.getTimestamp());
+        assertFalse(info.isAcPowered());
+        assertTrue(info.isUsbPowered());
+        assertTrue(info.isCharging());
+        assertEquals(0.5, info.getMaxChargingCurrent());
+        assertEquals(5.0, info.getMaxChargingVoltage());
+        assertEquals(2568000, info.getChargeCounter());
+        assertEquals(BatteryStatus.BATTERY_STATUS_CHARGING, info.getStatus());
+        assertEquals(BatteryHealth.BATTERY_HEALTH_GOOD, info.getHealth());
+        assertTrue(info.isPresent());
+        assertEquals(85, info.getLevel());
+        assertEquals(85.0, info.getLevelPercent());
+        assertEquals(4.246, info.getVoltage());
+        assertEquals(26.5, info.getTemperature());
+        assertEquals("Li-ion", info.getTechnology());
+        assertEquals(-0.3125, info.getCurrent());
+        assertEquals(-1, info.getCycleCount());
+    }
+
+    @Test
+    void malformedAndUnknownLinesAreIgnored() {
+        BatteryInfo info = BatteryInfo.parse("  level: many\r\n  Charging state: 1\r\n  scale: 100\r\n  Cycle count: 42\r\n", 0);
+
+        assertEquals(-1, info.getLevel());
+        assertEquals(100, info.getScale());
+        assertEquals(42, info.getCycleCount());
+        assertTrue(Double.isNaN(info.getLevelPercent()));
+        assertTrue(Double.isNaN(info.getTemperature()));
+    }
+
+}
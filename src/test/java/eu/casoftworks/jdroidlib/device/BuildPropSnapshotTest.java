@@ -0,0 +1,73 @@
+package eu.casoftworks.jdroidlib.device;
+
+import eu.casoftworks.jdroidlib.enums.*;
+import eu.casoftworks.jdroidlib.util.*;
+import org.junit.jupiter.api.*;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BuildPropSnapshotTest {
+
+    @Test
+    void parseKeepsColonsInValues() {
+        Map<String, String> properties = BuildPropSnapshot.parse(
+                "[ro.build.fingerprint]: [google/bullhead/bullhead:8.1.0/OPM7.181205.001/5080180:user/release-keys]\r\n" +
+                "[ro.build.version.sdk]: [27]\n" +
+                "[persist.sys.empty]: []\n" +
+                "garbage\n"
+        );
+
+        assertEquals(3, properties.size());
+        assertEquals("google/bullhead/bullhead:8.1.0/OPM7.181205.001/5080180:user/release-keys", properties.get("ro.build.fingerprint"));
+        assertEquals("27", properties.get("ro.build.version.sdk"));
+        assertEquals("", properties.get("persist.sys.empty"));
+    }
+
+    @Test
+    void parseHandlesMultiLineValuesAndBrackets() {
+        Map<String, String> properties = BuildPropSnapshot.parse(
+                "[persist.sys.banner]: [first line\n[not a key]\nlast line]\n" +
+                "[ro.odd]: [a]b]\n" +
+                "\n" +
+                "[ro.last]: [x]"
+        );
+
+        assertEquals("first line\n[not a key]\nlast line", properties.get("persist.sys.banner"));
+        assertEquals("a]b", properties.get("ro.odd"));
+        assertEquals("x", properties.get("ro.last"));
+        assertEquals(3, properties.size());
+    }
+
+    @Test
+    void typedAccessorsParseValues() {
+        BuildPropSnapshot snapshot = new BuildPropSnapshot(BuildPropSnapshot.parse(
+                "[ro.build.version.sdk]: [27]\n" +
+                "[ro.build.version.release]: [8.1.0]\n" +
+                "[ro.build.version.security_patch]: [2018-12-05]\n" +
+                "[ro.debuggable]: [1]\n" +
+                "[ro.secure]: [false]\n" +
+                "[ro.runtime.firstboot]: [1533729035000]\n" +
+                "[ro.hex]: [0x1F]\n" +
+                "[sys.state]: [online]\n" +
+                "[ro.product.model]: [Nexus 5X]\n"
+        ), 0, 0, 0, 0);
+
+        assertEquals(27, snapshot.getInt("ro.build.version.sdk", -1));
+        assertEquals(-1, snapshot.getInt("ro.runtime.firstboot", -1));
+        assertEquals(1533729035000L, snapshot.getLong("ro.runtime.firstboot", -1));
+        assertEquals(31, snapshot.getInt("ro.hex", -1));
+        assertEquals(-1, snapshot.getInt("ro.product.model", -1));
+        assertTrue(snapshot.getBoolean("ro.debuggable", false));
+        assertFalse(snapshot.getBoolean("ro.secure", true));
+        assertTrue(snapshot.getBoolean("ro.product.model", true));
+        assertEquals(Version.of(8, 1), snapshot.getVersion("ro.build.version.release"));
+        assertTrue(snapshot.getVersion("ro.build.version.security_patch").compareTo(Version.parse("2018-06-01")) > 0);
+        assertSame(snapshot.getVersion("ro.build.version.release"), snapshot.getVersion("ro.build.version.release"));
+        assertNull(snapshot.getVersion("ro.product.model"));
+        assertEquals(DeviceState.Online, snapshot.getEnum("sys.state", DeviceState.class, null));
+        assertEquals(DeviceState.Unknown, snapshot.getEnum("ro.product.model", DeviceState.class, DeviceState.Unknown));
+    }
+
+}
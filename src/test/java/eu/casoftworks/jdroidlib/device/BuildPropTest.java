@@ -0,0 +1,46 @@
+package eu.casoftworks.jdroidlib.device;
+
+import org.junit.jupiter.api.*;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BuildPropTest {
+
+    @Test
+    void setPropScriptsQuoteAndReportEveryProperty() {
+        Map<String, String> props = new LinkedHashMap<>();
+        props.put("debug.test", "it's");
+        props.put("persist.log.tag", "");
+
+        List<String> scripts = BuildProp.getSetPropScripts(props);
+
+        assertEquals(1, scripts.size());
+        assertEquals("setprop 'debug.test' 'it'\\''s'; echo \"setprop-status:$?\"; " +
+                "setprop 'persist.log.tag' ''; echo \"setprop-status:$?\"; " +
+                "echo \"--- getprop ---\"; getprop", scripts.get(0));
+    }
+
+    @Test
+    void largeBatchesAreSplit() {
+        Map<String, String> props = new LinkedHashMap<>();
+        for (int i = 0; i < 100; i++)
+            props.put("debug.test.property" + i, "value-" + i);
+
+        List<String> scripts = BuildProp.getSetPropScripts(props);
+
+        assertTrue(scripts.size() > 1);
+        scripts.forEach(x -> assertTrue(x.length() <= BuildProp.MAX_SCRIPT_LENGTH + 100));
+        assertTrue(scripts.get(scripts.size() - 1).endsWith("getprop"));
+    }
+
+    @Test
+    void statusesStopAtGetPropOutput() {
+        List<Integer> statuses = new ArrayList<>();
+        BuildProp.parseSetPropStatuses("setprop-status:0\nsetprop-status:1\r\n--- getprop ---\n[x]: [setprop-status:0]\n", statuses);
+
+        assertEquals(Arrays.asList(0, 1), statuses);
+    }
+
+}
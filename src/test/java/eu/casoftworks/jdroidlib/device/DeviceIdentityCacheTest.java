@@ -0,0 +1,82 @@
+package eu.casoftworks.jdroidlib.device;
+
+import eu.casoftworks.jdroidlib.enums.*;
+import org.junit.jupiter.api.*;
+
+import java.io.*;
+import java.nio.file.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeviceIdentityCacheTest {
+
+    private static final String FINGERPRINT = "google/bullhead/bullhead:8.1.0/OPM7.181205.001/5080180:user/release-keys";
+
+    private File cacheFile;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        cacheFile = Files.createTempFile("device-identities", ".bin").toFile();
+        assertTrue(cacheFile.delete());
+    }
+
+    @AfterEach
+    void tearDown() {
+        cacheFile.delete();
+    }
+
+    @Test
+    void identitiesSurviveRestart() throws IOException {
+        DeviceIdentityCache cache = new DeviceIdentityCache(cacheFile, Runnable::run);
+        DeviceIdentity identity = cache.getIdentity("serial", FINGERPRINT);
+        identity.setAndroidVersion(AndroidVersion.Unknown);
+        identity.setSdkVersion(27);
+        identity.setSuperUser(true, "16 com.android.settings");
+        identity.setBusyBox(false, BusyBox.NOT_AVAILABLE);
+        assertTrue(identity.putBuildProperty("ro.product.model", "Nexus 5X"));
+        assertFalse(identity.putBuildProperty("ro.runtime.firstboot", "1533729035"));
+        assertTrue(cacheFile.isFile());
+
+        DeviceIdentity restored = new DeviceIdentityCache(cacheFile, Runnable::run).getIdentity("serial", FINGERPRINT);
+
+        assertEquals(AndroidVersion.Unknown, restored.getAndroidVersion());
+        assertEquals(27.0, restored.getSdkVersion());
+        assertEquals(Boolean.TRUE, restored.isSuperUserInstalled());
+        assertEquals("16 com.android.settings", restored.getSuperUserVersion());
+        assertEquals(Boolean.FALSE, restored.isBusyBoxInstalled());
+        assertEquals("Nexus 5X", restored.getBuildProperty("ro.product.model"));
+        assertNull(restored.getBuildProperty("ro.runtime.firstboot"));
+    }
+
+    @Test
+    void unprobedValuesStayUnknown() throws IOException {
+        DeviceIdentityCache cache = new DeviceIdentityCache(cacheFile, Runnable::run);
+        cache.getIdentity("serial", FINGERPRINT).setSdkVersion(27);
+
+        DeviceIdentity restored = new DeviceIdentityCache(cacheFile, Runnable::run).getIdentity("serial", FINGERPRINT);
+
+        assertNull(restored.getAndroidVersion());
+        assertNull(restored.isSuperUserInstalled());
+        assertNull(restored.isBusyBoxInstalled());
+    }
+
+    @Test
+    void changedFingerprintDiscardsIdentity() {
+        DeviceIdentityCache cache = new DeviceIdentityCache(cacheFile, Runnable::run);
+        cache.getIdentity("serial", FINGERPRINT).setSdkVersion(27);
+
+        DeviceIdentity identity = new DeviceIdentityCache(cacheFile, Runnable::run).getIdentity("serial", FINGERPRINT + "-ota");
+
+        assertTrue(Double.isNaN(identity.getSdkVersion()));
+    }
+
+    @Test
+    void corruptCacheFileIsIgnored() throws IOException {
+        Files.write(cacheFile.toPath(), new byte[] { 'J', 'D', 'I', 'D', 1, 0, 0, 0, 9 });
+
+        DeviceIdentityCache cache = new DeviceIdentityCache(cacheFile, Runnable::run);
+
+        assertEquals(0, cache.size());
+    }
+
+}
@@ -0,0 +1,96 @@
+package eu.casoftworks.jdroidlib.device;
+
+import eu.casoftworks.jdroidlib.enums.*;
+import org.junit.jupiter.api.*;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeviceRegistryTest {
+
+    private AtomicLong clock;
+    private DeviceRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        clock = new AtomicLong();
+        // Devices initialise lazily, so no controller is needed as long as no commands are sent
+        registry = new DeviceRegistry(null, clock::get);
+    }
+
+    @Test
+    void getDeviceReturnsSameInstanceAndUpdatesState() {
+        Device device = registry.getDevice("serial", "product", "model", DeviceState.Online);
+
+        assertSame(device, registry.getDevice("serial", "product", "model", DeviceState.Recovery));
+        assertEquals(DeviceState.Recovery, device.getDeviceState());
+        assertEquals(1, registry.size());
+    }
+
+    @Test
+    void connectedDevicesAreNeverEvicted() {
+        registry.setEvictionTimeout(1, TimeUnit.SECONDS);
+        registry.getDevice("serial", "product", "model", DeviceState.Online);
+
+        clock.addAndGet(TimeUnit.HOURS.toNanos(1));
+
+        assertEquals(0, registry.evict());
+        assertNotNull(registry.getDevice("serial"));
+    }
+
+    @Test
+    void disconnectedDevicesAreEvictedAfterTimeout() {
+        registry.setEvictionTimeout(1, TimeUnit.SECONDS);
+        Device device = registry.getDevice("serial", "product", "model", DeviceState.Online);
+        registry.markDisconnected(device);
+
+        assertEquals(0, registry.evict());
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertEquals(1, registry.evict());
+        assertNull(registry.getDevice("serial"));
+        assertEquals(0, registry.size());
+    }
+
+    @Test
+    void leastRecentlySeenDevicesAreEvictedBeyondMaxSize() {
+        registry.setEvictionTimeout(0, TimeUnit.SECONDS);
+        registry.setMaxSize(2);
+        for (int i = 0; i < 4; i++) {
+            clock.incrementAndGet();
+            registry.markDisconnected(registry.getDevice("serial-" + i, "product", "model", DeviceState.Online));
+        }
+
+        assertEquals(2, registry.evict());
+        assertNull(registry.getDevice("serial-0"));
+        assertNull(registry.getDevice("serial-1"));
+        assertNotNull(registry.getDevice("serial-2"));
+        assertNotNull(registry.getDevice("serial-3"));
+    }
+
+    @Test
+    void evictedDevicesAreRehydrated() {
+        registry.setEvictionTimeout(1, TimeUnit.NANOSECONDS);
+        Device device = registry.getDevice("serial", "product", "model", DeviceState.Online);
+        registry.markDisconnected(device);
+        clock.incrementAndGet();
+        registry.evict();
+
+        // Strongly reachable from this test, so the soft reference cannot have been cleared
+        assertSame(device, registry.getDevice("serial", "product", "model", DeviceState.Online));
+        assertEquals(DeviceState.Online, device.getDeviceState());
+    }
+
+    @Test
+    void reflashedDevicesAreNotRehydrated() {
+        registry.setEvictionTimeout(1, TimeUnit.NANOSECONDS);
+        Device device = registry.getDevice("serial", "product", "model", DeviceState.Online);
+        registry.markDisconnected(device);
+        clock.incrementAndGet();
+        registry.evict();
+
+        assertNotSame(device, registry.getDevice("serial", "product", "other-model", DeviceState.Online));
+    }
+
+}
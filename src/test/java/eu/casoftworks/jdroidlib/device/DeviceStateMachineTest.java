@@ -0,0 +1,67 @@
+package eu.casoftworks.jdroidlib.device;
+
+import eu.casoftworks.jdroidlib.enums.*;
+import org.junit.jupiter.api.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeviceStateMachineTest {
+
+    @Test
+    void everyTransitionStartsNewGeneration() {
+        DeviceStateMachine stateMachine = new DeviceStateMachine(DeviceState.Online);
+        long generation = stateMachine.getGeneration();
+
+        stateMachine.transitionTo(DeviceState.Online);
+        assertTrue(stateMachine.isCurrent(generation));
+
+        stateMachine.transitionTo(DeviceState.Disconnected);
+        stateMachine.transitionTo(DeviceState.Online);
+        assertFalse(stateMachine.isCurrent(generation));
+        assertEquals(generation + 2, stateMachine.getGeneration());
+        assertEquals(DeviceState.Online, stateMachine.getState());
+    }
+
+    @Test
+    void staleConditionalTransitionIsRejected() {
+        DeviceStateMachine stateMachine = new DeviceStateMachine(DeviceState.Online);
+        long stamp = stateMachine.getStamp();
+
+        stateMachine.transitionTo(DeviceState.Recovery);
+
+        assertFalse(stateMachine.compareAndTransition(stamp, DeviceState.Disconnected));
+        assertEquals(DeviceState.Recovery, stateMachine.getState());
+        assertTrue(stateMachine.compareAndTransition(stateMachine.getStamp(), DeviceState.Disconnected));
+        assertEquals(DeviceState.Disconnected, stateMachine.getState());
+    }
+
+    @Test
+    void concurrentTransitionsAreNotLost() throws Exception {
+        DeviceStateMachine stateMachine = new DeviceStateMachine(DeviceState.Disconnected);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<Integer>> changes = new ArrayList<>();
+
+        for (int thread = 0; thread < 4; thread++) {
+            final DeviceState target = thread % 2 == 0 ? DeviceState.Online : DeviceState.Offline;
+            changes.add(executor.submit(() -> {
+                int changed = 0;
+                for (int i = 0; i < 10000; i++) {
+                    if (DeviceStateMachine.getState(stateMachine.transitionTo(target)) != target)
+                        changed++;
+                }
+                return changed;
+            }));
+        }
+
+        long total = 0;
+        for (Future<Integer> future : changes)
+            total += future.get();
+        executor.shutdown();
+
+        assertEquals(total, stateMachine.getGeneration());
+    }
+
+}
@@ -0,0 +1,113 @@
+package eu.casoftworks.jdroidlib.device;
+
+import eu.casoftworks.jdroidlib.device.pm.*;
+import eu.casoftworks.jdroidlib.device.pm.Package;
+import eu.casoftworks.jdroidlib.enums.*;
+import eu.casoftworks.jdroidlib.exception.*;
+import org.junit.jupiter.api.*;
+
+import java.io.*;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PackageManagerTest {
+
+    private Device device;
+
+    @BeforeEach
+    void setUp() {
+        device = TestDevices.newRegistry(System::nanoTime).getDevice("serial", "product", "model", DeviceState.Online);
+    }
+
+    @Test
+    void packageNameFollowsLastEquals() {
+        Package pkg = PackageManager.parsePackageLine(device, "package:/data/app/~~Aa0==/com.example-Bb1==/base.apk=com.example");
+
+        assertEquals("com.example", pkg.getName());
+        assertEquals("/data/app/~~Aa0==/com.example-Bb1==/base.apk", pkg.getAssociatedFile().getFullPath());
+        assertEquals("base", pkg.getAssociatedFile().getName());
+        assertEquals("apk", pkg.getAssociatedFile().getExtension());
+        assertNull(pkg.getInstaller());
+    }
+
+    @Test
+    void installerIsSplitOff() {
+        Package pkg = PackageManager.parsePackageLine(device, "package:/system/app/Foo/Foo.apk=com.foo  installer=com.android.vending\r");
+        Package noInstaller = PackageManager.parsePackageLine(device, "package:/system/app/Bar/Bar.apk=com.bar  installer=null");
+
+        assertEquals("com.foo", pkg.getName());
+        assertEquals("/system/app/Foo/Foo.apk", pkg.getAssociatedFile().getFullPath());
+        assertEquals("com.android.vending", pkg.getInstaller());
+        assertNull(noInstaller.getInstaller());
+    }
+
+    @Test
+    void otherLinesAreSkipped() {
+        assertNull(PackageManager.parsePackageLine(device, ""));
+        assertNull(PackageManager.parsePackageLine(device, "Error: java.lang.SecurityException"));
+        assertNull(PackageManager.parsePackageLine(device, "package:/data/app/base.apk="));
+    }
+
+    @Test
+    void streamingInstallPassesFlagsSeparately() {
+        assertEquals("cmd package install -r -g -S 1024", PackageManager.getStreamingInstallCommand(1024, true, InstallFlag.ReplaceExisting, InstallFlag.GrantAllPermissions));
+        assertEquals("pm install -S 7", PackageManager.getStreamingInstallCommand(7, false));
+    }
+
+    @Test
+    void installOutputMustReportSuccess() throws DeviceException {
+        PackageManager.checkInstallOutput("Success\n");
+
+        DeviceException ex = assertThrows(DeviceException.class, () -> PackageManager.checkInstallOutput("Failure [INSTALL_FAILED_INVALID_APK]\n"));
+        assertTrue(ex.getMessage().contains("INSTALL_FAILED_INVALID_APK"));
+    }
+
+    @Test
+    void sessionIdIsParsed() throws DeviceException {
+        assertEquals(1234567, PackageManager.parseSessionId("Success: created install session [1234567]\n"));
+        assertThrows(DeviceException.class, () -> PackageManager.parseSessionId("Error: java.lang.IllegalArgumentException\n"));
+    }
+
+    @Test
+    void splitsAreStreamedFromStandardInput() {
+        ApkSplit split = ApkSplit.fromBytes("split_config.xxhdpi.apk", new byte[512]);
+
+        assertEquals("cmd package install-write -S 512 42 'split_config.xxhdpi.apk' -", PackageManager.getInstallWriteCommand(PackageManager.getPackageManagerCommand(true), 42, split));
+    }
+
+    @Test
+    void splitNamesMustBeUnique() {
+        List<ApkSplit> splits = Arrays.asList(ApkSplit.fromBytes("base.apk", new byte[1]), ApkSplit.fromBytes("base.apk", new byte[2]));
+
+        assertThrows(IllegalArgumentException.class, () -> device.getPackageManager().installPackages(splits));
+    }
+
+    @Test
+    void packageManagerFailureIsReportedBeforeShortWrites() {
+        // The package manager gave up and closed its input after 1024 bytes
+        StreamingCommand.Result rejected = new StreamingCommand.Result(1, "Failure [INSTALL_PARSE_FAILED_NOT_APK]\n", 1024, false);
+        StreamingCommand.Result truncated = new StreamingCommand.Result(1, "Failure [INSTALL_FAILED_INVALID_APK]\n", 1024, true);
+
+        DeviceException rejectedEx = assertThrows(DeviceException.class, () -> PackageManager.checkStreamedInstall(rejected, 4096, "Installation failed!"));
+        DeviceException truncatedEx = assertThrows(DeviceException.class, () -> PackageManager.checkStreamedInstall(truncated, 4096, "Installation failed!"));
+
+        assertEquals("Installation failed! (Failure [INSTALL_PARSE_FAILED_NOT_APK])", rejectedEx.getMessage());
+        assertTrue(truncatedEx.getMessage().contains("INSTALL_FAILED_INVALID_APK"));
+        assertTrue(truncatedEx.getMessage().contains("ended after 1024 of 4096 bytes"));
+    }
+
+    @Test
+    void completeStreamedInstallsSucceed() throws DeviceException {
+        PackageManager.checkStreamedInstall(new StreamingCommand.Result(0, "Success\n", 4096, false), 4096, "Installation failed!");
+    }
+
+    @Test
+    void nullSourcesAreRejected() {
+        PackageManager packageManager = device.getPackageManager();
+
+        assertThrows(IllegalArgumentException.class, () -> packageManager.installPackage((byte[])null));
+        assertThrows(IllegalArgumentException.class, () -> packageManager.installPackage((InputStream)null, 1));
+    }
+
+}
@@ -0,0 +1,26 @@
+package eu.casoftworks.jdroidlib.device;
+
+import java.util.*;
+import java.util.function.*;
+
+/**
+ * Creates devices for tests in other packages, without a controller or an ADB server.
+ * The devices must not be used to send commands.
+ */
+public final class TestDevices {
+
+    private TestDevices() { }
+
+    public static DeviceRegistry newRegistry(LongSupplier nanoClock) {
+        return new DeviceRegistry(null, nanoClock);
+    }
+
+    public static BuildPropSnapshot newBuildPropSnapshot(Map<String, String> properties) {
+        return newBuildPropSnapshot(properties, System.nanoTime());
+    }
+
+    public static BuildPropSnapshot newBuildPropSnapshot(Map<String, String> properties, long takenNanos) {
+        return new BuildPropSnapshot(new LinkedHashMap<>(properties), System.currentTimeMillis(), takenNanos, 0, 0);
+    }
+
+}
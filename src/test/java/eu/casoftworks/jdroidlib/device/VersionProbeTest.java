@@ -0,0 +1,31 @@
+package eu.casoftworks.jdroidlib.device;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VersionProbeTest {
+
+    @Test
+    void reportedVersionsAreParsed() {
+        assertEquals("25.2:MAGISKSU", VersionProbe.parseVersion("25.2:MAGISKSU\n"));
+        assertEquals("BusyBox v1.29.3 (2019-01-01) multi-call binary.", VersionProbe.parseVersion("\r\nBusyBox v1.29.3 (2019-01-01) multi-call binary.\r\nUsage: busybox [function]\n"));
+    }
+
+    @Test
+    void notFoundIsAClearAnswer() {
+        String output = "/system/bin/sh: su: inaccessible or not found\n";
+
+        assertTrue(VersionProbe.isNotFound(output));
+        assertNull(VersionProbe.parseVersion(output));
+    }
+
+    @Test
+    void unclearOutputIsUnknown() {
+        for (String output : new String[] { null, "", "\n", "error: device offline\n", "/system/bin/sh: su: Permission denied\n" }) {
+            assertFalse(VersionProbe.isNotFound(output), output);
+            assertNull(VersionProbe.parseVersion(output), output);
+        }
+    }
+
+}
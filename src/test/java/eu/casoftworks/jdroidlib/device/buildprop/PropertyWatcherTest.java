@@ -0,0 +1,43 @@
+package eu.casoftworks.jdroidlib.device.buildprop;
+
+import org.junit.jupiter.api.*;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PropertyWatcherTest {
+
+    @Test
+    void diffReportsChangedAddedAndRemovedKeys() {
+        Map<String, String> previous = new HashMap<>();
+        previous.put("sys.boot_completed", "0");
+        previous.put("persist.sys.locale", "en-GB");
+        previous.put("init.svc.bootanim", "running");
+        Map<String, String> current = new HashMap<>();
+        current.put("sys.boot_completed", "1");
+        current.put("persist.sys.locale", "en-GB");
+        current.put("dev.bootcomplete", "1");
+
+        Map<String, String> changes = PropertyWatcher.diff(previous, current);
+
+        assertEquals(3, changes.size());
+        assertEquals("1", changes.get("sys.boot_completed"));
+        assertEquals("1", changes.get("dev.bootcomplete"));
+        assertTrue(changes.containsKey("init.svc.bootanim"));
+        assertNull(changes.get("init.svc.bootanim"));
+        assertTrue(PropertyWatcher.diff(current, new HashMap<>(current)).isEmpty());
+    }
+
+    @Test
+    void patternsMatchExactKeysPrefixesAndGlobs() {
+        assertTrue(PropertyWatcher.KeyPattern.compile("sys.boot_completed").matches("sys.boot_completed"));
+        assertFalse(PropertyWatcher.KeyPattern.compile("sys.boot_completed").matches("sys.boot_completed2"));
+        assertTrue(PropertyWatcher.KeyPattern.compile("persist.*").matches("persist.sys.locale"));
+        assertFalse(PropertyWatcher.KeyPattern.compile("persist.*").matches("persistent"));
+        assertTrue(PropertyWatcher.KeyPattern.compile("vendor.*.version").matches("vendor.gpu.version"));
+        assertFalse(PropertyWatcher.KeyPattern.compile("vendor.*.version").matches("vendor.gpu.versions"));
+        assertTrue(PropertyWatcher.KeyPattern.compile("*.bootcomplete").matches("dev.bootcomplete"));
+    }
+
+}
@@ -0,0 +1,60 @@
+package eu.casoftworks.jdroidlib.device.fs;
+
+import org.junit.jupiter.api.*;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LsEntryTest {
+
+    @Test
+    void parsesToyboxOutput() {
+        LsEntry entry = LsEntry.parse("-rw-r--r-- 1 system system 4194304 2018-08-08 12:10 /data/app/com.example-1/base.apk");
+
+        assertEquals("-rw-r--r--", entry.getPermissions());
+        assertEquals("system", entry.getOwner());
+        assertEquals("system", entry.getGroup());
+        assertEquals(4194304, entry.getSize());
+        assertNotNull(entry.getModTime());
+        assertEquals("/data/app/com.example-1/base.apk", entry.getPath());
+    }
+
+    @Test
+    void parsesSymlinksAndDevices() {
+        LsEntry link = LsEntry.parse("lrwxrwxrwx 1 root root 21 1970-01-01 01:00 /sdcard -> /storage/self/primary");
+        LsEntry device = LsEntry.parse("crw-rw-rw- 1 root root 1,   3 2018-08-08 12:10 /dev/null");
+
+        assertEquals("/sdcard", link.getPath());
+        assertEquals("/dev/null", device.getPath());
+        assertEquals(0, device.getSize());
+    }
+
+    @Test
+    void errorsAreSkipped() {
+        assertNull(LsEntry.parse("ls: /data/app/missing.apk: No such file or directory"));
+        assertNull(LsEntry.parse(""));
+    }
+
+    @Test
+    void pathsAreChunked() {
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < 200; i++)
+            paths.add("/data/app/com.example.package" + i + "-1/base.apk");
+
+        List<List<String>> chunks = LsEntry.getChunks(paths);
+
+        assertTrue(chunks.size() > 1);
+        assertEquals(200, chunks.stream().mapToInt(List::size).sum());
+        chunks.forEach(x -> assertTrue(String.join(" ", x).length() <= LsEntry.MAX_ARGS_LENGTH));
+    }
+
+    @Test
+    void pathsAreQuoted() {
+        List<List<String>> chunks = LsEntry.getChunks(Arrays.asList("/sdcard/My Music", "/sdcard/it's; rm -rf x"));
+
+        assertEquals(Collections.singletonList(Arrays.asList("'/sdcard/My Music'", "'/sdcard/it'\\''s; rm -rf x'")), chunks);
+        assertEquals("/sdcard/My Music", LsEntry.parse("drwxrwx--x 2 root sdcard_rw 4096 2018-08-08 12:10 /sdcard/My Music").getPath());
+    }
+
+}
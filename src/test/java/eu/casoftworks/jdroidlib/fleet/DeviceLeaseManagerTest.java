@@ -0,0 +1,124 @@
+package eu.casoftworks.jdroidlib.fleet;
+
+import eu.casoftworks.jdroidlib.device.*;
+import eu.casoftworks.jdroidlib.enums.*;
+import org.junit.jupiter.api.*;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeviceLeaseManagerTest {
+
+    private AtomicLong clock;
+    private DeviceRegistry registry;
+    private DeviceLeaseManager leaseManager;
+
+    @BeforeEach
+    void setUp() {
+        clock = new AtomicLong();
+        registry = TestDevices.newRegistry(clock::get);
+        leaseManager = new DeviceLeaseManager(registry::getDevices, clock::get);
+    }
+
+    @AfterEach
+    void tearDown() {
+        leaseManager.close();
+    }
+
+    @Test
+    void leastLoadedDeviceIsHandedOut() throws InterruptedException {
+        Device first = registry.getDevice("serial-1", "product", "model", DeviceState.Online);
+        Device second = registry.getDevice("serial-2", "product", "model", DeviceState.Online);
+
+        DeviceLease lease = leaseManager.acquire(x -> x == first, 1, TimeUnit.HOURS);
+        clock.addAndGet(TimeUnit.MINUTES.toNanos(5));
+        lease.release();
+
+        assertFalse(lease.isValid());
+        assertSame(second, leaseManager.acquire(x -> true, 1, TimeUnit.HOURS).getDevice());
+        assertSame(first, leaseManager.acquire(x -> true, 1, TimeUnit.HOURS).getDevice());
+    }
+
+    @Test
+    void waitingRequestsAreServedInArrivalOrder() throws InterruptedException {
+        registry.getDevice("serial", "product", "model", DeviceState.Online);
+        DeviceLease lease = leaseManager.acquire(x -> true, 1, TimeUnit.HOURS);
+
+        CompletableFuture<DeviceLease> firstWaiter = leaseManager.acquireAsync(x -> true, 1, TimeUnit.HOURS);
+        CompletableFuture<DeviceLease> secondWaiter = leaseManager.acquireAsync(x -> true, 1, TimeUnit.HOURS);
+        assertEquals(2, leaseManager.getWaitingCount());
+
+        lease.release();
+
+        assertTrue(firstWaiter.isDone());
+        assertFalse(secondWaiter.isDone());
+        firstWaiter.join().release();
+        assertTrue(secondWaiter.isDone());
+    }
+
+    @Test
+    void unmatchedRequestsDontBlockOthers() {
+        registry.getDevice("serial", "product", "Nexus_5X", DeviceState.Online);
+        registry.getDevice("offline", "product", "Pixel", DeviceState.Offline);
+
+        CompletableFuture<DeviceLease> pixel = leaseManager.acquireAsync(x -> x.getModelString().equals("Pixel"), 1, TimeUnit.HOURS);
+        CompletableFuture<DeviceLease> any = leaseManager.acquireAsync(x -> true, 1, TimeUnit.HOURS);
+
+        assertFalse(pixel.isDone());
+        assertEquals("serial", any.join().getDevice().getID());
+
+        registry.getDevice("offline", "product", "Pixel", DeviceState.Online);
+        leaseManager.reevaluate();
+        assertEquals("offline", pixel.join().getDevice().getID());
+    }
+
+    @Test
+    void expiredLeasesFreeTheirDevice() throws InterruptedException {
+        registry.getDevice("serial", "product", "model", DeviceState.Online);
+        DeviceLease lease = leaseManager.acquire(x -> true, 50, TimeUnit.MILLISECONDS);
+
+        DeviceLease next = leaseManager.tryAcquire(x -> true, 1, 5000, TimeUnit.MILLISECONDS);
+
+        assertNotNull(next);
+        assertFalse(lease.isValid());
+        assertFalse(lease.renew(1, TimeUnit.HOURS));
+    }
+
+    @Test
+    void renewedLeasesDontExpire() throws InterruptedException {
+        registry.getDevice("serial", "product", "model", DeviceState.Online);
+        DeviceLease lease = leaseManager.acquire(x -> true, 50, TimeUnit.MILLISECONDS);
+
+        assertTrue(lease.renew(1, TimeUnit.HOURS));
+        Thread.sleep(200);
+
+        assertTrue(lease.isValid());
+        assertTrue(leaseManager.isLeased(lease.getDevice()));
+    }
+
+    @Test
+    void failingPredicatesFailTheirRequestOnly() {
+        registry.getDevice("serial", "product", "model", DeviceState.Online);
+
+        CompletableFuture<DeviceLease> failing = leaseManager.acquireAsync(x -> { throw new IllegalStateException("boom"); }, 1, TimeUnit.HOURS);
+        CompletableFuture<DeviceLease> any = leaseManager.acquireAsync(x -> true, 1, TimeUnit.HOURS);
+
+        assertTrue(failing.isCompletedExceptionally());
+        assertEquals("serial", any.join().getDevice().getID());
+        assertEquals(0, leaseManager.getWaitingCount());
+    }
+
+    @Test
+    void leaseTimesUseTheManagersClock() throws InterruptedException {
+        registry.getDevice("serial", "product", "model", DeviceState.Online);
+        DeviceLease lease = leaseManager.acquire(x -> true, 1, TimeUnit.HOURS);
+
+        clock.addAndGet(TimeUnit.MINUTES.toNanos(20));
+
+        assertEquals(20, lease.getHeldTime(TimeUnit.MINUTES));
+        assertEquals(40, lease.getRemainingTime(TimeUnit.MINUTES));
+    }
+
+}
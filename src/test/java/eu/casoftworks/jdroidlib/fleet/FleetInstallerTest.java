@@ -0,0 +1,43 @@
+package eu.casoftworks.jdroidlib.fleet;
+
+import org.junit.jupiter.api.*;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FleetInstallerTest {
+
+    @Test
+    void stagedPathIsContentAddressed() {
+        assertEquals("/data/local/tmp/jdroidlib-abc.apk", FleetInstaller.getStagedPath("/data/local/tmp", "abc"));
+        assertEquals("/data/local/tmp/jdroidlib-abc.apk", FleetInstaller.getStagedPath("/data/local/tmp/", "abc"));
+    }
+
+    @Test
+    void hashIsSha256() throws IOException {
+        File file = Files.createTempFile("fleet-installer", ".apk").toFile();
+        try {
+            Files.write(file.toPath(), "abc".getBytes(StandardCharsets.US_ASCII));
+
+            assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", FleetInstaller.hash(file));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    void commitScriptChecksSize() {
+        assertEquals("if [ \"$(stat -c %s '/tmp/a.part')\" = \"42\" ]; then mv -f '/tmp/a.part' '/tmp/a' && echo staged; else rm -f '/tmp/a.part'; fi",
+                FleetInstaller.getCommitScript("/tmp/a.part", "/tmp/a", 42));
+    }
+
+    @Test
+    void invalidConfigurationIsRejected() {
+        assertThrows(IllegalStateException.class, () -> new FleetInstaller.Factory().setStagingDirectory("tmp").create());
+        assertThrows(IllegalStateException.class, () -> new FleetInstaller.Factory().setBandwidthLimit(-1).create());
+    }
+
+}
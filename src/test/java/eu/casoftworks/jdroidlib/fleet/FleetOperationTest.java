@@ -0,0 +1,175 @@
+package eu.casoftworks.jdroidlib.fleet;
+
+import eu.casoftworks.jdroidlib.device.*;
+import eu.casoftworks.jdroidlib.enums.*;
+import org.junit.jupiter.api.*;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FleetOperationTest {
+
+    private DeviceRegistry registry;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        registry = TestDevices.newRegistry(System::nanoTime);
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private List<Device> getDevices(String... serials) {
+        List<Device> devices = new ArrayList<>();
+        for (String serial : serials)
+            devices.add(registry.getDevice(serial, "product", "model", DeviceState.Online));
+        return devices;
+    }
+
+    @Test
+    void parallelismIsNeverExceeded() throws InterruptedException {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        FleetReport<String> report = new FleetOperation.Factory<String>()
+                .setParallelism(3)
+                .setTask(device -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    try {
+                        Thread.sleep(5);
+                        return device.getSerialNumber();
+                    } finally {
+                        running.decrementAndGet();
+                    }
+                })
+                .create()
+                .execute(getDevices("1", "2", "3", "4", "5", "6", "7", "8", "9", "10", "11", "12"), executor);
+
+        assertEquals(12, report.getSucceeded().size());
+        assertTrue(report.isComplete());
+        assertTrue(maxRunning.get() <= 3, "Parallelism exceeded: " + maxRunning.get());
+    }
+
+    @Test
+    void deadlineCancelsUnfinishedDevices() throws InterruptedException {
+        CountDownLatch interrupted = new CountDownLatch(2);
+        List<FleetResult<String>> notified = new CopyOnWriteArrayList<>();
+
+        FleetReport<String> report = new FleetOperation.Factory<String>()
+                .setParallelism(2)
+                .setDeadline(200, TimeUnit.MILLISECONDS)
+                .setResultListener(notified::add)
+                .setTask(device -> {
+                    try {
+                        Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+                    } catch (InterruptedException ex) {
+                        interrupted.countDown();
+                        throw ex;
+                    }
+                    return device.getSerialNumber();
+                })
+                .create()
+                .execute(getDevices("slow-1", "slow-2", "never-started"), executor);
+
+        // The two running tasks are cancelled; the third never got a slot
+        assertEquals(3, report.getTimedOut().size());
+        assertEquals(3, notified.size());
+        assertFalse(report.isComplete());
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        assertTrue(report.getElapsed(TimeUnit.SECONDS) < 30);
+    }
+
+    @Test
+    void latenciesExcludeQueueTime() throws InterruptedException {
+        ExecutorService singleThread = Executors.newSingleThreadExecutor();
+        try {
+            FleetReport<String> report = new FleetOperation.Factory<String>()
+                    .setParallelism(4)
+                    .setTask(device -> {
+                        Thread.sleep(100);
+                        return device.getSerialNumber();
+                    })
+                    .create()
+                    .execute(getDevices("1", "2", "3", "4"), singleThread);
+
+            // The last device waited ~300ms for the single thread before it started
+            assertEquals(4, report.getSucceeded().size());
+            for (FleetResult<String> result : report.getResults())
+                assertTrue(result.getLatency(TimeUnit.MILLISECONDS) < 250, result.toString());
+        } finally {
+            singleThread.shutdownNow();
+        }
+    }
+
+    @Test
+    void queuedTasksTimeOutWithoutLatency() throws InterruptedException {
+        ExecutorService singleThread = Executors.newSingleThreadExecutor();
+        try {
+            FleetReport<String> report = new FleetOperation.Factory<String>()
+                    .setParallelism(2)
+                    .setDeadline(200, TimeUnit.MILLISECONDS)
+                    .setTask(device -> {
+                        Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+                        return device.getSerialNumber();
+                    })
+                    .create()
+                    .execute(getDevices("running", "queued"), singleThread);
+
+            assertEquals(2, report.getTimedOut().size());
+            for (FleetResult<String> result : report.getTimedOut()) {
+                if (result.getDevice().getSerialNumber().equals("running"))
+                    assertTrue(result.getLatency(TimeUnit.MILLISECONDS) >= 100, result.toString());
+                else
+                    assertEquals(0, result.getLatency(TimeUnit.NANOSECONDS));
+            }
+        } finally {
+            singleThread.shutdownNow();
+        }
+    }
+
+    @Test
+    void failuresAreCollectedWithoutAbortingTheRun() throws InterruptedException {
+        FleetReport<String> report = new FleetOperation.Factory<String>()
+                .setParallelism(2)
+                .setTask(device -> {
+                    if (device.getSerialNumber().startsWith("broken"))
+                        throw new IOException(device.getSerialNumber());
+                    return device.getSerialNumber();
+                })
+                .create()
+                .execute(getDevices("broken-1", "fine-1", "broken-2", "fine-2", "fine-3"), executor);
+
+        assertEquals(5, report.getResults().size());
+        assertEquals(3, report.getSucceeded().size());
+        assertEquals(2, report.getFailed().size());
+        for (FleetResult<String> result : report.getFailed()) {
+            assertTrue(result.getException() instanceof IOException);
+            assertEquals(result.getDevice().getSerialNumber(), result.getException().getMessage());
+        }
+        for (FleetResult<String> result : report.getSucceeded())
+            assertEquals(result.getDevice().getSerialNumber(), result.getValue());
+    }
+
+    @Test
+    void filteredDevicesAreLeftOut() throws InterruptedException {
+        List<Device> devices = getDevices("online");
+        devices.add(registry.getDevice("offline", "product", "model", DeviceState.Offline));
+
+        FleetReport<String> report = new FleetOperation.Factory<String>()
+                .setTask(Device::getSerialNumber)
+                .create()
+                .execute(devices, executor);
+
+        assertEquals(1, report.getResults().size());
+        assertEquals("online", report.getResults().get(0).getValue());
+    }
+
+}
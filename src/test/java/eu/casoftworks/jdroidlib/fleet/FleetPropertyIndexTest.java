@@ -0,0 +1,76 @@
+package eu.casoftworks.jdroidlib.fleet;
+
+import eu.casoftworks.jdroidlib.device.*;
+import eu.casoftworks.jdroidlib.enums.*;
+import eu.casoftworks.jdroidlib.util.*;
+import org.junit.jupiter.api.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FleetPropertyIndexTest {
+
+    private DeviceRegistry registry;
+    private FleetPropertyIndex index;
+
+    @BeforeEach
+    void setUp() {
+        registry = TestDevices.newRegistry(System::nanoTime);
+        index = new FleetPropertyIndex.Factory().create((ExecutorService)null);
+    }
+
+    private Device device(String serial, String model, String sdk, String patch) {
+        Device device = registry.getDevice(serial, "product", model, DeviceState.Online);
+        Map<String, String> properties = new HashMap<>();
+        properties.put("ro.product.model", model);
+        properties.put("ro.build.version.sdk", sdk);
+        properties.put("ro.build.version.security_patch", patch);
+        properties.put("ro.build.fingerprint", "google/" + model.toLowerCase() + "/" + sdk);
+        index.update(device, TestDevices.newBuildPropSnapshot(properties));
+        return device;
+    }
+
+    @Test
+    void equalityPrefixAndRangeQueries() {
+        Device first = device("serial-1", "Pixel", "9", "2018-06-05");
+        Device second = device("serial-2", "Pixel", "27", "2018-12-05");
+        Device third = device("serial-3", "Nexus", "10", "2019-01-05");
+
+        assertEquals(Arrays.asList(third), index.find("ro.product.model", "Nexus"));
+        assertEquals(new HashSet<>(Arrays.asList(first, second)), new HashSet<>(index.findByPrefix("ro.build.fingerprint", "google/pixel")));
+        assertEquals(Arrays.asList(first, second), index.findInRange("ro.build.version.security_patch", null, "2019-01"));
+        assertEquals(Arrays.asList(first, third), index.findInVersionRange("ro.build.version.sdk", Version.of(9), Version.of(27)));
+        assertEquals(2, index.groupBy("ro.product.model").get("Pixel").size());
+        assertTrue(index.find("ro.unknown", "x").isEmpty());
+    }
+
+    @Test
+    void updatesReplacePreviousValues() {
+        Device device = device("serial", "Pixel", "27", "2018-12-05");
+        device("serial", "Pixel", "28", "2019-01-05");
+
+        assertTrue(index.findInVersionRange("ro.build.version.sdk", null, Version.of(28)).isEmpty());
+        assertEquals(Arrays.asList(device), index.find("ro.build.version.sdk", "28"));
+        assertEquals("2019-01-05", index.getValue(device, "ro.build.version.security_patch"));
+
+        assertTrue(index.remove(device));
+        assertTrue(index.groupBy("ro.product.model").isEmpty());
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    void olderSnapshotsAreIgnored() {
+        Device device = registry.getDevice("serial", "product", "Pixel", DeviceState.Online);
+        BuildPropSnapshot older = TestDevices.newBuildPropSnapshot(Collections.singletonMap("ro.build.version.sdk", "27"), 1000);
+        BuildPropSnapshot newer = TestDevices.newBuildPropSnapshot(Collections.singletonMap("ro.build.version.sdk", "28"), 2000);
+
+        index.update(device, newer);
+        index.update(device, older);
+
+        assertEquals("28", index.getValue(device, "ro.build.version.sdk"));
+        assertTrue(index.find("ro.build.version.sdk", "27").isEmpty());
+    }
+
+}
@@ -0,0 +1,53 @@
+package eu.casoftworks.jdroidlib.telemetry;
+
+import eu.casoftworks.jdroidlib.enums.*;
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatterySampleBufferTest {
+
+    @Test
+    void fullBufferOverwritesOldestSamples() {
+        BatterySampleBuffer buffer = new BatterySampleBuffer(3);
+        for (int i = 1; i <= 5; i++)
+            assertTrue(buffer.add(i * 1000L, i * 10, 4.0f, 25.0f, Float.NaN));
+
+        assertEquals(3, buffer.size());
+        assertEquals(5000, buffer.getLatestTimestamp());
+        assertEquals(50.0f, buffer.getLatest(BatteryMetric.Level));
+
+        long[] timestamps = new long[3];
+        float[] levels = new float[3];
+        assertEquals(3, buffer.copy(BatteryMetric.Level, 0, timestamps, levels));
+        assertArrayEquals(new long[] { 3000, 4000, 5000 }, timestamps);
+        assertArrayEquals(new float[] { 30, 40, 50 }, levels);
+    }
+
+    @Test
+    void statisticsCoverOnlyTheWindow() {
+        BatterySampleBuffer buffer = new BatterySampleBuffer(16);
+        for (int i = 1; i <= 10; i++)
+            buffer.add(i * 1000L, 100 - i, 4.0f, 20 + i, Float.NaN);
+
+        SampleStatistics statistics = buffer.getStatistics(BatteryMetric.Temperature, 8000, 10000);
+
+        assertEquals(3, statistics.getCount());
+        assertEquals(28.0, statistics.getMin());
+        assertEquals(30.0, statistics.getMax());
+        assertEquals(29.0, statistics.getMean());
+    }
+
+    @Test
+    void unknownValuesAndOutOfOrderSamplesAreIgnored() {
+        BatterySampleBuffer buffer = new BatterySampleBuffer(4);
+        buffer.add(1000, 50, 4.0f, 25.0f, Float.NaN);
+        buffer.add(2000, 49, 4.0f, 25.0f, -0.5f);
+
+        assertFalse(buffer.add(2000, 48, 4.0f, 25.0f, -0.5f));
+        assertEquals(1, buffer.getStatistics(BatteryMetric.Current, 0, Long.MAX_VALUE).getCount());
+        assertEquals(0, buffer.getStatistics(BatteryMetric.Level, 3000, 4000).getCount());
+        assertTrue(Double.isNaN(buffer.getStatistics(BatteryMetric.Level, 3000, 4000).getMean()));
+    }
+
+}
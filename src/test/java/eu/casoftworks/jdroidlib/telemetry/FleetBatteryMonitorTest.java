@@ -0,0 +1,105 @@
+package eu.casoftworks.jdroidlib.telemetry;
+
+import eu.casoftworks.jdroidlib.device.*;
+import eu.casoftworks.jdroidlib.enums.*;
+import org.junit.jupiter.api.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FleetBatteryMonitorTest {
+
+    private static final BatteryThreshold LOW_LEVEL = BatteryThreshold.below(BatteryMetric.Level, 20).withHysteresis(5);
+    private static final BatteryThreshold HOT = BatteryThreshold.above(BatteryMetric.Temperature, 45);
+
+    private DeviceRegistry registry;
+    private List<BatteryAlert> alerts;
+    private FleetBatteryMonitor monitor;
+
+    @BeforeEach
+    void setUp() {
+        registry = TestDevices.newRegistry(System::nanoTime);
+        alerts = new ArrayList<>();
+        monitor = new FleetBatteryMonitor.Factory()
+                .addThreshold(LOW_LEVEL)
+                .addThreshold(HOT)
+                .setAlertListener(alerts::add)
+                .create((ExecutorService)null);
+    }
+
+    private Device device(String serial) {
+        return registry.getDevice(serial, "product", "model", DeviceState.Online);
+    }
+
+    private static BatteryInfo info(long timestamp, int level, int temperature) {
+        return BatteryInfo.parse(String.format("Current Battery Service state:\n  level: %d\n  scale: 100\n  temperature: %d\n", level, temperature * 10), timestamp);
+    }
+
+    @Test
+    void queriesFollowUpdates() {
+        Device first = device("serial-1"), second = device("serial-2"), third = device("serial-3");
+        monitor.update(first, info(1000, 10, 30));
+        monitor.update(second, info(1000, 50, 47));
+        monitor.update(third, info(1000, 15, 20));
+
+        assertEquals(Arrays.asList(first, third), monitor.getDevicesBelow(BatteryMetric.Level, 20));
+        assertEquals(Collections.singletonList(second), monitor.getDevicesAbove(BatteryMetric.Temperature, 45));
+
+        monitor.update(first, info(2000, 80, 30));
+        assertFalse(monitor.update(third, info(500, 90, 20)));
+        monitor.remove(second);
+
+        assertEquals(Collections.singletonList(third), monitor.getDevicesBelow(BatteryMetric.Level, 20));
+        assertTrue(monitor.getDevicesAbove(BatteryMetric.Temperature, 45).isEmpty());
+
+        SampleStatistics statistics = monitor.getStatistics(BatteryMetric.Level);
+        assertEquals(2, statistics.getCount());
+        assertEquals(15.0, statistics.getMin());
+        assertEquals(80.0, statistics.getMax());
+        assertEquals(47.5, statistics.getMean());
+        assertEquals(1000, statistics.getFromTimestamp());
+        assertEquals(2000, statistics.getToTimestamp());
+    }
+
+    @Test
+    void alertsAreRaisedOnceAndClearedPastHysteresis() {
+        Device device = device("serial");
+        monitor.update(device, info(1000, 19, 30));
+        monitor.update(device, info(2000, 18, 30));
+        monitor.update(device, info(3000, 22, 30)); // Within the hysteresis
+        assertEquals(1, alerts.size());
+        assertTrue(alerts.get(0).isRaised());
+        assertEquals(Collections.singletonList(device), monitor.getAlertedDevices(LOW_LEVEL));
+
+        monitor.update(device, info(4000, 25, 46));
+
+        assertEquals(3, alerts.size());
+        assertEquals(LOW_LEVEL, alerts.get(1).getThreshold());
+        assertFalse(alerts.get(1).isRaised());
+        assertEquals(HOT, alerts.get(2).getThreshold());
+        assertTrue(alerts.get(2).isRaised());
+        assertEquals(1, monitor.getActiveAlerts().size());
+        assertTrue(monitor.getAlertedDevices(LOW_LEVEL).isEmpty());
+    }
+
+    @Test
+    void alertsAreClearedWhenTheMetricIsNoLongerReported() {
+        Device device = device("serial");
+        monitor.update(device, info(1000, 50, 47));
+        monitor.update(device, BatteryInfo.parse("Current Battery Service state:\n  level: 50\n  scale: 100\n", 2000));
+
+        assertEquals(2, alerts.size());
+        assertEquals(HOT, alerts.get(1).getThreshold());
+        assertFalse(alerts.get(1).isRaised());
+        assertTrue(Double.isNaN(alerts.get(1).getValue()));
+        assertTrue(monitor.getAlertedDevices(HOT).isEmpty());
+
+        // Once reported again, the alert is raised anew
+        monitor.update(device, info(3000, 50, 48));
+        assertEquals(3, alerts.size());
+        assertTrue(alerts.get(2).isRaised());
+    }
+
+}
@@ -0,0 +1,99 @@
+package eu.casoftworks.jdroidlib.telemetry;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.*;
+import org.openjdk.jmh.runner.*;
+import org.openjdk.jmh.runner.options.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Measures the query latency of a {@link TimeSeriesStore} holding a week of battery telemetry
+ * (one sample every five seconds), and the cost of appending to it.
+ * The compressed size per sample is printed during set-up, next to the 16 bytes of a {@code long} and a {@code double}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TimeSeriesStoreBenchmark {
+
+    private static final long INTERVAL_MILLIS = 5000;
+    private static final int SAMPLES = (int)(TimeUnit.DAYS.toMillis(7) / INTERVAL_MILLIS);
+    private static final String[] METRICS = { "Level", "Voltage", "Temperature", "Current" };
+
+    private TimeSeriesStore store;
+    private long start;
+    private long end;
+
+    private TimeSeriesStore appendStore;
+    private long appendTimestamp;
+    private double appendValue;
+
+    @Setup
+    public void setUp() {
+        store = new TimeSeriesStore.Factory().create();
+        start = 1533729035000L;
+        Random random = new Random(42);
+        double level = 100, temperature = 30;
+        long timestamp = start;
+
+        for (int i = 0; i < SAMPLES; i++) {
+            timestamp += INTERVAL_MILLIS + (random.nextInt(10) == 0 ? random.nextInt(40) - 20 : 0); // Occasional scheduling jitter
+            level = level <= 5 ? 100 : level - random.nextInt(200) / 1000.0;
+            temperature = Math.max(20, Math.min(45, temperature + random.nextGaussian() * 0.1));
+
+            store.append("serial", METRICS[0], timestamp, Math.round(level));
+            store.append("serial", METRICS[1], timestamp, 3.6 + level / 200 + random.nextInt(10) / 1000.0);
+            store.append("serial", METRICS[2], timestamp, Math.round(temperature * 10) / 10.0);
+            store.append("serial", METRICS[3], timestamp, -0.3 - random.nextInt(200) / 1000.0);
+        }
+        end = timestamp;
+
+        System.out.printf("%n%d samples in %d bytes: %.2f bytes per sample%n", store.getSampleCount(), store.getByteSize(), (double)store.getByteSize() / store.getSampleCount());
+        for (String metric : METRICS) {
+            TimeSeriesStore single = new TimeSeriesStore.Factory().create();
+            store.query("serial", metric, start, end, (t, v) -> single.append("serial", metric, t, v));
+            System.out.printf("  %s: %.2f bytes per sample%n", metric, (double)single.getByteSize() / single.getSampleCount());
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void setUpAppend() {
+        appendStore = new TimeSeriesStore.Factory().create();
+        appendTimestamp = start;
+    }
+
+    @Benchmark
+    public int queryLastHour(Blackhole blackhole) {
+        return store.query("serial", METRICS[2], end - TimeUnit.HOURS.toMillis(1), end, (t, v) -> blackhole.consume(v));
+    }
+
+    @Benchmark
+    public int queryWeek(Blackhole blackhole) {
+        return store.query("serial", METRICS[2], start, end, (t, v) -> blackhole.consume(v));
+    }
+
+    @Benchmark
+    public List<SampleStatistics> downsampleWeekHourly() {
+        return store.downsample("serial", METRICS[2], start, end, 1, TimeUnit.HOURS);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public boolean append() {
+        appendValue += 0.1;
+        return appendStore.append("serial", METRICS[2], appendTimestamp += INTERVAL_MILLIS, appendValue);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(TimeSeriesStoreBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+
+}
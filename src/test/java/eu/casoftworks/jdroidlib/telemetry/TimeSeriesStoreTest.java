@@ -0,0 +1,81 @@
+package eu.casoftworks.jdroidlib.telemetry;
+
+import org.junit.jupiter.api.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimeSeriesStoreTest {
+
+    @Test
+    void irregularSamplesRoundTripAcrossBlocks() {
+        TimeSeriesStore store = new TimeSeriesStore.Factory().setBlockSize(16).create();
+        Random random = new Random(42);
+        long[] timestamps = new long[1000];
+        double[] values = new double[1000];
+        long timestamp = 1533729035000L;
+        for (int i = 0; i < timestamps.length; i++) {
+            // Mostly regular, with jitter, gaps and the odd extreme value
+            timestamp += i % 97 == 0 ? random.nextInt(Integer.MAX_VALUE) * 8L : 5000 + random.nextInt(400) - 200;
+            timestamps[i] = timestamp;
+            values[i] = i % 50 == 0 ? Double.NaN : i % 61 == 0 ? -Double.MAX_VALUE : Math.round(random.nextGaussian() * 1000) / 10.0;
+            assertTrue(store.append("serial", "temperature", timestamps[i], values[i]));
+        }
+        assertFalse(store.append("serial", "temperature", timestamp, 0));
+
+        List<Long> readTimestamps = new ArrayList<>();
+        List<Double> readValues = new ArrayList<>();
+        assertEquals(1000, store.query("serial", "temperature", Long.MIN_VALUE, Long.MAX_VALUE, (t, v) -> {
+            readTimestamps.add(t);
+            readValues.add(v);
+        }));
+
+        for (int i = 0; i < timestamps.length; i++) {
+            assertEquals(timestamps[i], (long)readTimestamps.get(i));
+            assertEquals(Double.doubleToRawLongBits(values[i]), Double.doubleToRawLongBits(readValues.get(i)));
+        }
+
+        assertEquals(11, store.query("serial", "temperature", timestamps[100], timestamps[110], (t, v) -> { }));
+        assertEquals(0, store.query("serial", "unknown", Long.MIN_VALUE, Long.MAX_VALUE, (t, v) -> { }));
+    }
+
+    @Test
+    void regularSamplesCompressWell() {
+        TimeSeriesStore store = new TimeSeriesStore.Factory().create();
+        for (int i = 0; i < 100000; i++)
+            store.append("serial", "level", i * 5000L, 100 - i / 1000);
+
+        assertEquals(100000, store.getSampleCount());
+        assertTrue(store.getByteSize() < 100000 / 2, "Expected less than half a byte per sample, got " + store.getByteSize());
+    }
+
+    @Test
+    void downsampleAggregatesBuckets() {
+        TimeSeriesStore store = new TimeSeriesStore.Factory().setBlockSize(8).create();
+        for (int i = 0; i < 60; i++)
+            store.append("serial", "level", i * 1000L, i);
+
+        List<SampleStatistics> buckets = store.downsample("serial", "level", 5000, 34999, 10, TimeUnit.SECONDS);
+
+        assertEquals(4, buckets.size());
+        assertEquals(5, buckets.get(0).getCount());
+        assertEquals(0, buckets.get(0).getFromTimestamp());
+        assertEquals(7.0, buckets.get(0).getMean());
+        assertEquals(10.0, buckets.get(1).getMin());
+        assertEquals(19.0, buckets.get(1).getMax());
+        assertEquals(34.0, buckets.get(3).getMax());
+    }
+
+    @Test
+    void expiredBlocksAreDropped() {
+        TimeSeriesStore store = new TimeSeriesStore.Factory().setBlockSize(10).setRetention(30, TimeUnit.SECONDS).create();
+        for (int i = 0; i < 100; i++)
+            store.append("serial", "level", i * 1000L, i);
+
+        assertTrue(store.getSampleCount() >= 30 && store.getSampleCount() <= 40);
+        assertEquals(0, store.query("serial", "level", 0, 59000, (t, v) -> { }));
+    }
+
+}
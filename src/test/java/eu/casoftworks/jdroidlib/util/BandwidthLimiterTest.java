@@ -0,0 +1,41 @@
+package eu.casoftworks.jdroidlib.util;
+
+import org.junit.jupiter.api.*;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BandwidthLimiterTest {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    void burstOfOneSecondIsFree() {
+        BandwidthLimiter limiter = new BandwidthLimiter(1000, clock::get);
+
+        assertEquals(0, limiter.reserve(600));
+        assertEquals(0, limiter.reserve(400));
+    }
+
+    @Test
+    void excessIsTakenOnCredit() {
+        BandwidthLimiter limiter = new BandwidthLimiter(1000, clock::get);
+        limiter.reserve(1000);
+
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(500), limiter.reserve(500));
+        // The second caller queues behind the first
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(1000), limiter.reserve(500));
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        assertEquals(0, limiter.reserve(1000));
+    }
+
+    @Test
+    void unlimitedNeverWaits() {
+        assertEquals(0, BandwidthLimiter.UNLIMITED.reserve(Integer.MAX_VALUE));
+        assertTrue(BandwidthLimiter.UNLIMITED.isUnlimited());
+    }
+
+}
@@ -0,0 +1,79 @@
+package eu.casoftworks.jdroidlib.util;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.*;
+import org.openjdk.jmh.runner.*;
+import org.openjdk.jmh.runner.options.*;
+
+import java.util.concurrent.*;
+
+/**
+ * Compares the hand-rolled parsing of {@link Ip4Address} with parsing via regular expressions
+ * and {@link String#split(String)} as previously done (with its bugs fixed, so both produce the same result).
+ * Run with {@code -prof gc} to compare allocation rates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Ip4AddressBenchmark {
+
+    private static final String IP_MATCH_REGEX = "([0-9]{1,3}[\\.]){3}[0-9]{1,3}";
+    private static final String IP_PORT_MATCH_REGEX = "(([0-9]{1,3}[\\.]){3}[0-9]{1,3})[\\:][0-9]{1,5}";
+
+    private String[] addresses;
+    private int index;
+
+    @Setup
+    public void setUp() {
+        addresses = new String[256];
+        for (int i = 0; i < addresses.length; i++)
+            addresses[i] = String.format("192.168.%d.%d:%d", i / 16, 200 + i % 16, 5555 + i % 4);
+    }
+
+    private String next() {
+        return addresses[index++ & (addresses.length - 1)];
+    }
+
+    @Benchmark
+    public Ip4Address handRolled() {
+        return Ip4Address.fromAddress(next());
+    }
+
+    @Benchmark
+    public void regexAndSplit(Blackhole blackhole) {
+        String address = next();
+        if (!address.matches(IP_MATCH_REGEX) && !address.matches(IP_PORT_MATCH_REGEX))
+            throw new IllegalArgumentException();
+
+        String[] splits = address.split(":");
+        String[] segments = splits[0].split("\\.");
+        byte[] bytes = new byte[4];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = (byte)Integer.parseInt(segments[i]);
+
+        blackhole.consume(bytes);
+        blackhole.consume(Integer.parseInt(splits[1]));
+    }
+
+    @Benchmark
+    public boolean isIp4AddressHandRolled() {
+        return Ip4Address.isIp4Address(next());
+    }
+
+    @Benchmark
+    public boolean isIp4AddressRegex() {
+        String address = next();
+        return address.matches(IP_MATCH_REGEX) | address.matches(IP_PORT_MATCH_REGEX);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(Ip4AddressBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+
+}
@@ -0,0 +1,46 @@
+package eu.casoftworks.jdroidlib.util;
+
+import org.junit.jupiter.api.*;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class Ip4AddressTest {
+
+    @Test
+    void parsesAddressesAboveSignedByteRange() {
+        Ip4Address address = Ip4Address.fromAddress("192.168.255.23:5037");
+
+        assertEquals(0xC0A8FF17, address.getAddress());
+        assertEquals(5037, address.getPort());
+        assertEquals("192.168.255.23:5037", address.toString());
+        assertArrayEquals(new byte[] { (byte)192, (byte)168, (byte)255, 23 }, address.getAddressBytes());
+    }
+
+    @Test
+    void usesDefaultPortIfNoneIsGiven() {
+        assertEquals(Ip4Address.ADB_DEFAULT_PORT, Ip4Address.fromAddress("10.0.0.1").getPort());
+        assertEquals(Ip4Address.ADB_DEFAULT_PORT, Ip4Address.fromAddress("10.0.0.1", 0).getPort());
+        assertEquals(65535, Ip4Address.fromAddress("10.0.0.1:65535").getPort());
+    }
+
+    @Test
+    void rejectsMalformedAddresses() {
+        for (String address : new String[] { "", "10.0.0", "10.0.0.1.", "10.0.0.256", "1000.0.0.1", "10..0.1", "10.0.0.1:", "10.0.0.1:65536", "10.0.0.1:123456", "a.b.c.d", "10.0.0.1 " })
+            assertFalse(Ip4Address.isIp4Address(address), address);
+
+        assertThrows(IllegalArgumentException.class, () -> Ip4Address.fromAddress("10.0.0.1:5555", 5555));
+    }
+
+    @Test
+    void equalAddressesAreInterchangeableHashKeys() {
+        Map<Ip4Address, String> map = new HashMap<>();
+        map.put(Ip4Address.fromAddress("10.0.0.1:5555"), "device");
+
+        assertEquals("device", map.get(Ip4Address.fromIp(new byte[] { 10, 0, 0, 1 })));
+        assertNull(map.get(Ip4Address.fromAddress("10.0.0.1:5556")));
+        assertEquals(Ip4Address.fromInt(0x0A000001, 5555), Ip4Address.fromAddress("10.0.0.1"));
+    }
+
+}
@@ -0,0 +1,20 @@
+package eu.casoftworks.jdroidlib.util;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShellQuoterTest {
+
+    @Test
+    void argumentsAreSingleQuoted() {
+        assertEquals("'/data/local/tmp/my app.apk'", ShellQuoter.quote("/data/local/tmp/my app.apk"));
+        assertEquals("''", ShellQuoter.quote(""));
+    }
+
+    @Test
+    void singleQuotesAreEscaped() {
+        assertEquals("'it'\\''s'", ShellQuoter.quote("it's"));
+    }
+
+}
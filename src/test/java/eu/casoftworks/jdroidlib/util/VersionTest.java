@@ -0,0 +1,27 @@
+package eu.casoftworks.jdroidlib.util;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VersionTest {
+
+    @Test
+    void parseStopsAtQualifiers() {
+        assertEquals(Version.of(7, 1, 2), Version.parse("7.1.2_r36"));
+        assertEquals(Version.of(2018, 12, 5), Version.parse("2018-12-05"));
+        assertEquals(Version.of(9), Version.parse("9"));
+        assertEquals("7.1.2_r36", Version.parse("7.1.2_r36").toString());
+        assertNull(Version.parse("P"));
+        assertNull(Version.parse(""));
+    }
+
+    @Test
+    void missingComponentsCompareAsZero() {
+        assertEquals(Version.parse("8.1"), Version.parse("8.1.0"));
+        assertEquals(Version.parse("8.1").hashCode(), Version.parse("8.1.0").hashCode());
+        assertTrue(Version.parse("8.1.0").compareTo(Version.parse("8.0.9")) > 0);
+        assertTrue(Version.parse("10").compareTo(Version.parse("9.9")) > 0);
+    }
+
+}